@@ -16,38 +16,98 @@
  */
 package org.exoplatform.social.common;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.gatein.pc.api.invocation.InvocationException;
 
+/**
+ * Serializes the invocations which share the same lock id.
+ *
+ * The locks are reference counted in a concurrent map, there is no global lock taken
+ * on each invocation. The released locks are kept in a small pool and reused by the
+ * next lock ids, so that a request doesn't allocate a new lock.
+ *
+ * When a max wait is set, an invocation which can't get its lock in time fails with a
+ * {@link LockTimeoutException} instead of being queued indefinitely.
+ */
 public abstract class LockInterceptor<T extends Invocation> {
 
+  /** The default number of released locks kept for reuse. */
+  public static final int DEFAULT_POOL_SIZE = 64;
+
+  /** . */
+  private final ConcurrentMap<Object, InternalLock> map = new ConcurrentHashMap<Object, InternalLock>();
+
   /** . */
-  private Map<Object, InternalLock> map     = new HashMap<Object, InternalLock>();
+  private final AtomicReferenceArray<InternalLock> pool;
+
+  /** The max time in milliseconds to wait for a lock, 0 to wait indefinitely. */
+  private volatile long maxWait;
 
   /** . */
-  private Lock                      mapLock = new ReentrantLock();
+  private final AtomicLong timeouts = new AtomicLong();
+
+  public LockInterceptor() {
+    this(DEFAULT_POOL_SIZE);
+  }
+
+  public LockInterceptor(int poolSize) {
+    this.pool = new AtomicReferenceArray<InternalLock>(Math.max(poolSize, 1));
+  }
 
   public static class InternalLock {
 
     /** . */
-    private final Object id;
+    private volatile Object id;
 
     /** . */
-    private final Lock   lock    = new ReentrantLock();
+    private final ReentrantLock lock = new ReentrantLock();
 
-    /** . */
-    private int          waiters = 0;
+    /** The number of queued invocations, -1 once the lock has been released. */
+    private final AtomicInteger refs = new AtomicInteger();
 
     public InternalLock(Object id) {
+      init(id);
+    }
+
+    private void init(Object id) {
       this.id = id;
+      refs.set(1);
+    }
+
+    private boolean retain() {
+      for (;;) {
+        int count = refs.get();
+        if (count <= 0) {
+          return false;
+        }
+        if (refs.compareAndSet(count, count + 1)) {
+          return true;
+        }
+      }
+    }
+
+    /**
+     * @return true if it was the last reference
+     */
+    private boolean unretain() {
+      return refs.decrementAndGet() == 0 && refs.compareAndSet(0, -1);
     }
 
-    Object invoke(Invocation invocation) throws Exception, InvocationException {
-      lock.lock();
+    Object invoke(Invocation invocation, long maxWait) throws Exception, InvocationException {
+      if (maxWait > 0) {
+        if (!lock.tryLock(maxWait, TimeUnit.MILLISECONDS)) {
+          throw new LockTimeoutException(id, maxWait);
+        }
+      } else {
+        lock.lock();
+      }
       try {
         return invocation.invokeNext();
       } finally {
@@ -56,31 +116,67 @@ public abstract class LockInterceptor<T extends Invocation> {
     }
   }
 
+  /**
+   * Thrown when an invocation waited longer than the max wait for its lock.
+   */
+  public static class LockTimeoutException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public LockTimeoutException(Object lockId, long maxWait) {
+      super("Waited more than " + maxWait + " ms for the lock " + lockId);
+    }
+  }
+
   protected InternalLock acquire(Object lockId) {
-    mapLock.lock();
-    try {
-      InternalLock lock;
-      if (map.containsKey(lockId)) {
-        lock = (InternalLock) map.get(lockId);
-      } else {
-        lock = new InternalLock(lockId);
-        map.put(lockId, lock);
+    for (;;) {
+      InternalLock lock = map.get(lockId);
+      if (lock == null) {
+        InternalLock created = take(lockId);
+        lock = map.putIfAbsent(lockId, created);
+        if (lock == null) {
+          return created;
+        }
+        created.refs.set(-1);
+        recycle(created);
+      }
+      if (lock.retain()) {
+        //a reused lock may have been taken by another id in the meantime
+        if (lockId.equals(lock.id)) {
+          return lock;
+        }
+        release(lock);
       }
-      lock.waiters++;
-      return lock;
-    } finally {
-      mapLock.unlock();
     }
   }
 
   protected void release(InternalLock internalLock) {
-    mapLock.lock();
-    try {
-      if (--internalLock.waiters == 0) {
-        map.remove(internalLock.id);
+    if (internalLock.unretain()) {
+      map.remove(internalLock.id, internalLock);
+      recycle(internalLock);
+    }
+  }
+
+  private InternalLock take(Object lockId) {
+    int start = (int) (Thread.currentThread().getId() % pool.length());
+    for (int i = 0; i < pool.length(); i++) {
+      int index = (start + i) % pool.length();
+      InternalLock lock = pool.get(index);
+      if (lock != null && pool.compareAndSet(index, lock, null)) {
+        lock.init(lockId);
+        return lock;
+      }
+    }
+    return new InternalLock(lockId);
+  }
+
+  private void recycle(InternalLock lock) {
+    int start = (int) (Thread.currentThread().getId() % pool.length());
+    for (int i = 0; i < pool.length(); i++) {
+      int index = (start + i) % pool.length();
+      if (pool.get(index) == null && pool.compareAndSet(index, null, lock)) {
+        return;
       }
-    } finally {
-      mapLock.unlock();
     }
   }
 
@@ -93,7 +189,10 @@ public abstract class LockInterceptor<T extends Invocation> {
     if (lockId != null) {
       InternalLock internalLock = acquire(lockId);
       try {
-        return internalLock.invoke(invocation);
+        return internalLock.invoke(invocation, maxWait);
+      } catch (LockTimeoutException e) {
+        timeouts.incrementAndGet();
+        throw e;
       } finally {
         release(internalLock);
       }
@@ -101,4 +200,55 @@ public abstract class LockInterceptor<T extends Invocation> {
       return invocation.invokeNext();
     }
   }
+
+  /**
+   * @param maxWait the max time in milliseconds to wait for a lock, 0 to wait indefinitely
+   */
+  public void setMaxWait(long maxWait) {
+    this.maxWait = maxWait;
+  }
+
+  public long getMaxWait() {
+    return maxWait;
+  }
+
+  /**
+   * Gets the number of invocations queued on a lock id, the running one included.
+   *
+   * @param lockId the lock id
+   * @return the number of queued invocations
+   */
+  public int getQueued(Object lockId) {
+    InternalLock lock = map.get(lockId);
+    return lock == null ? 0 : Math.max(lock.refs.get(), 0);
+  }
+
+  /**
+   * Gets the number of invocations waiting for the lock of a lock id.
+   *
+   * @param lockId the lock id
+   * @return the number of waiting invocations
+   */
+  public int getWaiting(Object lockId) {
+    InternalLock lock = map.get(lockId);
+    return lock == null ? 0 : lock.lock.getQueueLength();
+  }
+
+  /**
+   * Gets the number of lock ids which have at least one invocation in progress.
+   *
+   * @return the number of locked ids
+   */
+  public int getLocks() {
+    return map.size();
+  }
+
+  /**
+   * Gets the number of invocations which gave up waiting for their lock.
+   *
+   * @return the number of timeouts
+   */
+  public long getTimeouts() {
+    return timeouts.get();
+  }
 }
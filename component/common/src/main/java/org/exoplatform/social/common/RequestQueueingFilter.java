@@ -23,25 +23,43 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.common.LockInterceptor.LockTimeoutException;
 import org.exoplatform.web.filter.Filter;
 import org.gatein.pc.api.invocation.InvocationException;
 
 public class RequestQueueingFilter  implements Filter {
 
-  private SessionLockInterceptor interceptor = new SessionLockInterceptor();
+  private static final Log LOG = ExoLogger.getLogger(RequestQueueingFilter.class);
+
+  /** The max time in milliseconds a request waits for the previous requests of its session, 0 to wait indefinitely. */
+  public static final String MAX_WAIT_PROPERTY = "exo.social.request.queueing.maxwait";
 
+  private SessionLockInterceptor interceptor = new SessionLockInterceptor();
 
+  public RequestQueueingFilter() {
+    interceptor.setMaxWait(Long.getLong(MAX_WAIT_PROPERTY, 0L));
+  }
 
   public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException,
   ServletException {
     try {
       interceptor.invoke(new ServletFilterInvocation(chain, request, response));
+    } catch (LockTimeoutException e) {
+      LOG.debug(e.getMessage());
+      ((HttpServletResponse) response).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
     } catch (Exception e) {
       throw new ServletException(e.getCause());
     }
   }
 
+  public SessionLockInterceptor getInterceptor() {
+    return interceptor;
+  }
+
 
 
   public class SessionLockInterceptor extends LockInterceptor<ServletFilterInvocation> {
@@ -16,6 +16,7 @@
  */
 package org.exoplatform.social.common.service;
 
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 import org.exoplatform.social.common.service.thread.ThreadPoolConfig;
@@ -57,4 +58,28 @@ public interface ExecutorServiceManager {
   
   ExecutorService newThreadPool(String name, ThreadPoolConfig config);
   
+  /**
+   * Configures the pools: the default pool uses the given profile, the pools of its
+   * {@link ThreadPoolConfig#getPoolConfigs()} run their processes only.
+   *
+   * @param name the name of the default pool
+   * @param config the profile of the default pool
+   */
+  void configure(String name, ThreadPoolConfig config);
+  
+  /**
+   * Gets the pool running a process, it is created on first use.
+   *
+   * @param processName the process name, null for the default pool
+   * @return the pool dedicated to the process, the default pool if there is none
+   */
+  ExecutorService getThreadPool(String processName);
+  
+  /**
+   * Gets the pools which have been created by {@link #getThreadPool(String)}.
+   *
+   * @return the pools by name
+   */
+  Map<String, ExecutorService> getThreadPools();
+  
 }
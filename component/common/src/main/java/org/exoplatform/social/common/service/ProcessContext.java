@@ -56,6 +56,13 @@ public interface ProcessContext {
 
   String getProcessorCompletion();
   
+  /**
+   * Gets the name of the process, the executor runs it in the pool of the process
+   * 
+   * @return the process name
+   */
+  String getName();
+  
   void setProcessorName(String name);
   
   SocialServiceContext getContext();
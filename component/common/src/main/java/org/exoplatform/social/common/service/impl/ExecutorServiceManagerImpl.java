@@ -16,7 +16,9 @@
  */
 package org.exoplatform.social.common.service.impl;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadFactory;
@@ -36,6 +38,14 @@ public class ExecutorServiceManagerImpl implements ExecutorServiceManager {
   
   private ThreadPoolConfig defaultConfig;
   
+  private String defaultPoolName = "Social";
+  
+  /** process name => pool name */
+  private final Map<String, String> processPools = new HashMap<String, String>();
+  
+  /** pool name => pool, guarded by itself */
+  private final Map<String, ExecutorService> threadPools = new LinkedHashMap<String, ExecutorService>();
+  
   public ExecutorServiceManagerImpl() {
     defaultConfig = new ThreadPoolConfig();
     
@@ -82,6 +92,45 @@ public class ExecutorServiceManagerImpl implements ExecutorServiceManager {
     return executorService;
   }
 
+  @Override
+  public void configure(String name, ThreadPoolConfig config) {
+    synchronized (threadPools) {
+      this.defaultPoolName = name;
+      this.defaultConfig = config;
+      for (ThreadPoolConfig poolConfig : config.getPoolConfigs()) {
+        threadPoolProfiles.put(poolConfig.getId(), poolConfig);
+        for (String process : poolConfig.getProcesses()) {
+          processPools.put(process, poolConfig.getId());
+        }
+      }
+    }
+  }
+  
+  @Override
+  public ExecutorService getThreadPool(String processName) {
+    synchronized (threadPools) {
+      String poolName = processName != null ? processPools.get(processName) : null;
+      ThreadPoolConfig config = poolName != null ? threadPoolProfiles.get(poolName) : defaultConfig;
+      if (poolName == null) {
+        poolName = defaultPoolName;
+      }
+      
+      ExecutorService pool = threadPools.get(poolName);
+      if (pool == null) {
+        pool = newThreadPool(poolName, config);
+        threadPools.put(poolName, pool);
+      }
+      return pool;
+    }
+  }
+  
+  @Override
+  public Map<String, ExecutorService> getThreadPools() {
+    synchronized (threadPools) {
+      return Collections.unmodifiableMap(new LinkedHashMap<String, ExecutorService>(threadPools));
+    }
+  }
+
   private ThreadFactory createThreadFactory(String name, boolean isDaemon, int priority) {
     return new SocialThreadFactory(threadNamePattern, name, isDaemon, priority);
   }
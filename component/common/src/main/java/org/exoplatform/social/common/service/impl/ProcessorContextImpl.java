@@ -182,6 +182,11 @@ public class ProcessorContextImpl implements ProcessContext {
     return null;
   }
 
+  @Override
+  public String getName() {
+    return name;
+  }
+
   @Override
   public void setProcessorName(String name) {
     
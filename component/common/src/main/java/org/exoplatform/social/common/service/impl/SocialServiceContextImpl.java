@@ -53,10 +53,9 @@ public class SocialServiceContextImpl implements SocialServiceContext {
       boolean async = config.isAsyncMode();
       this.isAsyn = async ? ProcessType.ASYNC : ProcessType.SYNC;
       
-      serviceExecutor = new SocialServiceExecutorImpl(executorServiceManager.newThreadPool("Social", config));
-    } else {
-      serviceExecutor = new SocialServiceExecutorImpl(executorServiceManager.newDefaultThreadPool("Social"));
+      executorServiceManager.configure("Social", config);
     }
+    serviceExecutor = new SocialServiceExecutorImpl(executorServiceManager);
     
   }
   
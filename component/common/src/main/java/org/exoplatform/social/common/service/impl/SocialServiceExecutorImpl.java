@@ -17,6 +17,7 @@
 package org.exoplatform.social.common.service.impl;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -25,6 +26,7 @@ import java.util.concurrent.TimeoutException;
 
 import org.exoplatform.social.common.service.AsyncCallback;
 import org.exoplatform.social.common.service.AsyncProcessor;
+import org.exoplatform.social.common.service.ExecutorServiceManager;
 import org.exoplatform.social.common.service.LogWatchCallable;
 import org.exoplatform.social.common.service.ProcessContext;
 import org.exoplatform.social.common.service.Processor;
@@ -36,6 +38,8 @@ public class SocialServiceExecutorImpl implements SocialServiceExecutor {
 
   private ExecutorService executor;
   
+  private ExecutorServiceManager executorServiceManager;
+  
   public SocialServiceExecutorImpl() {
   }
   
@@ -43,6 +47,15 @@ public class SocialServiceExecutorImpl implements SocialServiceExecutor {
     this.executor = executor;
   }
   
+  /**
+   * Runs each process in the pool the manager dedicates to it.
+   * 
+   * @param executorServiceManager the manager of the pools
+   */
+  public SocialServiceExecutorImpl(ExecutorServiceManager executorServiceManager) {
+    this.executorServiceManager = executorServiceManager;
+  }
+  
   @Override
   public ProcessContext execute(ServiceContext<ProcessContext> serviceContext, ProcessContext processContext) {
     processContext.getTraceElement().start();
@@ -68,6 +81,7 @@ public class SocialServiceExecutorImpl implements SocialServiceExecutor {
   @Override
   public void setExecutorService(ExecutorService executorService) {
     this.executor = executorService;
+    this.executorServiceManager = null;
   }
   
   @Override
@@ -83,7 +97,7 @@ public class SocialServiceExecutorImpl implements SocialServiceExecutor {
     }
     
     
-    return getExecutorService().submit(task);
+    return getExecutorService(processorContext).submit(task);
   }
   
   /**
@@ -99,6 +113,13 @@ public class SocialServiceExecutorImpl implements SocialServiceExecutor {
     return processorContext;
   }
 
+  private ExecutorService getExecutorService(ProcessContext processContext) {
+    if (executorServiceManager != null) {
+      return executorServiceManager.getThreadPool(processContext.getName());
+    }
+    return getExecutorService();
+  }
+  
   private ExecutorService getExecutorService() {
     if (executor != null) {
         return executor;
@@ -129,6 +150,9 @@ public class SocialServiceExecutorImpl implements SocialServiceExecutor {
       processContext.setException(e);
     } catch (TimeoutException e) {
       processContext.setException(e);
+    } catch (CancellationException e) {
+      //discarded by the saturated pool
+      processContext.setException(e);
     }
     return processContext;
   }
@@ -148,7 +172,7 @@ public class SocialServiceExecutorImpl implements SocialServiceExecutor {
     }
     
     
-    Future<ProcessContext> future =  getExecutorService().submit(task);
+    Future<ProcessContext> future =  getExecutorService(processContext).submit(task);
     
     try {
       //Change timeout for Future when run debug mode
@@ -161,6 +185,9 @@ public class SocialServiceExecutorImpl implements SocialServiceExecutor {
       processContext.setException(e);
     } catch (TimeoutException e) {
       processContext.setException(e);
+    } catch (CancellationException e) {
+      //discarded by the saturated pool
+      processContext.setException(e);
     }
     
     return processContext;
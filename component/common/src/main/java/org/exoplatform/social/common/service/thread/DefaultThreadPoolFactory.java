@@ -27,6 +27,8 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.exoplatform.social.common.service.thread.ThreadPoolConfig.RejectionPolicy;
+
 public class DefaultThreadPoolFactory implements ThreadPoolFactory {
 
   public ExecutorService newCachedThreadPool(ThreadFactory threadFactory) {
@@ -40,11 +42,18 @@ public class DefaultThreadPoolFactory implements ThreadPoolFactory {
                            config.getKeepAliveTime(),
                            config.getTimeUnit(),
                            config.getMaxQueueSize(), 
-                           factory);
+                           factory,
+                           config.getRejectionPolicy());
   }
 
   public ExecutorService newThreadPool(int corePoolSize, int maxPoolSize, long keepAliveTime, TimeUnit timeUnit,
                                        int maxQueueSize, ThreadFactory threadFactory) throws IllegalArgumentException {
+      return newThreadPool(corePoolSize, maxPoolSize, keepAliveTime, timeUnit, maxQueueSize, threadFactory, RejectionPolicy.CALLER_RUNS);
+  }
+
+  public ExecutorService newThreadPool(int corePoolSize, int maxPoolSize, long keepAliveTime, TimeUnit timeUnit,
+                                       int maxQueueSize, ThreadFactory threadFactory,
+                                       RejectionPolicy rejectionPolicy) throws IllegalArgumentException {
 
       // the core pool size must be higher than 0
       if (corePoolSize < 1) {
@@ -71,12 +80,12 @@ public class DefaultThreadPoolFactory implements ThreadPoolFactory {
           workQueue = new LinkedBlockingQueue<Runnable>(maxQueueSize);
       }
 
-      ThreadPoolExecutor answer = new ThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTime, timeUnit, workQueue);
-      answer.setThreadFactory(threadFactory);
+      String name = threadFactory instanceof SocialThreadFactory ? ((SocialThreadFactory) threadFactory).getName() : null;
+      ThreadPoolExecutor answer = new MonitoredThreadPoolExecutor(name, corePoolSize, maxPoolSize, keepAliveTime, timeUnit,
+                                                                  workQueue, threadFactory, rejectionPolicy);
       //sets TRUE : allows terminal if no tasks arrive within the keep-alive time
       //sets FALSE: When false, core threads are never terminated due to lack of incoming tasks.
       answer.allowCoreThreadTimeOut(true);
-      answer.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
       return answer;
   }
   
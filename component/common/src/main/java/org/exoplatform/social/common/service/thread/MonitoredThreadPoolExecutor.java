@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.service.thread;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.common.service.thread.ThreadPoolConfig.RejectionPolicy;
+
+/**
+ * Thread pool which measures its tasks: the time they wait in the queue, the time they run,
+ * a latency histogram and the rejected tasks.
+ */
+public class MonitoredThreadPoolExecutor extends ThreadPoolExecutor {
+
+  private static final Log LOG = ExoLogger.getLogger(MonitoredThreadPoolExecutor.class);
+
+  /** The upper bounds in ms of the latency histogram buckets, the last bucket is unbounded. */
+  public static final long[] LATENCY_BUCKETS = { 10, 100, 1000, 10000 };
+
+  private final String name;
+
+  private final RejectionPolicy rejectionPolicy;
+
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong callerRuns = new AtomicLong();
+  private final AtomicLong discarded = new AtomicLong();
+  private final AtomicLong totalQueueTime = new AtomicLong();
+  private final AtomicLong totalExecutionTime = new AtomicLong();
+  private final AtomicLong maxLatency = new AtomicLong();
+  private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+
+  public MonitoredThreadPoolExecutor(String name, int corePoolSize, int maxPoolSize, long keepAliveTime, TimeUnit timeUnit,
+                                     BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory,
+                                     RejectionPolicy rejectionPolicy) {
+    super(corePoolSize, maxPoolSize, keepAliveTime, timeUnit, workQueue, threadFactory, new Rejection());
+    this.name = name;
+    this.rejectionPolicy = rejectionPolicy != null ? rejectionPolicy : RejectionPolicy.CALLER_RUNS;
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    submitted.incrementAndGet();
+    super.execute(new TimedTask(command));
+  }
+
+  private void record(long queueTime, long executionTime) {
+    long latency = queueTime + executionTime;
+    completed.incrementAndGet();
+    totalQueueTime.addAndGet(queueTime);
+    totalExecutionTime.addAndGet(executionTime);
+    int bucket = 0;
+    while (bucket < LATENCY_BUCKETS.length && latency >= LATENCY_BUCKETS[bucket]) {
+      bucket++;
+    }
+    latencies.incrementAndGet(bucket);
+    long max = maxLatency.get();
+    while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+      max = maxLatency.get();
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public RejectionPolicy getRejectionPolicy() {
+    return rejectionPolicy;
+  }
+
+  /**
+   * @return the number of tasks waiting for a thread
+   */
+  public int getQueueSize() {
+    return getQueue().size();
+  }
+
+  /**
+   * @return the number of submitted tasks
+   */
+  public long getSubmitted() {
+    return submitted.get();
+  }
+
+  /**
+   * @return the number of tasks which have been run, by the pool or by the caller
+   */
+  public long getCompleted() {
+    return completed.get();
+  }
+
+  /**
+   * @return the number of tasks rejected by the saturated pool
+   */
+  public long getRejected() {
+    return callerRuns.get() + discarded.get();
+  }
+
+  /**
+   * @return the number of rejected tasks run by the thread which submitted them
+   */
+  public long getCallerRuns() {
+    return callerRuns.get();
+  }
+
+  /**
+   * @return the number of rejected tasks which have been dropped
+   */
+  public long getDiscarded() {
+    return discarded.get();
+  }
+
+  /**
+   * @return the average time in ms the tasks waited in the queue
+   */
+  public long getAverageQueueTime() {
+    long count = completed.get();
+    return count == 0 ? 0 : totalQueueTime.get() / count;
+  }
+
+  /**
+   * @return the average time in ms the tasks ran
+   */
+  public long getAverageExecutionTime() {
+    long count = completed.get();
+    return count == 0 ? 0 : totalExecutionTime.get() / count;
+  }
+
+  /**
+   * @return the maximum time in ms between the submission and the end of a task
+   */
+  public long getMaxLatency() {
+    return maxLatency.get();
+  }
+
+  /**
+   * Gets the number of tasks by latency, the time between their submission and their end.
+   *
+   * @return the counts of the buckets bounded by {@link #LATENCY_BUCKETS}
+   */
+  public long[] getLatencyHistogram() {
+    long[] histogram = new long[latencies.length()];
+    for (int i = 0; i < histogram.length; i++) {
+      histogram[i] = latencies.get(i);
+    }
+    return histogram;
+  }
+
+  /**
+   * @return the latency histogram as "&lt;10ms=n, &lt;100ms=n, ..., &gt;=10000ms=n"
+   */
+  public String getLatencyHistogramAsString() {
+    long[] histogram = getLatencyHistogram();
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < histogram.length; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      if (i < LATENCY_BUCKETS.length) {
+        sb.append('<').append(LATENCY_BUCKETS[i]);
+      } else {
+        sb.append(">=").append(LATENCY_BUCKETS[LATENCY_BUCKETS.length - 1]);
+      }
+      sb.append("ms=").append(histogram[i]);
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return "MonitoredThreadPoolExecutor[" + name + ", threads=" + getPoolSize() + ", active=" + getActiveCount()
+        + ", queue=" + getQueueSize() + ", completed=" + getCompleted() + ", rejected=" + getRejected() + "]";
+  }
+
+  /**
+   * Task which records the time it waited and the time it ran.
+   */
+  private class TimedTask implements Runnable {
+
+    private final Runnable task;
+
+    private final long queuedAt = System.currentTimeMillis();
+
+    private TimedTask(Runnable task) {
+      this.task = task;
+    }
+
+    public void run() {
+      long start = System.currentTimeMillis();
+      try {
+        task.run();
+      } finally {
+        record(start - queuedAt, System.currentTimeMillis() - start);
+      }
+    }
+  }
+
+  /**
+   * Applies the rejection policy of the pool.
+   */
+  private static class Rejection implements RejectedExecutionHandler {
+
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+      MonitoredThreadPoolExecutor pool = (MonitoredThreadPoolExecutor) executor;
+      if (pool.rejectionPolicy == RejectionPolicy.CALLER_RUNS && !pool.isShutdown()) {
+        pool.callerRuns.incrementAndGet();
+        r.run();
+        return;
+      }
+
+      //the future of a dropped task is cancelled, the caller waiting for it does not block
+      long count = pool.discarded.incrementAndGet();
+      Runnable task = r instanceof TimedTask ? ((TimedTask) r).task : r;
+      if (task instanceof Future<?>) {
+        ((Future<?>) task).cancel(false);
+      }
+      if (count == 1 || count % 1000 == 0) {
+        LOG.warn("The pool " + pool.name + " is saturated, " + count + " tasks have been discarded");
+      }
+    }
+  }
+}
@@ -17,19 +17,37 @@
 package org.exoplatform.social.common.service.thread;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
 import org.exoplatform.container.xml.ValueParam;
 
 public class ThreadPoolConfig implements Serializable {
 
   private static final long serialVersionUID = 1L;
   
+  /**
+   * What a pool does with a task when its threads are busy and its queue is full.
+   */
+  public enum RejectionPolicy {
+    /** the task is run by the thread which submits it */
+    CALLER_RUNS,
+    /** the task is dropped and logged */
+    DISCARD
+  }
+  
   private final String POOL_SIZE = "pool-size";
   private final String MAX_POOL_SIZE = "max-pool-size";
+  private final String MAX_QUEUE_SIZE = "max-queue-size";
+  private final String REJECTION_POLICY = "rejection-policy";
   private final String ASYNC_MODE = "async-mode";
   private final String THREAD_PRIORITY = "thread-priority";
+  private final String PROCESSES = "processes";
   
   private String id;
   private Boolean defaultProfile;
@@ -40,6 +58,9 @@ public class ThreadPoolConfig implements Serializable {
   private Integer maxQueueSize;
   private int priority = Thread.NORM_PRIORITY;
   private boolean asyncMode;
+  private RejectionPolicy rejectionPolicy = RejectionPolicy.CALLER_RUNS;
+  private List<String> processes = Collections.emptyList();
+  private List<ThreadPoolConfig> poolConfigs = new ArrayList<ThreadPoolConfig>();
   
   public ThreadPoolConfig(InitParams params) {
     
@@ -87,11 +108,69 @@ public class ThreadPoolConfig implements Serializable {
     catch (Exception e) {
       this.asyncMode = false;
     }
+    
+    //
+    ValueParam maxQueueSize = params.getValueParam(MAX_QUEUE_SIZE);
+    if (maxQueueSize != null) {
+      this.maxQueueSize = parseInt(maxQueueSize.getValue(), this.maxQueueSize);
+    }
+    ValueParam rejectionPolicy = params.getValueParam(REJECTION_POLICY);
+    if (rejectionPolicy != null) {
+      this.rejectionPolicy = parsePolicy(rejectionPolicy.getValue(), this.rejectionPolicy);
+    }
+    
+    //a properties-param per pool, its processes do not share the threads of the other pools
+    Iterator<PropertiesParam> it = params.getPropertiesParamIterator();
+    while (it.hasNext()) {
+      this.poolConfigs.add(poolConfig(it.next()));
+    }
   }
   
   public ThreadPoolConfig() {
   }
   
+  private ThreadPoolConfig poolConfig(PropertiesParam param) {
+    ThreadPoolConfig config = new ThreadPoolConfig();
+    config.setId(param.getName());
+    config.setPoolSize(parseInt(param.getProperty(POOL_SIZE), this.poolSize));
+    config.setMaxPoolSize(Math.max(config.getPoolSize(), parseInt(param.getProperty(MAX_POOL_SIZE), this.maxPoolSize)));
+    config.setMaxQueueSize(parseInt(param.getProperty(MAX_QUEUE_SIZE), this.maxQueueSize));
+    config.setRejectionPolicy(parsePolicy(param.getProperty(REJECTION_POLICY), this.rejectionPolicy));
+    config.setKeepAliveTime(this.keepAliveTime);
+    config.setTimeUnit(this.timeUnit);
+    config.setPriority(parseInt(param.getProperty(THREAD_PRIORITY), this.priority));
+    
+    List<String> processes = new ArrayList<String>();
+    String value = param.getProperty(PROCESSES);
+    if (value != null) {
+      for (String process : value.split(",")) {
+        if (process.trim().length() > 0) {
+          processes.add(process.trim());
+        }
+      }
+    }
+    config.setProcesses(processes);
+    return config;
+  }
+  
+  private static int parseInt(String value, int defaultValue) {
+    try {
+      return Integer.valueOf(value.trim());
+    }
+    catch (Exception e) {
+      return defaultValue;
+    }
+  }
+  
+  private static RejectionPolicy parsePolicy(String value, RejectionPolicy defaultValue) {
+    try {
+      return RejectionPolicy.valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+    catch (Exception e) {
+      return defaultValue;
+    }
+  }
+  
 
   /**
    * Gets the id of this profile
@@ -238,4 +317,59 @@ public class ThreadPoolConfig implements Serializable {
   public void setAsyncMode(boolean asyncMode) {
     this.asyncMode = asyncMode;
   }
+
+  /**
+   * Gets what the pool does with a task when it is saturated
+   *
+   * @return the rejection policy
+   */
+  public RejectionPolicy getRejectionPolicy() {
+    return rejectionPolicy;
+  }
+
+  /**
+   * Sets what the pool does with a task when it is saturated
+   *
+   * @param rejectionPolicy the rejection policy
+   */
+  public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+    this.rejectionPolicy = rejectionPolicy;
+  }
+
+  /**
+   * Gets the names of the processes run by this pool
+   *
+   * @return the process names
+   */
+  public List<String> getProcesses() {
+    return processes;
+  }
+
+  /**
+   * Sets the names of the processes run by this pool
+   *
+   * @param processes the process names
+   */
+  public void setProcesses(List<String> processes) {
+    this.processes = processes;
+  }
+
+  /**
+   * Gets the profiles of the pools dedicated to some processes, the other
+   * processes are run by the pool of this profile
+   *
+   * @return the pool profiles
+   */
+  public List<ThreadPoolConfig> getPoolConfigs() {
+    return poolConfigs;
+  }
+
+  /**
+   * Sets the profiles of the pools dedicated to some processes
+   *
+   * @param poolConfigs the pool profiles
+   */
+  public void setPoolConfigs(List<ThreadPoolConfig> poolConfigs) {
+    this.poolConfigs = poolConfigs;
+  }
 }
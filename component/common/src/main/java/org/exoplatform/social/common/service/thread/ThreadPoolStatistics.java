@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.service.thread;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.social.common.service.ExecutorServiceManager;
+import org.exoplatform.social.common.service.impl.SocialServiceContextImpl;
+
+/**
+ * Exposes the metrics of the social thread pools.
+ */
+@Managed
+@ManagedDescription("Social thread pools")
+public class ThreadPoolStatistics {
+
+  private ExecutorServiceManager executorServiceManager;
+
+  public ThreadPoolStatistics() {
+  }
+
+  ThreadPoolStatistics(ExecutorServiceManager executorServiceManager) {
+    this.executorServiceManager = executorServiceManager;
+  }
+
+  @Managed
+  @ManagedName("PoolNames")
+  @ManagedDescription("The names of the pools which have been started")
+  public String getPoolNames() {
+    return getExecutorServiceManager().getThreadPools().keySet().toString();
+  }
+
+  @Managed
+  @ManagedName("Statistics")
+  @ManagedDescription("The statistics of all the pools")
+  public String getStatistics() {
+    StringBuilder sb = new StringBuilder();
+    for (String name : getExecutorServiceManager().getThreadPools().keySet()) {
+      sb.append(getStatistics(name)).append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Managed
+  @ManagedDescription("The statistics of a pool")
+  public String getStatistics(@ManagedDescription("The pool name") @ManagedName("poolName") String poolName) {
+    MonitoredThreadPoolExecutor pool = getPool(poolName);
+    if (pool == null) {
+      return null;
+    }
+    return pool.getName() + ": threads=" + pool.getPoolSize() + "/" + pool.getMaximumPoolSize()
+        + ", active=" + pool.getActiveCount() + ", queue=" + pool.getQueueSize()
+        + ", submitted=" + pool.getSubmitted() + ", completed=" + pool.getCompleted()
+        + ", rejected=" + pool.getRejected() + " (" + pool.getRejectionPolicy() + ")"
+        + ", queueTime=" + pool.getAverageQueueTime() + "ms, executionTime=" + pool.getAverageExecutionTime()
+        + "ms, maxLatency=" + pool.getMaxLatency() + "ms, latencies=[" + pool.getLatencyHistogramAsString() + "]";
+  }
+
+  @Managed
+  @ManagedDescription("The number of tasks waiting in the queue of a pool")
+  public int getQueueSize(@ManagedDescription("The pool name") @ManagedName("poolName") String poolName) {
+    MonitoredThreadPoolExecutor pool = getPool(poolName);
+    return pool != null ? pool.getQueueSize() : 0;
+  }
+
+  @Managed
+  @ManagedDescription("The number of threads running a task in a pool")
+  public int getActiveThreads(@ManagedDescription("The pool name") @ManagedName("poolName") String poolName) {
+    MonitoredThreadPoolExecutor pool = getPool(poolName);
+    return pool != null ? pool.getActiveCount() : 0;
+  }
+
+  @Managed
+  @ManagedDescription("The number of tasks rejected by a saturated pool")
+  public long getRejected(@ManagedDescription("The pool name") @ManagedName("poolName") String poolName) {
+    MonitoredThreadPoolExecutor pool = getPool(poolName);
+    return pool != null ? pool.getRejected() : 0;
+  }
+
+  @Managed
+  @ManagedDescription("The number of tasks of a pool by latency, from their submission to their end")
+  public String getLatencyHistogram(@ManagedDescription("The pool name") @ManagedName("poolName") String poolName) {
+    MonitoredThreadPoolExecutor pool = getPool(poolName);
+    return pool != null ? pool.getLatencyHistogramAsString() : null;
+  }
+
+  private ExecutorServiceManager getExecutorServiceManager() {
+    if (executorServiceManager == null) {
+      //the social context is created on first use, after the container has started
+      executorServiceManager = SocialServiceContextImpl.getInstance().getExecutorServiceManager();
+    }
+    return executorServiceManager;
+  }
+
+  private MonitoredThreadPoolExecutor getPool(String poolName) {
+    Map<String, ExecutorService> pools = getExecutorServiceManager().getThreadPools();
+    ExecutorService pool = pools.get(poolName);
+    return pool instanceof MonitoredThreadPoolExecutor ? (MonitoredThreadPoolExecutor) pool : null;
+  }
+}
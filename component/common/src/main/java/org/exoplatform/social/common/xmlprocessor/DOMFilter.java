@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.xmlprocessor;
+
+import org.exoplatform.social.common.xmlprocessor.model.Node;
+
+/**
+ * A filter which works on the DOM tree: {@link #doFilter(Object)} accepts a {@link Node} and returns the
+ * filtered {@link Node}.
+ * <br>
+ * The consecutive DOM filters of a {@link XMLProcessor} share one tree: a String input is tokenized and
+ * parsed once before the first of them, and the tree is converted back to a String once after the last of them.
+ *
+ * @since 4.0.x
+ */
+public interface DOMFilter extends Filter {
+
+}
@@ -16,8 +16,10 @@
  */
 package org.exoplatform.social.common.xmlprocessor;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import org.exoplatform.social.common.xmlprocessor.model.Node;
@@ -25,6 +27,9 @@ import org.exoplatform.social.common.xmlprocessor.model.Node;
 /**
  * DOMParser utility
  *
+ * The tokens are classified by hand-written scanners which accept exactly what the patterns below
+ * match, each token is scanned once and the end tags are matched in a single pass over the tokens.
+ *
  * @author Ly Minh Phuong - http://phuonglm.net
  */
 public class DOMParser {
@@ -37,6 +42,8 @@ public class DOMParser {
   public static final Pattern ATTRIBUTESPATTERN = Pattern
           .compile("(\\w*)\\s*=\\s*(\"([^\"]*)\"|'([^']*)')"); // prop="...."
 
+  private static final String COMMENT_START = "<!--";
+
   /**
    * Creates the XML DOM tree from XML token List tree.
    *
@@ -56,84 +63,93 @@ public class DOMParser {
    * @return TreeNode contain the content parsed from token list
    */
   public static Node createDOMTree(Node currentNode, List<String> xmlTokens) {
+    String[] tokens = xmlTokens.toArray(new String[xmlTokens.size()]);
+    Tag[] tags = new Tag[tokens.length];
+    for (int i = 0; i < tokens.length; i++) {
+      tags[i] = parseTag(tokens[i]);
+    }
+    buildDOMTree(currentNode, tokens, tags, matchEndTags(tags), 0, tokens.length);
+    return currentNode;
+  }
+
+  /**
+   * Finds the end tag of each start tag.
+   *
+   * The end tag of a start tag is the first following end tag of the same name at the same depth,
+   * the depth being increased by the start tags which are not self-closed and decreased by all the
+   * end tags. The depth of all the tokens is computed once and the end tags are looked up from the
+   * last token to the first one.
+   *
+   * @return the index of the end tag of each start tag, -1 if there is none
+   */
+  private static int[] matchEndTags(Tag[] tags) {
+    int[] depths = new int[tags.length];
+    int depth = 0;
+    for (int i = 0; i < tags.length; i++) {
+      depths[i] = depth;
+      if (tags[i] != null) {
+        if (tags[i].isEndTag()) {
+          depth--;
+        } else if (!tags[i].isSelfClosed()) {
+          depth++;
+        }
+      }
+    }
+
+    int[] matches = new int[tags.length];
+    Map<String, Integer> nextEndTags = new HashMap<String, Integer>();
+    for (int i = tags.length - 1; i >= 0; i--) {
+      matches[i] = -1;
+      Tag tag = tags[i];
+      if (tag == null) {
+        continue;
+      }
+      if (tag.isEndTag()) {
+        nextEndTags.put(tag.getName() + '/' + depths[i], i);
+      } else if (!tag.isSelfClosed()) {
+        Integer match = nextEndTags.get(tag.getName() + '/' + (depths[i] + 1));
+        if (match != null) {
+          matches[i] = match;
+        }
+      }
+    }
+    return matches;
+  }
+
+  private static void buildDOMTree(Node currentNode, String[] tokens, Tag[] tags, int[] matches, int from, int to) {
     Node parsingNode;
 
-    for (int i = 0; i < xmlTokens.size(); i++) {
-      String token = xmlTokens.get(i);
-      Matcher startMatcher = TAGSTARTPATTERN.matcher(token);
-      Matcher endMatcher = TAGCLOSEPATTERN.matcher(token);
+    for (int i = from; i < to; i++) {
+      String token = tokens[i];
+      Tag tag = tags[i];
 
-      if (COMMENTPATTERN.matcher(token).find()) {
+      if (isComment(token)) {
         parsingNode = new Node();
         parsingNode.setParentNode(currentNode);
         currentNode.addChildNode(parsingNode);
         parsingNode.setTitle(token.substring(4, token.length() - 3));
-      } else if (startMatcher.find()) {
-        String tag = startMatcher.group(1).toLowerCase();
-
-        if (SELFTCLOSETAGPATTERN.matcher(token).find()) {
+      } else if (tag != null && !tag.isEndTag()) {
+        if (tag.isSelfClosed()) {
           parsingNode = new Node();
           parsingNode.setParentNode(currentNode);
           currentNode.addChildNode(parsingNode);
-          parsingNode.setTitle(tag);
-          String tokenBody = startMatcher.group(2);
-          Matcher attributes = ATTRIBUTESPATTERN.matcher(tokenBody);
-
-          while (attributes.find()) {
-            String attr = attributes.group(1).toLowerCase();
-            String val = attributes.group(4) == null ? attributes.group(3) : attributes.group(4);
-            parsingNode.addAttribute(attr, val);
-          }
+          parsingNode.setTitle(tag.getName());
+          tag.addAttributesTo(parsingNode);
+        } else if (matches[i] > -1 && matches[i] < to) {
+          int matchedEnd = matches[i];
+          parsingNode = new Node();
+          parsingNode.setParentNode(currentNode);
+          parsingNode.setTitle(tag.getName());
+          tag.addAttributesTo(parsingNode);
+          currentNode.addChildNode(parsingNode);
+          buildDOMTree(parsingNode, tokens, tags, matches, i + 1, matchedEnd);
+          i = matchedEnd;
         } else {
-          int findDeep = 0;
-          int matchedEnd = 0;
-          for (int j = i + 1; j < xmlTokens.size(); j++) {
-            Matcher startFindMatcher = TAGSTARTPATTERN
-                    .matcher(xmlTokens.get(j));
-            Matcher endFindMatcher = TAGCLOSEPATTERN.matcher(xmlTokens.get(j));
-            if (startFindMatcher.find()) {
-              if (!SELFTCLOSETAGPATTERN.matcher(xmlTokens.get(j)).find()) {
-                findDeep++;
-              }
-            } else if (endFindMatcher.find()) {
-              if (endFindMatcher.group(1).toLowerCase().equals(tag)
-                      && findDeep == 0) {
-                matchedEnd = j;
-                break;
-              } else {
-                findDeep--;
-              }
-            }
-          }
-          if (matchedEnd > 0) {
-            parsingNode = new Node();
-            parsingNode.setParentNode(currentNode);
-            parsingNode.setTitle(tag);
-
-            String tokenBody = startMatcher.group(2);
-
-            Matcher attributes = ATTRIBUTESPATTERN.matcher(tokenBody);
-
-            while (attributes.find()) {
-              String attr = attributes.group(1).toLowerCase();
-              String val = attributes.group(4) == null ? attributes.group(3) : attributes.group(4);
-              parsingNode.addAttribute(attr, val);
-            }
-            currentNode.addChildNode(parsingNode);
-            createDOMTree(parsingNode, xmlTokens.subList(i + 1, matchedEnd));
-            i = matchedEnd;
-          } else {
-            parsingNode = new Node();
-            parsingNode.setParentNode(currentNode);
-            currentNode.addChildNode(parsingNode);
-            parsingNode.setContent(token);
-          }
+          parsingNode = new Node();
+          parsingNode.setParentNode(currentNode);
+          currentNode.addChildNode(parsingNode);
+          parsingNode.setContent(token);
         }
-      } else if (endMatcher.find()) {
-        parsingNode = new Node();
-        parsingNode.setParentNode(currentNode);
-        parsingNode.setContent(token);
-        currentNode.addChildNode(parsingNode);
       } else {
         parsingNode = new Node();
         parsingNode.setParentNode(currentNode);
@@ -141,6 +157,265 @@ public class DOMParser {
         currentNode.addChildNode(parsingNode);
       }
     }
-    return currentNode;
+  }
+
+  /**
+   * Checks if a token contains a comment, as {@link #COMMENTPATTERN} does.
+   *
+   * @param token the token
+   * @return true if the token contains a comment
+   * @since 4.0.x
+   */
+  public static boolean isComment(String token) {
+    return token.contains(COMMENT_START);
+  }
+
+  /**
+   * Parses a start or end tag token, as {@link #TAGSTARTPATTERN}, {@link #TAGCLOSEPATTERN},
+   * {@link #SELFTCLOSETAGPATTERN} and {@link #ATTRIBUTESPATTERN} do.
+   *
+   * @param token the token
+   * @return the tag, null if the token is neither a start tag nor an end tag
+   * @since 4.0.x
+   */
+  public static Tag parseTag(String token) {
+    int len = token.length();
+    // the position of the final '>', which may be followed by a line terminator
+    int last;
+    if (len > 0 && token.charAt(len - 1) == '>') {
+      last = len - 1;
+    } else if (len > 2 && token.charAt(len - 1) == '\n' && token.charAt(len - 2) == '\r' && token.charAt(len - 3) == '>') {
+      last = len - 3;
+    } else if (len > 1 && isLineTerminator(token.charAt(len - 1)) && token.charAt(len - 2) == '>') {
+      last = len - 2;
+    } else {
+      return null;
+    }
+
+    // <tag ....props.....>: the props can't contain a line terminator
+    int lastLineTerminator = -1;
+    for (int i = last - 1; i >= 0; i--) {
+      if (isLineTerminator(token.charAt(i))) {
+        lastLineTerminator = i;
+        break;
+      }
+    }
+    for (int start = token.indexOf('<'); start > -1 && start < last; start = token.indexOf('<', start + 1)) {
+      int nameEnd = skipWordChars(token, start + 1, last);
+      if (nameEnd == start + 1 || !isWordBoundary(token, nameEnd)) {
+        continue;
+      }
+      int bodyStart = skipWhitespaces(token, nameEnd, last);
+      if (bodyStart > lastLineTerminator) {
+        return new Tag(token.substring(start + 1, nameEnd).toLowerCase(), false,
+                       isSelfClosed(token), token, bodyStart, last);
+      }
+    }
+
+    // </tag >
+    int nameEnd = last;
+    while (nameEnd > 0 && isWhitespace(token.charAt(nameEnd - 1))) {
+      nameEnd--;
+    }
+    int nameStart = nameEnd;
+    while (nameStart > 0 && isWordChar(token.charAt(nameStart - 1))) {
+      nameStart--;
+    }
+    if (nameStart < nameEnd && nameStart > 1
+        && token.charAt(nameStart - 1) == '/' && token.charAt(nameStart - 2) == '<') {
+      return new Tag(token.substring(nameStart, nameEnd).toLowerCase(), true, false, token, nameEnd, nameEnd);
+    }
+    return null;
+  }
+
+  /**
+   * Checks if a token contains a self-closed tag: a '&lt;' followed on the same line by a '/' which is
+   * followed by whitespaces and a '&gt;'.
+   */
+  private static boolean isSelfClosed(String token) {
+    int len = token.length();
+    int start = -1;
+    for (int i = 0; i < len; i++) {
+      char c = token.charAt(i);
+      if (isLineTerminator(c)) {
+        start = -1;
+      } else if (c == '<') {
+        if (start == -1) {
+          start = i;
+        }
+      } else if (c == '/' && start > -1 && i > start + 1) {
+        int end = skipWhitespaces(token, i + 1, len);
+        if (end < len && token.charAt(end) == '>') {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static int skipWordChars(String s, int from, int to) {
+    while (from < to && isWordChar(s.charAt(from))) {
+      from++;
+    }
+    return from;
+  }
+
+  private static int skipWhitespaces(String s, int from, int to) {
+    while (from < to && isWhitespace(s.charAt(from))) {
+      from++;
+    }
+    return from;
+  }
+
+  private static boolean isWordChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+  }
+
+  /**
+   * Checks if the end of a tag name is a word boundary, as \\b does: the name must not be followed by a letter,
+   * a digit or a non-spacing mark applied to a letter or a digit.
+   */
+  private static boolean isWordBoundary(String s, int nameEnd) {
+    int c = s.codePointAt(nameEnd);
+    if (Character.getType(c) == Character.NON_SPACING_MARK) {
+      return !Character.isLetterOrDigit(s.charAt(nameEnd - 1));
+    }
+    return !Character.isLetterOrDigit(c);
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  /**
+   * A start or end tag token.
+   *
+   * @since 4.0.x
+   */
+  public static class Tag {
+    private final String name;
+    private final boolean endTag;
+    private final boolean selfClosed;
+    private final String token;
+    private final int bodyStart;
+    private final int bodyEnd;
+
+    /** name, value, name, value... parsed on demand */
+    private List<String> attributes;
+
+    private Tag(String name, boolean endTag, boolean selfClosed, String token, int bodyStart, int bodyEnd) {
+      this.name = name;
+      this.endTag = endTag;
+      this.selfClosed = selfClosed;
+      this.token = token;
+      this.bodyStart = bodyStart;
+      this.bodyEnd = bodyEnd;
+    }
+
+    /**
+     * @return the lower case tag name
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return true if the token is an end tag
+     */
+    public boolean isEndTag() {
+      return endTag;
+    }
+
+    /**
+     * @return true if the token is a self-closed start tag
+     */
+    public boolean isSelfClosed() {
+      return selfClosed;
+    }
+
+    /**
+     * @return the number of attributes, an attribute may be repeated
+     */
+    public int getAttributeCount() {
+      return getAttributes().size() / 2;
+    }
+
+    /**
+     * @param index the attribute index
+     * @return the lower case name of the attribute
+     */
+    public String getAttributeName(int index) {
+      return getAttributes().get(2 * index);
+    }
+
+    /**
+     * @param index the attribute index
+     * @return the value of the attribute, without the quotes
+     */
+    public String getAttributeValue(int index) {
+      return getAttributes().get(2 * index + 1);
+    }
+
+    /**
+     * Adds the attributes to a node, the last one wins when an attribute is repeated.
+     *
+     * @param node the node
+     */
+    public void addAttributesTo(Node node) {
+      List<String> attributes = getAttributes();
+      for (int i = 0; i < attributes.size(); i += 2) {
+        node.addAttribute(attributes.get(i), attributes.get(i + 1));
+      }
+    }
+
+    /**
+     * Scans the name="value" and name='value' pairs of the tag body.
+     */
+    private List<String> getAttributes() {
+      if (attributes != null) {
+        return attributes;
+      }
+      attributes = new ArrayList<String>(4);
+      boolean noDoubleQuote = false;
+      boolean noSingleQuote = false;
+      int pos = bodyStart;
+      while (pos < bodyEnd) {
+        int nameEnd = skipWordChars(token, pos, bodyEnd);
+        int equals = skipWhitespaces(token, nameEnd, bodyEnd);
+        if (equals < bodyEnd && token.charAt(equals) == '=') {
+          int quote = skipWhitespaces(token, equals + 1, bodyEnd);
+          if (quote < bodyEnd) {
+            char q = token.charAt(quote);
+            int close = -1;
+            if (q == '"' && !noDoubleQuote) {
+              close = token.indexOf('"', quote + 1);
+              noDoubleQuote = close == -1 || close >= bodyEnd;
+            } else if (q == '\'' && !noSingleQuote) {
+              close = token.indexOf('\'', quote + 1);
+              noSingleQuote = close == -1 || close >= bodyEnd;
+            }
+            if (close > -1 && close < bodyEnd) {
+              attributes.add(token.substring(pos, nameEnd).toLowerCase());
+              attributes.add(token.substring(quote + 1, close));
+              pos = close + 1;
+              continue;
+            }
+          }
+        }
+        // no attribute starts in the name or in the whitespaces which follow it
+        if (nameEnd > pos) {
+          pos = nameEnd;
+        } else if (equals > pos) {
+          pos = equals;
+        } else {
+          pos++;
+        }
+      }
+      return attributes;
+    }
   }
 }
@@ -26,61 +26,44 @@ import java.util.List;
  * @author Ly Minh Phuong - http://phuonglm.net
  */
 public class Tokenizer {
+  private static final String COMMENT_START = "<!--";
+
+  private static final String COMMENT_END = "-->";
+
   /**
-   * Splits tag of XML String to an arrayList
+   * Splits tag of XML String to an arrayList.
+   *
+   * The input is scanned once: the text between two tags is kept as a single substring instead of
+   * being appended character by character.
    *
    * @param html
    * @return list of HTML tags
    */
   public static List<String> tokenize(String html) {
     ArrayList<String> tokens = new ArrayList<String>();
-    int pos = 0;
-    String token = "";
     int len = html.length();
-    while (pos < len) {
-      char c = html.charAt(pos);
-
-      String ahead = html.substring(pos, pos > len - 4 ? len : pos + 4);
-
-      // a comment is starting
-      if ("<!--".equals(ahead)) {
-        // store the current token
-        if (token.length() > 0) {
-          tokens.add(token);
-        }
-
-        // clear the token
-        token = "";
-
-        // search the end of <......>
-        int end = moveToMarkerEnd(pos, "-->", html);
-        tokens.add(html.substring(pos, end));
-        pos = end;
-
-        // a new "<" token is starting
-      } else if ('<' == c) {
-
-        // store the current token
-        if (token.length() > 0) {
-          tokens.add(token);
-        }
-
-        // clear the token
-        token = "";
-
-        // search the end of <......>
-        int end = moveToMarkerEnd(pos, ">", html);
-        tokens.add(html.substring(pos, end));
-        pos = end;
+    int textStart = 0;
+    int pos = html.indexOf('<');
+    while (pos > -1) {
+      // store the current text token
+      if (pos > textStart) {
+        tokens.add(html.substring(textStart, pos));
+      }
 
+      // search the end of <!--......--> or <......>
+      int end;
+      if (html.startsWith(COMMENT_START, pos)) {
+        end = moveToMarkerEnd(pos, COMMENT_END, html);
       } else {
-        token = token + c;
-        pos++;
+        end = moveToMarkerEnd(pos, ">", html);
       }
+      tokens.add(html.substring(pos, end));
 
+      textStart = end;
+      pos = html.indexOf('<', end);
     }
-    if (token.length() > 0) {
-      tokens.add(token);
+    if (textStart < len) {
+      tokens.add(html.substring(textStart));
     }
     return tokens;
   }
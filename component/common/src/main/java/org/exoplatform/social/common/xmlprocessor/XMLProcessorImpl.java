@@ -96,12 +96,26 @@ public class XMLProcessorImpl implements XMLProcessor {
    */
   public Object process(Object input) {
     if (input == null) return input;
+    boolean parsed = false;
     for (Iterator<Filter> filterIterator = filters.iterator();
          filterIterator.hasNext();
          ) {
       Filter filter = filterIterator.next();
+      if (filter instanceof DOMFilter) {
+        if (input instanceof String) {
+          input = DOMParser.createDOMTree(Tokenizer.tokenize((String) input));
+          parsed = true;
+        }
+      } else if (parsed) {
+        input = toString(input);
+        parsed = false;
+      }
       input = filter.doFilter(input);
     }
-    return input;
+    return parsed ? toString(input) : input;
+  }
+
+  private static Object toString(Object node) {
+    return node != null ? node.toString() : null;
   }
 }
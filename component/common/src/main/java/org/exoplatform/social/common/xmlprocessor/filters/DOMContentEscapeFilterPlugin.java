@@ -16,10 +16,9 @@
  */
 package org.exoplatform.social.common.xmlprocessor.filters;
 
-import java.util.LinkedList;
-
 import org.apache.commons.lang.StringEscapeUtils;
 import org.exoplatform.social.common.xmlprocessor.BaseXMLFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.DOMFilter;
 import org.exoplatform.social.common.xmlprocessor.model.Node;
 
 
@@ -31,7 +30,7 @@ import org.exoplatform.social.common.xmlprocessor.model.Node;
  * @author Ly Minh Phuong - http://phuonglm.net
  * @since  1.2.1
  */
-public class DOMContentEscapeFilterPlugin extends BaseXMLFilterPlugin {
+public class DOMContentEscapeFilterPlugin extends BaseXMLFilterPlugin implements DOMFilter {
 
   /**
    * {@inheritDoc}
@@ -50,14 +49,13 @@ public class DOMContentEscapeFilterPlugin extends BaseXMLFilterPlugin {
    * @param node a node
    */
   private void nodeFilter(Node node) {
-    LinkedList<Node> currentChildNode = node.getChildNodes();
     if (node.getParentNode() != null) {
       if (!node.getContent().isEmpty()) {
         node.setContent(StringEscapeUtils.escapeHtml(node.getContent()));
       }
     }
-    for (int i = 0; i < currentChildNode.size(); i++) {
-      nodeFilter(currentChildNode.get(i));
+    for (Node childNode : node.getChildNodes()) {
+      nodeFilter(childNode);
     }
 
   }
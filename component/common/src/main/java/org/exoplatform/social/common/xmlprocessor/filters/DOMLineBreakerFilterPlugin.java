@@ -17,8 +17,11 @@
 package org.exoplatform.social.common.xmlprocessor.filters;
 
 import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.regex.Pattern;
 
 import org.exoplatform.social.common.xmlprocessor.BaseXMLFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.DOMFilter;
 import org.exoplatform.social.common.xmlprocessor.model.Node;
 
 /**
@@ -28,7 +31,9 @@ import org.exoplatform.social.common.xmlprocessor.model.Node;
  * @author Ly Minh Phuong - http://phuonglm.net
  * @since  1.2.1
  */
-public class DOMLineBreakerFilterPlugin extends BaseXMLFilterPlugin {
+public class DOMLineBreakerFilterPlugin extends BaseXMLFilterPlugin implements DOMFilter {
+
+  private static final Pattern LINE_BREAK_PATTERN = Pattern.compile("\\r?\\n");
 
   /**
    * Filters any new line characters by new line html tag (&lt;br&gt;).
@@ -44,37 +49,57 @@ public class DOMLineBreakerFilterPlugin extends BaseXMLFilterPlugin {
   }
 
   private Node nodeFilter(Node currentNode) {
-    LinkedList<Node> currentChildNode = currentNode.getChildNodes();
-    if (currentNode.getParentNode() != null) {
-      if (!currentNode.getContent().isEmpty()) {
-        LinkedList<Node> parentChildNodes = currentNode.getParentNode()
-                .getChildNodes();
-        int startPostion = parentChildNodes.indexOf(currentNode);
-        int i = startPostion;
-        Node parentNode = currentNode.getParentNode();
-        String content = currentNode.getContent();
-        String[] contentArray = content.split("\\r?\\n");
+    Node parentNode = currentNode.getParentNode();
+    if (parentNode != null) {
+      LinkedList<Node> parentChildNodes = parentNode.getChildNodes();
+      int position = parentChildNodes.indexOf(currentNode);
+      if (position > -1) {
+        ListIterator<Node> siblings = parentChildNodes.listIterator(position);
+        siblings.next();
+        breakLines(currentNode, siblings);
+      }
+    }
+    filterChildNodes(currentNode);
+    return currentNode;
+  }
 
-        if (contentArray.length > 1) {
-          currentNode.setContent(contentArray[0]);
-          for (int j = 1; j < contentArray.length; j++) {
-            Node nodeToAdd = new Node();
-            nodeToAdd.setTitle("br");
-            nodeToAdd.setParentNode(parentNode);
-            parentChildNodes.add(++i, nodeToAdd);
-            nodeToAdd = new Node();
-            nodeToAdd.setContent(contentArray[i]);
-            nodeToAdd.setParentNode(parentNode);
-            parentChildNodes.add(++i, nodeToAdd);
-          }
-        }
+  private void filterChildNodes(Node currentNode) {
+    for (ListIterator<Node> iterator = currentNode.getChildNodes().listIterator(); iterator.hasNext(); ) {
+      Node childNode = iterator.next();
+      if (childNode.getParentNode() != null) {
+        breakLines(childNode, iterator);
       }
+      filterChildNodes(childNode);
     }
-    for (int i = 0; i < currentChildNode.size(); i++) {
-      nodeFilter(currentChildNode.get(i));
+  }
+
+  /**
+   * Splits the content of a node at the line breaks, the following lines are inserted after it.
+   *
+   * @param currentNode the node
+   * @param siblings the iterator of the child nodes of the parent, the node is the last one returned
+   */
+  private void breakLines(Node currentNode, ListIterator<Node> siblings) {
+    String content = currentNode.getContent();
+    if (content.isEmpty()) {
+      return;
     }
-    return currentNode;
+    String[] contentArray = LINE_BREAK_PATTERN.split(content);
 
+    if (contentArray.length > 1) {
+      Node parentNode = currentNode.getParentNode();
+      currentNode.setContent(contentArray[0]);
+      for (int j = 1; j < contentArray.length; j++) {
+        Node nodeToAdd = new Node();
+        nodeToAdd.setTitle("br");
+        nodeToAdd.setParentNode(parentNode);
+        siblings.add(nodeToAdd);
+        nodeToAdd = new Node();
+        nodeToAdd.setContent(contentArray[j]);
+        nodeToAdd.setParentNode(parentNode);
+        siblings.add(nodeToAdd);
+      }
+    }
   }
 
 }
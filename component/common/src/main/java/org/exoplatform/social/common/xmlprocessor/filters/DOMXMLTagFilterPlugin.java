@@ -19,8 +19,10 @@ package org.exoplatform.social.common.xmlprocessor.filters;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.ListIterator;
 
 import org.exoplatform.social.common.xmlprocessor.BaseXMLFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.DOMFilter;
 import org.exoplatform.social.common.xmlprocessor.model.Attributes;
 import org.exoplatform.social.common.xmlprocessor.model.Node;
 import org.exoplatform.social.common.xmlprocessor.model.XMLTagFilterPolicy;
@@ -34,7 +36,7 @@ import org.exoplatform.social.common.xmlprocessor.model.XMLTagFilterPolicy;
  * @author Ly Minh Phuong - http://phuonglm.net
  * @since  1.2.1
  */
-public class DOMXMLTagFilterPlugin extends BaseXMLFilterPlugin {
+public class DOMXMLTagFilterPlugin extends BaseXMLFilterPlugin implements DOMFilter {
   private LinkedHashMap<String, Attributes> allowedTags = new LinkedHashMap<String, Attributes>();
 
   /**
@@ -76,28 +78,57 @@ public class DOMXMLTagFilterPlugin extends BaseXMLFilterPlugin {
   }
 
   private Node nodeFilter(Node currentNode) {
-    LinkedList<Node> currentChildNode = currentNode.getChildNodes();
-    if (!currentNode.getTitle().isEmpty()) {
-      String tag = currentNode.getTitle();
-      if (allowedTags.containsKey(tag)) {
-
-        Attributes currentAttributes = currentNode.getAttributes();
-        Attributes validatedAttributes = new Attributes();
+    if (!currentNode.getTitle().isEmpty() && !filterAttributes(currentNode)) {
+      currentNode.convertToContent();
+    }
+    filterChildNodes(currentNode);
+    return currentNode;
+  }
 
-        for (Iterator<String> iterator = currentAttributes.getKeyIterator(); iterator.hasNext(); ) {
-          String key = iterator.next();
-          if (allowedTags.get(tag).hasKey(key)) {
-            validatedAttributes.put(key, currentAttributes.get(key));
-          }
-        }
-        currentNode.setAttributes(validatedAttributes);
+  /**
+   * Filters the child nodes in one pass: the child nodes of a node converted to content are inserted after it
+   * with its close tag and are filtered next.
+   */
+  private void filterChildNodes(Node currentNode) {
+    for (ListIterator<Node> iterator = currentNode.getChildNodes().listIterator(); iterator.hasNext(); ) {
+      Node childNode = iterator.next();
+      if (childNode.getTitle().isEmpty() || filterAttributes(childNode)) {
+        filterChildNodes(childNode);
       } else {
-        currentNode.convertToContent();
+        childNode.setParentNode(currentNode);
+        LinkedList<Node> contentNodes = childNode.convertToContentNodes();
+        for (Node contentNode : contentNodes) {
+          contentNode.setParentNode(currentNode);
+          iterator.add(contentNode);
+        }
+        for (int i = 0; i < contentNodes.size(); i++) {
+          iterator.previous();
+        }
       }
     }
-    for (int i = 0; i < currentChildNode.size(); i++) {
-      nodeFilter(currentChildNode.get(i));
+  }
+
+  /**
+   * Removes the attributes which are not allowed.
+   *
+   * @return false if the tag is not allowed
+   */
+  private boolean filterAttributes(Node currentNode) {
+    String tag = currentNode.getTitle();
+    Attributes allowedAttributes = allowedTags.get(tag);
+    if (allowedAttributes == null) {
+      return false;
     }
-    return currentNode;
+    Attributes currentAttributes = currentNode.getAttributes();
+    Attributes validatedAttributes = new Attributes();
+
+    for (Iterator<String> iterator = currentAttributes.getKeyIterator(); iterator.hasNext(); ) {
+      String key = iterator.next();
+      if (allowedAttributes.hasKey(key)) {
+        validatedAttributes.put(key, currentAttributes.get(key));
+      }
+    }
+    currentNode.setAttributes(validatedAttributes);
+    return true;
   }
 }
@@ -19,6 +19,7 @@ package org.exoplatform.social.common.xmlprocessor.filters;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,6 +28,7 @@ import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.social.common.xmlprocessor.BaseXMLFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.DOMFilter;
 import org.exoplatform.social.common.xmlprocessor.DOMParser;
 import org.exoplatform.social.common.xmlprocessor.Tokenizer;
 import org.exoplatform.social.common.xmlprocessor.model.Attributes;
@@ -38,11 +40,12 @@ import org.exoplatform.social.common.xmlprocessor.model.Node;
  * {@literal http://abc.com => <a href="http://abc.com" title="http://abc.com">http://abc.com</a>}
  * Moreover, this plugin can trim any link to a fix size when it's too long by specifying the urlMaxLength via init params.
  * the urlMaxLength = url.length() + "...".length(), if urlMaxLength less than 3 the filter will no trim the url for display.
+ * The filter accepts a String or the root Node of a DOM tree, so that it can share the tree of the DOM filters before it.
  *   
  * @author Ly Minh Phuong - http://phuonglm.net
  * @since 1.2.2
  */
-public class URLConverterFilterPlugin extends BaseXMLFilterPlugin {
+public class URLConverterFilterPlugin extends BaseXMLFilterPlugin implements DOMFilter {
   private int urlMaxLength = -1;
   private static final Log LOG = ExoLogger.getLogger(URLConverterFilterPlugin.class);
   
@@ -90,6 +93,9 @@ public class URLConverterFilterPlugin extends BaseXMLFilterPlugin {
   public Object doFilter(Object input) {
     if(input instanceof String){
       return convertURL((String) input);
+    } else if (input instanceof Node) {
+      nodeFilter((Node) input);
+      return input;
     } else {
       return input;
     }
@@ -117,34 +123,32 @@ public class URLConverterFilterPlugin extends BaseXMLFilterPlugin {
     return rootNode.toString();
   }
 
-  private int nodeFilter(Node currentNode) {
-    LinkedList<Node> currentChildNode = currentNode.getChildNodes();
-    if (currentNode.getTitle().isEmpty()) {
-      int insertedCount = convertNode(currentNode);
-      if(insertedCount > 0){
-        return insertedCount;
+  private void nodeFilter(Node currentNode) {
+    for (ListIterator<Node> iterator = currentNode.getChildNodes().listIterator(); iterator.hasNext(); ) {
+      Node childNode = iterator.next();
+      if (childNode.getTitle().equals("a")) {
+        continue;
       }
-    }
-    
-    for (int i = 0; i < currentChildNode.size(); i++) {
-      if(!currentChildNode.get(i).getTitle().equals("a")){
-        int insertedCount = nodeFilter(currentChildNode.get(i));
-        if( insertedCount > 0){
-          i = i + insertedCount;
-        }
+      if (childNode.getTitle().isEmpty() && convertNode(currentNode, childNode, iterator)) {
+        continue;
       }
+      nodeFilter(childNode);
     }
-    return 0;
   }
   
-  private int convertNode(Node currentNode){
+  /**
+   * Replaces a text node by the text and the links it contains.
+   *
+   * @param parrentNode the parent node
+   * @param currentNode the text node
+   * @param siblings the iterator of the child nodes of the parent, the text node is the last one returned
+   * @return true if the text node has been replaced
+   */
+  private boolean convertNode(Node parrentNode, Node currentNode, ListIterator<Node> siblings){
     String content = StringEscapeUtils.unescapeHtml(currentNode.getContent());
-    int insertedCount = 0; // if found for delete the original after parsing
+    List<Node> insertedNodes = new LinkedList<Node>(); // if found for delete the original after parsing
 
     if(!currentNode.isRootNode()){
-      Node currentProccessNode = currentNode;
-      Node parrentNode = currentNode.getParentNode();
-      
       int lastMatch = 0;
       
       Matcher m = URL_PATTERN.matcher(content);
@@ -164,10 +168,8 @@ public class URLConverterFilterPlugin extends BaseXMLFilterPlugin {
           if(m.start() > lastMatch){
             Node textNode = new Node();
             textNode.setContent(StringEscapeUtils.escapeHtml(content.substring(lastMatch, m.start())));
-            
-            parrentNode.insertAfter(currentProccessNode, textNode);
-            currentProccessNode = textNode;
-            insertedCount++;
+            textNode.setParentNode(parrentNode);
+            insertedNodes.add(textNode);
           }
           
           // create <a> node
@@ -188,26 +190,26 @@ public class URLConverterFilterPlugin extends BaseXMLFilterPlugin {
           aHrefNode.addChildNode(aHrefContentNode);
           
           // insert <a> to the child list of parrentNode
-          parrentNode.insertAfter(currentProccessNode, aHrefNode);
-          currentProccessNode = aHrefNode;
+          insertedNodes.add(aHrefNode);
           
           lastMatch = m.end(); // update the lastMatch of 
-          insertedCount++;
         }
       }
       if((lastMatch + 1) < content.length()){
         Node textNode = new Node();
         textNode.setContent(StringEscapeUtils.escapeHtml(content.substring(lastMatch, content.length())));
-        
-        parrentNode.insertAfter(currentProccessNode, textNode);
-        currentProccessNode = textNode;
-        insertedCount++;        
+        textNode.setParentNode(parrentNode);
+        insertedNodes.add(textNode);
       }
-      if(insertedCount > 0){
-        parrentNode.getChildNodes().remove(currentNode);
+      if(!insertedNodes.isEmpty()){
+        siblings.remove();
+        for (Node insertedNode : insertedNodes) {
+          siblings.add(insertedNode);
+        }
+        return true;
       }
     }
-    return insertedCount;
+    return false;
   }
   
   private String shortenURL(String url) {
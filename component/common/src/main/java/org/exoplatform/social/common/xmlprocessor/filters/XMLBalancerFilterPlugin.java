@@ -17,7 +17,6 @@
 package org.exoplatform.social.common.xmlprocessor.filters;
 
 import java.util.List;
-import java.util.regex.Matcher;
 
 import org.apache.commons.lang.StringEscapeUtils;
 import org.exoplatform.social.common.xmlprocessor.BaseXMLFilterPlugin;
@@ -56,38 +55,25 @@ public class XMLBalancerFilterPlugin extends BaseXMLFilterPlugin {
     List<String> xmlTokens = Tokenizer.tokenize(xmlString);
 
     for (String token : xmlTokens) {
-      Matcher startMatcher = DOMParser.TAGSTARTPATTERN.matcher(token);
-      Matcher endMatcher = DOMParser.TAGCLOSEPATTERN.matcher(token);
+      DOMParser.Tag tag = DOMParser.parseTag(token);
 
-      if (DOMParser.COMMENTPATTERN.matcher(token).find()) {
+      if (DOMParser.isComment(token)) {
         parsingNode = new Node();
         parsingNode.setParentNode(currentNode);
         currentNode.addChildNode(parsingNode);
         parsingNode.setTitle(token);
-      } else if (startMatcher.find()) {
-        String tag = startMatcher.group(1).toLowerCase();
-
+      } else if (tag != null && !tag.isEndTag()) {
         parsingNode = new Node();
         parsingNode.setParentNode(currentNode);
-        parsingNode.setTitle(tag);
-
-        String tokenBody = startMatcher.group(2);
-
-        Matcher attributes = DOMParser.ATTRIBUTESPATTERN.matcher(tokenBody);
-
-        while (attributes.find()) {
-          String attr = attributes.group(1).toLowerCase();
-          String val = attributes.group(4) == null ? attributes.group(3) : attributes.group(4);
-          parsingNode.addAttribute(attr, val);
-        }
+        parsingNode.setTitle(tag.getName());
+        tag.addAttributesTo(parsingNode);
         currentNode.addChildNode(parsingNode);
-        if (!DOMParser.SELFTCLOSETAGPATTERN.matcher(token).find()) {
+        if (!tag.isSelfClosed()) {
           currentNode = parsingNode;
         }
-      } else if (endMatcher.find()) {
-        String tag = endMatcher.group(1).toLowerCase();
+      } else if (tag != null) {
         Node searchOpenedNode = currentNode;
-        while (!searchOpenedNode.getTitle().equals(tag)
+        while (!searchOpenedNode.getTitle().equals(tag.getName())
                 && !(searchOpenedNode.getParentNode() == null)) {
           searchOpenedNode = searchOpenedNode.getParentNode();
         }
@@ -18,7 +18,6 @@ package org.exoplatform.social.common.xmlprocessor.filters;
 
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
 
 import org.apache.commons.lang.StringEscapeUtils;
 import org.exoplatform.social.common.xmlprocessor.BaseXMLFilterPlugin;
@@ -78,46 +77,33 @@ public class XMLTagFilterPlugin extends BaseXMLFilterPlugin {
 
     for (int i = 0; i < xmlTokens.size(); i++) {
       String token = xmlTokens.get(i);
+      DOMParser.Tag tag = DOMParser.parseTag(token);
 
+      if (tag == null) {
+        continue;
+      }
+      if (!allowedTags.containsKey(tag.getName())) {
+        xmlTokens.set(i, StringEscapeUtils.escapeHtml(token));
+      } else if (!tag.isEndTag()) {
+        StringBuilder tagStringBuilder = new StringBuilder(token.length()).append('<').append(tag.getName());
 
-      Matcher startMatcher = DOMParser.TAGSTARTPATTERN.matcher(token);
-      Matcher endMatcher = DOMParser.TAGCLOSEPATTERN.matcher(token);
-
-      if (startMatcher.find()) {
-        String tag = startMatcher.group(1).toLowerCase();
-
-        if (!allowedTags.containsKey(tag)) {
-          xmlTokens.set(i, StringEscapeUtils.escapeHtml(token));
-        } else {
-          StringBuilder tagStringBuilder = new StringBuilder("<" + tag);
-
-          String tokenBody = startMatcher.group(2);
-          Matcher attributes = DOMParser.ATTRIBUTESPATTERN.matcher(tokenBody);
-
-          Attributes attributesWhiteList = allowedTags.get(tag);
+        Attributes attributesWhiteList = allowedTags.get(tag.getName());
 
-          while (attributes.find()) {
-            String attr = attributes.group(1).toLowerCase();
-            String val = attributes.group(4) == null ? attributes.group(3) : attributes.group(4);
-            if (attributesWhiteList.hasKey(attr)) {
-              tagStringBuilder.append(" " + attr + "=" + "\"" + val + "\"");
-            }
+        for (int j = 0; j < tag.getAttributeCount(); j++) {
+          String attr = tag.getAttributeName(j);
+          if (attributesWhiteList.hasKey(attr)) {
+            tagStringBuilder.append(' ').append(attr).append("=\"").append(tag.getAttributeValue(j)).append('"');
           }
-          if (DOMParser.SELFTCLOSETAGPATTERN.matcher(token).find()) {
-            tagStringBuilder.append(" />");
-          } else {
-            tagStringBuilder.append(">");
-          }
-          xmlTokens.set(i, tagStringBuilder.toString());
         }
-      } else if (endMatcher.find()) {
-        String tag = endMatcher.group(1).toLowerCase();
-        if (!allowedTags.containsKey(tag)) {
-          xmlTokens.set(i, StringEscapeUtils.escapeHtml(token));
+        if (tag.isSelfClosed()) {
+          tagStringBuilder.append(" />");
+        } else {
+          tagStringBuilder.append(">");
         }
+        xmlTokens.set(i, tagStringBuilder.toString());
       }
     }
-    StringBuilder xmlStringBuilder = new StringBuilder();
+    StringBuilder xmlStringBuilder = new StringBuilder(xmlInput.length());
 
     for (String xmlToken : xmlTokens) {
       xmlStringBuilder.append(xmlToken);
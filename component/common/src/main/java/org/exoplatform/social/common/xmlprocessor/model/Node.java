@@ -273,38 +273,37 @@ public class Node {
   public void convertToContent() {
     if (parentNode != null) {
       int thisPostion = parentNode.getChildNodes().indexOf(this);
-      String content = this.toOpenString();
-      String closeTag = this.toCloseString();
-      this.title = "";
-      this.attributes.clear();
-
-      this.content = content;
-      if (!closeTag.isEmpty()) {
-        Node closeContentNode = new Node();
-        closeContentNode.setContent(closeTag);
-        childNodes.addLast(closeContentNode);
-        moveAllChildNodesToOtherNode(parentNode, thisPostion);
+      LinkedList<Node> contentNodes = convertToContentNodes();
+      for (Node contentNode : contentNodes) {
+        contentNode.setParentNode(parentNode);
       }
+      parentNode.getChildNodes().addAll(thisPostion + 1, contentNodes);
     }
   }
 
-
   /**
-   * Moves all child Node of this Node to destNode and insert it after insertPosition;
+   * Converts this Tag Node to Content Node like {@link #convertToContent()} does, but returns the child Nodes
+   * followed by the Close Tag instead of moving them to the parent Node, so that a filter which walks the
+   * child Nodes of the parent can insert them itself.
    *
-   * @param destNode
-   * @param insertPosition
+   * @return the child Nodes followed by the Close Tag Node, their parent Node is not set
+   * @since 4.0.x
    */
-  private void moveAllChildNodesToOtherNode(Node destNode, int insertPosition) {
-    if (destNode != null) {
-      LinkedList<Node> parentChildNodes = destNode.getChildNodes();
-      int postShift = insertPosition;
-      for (Node childNode : childNodes) {
-        postShift++;
-        childNode.setParentNode(destNode);
-        parentChildNodes.add(postShift, childNode);
-      }
-      childNodes.clear();
+  public LinkedList<Node> convertToContentNodes() {
+    String content = this.toOpenString();
+    String closeTag = this.toCloseString();
+    this.title = "";
+    this.attributes.clear();
+
+    this.content = content;
+    LinkedList<Node> contentNodes = new LinkedList<Node>();
+    if (!closeTag.isEmpty()) {
+      contentNodes = childNodes;
+      childNodes = new LinkedList<Node>();
+      Node closeContentNode = new Node();
+      closeContentNode.setContent(closeTag);
+      contentNodes.addLast(closeContentNode);
     }
+    return contentNodes;
   }
 }
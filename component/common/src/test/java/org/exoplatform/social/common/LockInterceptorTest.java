@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2003-2010 eXo Platform SAS.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see<http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.common.LockInterceptor.LockTimeoutException;
+import org.gatein.pc.api.invocation.InvocationException;
+
+public class LockInterceptorTest extends TestCase {
+
+  private LockInterceptor<TestInvocation> interceptor;
+
+  @Override
+  protected void setUp() throws Exception {
+    interceptor = new LockInterceptor<TestInvocation>() {
+      @Override
+      protected Object getLockId(TestInvocation invocation) throws InvocationException {
+        return invocation.lockId;
+      }
+    };
+  }
+
+  public void testSameIdIsSerialized() throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger overlaps = new AtomicInteger();
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 200; j++) {
+            try {
+              interceptor.invoke(new TestInvocation("session") {
+                @Override
+                public Object invokeNext() throws InvocationException {
+                  if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                  }
+                  Thread.yield();
+                  running.decrementAndGet();
+                  return null;
+                }
+              });
+            } catch (Exception e) {
+              overlaps.incrementAndGet();
+            }
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, overlaps.get());
+    assertEquals(0, interceptor.getLocks());
+  }
+
+  public void testCounters() throws Exception {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch leave = new CountDownLatch(1);
+    Thread holder = invokeInBackground(new TestInvocation("session") {
+      @Override
+      public Object invokeNext() throws InvocationException {
+        entered.countDown();
+        try {
+          leave.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return null;
+      }
+    });
+    assertTrue(entered.await(10, TimeUnit.SECONDS));
+    Thread waiter = invokeInBackground(new TestInvocation("session"));
+    while (interceptor.getWaiting("session") == 0) {
+      Thread.sleep(1);
+    }
+    assertEquals(2, interceptor.getQueued("session"));
+    assertEquals(1, interceptor.getWaiting("session"));
+    assertEquals(0, interceptor.getQueued("other"));
+
+    leave.countDown();
+    holder.join();
+    waiter.join();
+    assertEquals(0, interceptor.getQueued("session"));
+    assertEquals(0, interceptor.getLocks());
+  }
+
+  public void testMaxWait() throws Exception {
+    interceptor.setMaxWait(50);
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch leave = new CountDownLatch(1);
+    Thread holder = invokeInBackground(new TestInvocation("session") {
+      @Override
+      public Object invokeNext() throws InvocationException {
+        entered.countDown();
+        try {
+          leave.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return null;
+      }
+    });
+    assertTrue(entered.await(10, TimeUnit.SECONDS));
+    try {
+      interceptor.invoke(new TestInvocation("session"));
+      fail("The invocation must not wait more than the max wait");
+    } catch (LockTimeoutException e) {
+      //expected
+    }
+    assertEquals(1, interceptor.getTimeouts());
+    //the other sessions are not queued
+    assertEquals("done", interceptor.invoke(new TestInvocation("other")));
+    leave.countDown();
+    holder.join();
+  }
+
+  private Thread invokeInBackground(final TestInvocation invocation) {
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          interceptor.invoke(invocation);
+        } catch (Exception e) {
+          fail(e.getMessage());
+        }
+      }
+    };
+    thread.start();
+    return thread;
+  }
+
+  private static class TestInvocation implements Invocation {
+
+    private final String lockId;
+
+    TestInvocation(String lockId) {
+      this.lockId = lockId;
+    }
+
+    @Override
+    public Object invokeNext() throws InvocationException {
+      return "done";
+    }
+  }
+}
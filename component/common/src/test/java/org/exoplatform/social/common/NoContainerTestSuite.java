@@ -17,6 +17,7 @@
 package org.exoplatform.social.common;
 
 import org.exoplatform.social.common.jcr.filter.FilterLiteralTest;
+import org.exoplatform.social.common.service.thread.ThreadPoolTest;
 import org.exoplatform.social.common.xmlprocessor.DOMParserTest;
 import org.exoplatform.social.common.xmlprocessor.TokenizerTest;
 import org.exoplatform.social.common.xmlprocessor.filters.DOMContentEscapeFilterPluginTest;
@@ -45,7 +46,9 @@ import org.junit.runners.Suite.SuiteClasses;
   URLConverterFilterPluginTest.class,
   XMLBalancerFilterPluginTest.class,
   XMLTagFilterPluginTest.class,
-  FilterLiteralTest.class
+  FilterLiteralTest.class,
+  LockInterceptorTest.class,
+  ThreadPoolTest.class
   })
 public class NoContainerTestSuite {
   
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.service.thread;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.common.service.impl.ExecutorServiceManagerImpl;
+import org.exoplatform.social.common.service.thread.ThreadPoolConfig.RejectionPolicy;
+
+public class ThreadPoolTest extends TestCase {
+
+  private ExecutorServiceManagerImpl manager;
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @Override
+  protected void setUp() throws Exception {
+    ThreadPoolConfig config = config(null, RejectionPolicy.DISCARD);
+    config.setPoolConfigs(Arrays.asList(config("like", RejectionPolicy.CALLER_RUNS, "LIKE_ACTIVITY", "UNLIKE_ACTIVITY")));
+    manager = new ExecutorServiceManagerImpl();
+    manager.configure("Social", config);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    release.countDown();
+    for (ExecutorService pool : manager.getThreadPools().values()) {
+      pool.shutdownNow();
+    }
+  }
+
+  public void testRouting() throws Exception {
+    ExecutorService like = manager.getThreadPool("LIKE_ACTIVITY");
+    assertSame(like, manager.getThreadPool("UNLIKE_ACTIVITY"));
+    assertNotSame(like, manager.getThreadPool("FAN_OUT_STREAM_ACTIVITY"));
+    assertSame(manager.getThreadPool(null), manager.getThreadPool("FAN_OUT_STREAM_ACTIVITY"));
+    assertEquals(Arrays.asList("like", "Social"), Arrays.asList(manager.getThreadPools().keySet().toArray()));
+    assertEquals("like", ((MonitoredThreadPoolExecutor) like).getName());
+  }
+
+  public void testIsolation() throws Exception {
+    //the default pool is saturated, the likes are still run
+    saturate(manager.getThreadPool(null));
+    Future<String> like = manager.getThreadPool("LIKE_ACTIVITY").submit(task());
+    assertEquals("done", like.get(5, TimeUnit.SECONDS));
+  }
+
+  public void testCallerRuns() throws Exception {
+    MonitoredThreadPoolExecutor pool = (MonitoredThreadPoolExecutor) manager.getThreadPool("LIKE_ACTIVITY");
+    saturate(pool);
+    final Thread caller = Thread.currentThread();
+    Future<Boolean> future = pool.submit(new Callable<Boolean>() {
+      public Boolean call() throws Exception {
+        return Thread.currentThread() == caller;
+      }
+    });
+    assertTrue(future.isDone());
+    assertTrue(future.get());
+    assertEquals(1, pool.getCallerRuns());
+    assertEquals(1, pool.getRejected());
+  }
+
+  public void testDiscard() throws Exception {
+    MonitoredThreadPoolExecutor pool = (MonitoredThreadPoolExecutor) manager.getThreadPool(null);
+    saturate(pool);
+    //the future of the dropped task does not block its caller
+    Future<String> future = pool.submit(task());
+    assertTrue(future.isCancelled());
+    assertEquals(1, pool.getDiscarded());
+    assertEquals(0, pool.getCallerRuns());
+    assertEquals(1, pool.getQueueSize());
+  }
+
+  public void testMetrics() throws Exception {
+    MonitoredThreadPoolExecutor pool = (MonitoredThreadPoolExecutor) manager.getThreadPool("LIKE_ACTIVITY");
+    pool.submit(task()).get();
+    pool.submit(task()).get();
+    //the task is recorded once it has run, its future may be done a little before
+    long deadline = System.currentTimeMillis() + 5000;
+    while (pool.getCompleted() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(2, pool.getSubmitted());
+    assertEquals(2, pool.getCompleted());
+    long total = 0;
+    for (long count : pool.getLatencyHistogram()) {
+      total += count;
+    }
+    assertEquals(2, total);
+    assertEquals(MonitoredThreadPoolExecutor.LATENCY_BUCKETS.length + 1, pool.getLatencyHistogram().length);
+
+    ThreadPoolStatistics statistics = new ThreadPoolStatistics(manager);
+    assertTrue(statistics.getStatistics("like").startsWith("like: "));
+    assertEquals(0, statistics.getRejected("like"));
+    assertNull(statistics.getStatistics("unknown"));
+  }
+
+  /**
+   * Blocks the single thread of the pool and fills its queue.
+   */
+  private void saturate(ExecutorService pool) throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    pool.submit(new Runnable() {
+      public void run() {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    pool.submit(task());
+  }
+
+  private static Callable<String> task() {
+    return new Callable<String>() {
+      public String call() throws Exception {
+        return "done";
+      }
+    };
+  }
+
+  private static ThreadPoolConfig config(String id, RejectionPolicy rejectionPolicy, String... processes) {
+    ThreadPoolConfig config = new ThreadPoolConfig();
+    config.setId(id);
+    config.setPoolSize(1);
+    config.setMaxPoolSize(1);
+    config.setMaxQueueSize(1);
+    config.setKeepAliveTime(10L);
+    config.setTimeUnit(TimeUnit.SECONDS);
+    config.setRejectionPolicy(rejectionPolicy);
+    config.setProcesses(Arrays.asList(processes));
+    return config;
+  }
+}
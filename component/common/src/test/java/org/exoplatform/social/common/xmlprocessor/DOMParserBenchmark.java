@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.xmlprocessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.exoplatform.social.common.xmlprocessor.filters.DOMLineBreakerFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.URLConverterFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.XMLBalancerFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.XMLTagFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.model.Node;
+import org.exoplatform.social.common.xmlprocessor.model.XMLTagFilterPolicy;
+
+import junit.framework.TestCase;
+
+/**
+ * Parsing benchmark of {@link DOMParser}, not part of the test suites:
+ * mvn test -Dtest=DOMParserBenchmark
+ */
+public class DOMParserBenchmark extends TestCase {
+
+  /**
+   * Times the parsing and the default filter chain on a realistic body and on inputs which were
+   * quadratic before the parser matched the end tags in one pass.
+   */
+  public void testParse() {
+    StringBuilder realistic = new StringBuilder();
+    while (realistic.length() < 50000) {
+      realistic.append("<p>Hello <b>world</b>, see http://www.example.com/page?a=1&b=2 and <i>www.exoplatform.com</i>\n")
+               .append("<a href=\"http://exoplatform.com\" title='eXo'>eXo</a> <img src=\"x.png\" alt=\"x\" /></p>\n");
+    }
+    benchmark("realistic", realistic.toString());
+    benchmark("unclosed tags", repeat("<b>x", 500));
+    benchmark("lone brackets", repeat("< <", 10000));
+    benchmark("long whitespace", "<b" + repeat(" ", 50000) + "x>");
+    benchmark("unclosed quotes", repeat("<a href=\"x title='y ", 2000));
+  }
+
+  private static void benchmark(String name, String input) {
+    XMLTagFilterPolicy policy = new XMLTagFilterPolicy();
+    policy.addAllowedTags("b", "i", "p", "br");
+    List<Filter> filters = new ArrayList<Filter>();
+    filters.add(new XMLBalancerFilterPlugin());
+    filters.add(new XMLTagFilterPlugin(policy));
+    filters.add(new DOMLineBreakerFilterPlugin());
+    filters.add(new URLConverterFilterPlugin(0));
+
+    long start = System.nanoTime();
+    Node rootNode = DOMParser.createDOMTree(Tokenizer.tokenize(input));
+    long parsed = System.nanoTime();
+    Object output = input;
+    for (Filter filter : filters) {
+      output = filter.doFilter(output);
+    }
+    long filtered = System.nanoTime();
+    assertNotNull(rootNode);
+    assertNotNull(output);
+    System.out.println(name + " (" + input.length() + " chars): parse " + (parsed - start) / 1000000
+        + " ms, filters " + (filtered - parsed) / 1000000 + " ms");
+  }
+
+  private static String repeat(String s, int count) {
+    StringBuilder sb = new StringBuilder(s.length() * count);
+    for (int i = 0; i < count; i++) {
+      sb.append(s);
+    }
+    return sb.toString();
+  }
+
+}
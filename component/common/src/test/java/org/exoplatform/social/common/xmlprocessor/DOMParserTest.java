@@ -16,10 +16,16 @@
  */
 package org.exoplatform.social.common.xmlprocessor;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.exoplatform.social.common.xmlprocessor.filters.DOMLineBreakerFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.URLConverterFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.XMLBalancerFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.XMLTagFilterPlugin;
 import org.exoplatform.social.common.xmlprocessor.model.Node;
+import org.exoplatform.social.common.xmlprocessor.model.XMLTagFilterPolicy;
 
 import junit.framework.TestCase;
 
@@ -91,4 +97,81 @@ public class DOMParserTest extends TestCase {
 
   }
 
+  public void testParseTag() {
+    DOMParser.Tag tag = DOMParser.parseTag("<a href=\"x\" title='y' checked>");
+    assertEquals("a", tag.getName());
+    assertFalse(tag.isEndTag());
+    assertFalse(tag.isSelfClosed());
+    assertEquals(2, tag.getAttributeCount());
+    assertEquals("href", tag.getAttributeName(0));
+    assertEquals("x", tag.getAttributeValue(0));
+    assertEquals("title", tag.getAttributeName(1));
+    assertEquals("y", tag.getAttributeValue(1));
+
+    tag = DOMParser.parseTag("<br/>");
+    assertEquals("br", tag.getName());
+    assertTrue(tag.isSelfClosed());
+
+    tag = DOMParser.parseTag("</b >");
+    assertEquals("b", tag.getName());
+    assertTrue(tag.isEndTag());
+
+    assertNull(DOMParser.parseTag("hello"));
+    assertNull(DOMParser.parseTag("< b>"));
+    assertTrue(DOMParser.isComment("<!-- <b> -->"));
+    assertFalse(DOMParser.isComment("<b>"));
+  }
+
+  /**
+   * Inputs which were quadratic before the parser matched the end tags in one pass: the tree keeps
+   * them as they are and the default filter chain balances or escapes them.
+   */
+  public void testAdversarialInputs() {
+    String input = repeat("<b>x", 500);
+    Node rootNode = DOMParser.createDOMTree(Tokenizer.tokenize(input));
+    assertEquals(input, rootNode.toString());
+    assertEquals(input + repeat("</b>", 500), filter(input));
+
+    input = repeat("< <", 10000);
+    rootNode = DOMParser.createDOMTree(Tokenizer.tokenize(input));
+    assertEquals(1, rootNode.getChildNodes().size());
+    assertEquals(input, rootNode.toString());
+    assertEquals(repeat("&lt; &lt;", 10000), filter(input));
+
+    input = "<b" + repeat(" ", 50000) + "x>";
+    rootNode = DOMParser.createDOMTree(Tokenizer.tokenize(input));
+    assertEquals(input, rootNode.toString());
+    assertEquals("<b></b>", filter(input));
+
+    input = repeat("<a href=\"x title='y ", 2000);
+    rootNode = DOMParser.createDOMTree(Tokenizer.tokenize(input));
+    assertEquals(1, rootNode.getChildNodes().size());
+    assertEquals(input, rootNode.toString());
+    assertEquals(repeat("&lt;a href=&quot;x title='y ", 2000), filter(input));
+  }
+
+  private static String filter(String input) {
+    XMLTagFilterPolicy policy = new XMLTagFilterPolicy();
+    policy.addAllowedTags("b", "i", "p", "br");
+    List<Filter> filters = new ArrayList<Filter>();
+    filters.add(new XMLBalancerFilterPlugin());
+    filters.add(new XMLTagFilterPlugin(policy));
+    filters.add(new DOMLineBreakerFilterPlugin());
+    filters.add(new URLConverterFilterPlugin(0));
+
+    Object output = input;
+    for (Filter filter : filters) {
+      output = filter.doFilter(output);
+    }
+    return (String) output;
+  }
+
+  private static String repeat(String s, int count) {
+    StringBuilder sb = new StringBuilder(s.length() * count);
+    for (int i = 0; i < count; i++) {
+      sb.append(s);
+    }
+    return sb.toString();
+  }
+
 }
@@ -57,6 +57,19 @@ public class TokenizerTest extends TestCase {
     assertEquals("<a href='hello'>", result.get(0));
     assertEquals(" a ", result.get(1));
     assertEquals("</a>", result.get(2));
+
+    result = Tokenizer.tokenize("a<!-- c <b> -->b");
+    assertEquals(3, result.size());
+    assertEquals("a", result.get(0));
+    assertEquals("<!-- c <b> -->", result.get(1));
+    assertEquals("b", result.get(2));
+
+    result = Tokenizer.tokenize("<b x=\"1\">t</b><i");
+    assertEquals(4, result.size());
+    assertEquals("<b x=\"1\">", result.get(0));
+    assertEquals("t", result.get(1));
+    assertEquals("</b>", result.get(2));
+    assertEquals("<i", result.get(3));
   }
 
 }
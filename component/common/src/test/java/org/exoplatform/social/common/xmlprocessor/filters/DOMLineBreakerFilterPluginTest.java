@@ -56,6 +56,16 @@ public class DOMLineBreakerFilterPluginTest extends TestCase {
             new DOMLineBreakerFilterPlugin().doFilter(
                     DOMParser.createDOMTree(new Node(),
                             Tokenizer.tokenize("hello 1 <br /> hello 2 <c>"))).toString());
+    assertEquals(
+            "hello 1<br />hello 2<br />hello 3",
+            new DOMLineBreakerFilterPlugin().doFilter(
+                    DOMParser.createDOMTree(new Node(),
+                            Tokenizer.tokenize("hello 1\nhello 2\nhello 3"))).toString());
+    assertEquals(
+            "<b>hello</b> 1<br />hello 2<br />hello 3",
+            new DOMLineBreakerFilterPlugin().doFilter(
+                    DOMParser.createDOMTree(new Node(),
+                            Tokenizer.tokenize("<b>hello</b> 1\nhello 2\nhello 3"))).toString());
 
   }
 }
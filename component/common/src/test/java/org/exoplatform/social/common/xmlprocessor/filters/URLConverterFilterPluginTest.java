@@ -16,7 +16,9 @@
  */
 package org.exoplatform.social.common.xmlprocessor.filters;
 
+import org.exoplatform.social.common.xmlprocessor.DOMParser;
 import org.exoplatform.social.common.xmlprocessor.Filter;
+import org.exoplatform.social.common.xmlprocessor.Tokenizer;
 
 import junit.framework.TestCase;
 
@@ -95,6 +97,12 @@ public class URLConverterFilterPluginTest extends TestCase {
     assertEquals("Filter should not proccess the text inside <a>",
         "<a><img src=\"x\" alt=\"x\" /> http://xyz.com </a>",
         urlConverterFilter.doFilter("<a><img src=\"x\" alt=\"x\" /> http://xyz.com </a>"));
+    assertEquals("The node following a converted text must be filtered",
+        "<a href=\"http://a.com\" target=\"_blank\">http://a.com</a><b>see " +
+        "<a href=\"http://www.b.com\" target=\"_blank\">www.b.com</a> now</b>",
+        urlConverterFilter.doFilter("http://a.com <b>see www.b.com now</b>"));
+    assertEquals("go to <a href=\"http://abc.com\" target=\"_blank\">abc.com</a><i>x</i>",
+        urlConverterFilter.doFilter(DOMParser.createDOMTree(Tokenizer.tokenize("go to abc.com <i>x</i>"))).toString());
   }
   
   /**
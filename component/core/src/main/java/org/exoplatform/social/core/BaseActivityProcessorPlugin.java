@@ -88,5 +88,26 @@ public abstract class BaseActivityProcessorPlugin extends BaseComponentPlugin im
     }
     return keys;
   }
+  
+  /**
+   * Whether the processor is run at write time: its output only depends on the title, the body
+   * and the template params of the activity, on the identities and on the {@link #getContextKey()},
+   * and it only changes these fields. Its output is then computed once per content and cached,
+   * the other processors are run on every read.
+   * @return true if the output of the processor can be cached, false by default
+   */
+  public boolean isWriteTime() {
+    return false;
+  }
+  
+  /**
+   * Gets the part of the request the output of a write-time processor depends on, the output is
+   * cached per value.
+   * @return the context of the request, null if the output only depends on the activity
+   */
+  public String getContextKey() {
+    return null;
+  }
+  
   public abstract void processActivity(ExoSocialActivity activity);
 }
@@ -198,6 +198,36 @@ public class ActivitiesRealtimeListAccess implements RealtimeListAccess<ExoSocia
     return Collections.emptyList();
   }
 
+  /**
+   * Loads the page of the stream following the given cursor, the activities before
+   * the cursor are not loaded again and the stream is not counted.
+   *
+   * @param after the cursor returned with the previous page, null for the first page
+   * @param limit the page size
+   * @return the page, empty if the stream doesn't support the cursors
+   * @since 4.1.x
+   */
+  public ActivityStreamPage loadPage(ActivityStreamCursor after, int limit) {
+    switch (activityType) {
+      case ACTIVITY_FEED: {
+        return activityStorage.getActivityFeed(ownerIdentity, after, limit);
+      }
+      case USER_ACTIVITIES: {
+        return activityStorage.getUserActivities(ownerIdentity, after, limit);
+      }
+      case CONNECTIONS_ACTIVITIES: {
+        return activityStorage.getActivitiesOfConnections(ownerIdentity, after, limit);
+      }
+      case USER_SPACE_ACTIVITIES: {
+        return activityStorage.getUserSpacesActivities(ownerIdentity, after, limit);
+      }
+      case SPACE_ACTIVITIES: {
+        return activityStorage.getSpaceActivities(ownerIdentity, after, limit);
+      }
+    }
+    return ActivityStreamPage.empty();
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.activity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.storage.api.ActivityStorage;
+import org.exoplatform.social.core.storage.api.IdentityStorage;
+
+/**
+ * Assembles the pages of the activity streams.
+ *
+ * The ids of everything a page needs are collected first: the activities are loaded together, then
+ * the comments of all the activities, then the identities of the posters, the commenters and the
+ * likers, instead of letting every activity of the page load its own.
+ */
+@Managed
+@ManagedDescription("Activity stream page assembler")
+public class ActivityPageAssembler {
+
+  private static final Log LOG = ExoLogger.getLogger(ActivityPageAssembler.class);
+
+  private final ActivityStorage activityStorage;
+
+  private final IdentityStorage identityStorage;
+
+  private final AtomicLong pages = new AtomicLong();
+  private final AtomicLong activities = new AtomicLong();
+  private final AtomicLong storageCalls = new AtomicLong();
+  private final AtomicLong maxStorageCalls = new AtomicLong();
+
+  public ActivityPageAssembler(ActivityStorage activityStorage, IdentityStorage identityStorage) {
+    this.activityStorage = activityStorage;
+    this.identityStorage = identityStorage;
+  }
+
+  /**
+   * Loads and assembles a page of activities.
+   *
+   * @param activityIds the ids of the activities of the page
+   * @param numberOfComments the number of comments to load per activity
+   * @param latestComments true to load the latest comments, false to load the first ones
+   * @param numberOfLikers the number of latest likers to load per activity
+   * @return the page, without the activities which are not found
+   */
+  public ActivityPageView assemble(List<String> activityIds, int numberOfComments, boolean latestComments,
+                                   int numberOfLikers) {
+    if (activityIds == null || activityIds.isEmpty()) {
+      return ActivityPageView.empty();
+    }
+    List<ExoSocialActivity> got = activityStorage.getActivities(activityIds);
+    return assemble(got, numberOfComments, latestComments, numberOfLikers, 1);
+  }
+
+  /**
+   * Assembles a page of activities which are already loaded.
+   *
+   * @param activities the activities of the page
+   * @param numberOfComments the number of comments to load per activity
+   * @param latestComments true to load the latest comments, false to load the first ones
+   * @param numberOfLikers the number of latest likers to load per activity
+   * @return the page
+   */
+  public ActivityPageView assemble(List<ExoSocialActivity> activities, int numberOfComments,
+                                   boolean latestComments, int numberOfLikers) {
+    if (activities == null || activities.isEmpty()) {
+      return ActivityPageView.empty();
+    }
+    return assemble(activities, numberOfComments, latestComments, numberOfLikers, 0);
+  }
+
+  private ActivityPageView assemble(List<ExoSocialActivity> got, int numberOfComments, boolean latestComments,
+                                    int numberOfLikers, int calls) {
+    List<ExoSocialActivity> loaded = new ArrayList<ExoSocialActivity>(got.size());
+    for (ExoSocialActivity activity : got) {
+      if (activity != null) {
+        loaded.add(activity);
+      }
+    }
+
+    //the comments of all the activities are loaded together
+    List<String> commentIds = new ArrayList<String>();
+    for (ExoSocialActivity activity : loaded) {
+      commentIds.addAll(window(activity.getReplyToId(), numberOfComments, latestComments));
+    }
+    Map<String, ExoSocialActivity> comments = new HashMap<String, ExoSocialActivity>();
+    if (commentIds.size() > 0) {
+      List<ExoSocialActivity> gotComments = activityStorage.getActivities(commentIds);
+      calls++;
+      for (int i = 0; i < gotComments.size(); i++) {
+        if (gotComments.get(i) != null) {
+          comments.put(commentIds.get(i), gotComments.get(i));
+        }
+      }
+    }
+
+    //
+    Set<String> identityIds = new LinkedHashSet<String>();
+    List<List<ExoSocialActivity>> activityComments = new ArrayList<List<ExoSocialActivity>>(loaded.size());
+    int[] commentCounts = new int[loaded.size()];
+    for (int i = 0; i < loaded.size(); i++) {
+      ExoSocialActivity activity = loaded.get(i);
+      String[] ids = activity.getReplyToId() != null ? activity.getReplyToId() : new String[0];
+      List<String> window = window(ids, numberOfComments, latestComments);
+      List<ExoSocialActivity> visible = new ArrayList<ExoSocialActivity>(window.size());
+      for (String commentId : window) {
+        ExoSocialActivity comment = comments.get(commentId);
+        if (comment != null && !comment.isHidden()) {
+          visible.add(comment);
+        }
+      }
+
+      //the window holds all the comments, they are counted without the storage
+      if (window.size() == ids.length && visible.size() == ids.length) {
+        commentCounts[i] = ids.length;
+      } else {
+        commentCounts[i] = activityStorage.getNumberOfComments(activity);
+        calls++;
+      }
+
+      //hidden comments in the window, the comments are paged by the storage
+      int expected = Math.min(Math.max(numberOfComments, 0), commentCounts[i]);
+      if (visible.size() < expected) {
+        int offset = latestComments ? commentCounts[i] - expected : 0;
+        visible = activityStorage.getComments(activity, offset, expected);
+        calls++;
+      }
+      activityComments.add(visible);
+
+      //
+      identityIds.add(activity.getUserId());
+      for (ExoSocialActivity comment : visible) {
+        identityIds.add(comment.getUserId());
+      }
+      identityIds.addAll(window(activity.getLikeIdentityIds(), numberOfLikers, true));
+    }
+
+    //the identities of the posters, the commenters and the likers are loaded together
+    identityIds.remove(null);
+    Map<String, Identity> identities = new HashMap<String, Identity>();
+    if (identityIds.size() > 0) {
+      List<String> ids = new ArrayList<String>(identityIds);
+      List<Identity> gotIdentities = identityStorage.findIdentitiesByIds(ids);
+      calls++;
+      for (int i = 0; i < gotIdentities.size(); i++) {
+        if (gotIdentities.get(i) != null) {
+          identities.put(ids.get(i), gotIdentities.get(i));
+        }
+      }
+    }
+
+    //
+    List<ActivityView> views = new ArrayList<ActivityView>(loaded.size());
+    for (int i = 0; i < loaded.size(); i++) {
+      ExoSocialActivity activity = loaded.get(i);
+      List<Identity> likers = new ArrayList<Identity>();
+      for (String likerId : window(activity.getLikeIdentityIds(), numberOfLikers, true)) {
+        if (identities.containsKey(likerId)) {
+          likers.add(identities.get(likerId));
+        }
+      }
+      views.add(new ActivityView(activity, identities.get(activity.getUserId()), activityComments.get(i),
+                                 commentCounts[i], likers));
+    }
+
+    //
+    pages.incrementAndGet();
+    activities.addAndGet(loaded.size());
+    storageCalls.addAndGet(calls);
+    long max = maxStorageCalls.get();
+    while (calls > max && !maxStorageCalls.compareAndSet(max, calls)) {
+      max = maxStorageCalls.get();
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Page of " + loaded.size() + " activities, " + comments.size() + " comments and "
+          + identities.size() + " identities assembled with " + calls + " storage calls");
+    }
+    return new ActivityPageView(views, identities, calls);
+  }
+
+  /**
+   * Gets the first or the last ids of an array.
+   */
+  private static List<String> window(String[] ids, int size, boolean last) {
+    if (ids == null || ids.length == 0 || size <= 0) {
+      return Collections.emptyList();
+    }
+    int from = last ? Math.max(0, ids.length - size) : 0;
+    int to = last ? ids.length : Math.min(ids.length, size);
+    List<String> window = new ArrayList<String>(to - from);
+    for (int i = from; i < to; i++) {
+      if (ids[i] != null && ids[i].length() > 0) {
+        window.add(ids[i]);
+      }
+    }
+    return window;
+  }
+
+  @Managed
+  @ManagedName("Pages")
+  @ManagedDescription("The number of assembled pages")
+  public long getPages() {
+    return pages.get();
+  }
+
+  @Managed
+  @ManagedName("Activities")
+  @ManagedDescription("The number of assembled activities")
+  public long getActivities() {
+    return activities.get();
+  }
+
+  @Managed
+  @ManagedName("StorageCalls")
+  @ManagedDescription("The number of storage calls made to assemble the pages")
+  public long getStorageCalls() {
+    return storageCalls.get();
+  }
+
+  @Managed
+  @ManagedName("AverageStorageCalls")
+  @ManagedDescription("The average number of storage calls per page")
+  public long getAverageStorageCalls() {
+    long count = pages.get();
+    return count == 0 ? 0 : storageCalls.get() / count;
+  }
+
+  @Managed
+  @ManagedName("MaxStorageCalls")
+  @ManagedDescription("The maximum number of storage calls made to assemble a page")
+  public long getMaxStorageCalls() {
+    return maxStorageCalls.get();
+  }
+}
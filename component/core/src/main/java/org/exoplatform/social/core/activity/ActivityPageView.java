@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.activity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.exoplatform.social.core.identity.model.Identity;
+
+/**
+ * A page of activities assembled by the {@link ActivityPageAssembler}: the activities and all the
+ * identities they refer to, loaded together.
+ */
+public class ActivityPageView {
+
+  /** activity id => view, in the order of the page */
+  private final Map<String, ActivityView> views;
+
+  /** identity id => identity */
+  private final Map<String, Identity> identities;
+
+  private final int storageCalls;
+
+  /**
+   * @param views the activity views, in the order of the page
+   * @param identities the identities of the posters, the commenters and the likers by id
+   * @param storageCalls the number of storage calls made to assemble the page
+   */
+  public ActivityPageView(List<ActivityView> views, Map<String, Identity> identities, int storageCalls) {
+    this.views = new LinkedHashMap<String, ActivityView>();
+    for (ActivityView view : views) {
+      this.views.put(view.getActivity().getId(), view);
+    }
+    this.identities = identities;
+    this.storageCalls = storageCalls;
+  }
+
+  public static ActivityPageView empty() {
+    return new ActivityPageView(Collections.<ActivityView>emptyList(), Collections.<String, Identity>emptyMap(), 0);
+  }
+
+  /**
+   * @return the activity views in the order of the page, without the activities which were not found
+   */
+  public List<ActivityView> getViews() {
+    return new ArrayList<ActivityView>(views.values());
+  }
+
+  /**
+   * Gets the view of an activity of the page.
+   *
+   * @param activityId the activity id
+   * @return the view, null if the activity is not in the page
+   */
+  public ActivityView getView(String activityId) {
+    return views.get(activityId);
+  }
+
+  /**
+   * Gets an identity the page refers to, with its profile loaded.
+   *
+   * @param identityId the identity id
+   * @return the identity, null if the page does not refer to it or it is not found
+   */
+  public Identity getIdentity(String identityId) {
+    return identities.get(identityId);
+  }
+
+  /**
+   * @return the number of storage calls made to assemble the page
+   */
+  public int getStorageCalls() {
+    return storageCalls;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.activity;
+
+import java.io.Serializable;
+
+/**
+ * The position of the last activity of a page in an activity stream.
+ *
+ * The streams are ordered from the most recently updated activity, the activities updated at
+ * the same time are ordered by id. The next page starts right after the cursor position, the
+ * stream doesn't need to be walked from its top again.
+ *
+ * The cursor is sent to the clients as a token: {lastUpdated}:{activityId}.
+ */
+public class ActivityStreamCursor implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final char SEPARATOR = ':';
+
+  private final long lastUpdated;
+
+  private final String activityId;
+
+  public ActivityStreamCursor(long lastUpdated, String activityId) {
+    if (activityId == null) {
+      throw new IllegalArgumentException("The activity id is required");
+    }
+    this.lastUpdated = lastUpdated;
+    this.activityId = activityId;
+  }
+
+  /**
+   * Parses a cursor token.
+   *
+   * @param token the token, as returned by {@link #toString()}
+   * @return the cursor, null if the token is null or empty
+   * @throws IllegalArgumentException if the token is not valid
+   */
+  public static ActivityStreamCursor parse(String token) {
+    if (token == null || token.trim().length() == 0) {
+      return null;
+    }
+    int index = token.indexOf(SEPARATOR);
+    if (index <= 0 || index == token.length() - 1) {
+      throw new IllegalArgumentException("Invalid activity stream cursor: " + token);
+    }
+    try {
+      return new ActivityStreamCursor(Long.parseLong(token.substring(0, index)), token.substring(index + 1));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid activity stream cursor: " + token);
+    }
+  }
+
+  public long getLastUpdated() {
+    return lastUpdated;
+  }
+
+  public String getActivityId() {
+    return activityId;
+  }
+
+  /**
+   * Tells if the given activity is after the cursor position in the stream.
+   *
+   * @param updated the last updated time of the activity
+   * @param id the activity id
+   * @return true if the activity belongs to the next pages
+   */
+  public boolean isBefore(long updated, String id) {
+    if (updated != lastUpdated) {
+      return updated < lastUpdated;
+    }
+    return id != null && id.compareTo(activityId) > 0;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ActivityStreamCursor)) {
+      return false;
+    }
+    ActivityStreamCursor that = (ActivityStreamCursor) o;
+    return lastUpdated == that.lastUpdated && activityId.equals(that.activityId);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (int) (lastUpdated ^ (lastUpdated >>> 32)) + activityId.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return String.valueOf(lastUpdated) + SEPARATOR + activityId;
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.activity;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+
+/**
+ * A page of an activity stream loaded from a cursor.
+ *
+ * The page tells if the stream has more activities instead of counting them.
+ *
+ * The pages are read from the activity references of the stream only. The activities of a
+ * stream which is not migrated yet, which the offset based getters load with a query and
+ * reference lazily, are not returned until they have been referenced: the clients of such
+ * streams read them with the offset based getters.
+ */
+public class ActivityStreamPage {
+
+  private final List<ExoSocialActivity> activities;
+
+  private final ActivityStreamCursor next;
+
+  private final boolean hasMore;
+
+  /**
+   * @param activities the activities of the page
+   * @param next the cursor of the last activity of the page, null if the page is empty
+   * @param hasMore true if the stream has activities after this page
+   */
+  public ActivityStreamPage(List<ExoSocialActivity> activities, ActivityStreamCursor next, boolean hasMore) {
+    this.activities = activities != null ? activities : Collections.<ExoSocialActivity>emptyList();
+    this.next = next;
+    this.hasMore = hasMore;
+  }
+
+  public static ActivityStreamPage empty() {
+    return new ActivityStreamPage(null, null, false);
+  }
+
+  public List<ExoSocialActivity> getActivities() {
+    return activities;
+  }
+
+  /**
+   * Gets the cursor to load the next page.
+   *
+   * @return the cursor, null if the page is empty
+   */
+  public ActivityStreamCursor getNext() {
+    return next;
+  }
+
+  public boolean hasMore() {
+    return hasMore;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.activity;
+
+import java.util.List;
+
+import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.identity.model.Identity;
+
+/**
+ * An activity of a page with what is needed to render it: its poster, its first or latest comments,
+ * its number of comments and its likers.
+ */
+public class ActivityView {
+
+  private final ExoSocialActivity activity;
+
+  private final Identity poster;
+
+  private final List<ExoSocialActivity> comments;
+
+  private final int numberOfComments;
+
+  private final List<Identity> likers;
+
+  /**
+   * @param activity the activity
+   * @param poster the poster identity, null if it is not found
+   * @param comments the loaded comments, in the order they were posted
+   * @param numberOfComments the number of visible comments
+   * @param likers the loaded likers, in the order they liked
+   */
+  public ActivityView(ExoSocialActivity activity, Identity poster, List<ExoSocialActivity> comments,
+                      int numberOfComments, List<Identity> likers) {
+    this.activity = activity;
+    this.poster = poster;
+    this.comments = comments;
+    this.numberOfComments = numberOfComments;
+    this.likers = likers;
+  }
+
+  public ExoSocialActivity getActivity() {
+    return activity;
+  }
+
+  public Identity getPoster() {
+    return poster;
+  }
+
+  public List<ExoSocialActivity> getComments() {
+    return comments;
+  }
+
+  public int getNumberOfComments() {
+    return numberOfComments;
+  }
+
+  public List<Identity> getLikers() {
+    return likers;
+  }
+}
@@ -26,6 +26,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.chromattic.api.annotations.Create;
 import org.chromattic.api.annotations.DefaultValue;
 import org.chromattic.api.annotations.FormattedBy;
+import org.chromattic.api.annotations.ManyToOne;
 import org.chromattic.api.annotations.NamingPrefix;
 import org.chromattic.api.annotations.OneToMany;
 import org.chromattic.api.annotations.Path;
@@ -43,6 +44,12 @@ public abstract class ActivityRefListEntity {
   @Path
   public abstract String getPath();
 
+  /**
+   * The streams of the identity owning the list.
+   */
+  @ManyToOne
+  public abstract StreamsEntity getParent();
+
   /**
    * The number of activity references in the activities list. The default value is set to 0.
    */
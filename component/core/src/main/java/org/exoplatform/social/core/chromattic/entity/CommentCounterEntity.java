@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.chromattic.entity;
+
+import org.chromattic.api.annotations.MixinType;
+import org.chromattic.api.annotations.Property;
+
+@MixinType(name = "soc:commentcounter")
+public abstract class CommentCounterEntity {
+
+  /**
+   * The number of comments which are not hidden, maintained when the comments are saved, hidden or deleted.
+   */
+  @Property(name = "soc:visibleComments")
+  public abstract Integer getVisibleComments();
+  public abstract void setVisibleComments(Integer visibleComments);
+
+  /**
+   * The time when the comments were last counted, the counter is counted again when it gets old.
+   */
+  @Property(name = "soc:countedAt")
+  public abstract Long getCountedAt();
+  public abstract void setCountedAt(Long countedAt);
+}
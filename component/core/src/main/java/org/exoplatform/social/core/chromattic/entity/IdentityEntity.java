@@ -40,6 +40,7 @@ public abstract class IdentityEntity {
   public final static String RELATIONSHIP_NUMBER_PARAM = "relationshipNo";
   public final static String LATEST_ACTIIVTY_CREATED_TIME_PARAM = "latestActivityCreatedTime";
   public final static String LATEST_LAZY_CREATED_TIME_PARAM = "latestLazyCreatedTime";
+  public final static String FAN_OUT_ON_READ_PARAM = "fanOutOnRead";
 
   @Id
   public abstract String getId();
@@ -251,6 +252,27 @@ public abstract class IdentityEntity {
     setProperty(LATEST_LAZY_CREATED_TIME_PARAM, String.valueOf(time));
   }
   
+  /**
+   * Tells if the activities of this identity are merged into the streams of its
+   * audience when they are read, instead of being pushed to them.
+   * 
+   * @return true if the activities are not pushed
+   */
+  public boolean isFanOutOnRead() {
+    return Boolean.parseBoolean(getProperty(FAN_OUT_ON_READ_PARAM));
+  }
+  
+  /**
+   * Marks the activities of this identity to be merged when the streams are read.
+   * 
+   * @param fanOutOnRead
+   */
+  public void setFanOutOnRead(boolean fanOutOnRead) {
+    setProperty(FAN_OUT_ON_READ_PARAM, String.valueOf(fanOutOnRead));
+  }
+  public static final PropertyLiteralExpression<String> fanOutOnRead =
+      new PropertyLiteralExpression<String>(String.class, FAN_OUT_ON_READ_PARAM);
+  
   public String getProperty(String key) {
     return getProperties().get(key);
   }
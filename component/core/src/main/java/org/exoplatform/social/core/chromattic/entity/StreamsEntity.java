@@ -18,6 +18,7 @@ package org.exoplatform.social.core.chromattic.entity;
 
 import org.chromattic.api.annotations.Create;
 import org.chromattic.api.annotations.FormattedBy;
+import org.chromattic.api.annotations.ManyToOne;
 import org.chromattic.api.annotations.MappedBy;
 import org.chromattic.api.annotations.Name;
 import org.chromattic.api.annotations.NamingPrefix;
@@ -38,6 +39,12 @@ public abstract class StreamsEntity {
   @Path
   public abstract String getPath();
 
+  /**
+   * The identity owning the streams.
+   */
+  @ManyToOne
+  public abstract IdentityEntity getParent();
+
   /**
    * Store all connection activities in the all stream of an identity.
    */
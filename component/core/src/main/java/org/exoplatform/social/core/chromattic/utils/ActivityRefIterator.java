@@ -16,6 +16,7 @@
  */
 package org.exoplatform.social.core.chromattic.utils;
 
+import java.text.DateFormatSymbols;
 import java.util.*;
 
 import org.exoplatform.social.core.chromattic.entity.*;
@@ -47,20 +48,107 @@ public class ActivityRefIterator implements Iterator<ActivityRef> {
 
   }
 
+  /**
+   * Starts from the day of the given time, the references of the more recent days
+   * are not loaded.
+   *
+   * @param listEntity the stream
+   * @param before the last updated time of the first reference to return
+   */
+  ActivityRefIterator(final ActivityRefListEntity listEntity, final long before) {
+
+    this.listEntity = listEntity;
+
+    Calendar calendar = Calendar.getInstance(Locale.ENGLISH);
+    calendar.setTimeInMillis(before);
+    int year = calendar.get(Calendar.YEAR);
+    int month = calendar.get(Calendar.MONTH);
+    int day = calendar.get(Calendar.DAY_OF_MONTH);
+    List<String> monthNames = Arrays.asList(new DateFormatSymbols(Locale.ENGLISH).getMonths());
+
+    //the years, months and days are ordered from the most recent one
+    List<ActivityRefYearEntity> years = listEntity.getYearsList();
+    int y = 0;
+    while (y < years.size() && parse(years.get(y).getName()) > year) {
+      ++y;
+    }
+    this.yearIterator = years.subList(y, years.size()).iterator();
+
+    if (yearIterator.hasNext()) {
+      ActivityRefYearEntity yearEntity = yearIterator.next();
+      boolean sameYear = parse(yearEntity.getName()) == year;
+      List<ActivityRefMonthEntity> months = yearEntity.getMonthsList();
+      int m = 0;
+      while (sameYear && m < months.size() && monthNames.indexOf(months.get(m).getName()) > month) {
+        ++m;
+      }
+      this.monthIterator = months.subList(m, months.size()).iterator();
+
+      if (monthIterator.hasNext()) {
+        ActivityRefMonthEntity monthEntity = monthIterator.next();
+        boolean sameMonth = sameYear && monthNames.indexOf(monthEntity.getName()) == month;
+        List<ActivityRefDayEntity> days = monthEntity.getDaysList();
+        int d = 0;
+        while (sameMonth && d < days.size() && parse(days.get(d).getName()) > day) {
+          ++d;
+        }
+        this.dayIterator = days.subList(d, days.size()).iterator();
+        if (dayIterator.hasNext()) {
+          this.entityIterator = orderRefs();
+        }
+      }
+    }
+
+  }
+
+  private static int parse(String name) {
+    try {
+      return Integer.parseInt(name);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
   private Iterator<ActivityRef> orderRefs() {
     List<ActivityRef> got = new ArrayList<ActivityRef>(dayIterator.next().getActivityRefList());
     // We use this local cache to avoid accessing the JCR at each call
     final Map<String, Long> cache = new HashMap<String, Long>();
+    final Map<String, String> ids = new HashMap<String, String>();
     Collections.sort(got, new Comparator<ActivityRef>() {
       public int compare(ActivityRef o1, ActivityRef o2) {
         Long co2 = getActivityRefLastUpdated(cache, o2);
         Long co1 = getActivityRefLastUpdated(cache, o1);
-        return (int) (co2 - co1);
+        int c = co2.compareTo(co1);
+        //the references updated at the same time are ordered by activity id, as the stream cursors
+        return c != 0 ? c : getActivityRefActivityId(ids, o1).compareTo(getActivityRefActivityId(ids, o2));
       }
     });
     return got.iterator();
   }
 
+  /**
+   * Gives the id of the activity of the reference, the name of the reference if the activity has
+   * been removed: the references migrated from 3.5.x are not named by their activity id.
+   */
+  private static String getActivityRefActivityId(Map<String, String> cache, ActivityRef o) {
+    String id = cache.get(o.getId());
+    if (id == null) {
+      id = getActivityId(o);
+      cache.put(o.getId(), id);
+    }
+    return id;
+  }
+
+  /**
+   * @param o the reference
+   * @return the id of the activity of the reference, the name of the reference if the activity
+   *         has been removed
+   */
+  public static String getActivityId(ActivityRef o) {
+    ActivityEntity ae = o.getActivityEntity();
+    return ae != null ? ae.getId() : o.getName();
+  }
+
   /**
    * Gives the value of lastUpdated from the provided cache if it can be found otherwise it will be retrieved
    * from the related ActivityEntity if it exists or directly from the ActivityRef thanks to getLastUpdated()
@@ -51,6 +51,16 @@ public class ActivityRefList implements Collection<ActivityRef> {
     return new ActivityRefIterator(listEntity);
   }
 
+  /**
+   * Gets an iterator starting from the day of the given time.
+   *
+   * @param before the last updated time of the first reference to return
+   * @return the iterator
+   */
+  public ActivityRefIterator iterator(long before) {
+    return new ActivityRefIterator(listEntity, before);
+  }
+
   public Object[] toArray() {
     throw new RuntimeException();
   }
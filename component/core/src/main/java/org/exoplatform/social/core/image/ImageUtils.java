@@ -17,17 +17,27 @@
  */
 package org.exoplatform.social.core.image;
 
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 import org.exoplatform.commons.utils.MimeTypeResolver;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.identity.model.Profile;
 import org.exoplatform.social.core.model.AvatarAttachment;
 
 /**
@@ -38,6 +48,9 @@ public class ImageUtils {
   public static final String KEY_DIMENSION_SEPARATOR = "x";
 
   public static final String GIF_EXTENDSION          = "gif";
+
+  /** The max size of a resized avatar, in bytes. */
+  public static final int    MAX_RESIZED_BYTES       = 2 * 1024 * 1024;
   private static final Log LOG = ExoLogger.getLogger(ImageUtils.class);
 
   /**
@@ -100,73 +113,196 @@ public class ImageUtils {
                                                                String avatarMimeType,
                                                                String avatarWorkspace) {
     try {
-      MimeTypeResolver mimeTypeResolver = new MimeTypeResolver();
-
-      BufferedImage image = null;
-      int minSize = 0;
-      String extension = mimeTypeResolver.getExtension(avatarMimeType);
-      // TODO: Resize gif image. Now we skip gif because we can't resize it now
-      if (extension.equalsIgnoreCase(GIF_EXTENDSION))
-        return null;
-      image = ImageIO.read(imageStream);
-      if (height <= minSize & width <= minSize) {
-        LOG.warn("Fail to resize image to avatar attachment with dimention <= 0x0");
+      byte[][] resized = resize(imageStream, new int[][] {{width, height}}, avatarMimeType);
+      if (resized == null) {
         return null;
       }
-      
-      if (height <= minSize)
-        height = image.getHeight() * width / image.getWidth();
-      else if (width <= minSize)
-        width = image.getWidth() * height / image.getHeight();
-
-      // Create temp file to store resized image to put to avatar attachment
-      File tmp = File.createTempFile("RESIZED", null);
-      image = org.apache.shindig.gadgets.rewrite.image.ImageUtils.getScaledInstance(image,
-                                                 width,
-                                                 height,
-                                                 RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR,
-                                                 false,
-                                                 BufferedImage.TYPE_INT_RGB);
-
-      int imgWidth = image.getWidth();
-      int imgHeight = image.getHeight();
-      
-      if (imgWidth != imgHeight) { // in case of image has width and height not the same
-        int x,y,w,h;
-        int cropDimension = imgWidth > imgHeight ? imgHeight : imgWidth;
-        int offset = (cropDimension == imgWidth) ? imgHeight - cropDimension : imgWidth - cropDimension;
-        
-        if (imgWidth < imgHeight) {
-          x = 0;
-          y = (int)(offset/2);
-          w = imgWidth;
-          h = imgHeight - offset;
-        } else {
-          x = (int)(offset/2);
-          y = 0;
-          w = imgWidth - offset;
-          h = imgHeight;
-        }
-        
-        image = image.getSubimage(x, y, w, h);
-      }
-      
-      ImageIO.write(image, extension, tmp);
-      
+
       // Create new avatar attachment
-      AvatarAttachment newAvatarAttachment = new AvatarAttachment(avatarId,
-                                                                  avatarFileName,
-                                                                  avatarMimeType,
-                                                                  new FileInputStream(tmp),
-                                                                  avatarWorkspace,
-                                                                  System.currentTimeMillis());
-
-      // Delete temp file
-      tmp.delete();
-      return newAvatarAttachment;
+      return new AvatarAttachment(avatarId,
+                                  avatarFileName,
+                                  avatarMimeType,
+                                  new ByteArrayInputStream(resized[0]),
+                                  avatarWorkspace,
+                                  System.currentTimeMillis());
     } catch (Exception e) {
       LOG.error("Fail to resize image to avatar attachment: " + e);
       return null;
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Resizes an image to several avatar sizes at once, the image is decoded only once.
+   *
+   * @param imageStream the image
+   * @param sizes the widths and heights of the avatars, a width or a height &lt;= 0 is computed
+   *          from the image ratio
+   * @param avatarId
+   * @param avatarFileName
+   * @param avatarMimeType
+   * @param avatarWorkspace
+   * @return the avatar attachments keyed by the postfix of their size, see
+   *         {@link #buildImagePostfix(int, int)}, empty if the image can't be resized
+   * @since 4.4.0
+   */
+  public static Map<String, AvatarAttachment> createResizedAvatarAttachments(InputStream imageStream,
+                                                                             int[][] sizes,
+                                                                             String avatarId,
+                                                                             String avatarFileName,
+                                                                             String avatarMimeType,
+                                                                             String avatarWorkspace) {
+    Map<String, AvatarAttachment> attachments = new LinkedHashMap<String, AvatarAttachment>();
+    try {
+      byte[][] resized = resize(imageStream, sizes, avatarMimeType);
+      if (resized == null) {
+        return attachments;
+      }
+      long lastModified = System.currentTimeMillis();
+      for (int i = 0; i < sizes.length; i++) {
+        String postfix = buildImagePostfix(sizes[i][0], sizes[i][1]);
+        attachments.put(postfix, new AvatarAttachment(avatarId,
+                                                      buildFileName(avatarFileName, Profile.RESIZED_SUBFIX, postfix),
+                                                      avatarMimeType,
+                                                      new ByteArrayInputStream(resized[i]),
+                                                      avatarWorkspace,
+                                                      lastModified));
+      }
+    } catch (Exception e) {
+      LOG.error("Fail to resize image to avatar attachments: " + e);
+      attachments.clear();
+    }
+    return attachments;
+  }
+
+  /**
+   * Resizes an image to the given sizes, each resized image is cropped to its center square.
+   *
+   * The size of the image is read from its header first. Then only the region of the image which
+   * is kept is decoded, and it is subsampled while decoding so that the decoded image is not
+   * larger than needed by the largest size. The resized images are written in memory.
+   *
+   * @return the resized images, null if the image can't be resized
+   */
+  private static byte[][] resize(InputStream imageStream, int[][] sizes, String mimeType) throws IOException {
+    MimeTypeResolver mimeTypeResolver = new MimeTypeResolver();
+    String extension = mimeTypeResolver.getExtension(mimeType);
+    for (int[] size : sizes) {
+      if (size[0] <= 0 && size[1] <= 0) {
+        LOG.warn("Fail to resize image to avatar attachment with dimention <= 0x0");
+        return null;
+      }
+    }
+
+    ImageInputStream in = ImageIO.createImageInputStream(imageStream);
+    if (in == null) {
+      return null;
+    }
+    try {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) {
+        LOG.warn("Fail to resize image to avatar attachment: unknown image format");
+        return null;
+      }
+      ImageReader reader = readers.next();
+      boolean gif = extension.equalsIgnoreCase(GIF_EXTENDSION);
+      try {
+        reader.setInput(in, !gif, true);
+        // The animated gif are not resized, only their first frame would be kept
+        if (gif && reader.getNumImages(true) > 1) {
+          return null;
+        }
+
+        int imageWidth = reader.getWidth(0);
+        int imageHeight = reader.getHeight(0);
+        Rectangle[] regions = new Rectangle[sizes.length];
+        int[] sides = new int[sizes.length];
+        Rectangle decoded = null;
+        int subsampling = Integer.MAX_VALUE;
+        for (int i = 0; i < sizes.length; i++) {
+          int width = sizes[i][0];
+          int height = sizes[i][1];
+          if (height <= 0)
+            height = imageHeight * width / imageWidth;
+          else if (width <= 0)
+            width = imageWidth * height / imageHeight;
+
+          // The image scaled to width x height is cropped to its center square
+          sides[i] = Math.min(width, height);
+          if (sides[i] <= 0) {
+            return null;
+          }
+          int regionWidth = Math.max(1, Math.min(imageWidth, Math.round((float) sides[i] * imageWidth / width)));
+          int regionHeight = Math.max(1, Math.min(imageHeight, Math.round((float) sides[i] * imageHeight / height)));
+          regions[i] = new Rectangle((imageWidth - regionWidth) / 2, (imageHeight - regionHeight) / 2, regionWidth, regionHeight);
+          decoded = decoded == null ? regions[i] : decoded.union(regions[i]);
+          subsampling = Math.min(subsampling, Math.max(1, Math.min(regionWidth / sides[i], regionHeight / sides[i])));
+        }
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(decoded);
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        BufferedImage image = reader.read(0, param);
+
+        byte[][] resized = new byte[sizes.length][];
+        for (int i = 0; i < sizes.length; i++) {
+          int x = (regions[i].x - decoded.x) / subsampling;
+          int y = (regions[i].y - decoded.y) / subsampling;
+          int w = Math.max(1, Math.min(image.getWidth() - x, regions[i].width / subsampling));
+          int h = Math.max(1, Math.min(image.getHeight() - y, regions[i].height / subsampling));
+
+          BufferedImage avatar = new BufferedImage(sides[i], sides[i], BufferedImage.TYPE_INT_RGB);
+          Graphics2D graphics = avatar.createGraphics();
+          try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, sides[i], sides[i], x, y, x + w, y + h, null);
+          } finally {
+            graphics.dispose();
+          }
+
+          ByteArrayOutputStream out = new BoundedOutputStream(MAX_RESIZED_BYTES);
+          if (!ImageIO.write(avatar, extension, out)) {
+            LOG.warn("Fail to resize image to avatar attachment: no writer for " + extension);
+            return null;
+          }
+          resized[i] = out.toByteArray();
+        }
+        return resized;
+      } finally {
+        reader.dispose();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * In memory output stream failing when more than a given number of bytes are written.
+   */
+  private static class BoundedOutputStream extends ByteArrayOutputStream {
+
+    private final int limit;
+
+    private BoundedOutputStream(int limit) {
+      super(8192);
+      this.limit = limit;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+      check(1);
+      super.write(b);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      check(len);
+      super.write(b, off, len);
+    }
+
+    private void check(int len) {
+      if (count + len > limit) {
+        throw new IllegalStateException("Resized image larger than " + limit + " bytes");
+      }
+    }
+  }
+}
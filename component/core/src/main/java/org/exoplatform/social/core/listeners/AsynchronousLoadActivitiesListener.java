@@ -20,12 +20,16 @@ import org.exoplatform.container.ExoContainer;
 import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.services.listener.Event;
 import org.exoplatform.services.listener.Listener;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
 import org.exoplatform.services.security.ConversationRegistry;
 import org.exoplatform.services.security.ConversationState;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
+import org.exoplatform.social.core.storage.api.ActivityStreamStorage;
 import org.exoplatform.social.core.storage.api.IdentityStorage;
 import org.exoplatform.social.core.storage.streams.StreamInvocationHelper;
+import org.exoplatform.social.core.storage.streams.StreamWarmUpScheduler;
 
 /**
  * Created by The eXo Platform SAS
@@ -35,6 +39,8 @@ import org.exoplatform.social.core.storage.streams.StreamInvocationHelper;
  */
 public class AsynchronousLoadActivitiesListener extends Listener<ConversationRegistry, ConversationState> {
 
+  private static final Log LOG = ExoLogger.getLogger(AsynchronousLoadActivitiesListener.class);
+
   private ExoContainerContext context;
 
   public AsynchronousLoadActivitiesListener(ExoContainerContext context) throws Exception {
@@ -50,7 +56,30 @@ public class AsynchronousLoadActivitiesListener extends Listener<ConversationReg
 
     IdentityStorage storage = (IdentityStorage) container.getComponentInstanceOfType(IdentityStorage.class);
     Identity owner = storage.findIdentity(OrganizationIdentityProvider.NAME, remoteId);
-    StreamInvocationHelper.loadFeed(owner);
+    if (owner == null) {
+      return;
+    }
+
+    StreamWarmUpScheduler scheduler = (StreamWarmUpScheduler) container.getComponentInstanceOfType(StreamWarmUpScheduler.class);
+    if (scheduler == null) {
+      StreamInvocationHelper.loadFeed(owner);
+      return;
+    }
+
+    //the feed is warmed up later, the most stale first, at the rate of the scheduler
+    if (scheduler.isDuplicate(owner.getId())) {
+      return;
+    }
+    ActivityStreamStorage streamStorage = (ActivityStreamStorage) container.getComponentInstanceOfType(ActivityStreamStorage.class);
+    if (scheduler.offer(owner, streamStorage.getFeedLastMigration(owner)) && scheduler.startDrain()) {
+      try {
+        StreamInvocationHelper.warmUp();
+      } catch (RuntimeException e) {
+        //the queued warm-ups are run by the next login, which must be able to schedule the drain
+        scheduler.cancelDrain();
+        LOG.warn("Failed to schedule the feed warm-up: " + e.getMessage());
+      }
+    }
     
   }
 }
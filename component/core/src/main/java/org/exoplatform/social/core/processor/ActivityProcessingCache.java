@@ -0,0 +1,410 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.processor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.ActivityProcessor;
+import org.exoplatform.social.core.BaseActivityProcessorPlugin;
+import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.storage.api.ActivityStorage;
+import org.exoplatform.social.core.storage.cache.CacheGenerations;
+import org.exoplatform.social.core.storage.cache.SocialStorageCacheService;
+
+/**
+ * Keeps the output of the write-time activity processors.
+ *
+ * The processors are run by priority. The leading processors which are
+ * {@link BaseActivityProcessorPlugin#isWriteTime() write-time} are run once per content of the
+ * activity: their title, body and template params are kept with the raw ones and reused while
+ * the raw content, the processor chain and the identities are unchanged. The following processors
+ * are render-time, they are run on every read.
+ *
+ * An entry depends on the identities which posted the activity or are mentioned by it. The changes
+ * of an identity are counted by the replicated generation of its bucket, so that an entry kept by a
+ * node is not reused after the profile of one of its identities was saved on another one, while the
+ * entries of the other identities are kept.
+ */
+@Managed
+@ManagedDescription("Activity processing cache")
+public class ActivityProcessingCache {
+
+  private static final Log LOG = ExoLogger.getLogger(ActivityProcessingCache.class);
+
+  private static final String CAPACITY_PARAM = "capacity";
+
+  /** the @username expressions substituted by the {@link MentionsProcessor} */
+  private static final Pattern MENTION = Pattern.compile("@([^\\s]+)");
+
+  /** The default number of processed activities kept. */
+  public static final int DEFAULT_CAPACITY = 10000;
+
+  private final int capacity;
+
+  /** key => processed activity, the least recently used first, guarded by itself */
+  private final LinkedHashMap<String, ProcessedActivity> entries;
+
+  /** the cluster-wide generations of the identities, null to count the changes of this node only */
+  private final CacheGenerations generations;
+
+  /** bucket name => generation, the changes of this node when there are no cluster-wide generations */
+  private final ConcurrentMap<String, AtomicLong> localGenerations = new ConcurrentHashMap<String, AtomicLong>();
+
+  /** the number of identity changes on this node */
+  private final AtomicLong identityGeneration = new AtomicLong();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public ActivityProcessingCache(InitParams params, SocialStorageCacheService cacheService) {
+    this(intParam(params, CAPACITY_PARAM, DEFAULT_CAPACITY), cacheService.getGenerations());
+  }
+
+  /**
+   * @param capacity the number of processed activities kept, 0 to run the processors on every read
+   */
+  public ActivityProcessingCache(int capacity) {
+    this(capacity, null);
+  }
+
+  /**
+   * @param capacity the number of processed activities kept, 0 to run the processors on every read
+   * @param generations the replicated generations, null to only see the identity changes of this node
+   */
+  public ActivityProcessingCache(final int capacity, CacheGenerations generations) {
+    this.capacity = capacity;
+    this.generations = generations;
+    this.entries = new LinkedHashMap<String, ProcessedActivity>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, ProcessedActivity> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Processes an activity loaded from the storage.
+   *
+   * @param activity the activity, its id is the cache key
+   * @param processors the processors sorted by priority
+   */
+  public void process(ExoSocialActivity activity, Collection<ActivityProcessor> processors) {
+    List<ActivityProcessor> writeTime = new ArrayList<ActivityProcessor>();
+    List<ActivityProcessor> renderTime = new ArrayList<ActivityProcessor>();
+    for (ActivityProcessor processor : processors) {
+      if (renderTime.isEmpty() && processor instanceof BaseActivityProcessorPlugin
+          && ((BaseActivityProcessorPlugin) processor).isWriteTime()) {
+        writeTime.add(processor);
+      } else {
+        renderTime.add(processor);
+      }
+    }
+
+    if (capacity <= 0 || activity.getId() == null || writeTime.isEmpty()) {
+      run(activity, writeTime);
+    } else {
+      processWriteTime(activity, writeTime);
+    }
+    run(activity, renderTime);
+  }
+
+  private void processWriteTime(ExoSocialActivity activity, List<ActivityProcessor> processors) {
+    StringBuilder key = new StringBuilder(activity.getId());
+    long chainVersion = 17;
+    for (ActivityProcessor processor : processors) {
+      chainVersion = 31 * chainVersion + System.identityHashCode(processor);
+      String context = ((BaseActivityProcessorPlugin) processor).getContextKey();
+      if (context != null) {
+        key.append('/').append(context);
+      }
+    }
+
+    ProcessedActivity processed;
+    synchronized (entries) {
+      processed = entries.get(key.toString());
+    }
+    if (processed != null && processed.matches(activity, chainVersion) && isCurrent(processed)) {
+      hits.incrementAndGet();
+      processed.apply(activity);
+      return;
+    }
+
+    misses.incrementAndGet();
+    String[] buckets = bucketsOf(activity);
+    long[] bucketGenerations = new long[buckets.length];
+    for (int i = 0; i < buckets.length; i++) {
+      bucketGenerations[i] = current(buckets[i]);
+    }
+    ProcessedActivity raw = new ProcessedActivity(activity, chainVersion, buckets, bucketGenerations);
+    run(activity, processors);
+    raw.processed(activity);
+    synchronized (entries) {
+      entries.put(key.toString(), raw);
+    }
+  }
+
+  private boolean isCurrent(ProcessedActivity processed) {
+    for (int i = 0; i < processed.buckets.length; i++) {
+      if (current(processed.buckets[i]) != processed.generations[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long current(String bucket) {
+    if (generations != null) {
+      return generations.current(bucket);
+    }
+    AtomicLong generation = localGenerations.get(bucket);
+    return generation != null ? generation.get() : 0;
+  }
+
+  /**
+   * Gets the generation buckets of the identities an activity depends on: the poster, the stream
+   * owner and the mentioned identities by id, the @username expressions of its content by remote id.
+   */
+  private static String[] bucketsOf(ExoSocialActivity activity) {
+    Set<String> buckets = new TreeSet<String>();
+    addBucket(buckets, activity.getPosterId());
+    addBucket(buckets, activity.getUserId());
+    if (activity.getMentionedIds() != null) {
+      for (String mentioned : activity.getMentionedIds()) {
+        if (mentioned != null) {
+          //identityId@count
+          addBucket(buckets, mentioned.split(ActivityStorage.MENTION_CHAR)[0]);
+        }
+      }
+    }
+    addMentions(buckets, activity.getTitle());
+    addMentions(buckets, activity.getBody());
+    if (activity.getTemplateParams() != null) {
+      for (String value : activity.getTemplateParams().values()) {
+        addMentions(buckets, value);
+      }
+    }
+    return buckets.toArray(new String[buckets.size()]);
+  }
+
+  private static void addMentions(Set<String> buckets, String message) {
+    if (message != null) {
+      Matcher matcher = MENTION.matcher(message);
+      while (matcher.find()) {
+        addBucket(buckets, matcher.group(1));
+      }
+    }
+  }
+
+  private static void addBucket(Set<String> buckets, String identity) {
+    if (identity != null && identity.length() > 0) {
+      buckets.add(CacheGenerations.processedActivities(identity));
+    }
+  }
+
+  private static void run(ExoSocialActivity activity, List<ActivityProcessor> processors) {
+    for (ActivityProcessor processor : processors) {
+      try {
+        processor.processActivity(activity);
+      } catch (Exception e) {
+        LOG.warn("activity processing failed " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Forgets the processed output of an activity.
+   *
+   * @param activityId the activity id
+   */
+  public void invalidate(String activityId) {
+    synchronized (entries) {
+      Iterator<String> it = entries.keySet().iterator();
+      while (it.hasNext()) {
+        String key = it.next();
+        if (key.equals(activityId) || key.startsWith(activityId + "/")) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Marks the processed outputs posted by or mentioning an identity as stale because the identity
+   * changed: their mentions are resolved again on the next read.
+   *
+   * @param identity the changed identity
+   */
+  public void identityChanged(Identity identity) {
+    identityGeneration.incrementAndGet();
+    bump(identity.getId());
+    bump(identity.getRemoteId());
+  }
+
+  private void bump(String identity) {
+    if (identity == null) {
+      return;
+    }
+    String bucket = CacheGenerations.processedActivities(identity);
+    if (generations != null) {
+      generations.bump(bucket);
+    } else {
+      AtomicLong generation = localGenerations.get(bucket);
+      if (generation == null) {
+        AtomicLong created = new AtomicLong();
+        generation = localGenerations.putIfAbsent(bucket, created);
+        if (generation == null) {
+          generation = created;
+        }
+      }
+      generation.incrementAndGet();
+    }
+  }
+
+  @Managed
+  @ManagedDescription("Forgets all the processed activities")
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  @Managed
+  @ManagedName("Size")
+  @ManagedDescription("The number of processed activities kept")
+  public int getSize() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  @Managed
+  @ManagedName("Capacity")
+  @ManagedDescription("The maximum number of processed activities kept")
+  public int getCapacity() {
+    return capacity;
+  }
+
+  @Managed
+  @ManagedName("Hits")
+  @ManagedDescription("The number of reads which reused the processed activity")
+  public long getHits() {
+    return hits.get();
+  }
+
+  @Managed
+  @ManagedName("Misses")
+  @ManagedDescription("The number of reads which ran the write-time processors")
+  public long getMisses() {
+    return misses.get();
+  }
+
+  @Managed
+  @ManagedName("IdentityGeneration")
+  @ManagedDescription("The number of identity changes on this node which made their processed activities stale")
+  public long getIdentityGeneration() {
+    return identityGeneration.get();
+  }
+
+  private static int intParam(InitParams params, String name, int defaultValue) {
+    ValueParam param = params != null ? params.getValueParam(name) : null;
+    if (param == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.valueOf(param.getValue());
+    } catch (Exception e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * The raw and the processed content of an activity.
+   */
+  private static class ProcessedActivity {
+
+    private final String rawTitle;
+    private final String rawBody;
+    private final Map<String, String> rawTemplateParams;
+    private final long chainVersion;
+
+    /** the generation buckets of the identities the output depends on, and their generations */
+    private final String[] buckets;
+    private final long[] generations;
+
+    private String title;
+    private String body;
+    private Map<String, String> templateParams;
+
+    private ProcessedActivity(ExoSocialActivity activity, long chainVersion, String[] buckets, long[] generations) {
+      this.rawTitle = activity.getTitle();
+      this.rawBody = activity.getBody();
+      this.rawTemplateParams = copy(activity.getTemplateParams());
+      this.chainVersion = chainVersion;
+      this.buckets = buckets;
+      this.generations = generations;
+    }
+
+    private void processed(ExoSocialActivity activity) {
+      this.title = activity.getTitle();
+      this.body = activity.getBody();
+      this.templateParams = copy(activity.getTemplateParams());
+    }
+
+    private boolean matches(ExoSocialActivity activity, long chainVersion) {
+      return this.chainVersion == chainVersion
+          && equals(rawTitle, activity.getTitle()) && equals(rawBody, activity.getBody())
+          && equals(rawTemplateParams, activity.getTemplateParams());
+    }
+
+    private void apply(ExoSocialActivity activity) {
+      activity.setTitle(title);
+      activity.setBody(body);
+      //the processors update the params in place, the activity gets its own copy
+      activity.setTemplateParams(copy(templateParams));
+    }
+
+    private static Map<String, String> copy(Map<String, String> params) {
+      return params != null ? new LinkedHashMap<String, String>(params) : null;
+    }
+
+    private static boolean equals(Object o1, Object o2) {
+      return o1 == null ? o2 == null : o1.equals(o2);
+    }
+  }
+}
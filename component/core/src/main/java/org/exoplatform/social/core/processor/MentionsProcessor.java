@@ -21,6 +21,7 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.exoplatform.commons.utils.CommonsUtils;
 import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.portal.webui.util.Util;
 import org.exoplatform.social.core.BaseActivityProcessorPlugin;
@@ -42,15 +43,23 @@ public class MentionsProcessor extends BaseActivityProcessorPlugin {
     super(params);
   }
 
+  /**
+   * The links depend on the mentioned identities, on the portal and on the domain, the output is
+   * cached per portal and domain.
+   */
+  @Override
+  public boolean isWriteTime() {
+    return true;
+  }
+  
+  @Override
+  public String getContextKey() {
+    return getPortalOwner() + "@" + getCurrentDomain();
+  }
+
   public void processActivity(ExoSocialActivity activity) {
     if (activity != null) {
-      String portalOwner = null;
-      try{
-        portalOwner = Util.getPortalRequestContext().getPortalOwner();
-      } catch (Exception e){
-        //default value for testing and social
-        portalOwner = LinkProvider.DEFAULT_PORTAL_OWNER;
-      }
+      String portalOwner = getPortalOwner();
       activity.setTitle(substituteUsernames(portalOwner, activity.getTitle()));
       activity.setBody(substituteUsernames(portalOwner, activity.getBody()));
       Map<String, String> templateParams = activity.getTemplateParams();
@@ -61,6 +70,24 @@ public class MentionsProcessor extends BaseActivityProcessorPlugin {
     }
   }
 
+  private String getPortalOwner() {
+    try{
+      return Util.getPortalRequestContext().getPortalOwner();
+    } catch (Exception e){
+      //default value for testing and social
+      return LinkProvider.DEFAULT_PORTAL_OWNER;
+    }
+  }
+
+  private String getCurrentDomain() {
+    //the domain of the profile links, see LinkProvider#getProfileLink(String, String)
+    try {
+      return CommonsUtils.getCurrentDomain();
+    } catch (NullPointerException e) {
+      return null;
+    }
+  }
+
   /*
    * Substitute @username expressions by full user profile link
    */
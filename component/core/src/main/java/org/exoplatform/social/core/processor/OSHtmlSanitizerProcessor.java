@@ -32,6 +32,11 @@ public class OSHtmlSanitizerProcessor extends BaseActivityProcessorPlugin {
     super(params);
   }
 
+  @Override
+  public boolean isWriteTime() {
+    return true;
+  }
+
   public void processActivity(ExoSocialActivity activity) {
     if (xmlProcessor == null) {
       xmlProcessor = (XMLProcessor) PortalContainer.getInstance().getComponentInstanceOfType(XMLProcessor.class);
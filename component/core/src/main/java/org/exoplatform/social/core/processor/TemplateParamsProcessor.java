@@ -31,6 +31,11 @@ public class TemplateParamsProcessor extends BaseActivityProcessorPlugin {
     super(params);
   }
   
+  @Override
+  public boolean isWriteTime() {
+    return true;
+  }
+  
   public void processActivity(ExoSocialActivity activity) {
     try {
       Map<String,String> params = activity.getTemplateParams();
@@ -0,0 +1,847 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.relationship;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.social.core.storage.cache.CacheGenerations;
+import org.exoplatform.social.core.storage.cache.SocialStorageCacheService;
+
+/**
+ * In memory index of the connections used to suggest the people an identity may know.
+ *
+ * The identities are mapped to int ids, the connections and the identities which must not be
+ * suggested (pending or ignored relationships) of an identity are kept as sorted int arrays.
+ * The arrays are replaced rather than modified so that the suggestions are computed without
+ * holding the lock of the index.
+ *
+ * The relationships of an identity are loaded on first use and kept up to date by the relationship
+ * writes. The changes made by another cluster node are seen through the replicated
+ * {@link CacheGenerations}: the relationships of an identity are reloaded once the generation of
+ * its bucket changed, the suggestions are computed again once the generation of the bucket of the
+ * identity or of one of the walked connections changed. They are also reloaded once older than the
+ * max age. The suggestions are ranked by number of common connections then by identity id, they are
+ * cached until the connections of the identity or of one of its connections change.
+ *
+ * When the relationships of more than the max number of identities are loaded, or when more than
+ * {@link #REFERENCED_PER_IDENTITY} times this number of identities are referenced, the most recently
+ * used half of the loaded identities is kept, the other ones are reloaded on next use.
+ */
+@Managed
+@ManagedDescription("People suggestion index")
+public class SuggestionIndex {
+
+  private static final String MAX_IDENTITIES_PARAM = "max-identities";
+  private static final String MAX_AGE_PARAM = "max-age";
+
+  /** The default max number of indexed identities. */
+  public static final int DEFAULT_MAX_IDENTITIES = 100000;
+
+  /** The default max age of the indexed relationships, in seconds. */
+  public static final int DEFAULT_MAX_AGE = 3600;
+
+  /** The max number of referenced identities, loaded or not, per max number of loaded identities. */
+  public static final int REFERENCED_PER_IDENTITY = 4;
+
+  private static final int[] EMPTY = new int[0];
+
+  private static final String[] NO_NAMES = new String[0];
+
+  private static final long[] NO_GENERATIONS = new long[0];
+
+  /**
+   * Loads the relationships of an identity from the storage.
+   */
+  public interface Loader {
+
+    /**
+     * @param identityId the identity id
+     * @return the relationships of the identity
+     * @throws Exception if the relationships can't be loaded
+     */
+    Relations load(String identityId) throws Exception;
+  }
+
+  /**
+   * The relationships of an identity.
+   */
+  public static class Relations {
+
+    private final Collection<String> connections;
+
+    private final Collection<String> excluded;
+
+    /**
+     * @param connections the ids of the confirmed connections
+     * @param excluded the ids of the identities which must not be suggested
+     */
+    public Relations(Collection<String> connections, Collection<String> excluded) {
+      this.connections = connections;
+      this.excluded = excluded;
+    }
+  }
+
+  private final int maxIdentities;
+
+  private final long maxAge;
+
+  /** the cluster-wide relationship generations, null when the index is local to the node */
+  private final CacheGenerations generations;
+
+  private volatile State state = new State();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong computations = new AtomicLong();
+  private final AtomicLong loads = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public SuggestionIndex(InitParams params, SocialStorageCacheService cacheService) {
+    this(intParam(params, MAX_IDENTITIES_PARAM, DEFAULT_MAX_IDENTITIES),
+         intParam(params, MAX_AGE_PARAM, DEFAULT_MAX_AGE) * 1000L,
+         cacheService.getGenerations());
+  }
+
+  /**
+   * @param maxIdentities the max number of identities whose relationships are loaded
+   * @param maxAge the max age of the indexed relationships in milliseconds, 0 or less to keep them
+   */
+  public SuggestionIndex(int maxIdentities, long maxAge) {
+    this(maxIdentities, maxAge, null);
+  }
+
+  /**
+   * @param maxIdentities the max number of identities whose relationships are loaded
+   * @param maxAge the max age of the indexed relationships in milliseconds, 0 or less to keep them
+   * @param generations the replicated relationship generations, null to only see the writes of this node
+   */
+  public SuggestionIndex(int maxIdentities, long maxAge, CacheGenerations generations) {
+    this.maxIdentities = maxIdentities;
+    this.maxAge = maxAge;
+    this.generations = generations;
+  }
+
+  /**
+   * Gets the identities having the most connections in common with the given identity.
+   *
+   * @param identityId the identity id
+   * @param maxConnections the max number of connections of each connection to walk, -1 for all
+   * @param maxConnectionsToLoad the max number of connections of the identity to walk, -1 for all
+   * @param maxSuggestions the max number of suggestions, -1 for all
+   * @param loader the loader of the relationships not indexed yet
+   * @return the suggested identity ids with their number of common connections, the highest first
+   * @throws Exception if the relationships can't be loaded
+   */
+  public Map<String, Integer> getSuggestions(String identityId, int maxConnections, int maxConnectionsToLoad,
+                                             int maxSuggestions, Loader loader) throws Exception {
+    long checked = generation(CacheGenerations.RELATIONSHIPS);
+    State current = state;
+    Node node = node(current, identityId, loader);
+
+    Suggestions cached = node.suggestions;
+    if (cached != null && cached.matches(maxConnections, maxConnectionsToLoad, maxSuggestions)
+        && !expired(cached.computedAt) && isCurrent(cached, checked)) {
+      hits.incrementAndGet();
+      return cached.toMap();
+    }
+
+    long mods = current.mods();
+    computations.incrementAndGet();
+
+    //the generations of the buckets of the walked relationships, when they were loaded
+    Map<String, Long> walkedGenerations = new HashMap<String, Long>();
+    walked(walkedGenerations, identityId, node);
+    int self = node.id;
+    int[] connections = snapshot(node.connections);
+    int[] excluded = snapshot(node.excluded);
+    int walked = limit(connections.length, maxConnectionsToLoad);
+    IntCounter counter = new IntCounter();
+    for (int i = 0; i < walked; i++) {
+      String connectionId = current.nameOf(connections[i]);
+      Node connection = node(current, connectionId, loader);
+      walked(walkedGenerations, connectionId, connection);
+      int[] others = snapshot(connection.connections);
+      int size = limit(others.length, maxConnections);
+      for (int j = 0; j < size; j++) {
+        int other = others[j];
+        if (other != self && Arrays.binarySearch(connections, other) < 0 && Arrays.binarySearch(excluded, other) < 0) {
+          counter.increment(other);
+        }
+      }
+    }
+
+    Suggestions computed = rank(current, counter, maxConnections, maxConnectionsToLoad, maxSuggestions);
+    computed.walked(walkedGenerations, checked);
+    synchronized (current) {
+      //the connections changed during the computation, the result is not kept
+      if (current.mods == mods) {
+        node.suggestions = computed;
+      }
+    }
+    evictIfFull(current);
+    return computed.toMap();
+  }
+
+  /**
+   * Records a confirmed connection.
+   *
+   * @param identityId1 the id of the first identity
+   * @param identityId2 the id of the second identity
+   */
+  public void connected(String identityId1, String identityId2) {
+    State current;
+    do {
+      current = state;
+      synchronized (current) {
+        Node node1 = current.nodes[current.idOf(identityId1)];
+        Node node2 = current.nodes[current.idOf(identityId2)];
+        if (node1.isLoaded()) {
+          node1.connections = add(node1.connections, node2.id);
+          node1.excluded = remove(node1.excluded, node2.id);
+        }
+        if (node2.isLoaded()) {
+          node2.connections = add(node2.connections, node1.id);
+          node2.excluded = remove(node2.excluded, node1.id);
+        }
+        invalidateAround(current, node1);
+        invalidateAround(current, node2);
+        current.mods++;
+      }
+      //replaced by the eviction meanwhile, the change is applied again to the kept identities
+    } while (current != state);
+  }
+
+  /**
+   * Records a removed relationship, confirmed or not.
+   *
+   * @param identityId1 the id of the first identity
+   * @param identityId2 the id of the second identity
+   */
+  public void disconnected(String identityId1, String identityId2) {
+    State current;
+    do {
+      current = state;
+      synchronized (current) {
+        Node node1 = current.find(identityId1);
+        Node node2 = current.find(identityId2);
+        invalidateAround(current, node1);
+        invalidateAround(current, node2);
+        if (node1 != null && node2 != null) {
+          if (node1.isLoaded()) {
+            node1.connections = remove(node1.connections, node2.id);
+            node1.excluded = remove(node1.excluded, node2.id);
+          }
+          if (node2.isLoaded()) {
+            node2.connections = remove(node2.connections, node1.id);
+            node2.excluded = remove(node2.excluded, node1.id);
+          }
+        }
+        current.mods++;
+      }
+      //replaced by the eviction meanwhile, the change is applied again to the kept identities
+    } while (current != state);
+  }
+
+  /**
+   * Records a pending or an ignored relationship, the identities must not be suggested to each other.
+   *
+   * @param identityId1 the id of the first identity
+   * @param identityId2 the id of the second identity
+   */
+  public void excluded(String identityId1, String identityId2) {
+    State current;
+    do {
+      current = state;
+      synchronized (current) {
+        int id1 = current.idOf(identityId1);
+        int id2 = current.idOf(identityId2);
+        Node node1 = current.nodes[id1];
+        Node node2 = current.nodes[id2];
+        if (node1.isLoaded()) {
+          node1.excluded = add(node1.excluded, id2);
+        }
+        if (node2.isLoaded()) {
+          node2.excluded = add(node2.excluded, id1);
+        }
+        node1.suggestions = null;
+        node2.suggestions = null;
+        current.mods++;
+      }
+      //replaced by the eviction meanwhile, the change is applied again to the kept identities
+    } while (current != state);
+  }
+
+  /**
+   * Forgets the relationships of an identity and of its connections, they are reloaded on next use.
+   * Used when an identity is deleted or disabled.
+   *
+   * @param identityId the identity id
+   */
+  public void invalidate(String identityId) {
+    State current;
+    do {
+      current = state;
+      synchronized (current) {
+        Node node = current.find(identityId);
+        if (node != null && node.connections != null) {
+          for (int id : node.connections) {
+            invalidateAround(current, current.nodes[id]);
+            current.unload(current.nodes[id]);
+          }
+        }
+        invalidateAround(current, node);
+        current.unload(node);
+        current.mods++;
+      }
+      //replaced by the eviction meanwhile, the change is applied again to the kept identities
+    } while (current != state);
+  }
+
+  @Managed
+  @ManagedDescription("Clears the index")
+  public void clear() {
+    state = new State();
+  }
+
+  @Managed
+  @ManagedName("Identities")
+  @ManagedDescription("The number of identities whose relationships are loaded")
+  public int getIdentities() {
+    return state.loaded();
+  }
+
+  @Managed
+  @ManagedName("Hits")
+  @ManagedDescription("The number of suggestions returned from the index without computation")
+  public long getHits() {
+    return hits.get();
+  }
+
+  @Managed
+  @ManagedName("Computations")
+  @ManagedDescription("The number of suggestions computed")
+  public long getComputations() {
+    return computations.get();
+  }
+
+  @Managed
+  @ManagedName("Loads")
+  @ManagedDescription("The number of relationships loaded from the storage")
+  public long getLoads() {
+    return loads.get();
+  }
+
+  @Managed
+  @ManagedName("Evictions")
+  @ManagedDescription("The number of identities whose relationships have been evicted because the index was full")
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  private Node node(State current, String identityId, Loader loader) throws Exception {
+    long generation = generation(CacheGenerations.relationships(identityId));
+    Node node;
+    long mods;
+    synchronized (current) {
+      node = current.nodes[current.idOf(identityId)];
+      node.usedAt = ++current.ticks;
+      if (node.isLoaded() && node.generation == generation && !expired(node.loadedAt)) {
+        return node;
+      }
+      mods = current.mods;
+    }
+
+    Relations relations = loader.load(identityId);
+    loads.incrementAndGet();
+
+    synchronized (current) {
+      int[] previous = node.connections;
+      node.connections = ids(current, relations.connections);
+      node.excluded = ids(current, relations.excluded);
+      node.generation = generation;
+      //a relationship changed during the load, the relations are reloaded on next use
+      node.loadedAt = current.mods == mods ? System.currentTimeMillis() : 0;
+      if (previous == null) {
+        current.loaded++;
+      } else if (!Arrays.equals(previous, node.connections)) {
+        invalidate(current, previous);
+        invalidateAround(current, node);
+      }
+    }
+    return node;
+  }
+
+  /**
+   * Keeps the most recently used half of the loaded identities when too many identities are
+   * loaded or referenced, the index is replaced by the kept ones.
+   */
+  private void evictIfFull(State current) {
+    synchronized (current) {
+      if (current != state
+          || (current.loaded <= maxIdentities && current.size <= (long) maxIdentities * REFERENCED_PER_IDENTITY)) {
+        return;
+      }
+      State kept = current.keep(maxIdentities / 2);
+      evictions.addAndGet(current.loaded - kept.loaded);
+      state = kept;
+    }
+  }
+
+  /**
+   * Records the generation of the relationships bucket of a walked identity.
+   */
+  private void walked(Map<String, Long> walkedGenerations, String identityId, Node node) {
+    if (generations == null) {
+      return;
+    }
+    String name = CacheGenerations.relationships(identityId);
+    //the first one is the oldest, the suggestions are outdated if the bucket changed since
+    if (!walkedGenerations.containsKey(name)) {
+      walkedGenerations.put(name, node.generation);
+    }
+  }
+
+  /**
+   * Checks that the relationships walked by the suggestions did not change since they were computed.
+   * The generations of their buckets are only compared when a relationship was written since the last check.
+   */
+  private boolean isCurrent(Suggestions suggestions, long checked) {
+    if (generations == null || suggestions.checked == checked) {
+      return true;
+    }
+    for (int i = 0; i < suggestions.walked.length; i++) {
+      if (generations.current(suggestions.walked[i]) != suggestions.walkedGenerations[i]) {
+        return false;
+      }
+    }
+    //still up to date, the next reads only compare the generation of all the relationships
+    suggestions.checked = checked;
+    return true;
+  }
+
+  /**
+   * @return the current generation, 0 when the index is local to the node
+   */
+  private long generation(String name) {
+    return generations != null ? generations.current(name) : 0;
+  }
+
+  private boolean expired(long time) {
+    return maxAge > 0 && System.currentTimeMillis() - time > maxAge;
+  }
+
+  private Suggestions rank(State current, IntCounter counter, int maxConnections, int maxConnectionsToLoad,
+                           int maxSuggestions) {
+    int size = counter.size();
+    final int[] ids = new int[size];
+    final int[] counts = new int[size];
+    counter.copyTo(ids, counts);
+
+    //sorts by count then by identity id, on the positions of the entries
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    final String[] names = new String[size];
+    synchronized (current) {
+      for (int i = 0; i < size; i++) {
+        names[i] = current.names[ids[i]];
+      }
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer o1, Integer o2) {
+        int c = counts[o2] - counts[o1];
+        return c != 0 ? c : names[o1].compareTo(names[o2]);
+      }
+    });
+
+    int kept = limit(size, maxSuggestions);
+    String[] rankedNames = new String[kept];
+    int[] rankedCounts = new int[kept];
+    for (int i = 0; i < kept; i++) {
+      rankedNames[i] = names[order[i]];
+      rankedCounts[i] = counts[order[i]];
+    }
+    return new Suggestions(maxConnections, maxConnectionsToLoad, maxSuggestions, rankedNames, rankedCounts);
+  }
+
+  /**
+   * @return the ids, empty if the relationships have been unloaded meanwhile
+   */
+  private static int[] snapshot(int[] ids) {
+    return ids != null ? ids : EMPTY;
+  }
+
+  private static int limit(int size, int max) {
+    return max > 0 ? Math.min(size, max) : size;
+  }
+
+  private static int[] ids(State current, Collection<String> identityIds) {
+    if (identityIds == null || identityIds.isEmpty()) {
+      return EMPTY;
+    }
+    int[] ids = new int[identityIds.size()];
+    int i = 0;
+    for (String identityId : identityIds) {
+      ids[i++] = current.idOf(identityId);
+    }
+    Arrays.sort(ids);
+    //removes the duplicates
+    int size = 0;
+    for (i = 0; i < ids.length; i++) {
+      if (size == 0 || ids[size - 1] != ids[i]) {
+        ids[size++] = ids[i];
+      }
+    }
+    return size == ids.length ? ids : Arrays.copyOf(ids, size);
+  }
+
+  /**
+   * Invalidates the suggestions of an identity and of its connections, which walk its connections.
+   */
+  private static void invalidateAround(State current, Node node) {
+    if (node == null) {
+      return;
+    }
+    node.suggestions = null;
+    if (node.connections != null) {
+      invalidate(current, node.connections);
+    }
+  }
+
+  private static void invalidate(State current, int[] ids) {
+    for (int id : ids) {
+      Node connection = current.nodes[id];
+      if (connection != null) {
+        connection.suggestions = null;
+      }
+    }
+  }
+
+  static int[] add(int[] ids, int id) {
+    int index = Arrays.binarySearch(ids, id);
+    if (index >= 0) {
+      return ids;
+    }
+    index = -index - 1;
+    int[] added = new int[ids.length + 1];
+    System.arraycopy(ids, 0, added, 0, index);
+    added[index] = id;
+    System.arraycopy(ids, index, added, index + 1, ids.length - index);
+    return added;
+  }
+
+  static int[] remove(int[] ids, int id) {
+    int index = Arrays.binarySearch(ids, id);
+    if (index < 0) {
+      return ids;
+    }
+    int[] removed = new int[ids.length - 1];
+    System.arraycopy(ids, 0, removed, 0, index);
+    System.arraycopy(ids, index + 1, removed, index, ids.length - index - 1);
+    return removed;
+  }
+
+  private static int intParam(InitParams params, String name, int defaultValue) {
+    ValueParam param = params != null ? params.getValueParam(name) : null;
+    if (param == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.valueOf(param.getValue());
+    } catch (Exception e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * The indexed identities, replaced when the index is cleared.
+   */
+  private static class State {
+
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    private String[] names = new String[64];
+
+    private Node[] nodes = new Node[64];
+
+    private int size;
+
+    /** the number of nodes whose relationships are loaded */
+    private int loaded;
+
+    private long mods;
+
+    /** the last use of a node */
+    private long ticks;
+
+    synchronized int loaded() {
+      return loaded;
+    }
+
+    synchronized long mods() {
+      return mods;
+    }
+
+    synchronized String nameOf(int id) {
+      return names[id];
+    }
+
+    Node find(String identityId) {
+      Integer id = ids.get(identityId);
+      return id == null ? null : nodes[id];
+    }
+
+    int idOf(String identityId) {
+      Integer id = ids.get(identityId);
+      if (id != null) {
+        return id;
+      }
+      if (size == names.length) {
+        names = Arrays.copyOf(names, size * 2);
+        nodes = Arrays.copyOf(nodes, size * 2);
+      }
+      names[size] = identityId;
+      nodes[size] = new Node(size);
+      ids.put(identityId, size);
+      return size++;
+    }
+
+    void unload(Node node) {
+      if (node != null) {
+        if (node.isLoaded()) {
+          loaded--;
+        }
+        node.connections = null;
+        node.excluded = null;
+        node.suggestions = null;
+      }
+    }
+
+    /**
+     * Copies the most recently used loaded nodes to a new state, without their suggestions.
+     * The ids of the new state only map the kept identities and the identities they reference.
+     */
+    State keep(int max) {
+      List<Node> used = new ArrayList<Node>();
+      for (int id = 0; id < size; id++) {
+        if (nodes[id].isLoaded()) {
+          used.add(nodes[id]);
+        }
+      }
+      Collections.sort(used, new Comparator<Node>() {
+        public int compare(Node o1, Node o2) {
+          return o1.usedAt == o2.usedAt ? 0 : (o1.usedAt > o2.usedAt ? -1 : 1);
+        }
+      });
+      State kept = new State();
+      kept.ticks = ticks;
+      for (Node node : used.subList(0, Math.min(max, used.size()))) {
+        Node copy = kept.nodes[kept.idOf(names[node.id])];
+        copy.connections = kept.ids(this, node.connections);
+        copy.excluded = kept.ids(this, node.excluded);
+        copy.loadedAt = node.loadedAt;
+        copy.generation = node.generation;
+        copy.usedAt = node.usedAt;
+        kept.loaded++;
+      }
+      return kept;
+    }
+
+    private int[] ids(State from, int[] fromIds) {
+      int[] ids = new int[fromIds.length];
+      for (int i = 0; i < fromIds.length; i++) {
+        ids[i] = idOf(from.names[fromIds[i]]);
+      }
+      Arrays.sort(ids);
+      return ids;
+    }
+  }
+
+  /**
+   * The relationships of an identity.
+   */
+  private static class Node {
+
+    private final int id;
+
+    private volatile int[] connections;
+
+    private volatile int[] excluded;
+
+    private long loadedAt;
+
+    /** the generation of the relationships bucket of the identity when they were loaded */
+    private long generation;
+
+    /** the tick of the last use, guarded by the state */
+    private long usedAt;
+
+    private volatile Suggestions suggestions;
+
+    Node(int id) {
+      this.id = id;
+    }
+
+    boolean isLoaded() {
+      return connections != null;
+    }
+  }
+
+  /**
+   * The suggestions computed for an identity with the given parameters.
+   */
+  private static class Suggestions {
+
+    private final int maxConnections;
+    private final int maxConnectionsToLoad;
+    private final int maxSuggestions;
+    private final String[] ids;
+    private final int[] counts;
+    private final long computedAt = System.currentTimeMillis();
+
+    /** the relationships buckets of the identity and of the walked connections, with their generations */
+    private String[] walked = NO_NAMES;
+    private long[] walkedGenerations = NO_GENERATIONS;
+
+    /** the generation of all the relationships when the walked buckets were last compared */
+    private volatile long checked;
+
+    Suggestions(int maxConnections, int maxConnectionsToLoad, int maxSuggestions, String[] ids, int[] counts) {
+      this.maxConnections = maxConnections;
+      this.maxConnectionsToLoad = maxConnectionsToLoad;
+      this.maxSuggestions = maxSuggestions;
+      this.ids = ids;
+      this.counts = counts;
+    }
+
+    void walked(Map<String, Long> generations, long checked) {
+      walked = new String[generations.size()];
+      walkedGenerations = new long[generations.size()];
+      int i = 0;
+      for (Map.Entry<String, Long> entry : generations.entrySet()) {
+        walked[i] = entry.getKey();
+        walkedGenerations[i++] = entry.getValue();
+      }
+      this.checked = checked;
+    }
+
+    boolean matches(int maxConnections, int maxConnectionsToLoad, int maxSuggestions) {
+      return this.maxConnections == maxConnections && this.maxConnectionsToLoad == maxConnectionsToLoad
+          && this.maxSuggestions == maxSuggestions;
+    }
+
+    Map<String, Integer> toMap() {
+      Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+      for (int i = 0; i < ids.length; i++) {
+        map.put(ids[i], counts[i]);
+      }
+      return map;
+    }
+  }
+
+  /**
+   * Counts the occurrences of int ids, open addressing with linear probing.
+   */
+  static class IntCounter {
+
+    private int[] keys = new int[64];
+
+    private int[] values = new int[64];
+
+    private int size;
+
+    IntCounter() {
+      Arrays.fill(keys, -1);
+    }
+
+    void increment(int key) {
+      int mask = keys.length - 1;
+      int index = (key * 0x9E3779B9) >>> 7 & mask;
+      while (keys[index] != -1 && keys[index] != key) {
+        index = (index + 1) & mask;
+      }
+      if (keys[index] == -1) {
+        keys[index] = key;
+        if (++size * 2 > keys.length) {
+          values[index] = 1;
+          resize();
+          return;
+        }
+      }
+      values[index]++;
+    }
+
+    int get(int key) {
+      int mask = keys.length - 1;
+      int index = (key * 0x9E3779B9) >>> 7 & mask;
+      while (keys[index] != -1) {
+        if (keys[index] == key) {
+          return values[index];
+        }
+        index = (index + 1) & mask;
+      }
+      return 0;
+    }
+
+    int size() {
+      return size;
+    }
+
+    void copyTo(int[] ids, int[] counts) {
+      int i = 0;
+      for (int index = 0; index < keys.length; index++) {
+        if (keys[index] != -1) {
+          ids[i] = keys[index];
+          counts[i++] = values[index];
+        }
+      }
+    }
+
+    private void resize() {
+      int[] oldKeys = keys;
+      int[] oldValues = values;
+      keys = new int[oldKeys.length * 2];
+      values = new int[oldKeys.length * 2];
+      Arrays.fill(keys, -1);
+      int mask = keys.length - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != -1) {
+          int index = (oldKeys[i] * 0x9E3779B9) >>> 7 & mask;
+          while (keys[index] != -1) {
+            index = (index + 1) & mask;
+          }
+          keys[index] = oldKeys[i];
+          values[index] = oldValues[i];
+        }
+      }
+    }
+  }
+}
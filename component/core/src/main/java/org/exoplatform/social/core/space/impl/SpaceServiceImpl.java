@@ -51,6 +51,7 @@ import org.exoplatform.social.core.space.SpaceLifecycle;
 import org.exoplatform.social.core.space.SpaceListAccess;
 import org.exoplatform.social.core.space.SpaceListenerPlugin;
 import org.exoplatform.social.core.space.SpaceUtils;
+import org.exoplatform.social.core.space.model.MemberSet;
 import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.space.model.Space.UpdatedField;
 import org.exoplatform.social.core.space.spi.SpaceApplicationHandler;
@@ -573,12 +574,11 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public void addMember(Space space, String userId) {
-    String[] members = space.getMembers();
     space = this.removeInvited(space, userId);
     space = this.removePending(space, userId);
-    if (!ArrayUtils.contains(members, userId)) {
-      members = (String[]) ArrayUtils.add(members, userId);
-      space.setMembers(members);
+    MemberSet members = space.getMemberSet();
+    if (!members.contains(userId)) {
+      space.setMembers((String[]) ArrayUtils.add(space.getMembers(), userId));
       this.updateSpace(space);
       SpaceUtils.addUserToGroupWithMemberMembership(userId, space.getGroupId());
       spaceLifeCycle.memberJoined(space, userId);
@@ -600,10 +600,9 @@ public class SpaceServiceImpl implements SpaceService {
     if (spaceIdentity.isDeleted()) {
       return;
     }
-    String[] members = space.getMembers();
-    if (ArrayUtils.contains(members, userId)) {
-      members = (String[]) ArrayUtils.removeElement(members, userId);
-      space.setMembers(members);
+    MemberSet members = space.getMemberSet();
+    if (members.contains(userId)) {
+      space.setMembers((String[]) ArrayUtils.removeElement(space.getMembers(), userId));
       this.updateSpace(space);
       SpaceUtils.removeUserFromGroupWithMemberMembership(userId, space.getGroupId());
       spaceLifeCycle.memberLeft(space, userId);
@@ -621,10 +620,9 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   private Space addPending(Space space, String userId) {
-    String[] pendingUsers = space.getPendingUsers();
-    if (!ArrayUtils.contains(pendingUsers, userId)) {
-      pendingUsers = (String[]) ArrayUtils.add(pendingUsers, userId);
-      space.setPendingUsers(pendingUsers);
+    MemberSet pendingUsers = space.getPendingSet();
+    if (!pendingUsers.contains(userId)) {
+      space.setPendingUsers((String[]) ArrayUtils.add(space.getPendingUsers(), userId));
     }
     return space;
   }
@@ -633,10 +631,9 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   private Space removePending(Space space, String userId) {
-    String[] pendingUsers = space.getPendingUsers();
-    if (ArrayUtils.contains(pendingUsers, userId)) {
-      pendingUsers = (String[]) ArrayUtils.removeElement(pendingUsers, userId);
-      space.setPendingUsers(pendingUsers);
+    MemberSet pendingUsers = space.getPendingSet();
+    if (pendingUsers.contains(userId)) {
+      space.setPendingUsers((String[]) ArrayUtils.removeElement(space.getPendingUsers(), userId));
     }
     return space;
   }
@@ -645,10 +642,9 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   private Space addInvited(Space space, String userId) {
-    String[] invitedUsers = space.getInvitedUsers();
-    if (!ArrayUtils.contains(invitedUsers, userId)) {
-      invitedUsers = (String[]) ArrayUtils.add(invitedUsers, userId);
-      space.setInvitedUsers(invitedUsers);
+    MemberSet invitedUsers = space.getInvitedSet();
+    if (!invitedUsers.contains(userId)) {
+      space.setInvitedUsers((String[]) ArrayUtils.add(space.getInvitedUsers(), userId));
     }
     return space;
   }
@@ -657,10 +653,9 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   private Space removeInvited(Space space, String userId) {
-    String[] invitedUsers = space.getInvitedUsers();
-    if (ArrayUtils.contains(invitedUsers, userId)) {
-      invitedUsers = (String[]) ArrayUtils.removeElement(invitedUsers, userId);
-      space.setInvitedUsers(invitedUsers);
+    MemberSet invitedUsers = space.getInvitedSet();
+    if (invitedUsers.contains(userId)) {
+      space.setInvitedUsers((String[]) ArrayUtils.removeElement(space.getInvitedUsers(), userId));
     }
     return space;
   }
@@ -734,7 +729,7 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public boolean isMember(Space space, String userId) {
-    if (ArrayUtils.contains(space.getMembers(), userId)) return true;
+    if (space.getMemberSet().contains(userId)) return true;
     return SpaceUtils.isUserHasMembershipTypesInGroup(userId, space.getGroupId(), MembershipTypeHandler.ANY_MEMBERSHIP_TYPE);
   }
 
@@ -750,8 +745,8 @@ public class SpaceServiceImpl implements SpaceService {
    */
   public boolean hasAccessPermission(Space space, String userId) {
     if (userId.equals(getUserACL().getSuperUser()) 
-        || (ArrayUtils.contains(space.getMembers(), userId)) 
-        || (ArrayUtils.contains(space.getManagers(), userId))) {
+        || (space.getMemberSet().contains(userId)) 
+        || (space.getManagerSet().contains(userId))) {
       return true;
     }
     return false;
@@ -1221,14 +1216,14 @@ public class SpaceServiceImpl implements SpaceService {
    */
   public void addInvitedUser(Space space, String userId) {
 
-    if (ArrayUtils.contains(space.getMembers(),userId)) {
+    if (space.getMemberSet().contains(userId)) {
       //user is already member. Do nothing
       return;
     }
-    if (ArrayUtils.contains(space.getInvitedUsers(), userId)) {
+    if (space.getInvitedSet().contains(userId)) {
       LOG.warn("User already invited");
       return;
-    } else if (ArrayUtils.contains(space.getMembers(), userId) && !userId.equals(getUserACL().getSuperUser())) {
+    } else if (space.getMemberSet().contains(userId) && !userId.equals(getUserACL().getSuperUser())) {
       LOG.warn("User already member");
       return;
     }
@@ -1246,12 +1241,12 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public void addPendingUser(Space space, String userId) {
-    if (ArrayUtils.contains(space.getMembers(),userId)) {
+    if (space.getMemberSet().contains(userId)) {
         //user is already member. Do nothing
         return;
     }
 
-    if (ArrayUtils.contains(space.getPendingUsers(), userId)) {
+    if (space.getPendingSet().contains(userId)) {
       this.addMember(space, userId);
       space = removeInvited(space, userId);
       this.updateSpace(space);
@@ -1359,7 +1354,7 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public boolean hasSettingPermission(Space space, String userId) {
-    if (userId.equals(getUserACL().getSuperUser()) || ArrayUtils.contains(space.getManagers(), userId)) {
+    if (userId.equals(getUserACL().getSuperUser()) || space.getManagerSet().contains(userId)) {
       return true;
     }
     return SpaceUtils.isUserHasMembershipTypesInGroup(userId, space.getGroupId(), MembershipTypeHandler.ANY_MEMBERSHIP_TYPE);
@@ -1369,14 +1364,14 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public boolean isInvitedUser(Space space, String userId) {
-    return ArrayUtils.contains(space.getInvitedUsers(), userId);
+    return space.getInvitedSet().contains(userId);
   }
 
   /**
    * {@inheritDoc}
    */
   public boolean isManager(Space space, String userId) {
-    if (ArrayUtils.contains(space.getManagers(), userId)) return true;
+    if (space.getManagerSet().contains(userId)) return true;
     return SpaceUtils.isUserHasMembershipTypesInGroup(userId, space.getGroupId(), MembershipTypeHandler.ANY_MEMBERSHIP_TYPE);
   }
 
@@ -1384,7 +1379,8 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public boolean isOnlyManager(Space space, String userId) {
-    if (space.getManagers() != null && space.getManagers().length == 1 && ArrayUtils.contains(space.getManagers(), userId)) {
+    //the array may hold duplicates, a manager who is twice in it is not the only one
+    if (space.getManagers() != null && space.getManagers().length == 1 && space.getManagerSet().contains(userId)) {
       return true;
     }
     return false;
@@ -1394,7 +1390,7 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public boolean isPendingUser(Space space, String userId) {
-    return ArrayUtils.contains(space.getPendingUsers(), userId);
+    return space.getPendingSet().contains(userId);
   }
 
   /**
@@ -1408,7 +1404,7 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public void removeInvitedUser(Space space, String userId) {
-    if (ArrayUtils.contains(space.getInvitedUsers(), userId)) {
+    if (space.getInvitedSet().contains(userId)) {
       space = this.removeInvited(space, userId);
       this.updateSpace(space);
     }
@@ -1418,7 +1414,7 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public void removePendingUser(Space space, String userId) {
-    if (ArrayUtils.contains(space.getPendingUsers(), userId)) {
+    if (space.getPendingSet().contains(userId)) {
       space = this.removePending(space, userId);
       this.updateSpace(space);
     }
@@ -1428,19 +1424,17 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public void setManager(Space space, String userId, boolean isManager) {
-    String[] managers = space.getManagers();
+    MemberSet managers = space.getManagerSet();
     if (isManager) {
-      if (!ArrayUtils.contains(managers, userId)) {
-        managers = (String[]) ArrayUtils.add(managers, userId);
-        space.setManagers(managers);
+      if (!managers.contains(userId)) {
+        space.setManagers((String[]) ArrayUtils.add(space.getManagers(), userId));
         this.updateSpace(space);
         SpaceUtils.addUserToGroupWithManagerMembership(userId, space.getGroupId());
         spaceLifeCycle.grantedLead(space, userId);
       }
     } else {
-      if (ArrayUtils.contains(managers, userId)) {
-        managers = (String[]) ArrayUtils.removeElement(managers, userId);
-        space.setManagers(managers);
+      if (managers.contains(userId)) {
+        space.setManagers((String[]) ArrayUtils.removeElement(space.getManagers(), userId));
         this.updateSpace(space);
         SpaceUtils.removeUserFromGroupWithManagerMembership(userId, space.getGroupId());
         Space updatedSpace = getSpaceById(space.getId()); 
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.space.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Immutable set of user ids of a space (members, managers, pending or invited users).
+ *
+ * The ids are kept in a sorted array, so that a membership check is a binary search. The set is
+ * only used for the checks, the arrays of the space keep the order the users were added in.
+ *
+ * @since 4.4.0
+ */
+public final class MemberSet implements Serializable {
+
+  private static final long serialVersionUID = -1436925410853047151L;
+
+  /** The empty set. */
+  public static final MemberSet EMPTY = new MemberSet(new String[0], null);
+
+  /** The sorted ids, never exposed. */
+  private final String[] ids;
+
+  /** The array the set was built from, null when it was added to or removed from. */
+  private final transient String[] source;
+
+  private MemberSet(String[] ids, String[] source) {
+    this.ids = ids;
+    this.source = source;
+  }
+
+  /**
+   * Builds the set of the given ids, the null ids and the duplicates are ignored.
+   *
+   * @param ids the ids, may be null
+   * @return the set
+   */
+  public static MemberSet of(String[] ids) {
+    if (ids == null || ids.length == 0) {
+      return EMPTY;
+    }
+    String[] sorted = new String[ids.length];
+    int size = 0;
+    for (String id : ids) {
+      if (id != null) {
+        sorted[size++] = id;
+      }
+    }
+    Arrays.sort(sorted, 0, size);
+
+    //removes the duplicates
+    int unique = 0;
+    for (int i = 0; i < size; i++) {
+      if (unique == 0 || !sorted[i].equals(sorted[unique - 1])) {
+        sorted[unique++] = sorted[i];
+      }
+    }
+    return unique == 0 ? EMPTY : new MemberSet(unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique), ids);
+  }
+
+  /**
+   * @param ids the ids, may be null
+   * @return true if the set was built by {@link #of(String[])} from the given array, it holds the same ids
+   */
+  boolean isOf(String[] ids) {
+    if (this == EMPTY) {
+      return ids == null || ids.length == 0;
+    }
+    return source == ids;
+  }
+
+  /**
+   * @param userId the user id
+   * @return true if the user is in the set
+   */
+  public boolean contains(String userId) {
+    return userId != null && Arrays.binarySearch(ids, userId) >= 0;
+  }
+
+  /**
+   * @param userId the user id to add
+   * @return the set with the user, this set if the user is already in it
+   */
+  public MemberSet add(String userId) {
+    if (userId == null) {
+      return this;
+    }
+    int index = Arrays.binarySearch(ids, userId);
+    if (index >= 0) {
+      return this;
+    }
+    index = -index - 1;
+    String[] added = new String[ids.length + 1];
+    System.arraycopy(ids, 0, added, 0, index);
+    added[index] = userId;
+    System.arraycopy(ids, index, added, index + 1, ids.length - index);
+    return new MemberSet(added, null);
+  }
+
+  /**
+   * @param userId the user id to remove
+   * @return the set without the user, this set if the user is not in it
+   */
+  public MemberSet remove(String userId) {
+    int index = userId == null ? -1 : Arrays.binarySearch(ids, userId);
+    if (index < 0) {
+      return this;
+    }
+    if (ids.length == 1) {
+      return EMPTY;
+    }
+    String[] removed = new String[ids.length - 1];
+    System.arraycopy(ids, 0, removed, 0, index);
+    System.arraycopy(ids, index + 1, removed, index, ids.length - index - 1);
+    return new MemberSet(removed, null);
+  }
+
+  /**
+   * Gets the ids of the given array which are not in this set.
+   *
+   * @param others the ids, may be null
+   * @return the ids which are not in this set, in the order of the array
+   */
+  public String[] missing(String[] others) {
+    if (others == null) {
+      return new String[0];
+    }
+    String[] missing = new String[others.length];
+    int size = 0;
+    for (String id : others) {
+      if (!contains(id)) {
+        missing[size++] = id;
+      }
+    }
+    return size == missing.length ? missing : Arrays.copyOf(missing, size);
+  }
+
+  public int size() {
+    return ids.length;
+  }
+
+  public boolean isEmpty() {
+    return ids.length == 0;
+  }
+
+  /**
+   * @return a sorted copy of the ids
+   */
+  public String[] toArray() {
+    return ids.clone();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof MemberSet)) {
+      return false;
+    }
+    return Arrays.equals(ids, ((MemberSet) o).ids);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(ids);
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(ids);
+  }
+
+  private Object readResolve() {
+    return ids.length == 0 ? EMPTY : this;
+  }
+}
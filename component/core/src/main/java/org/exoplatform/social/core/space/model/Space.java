@@ -125,6 +125,12 @@ public class Space {
    * @since 1.2.0-GA
    */
   private String[] members;
+
+  /** The sets of users, built from the arrays when needed. */
+  private MemberSet memberSet;
+  private MemberSet managerSet;
+  private MemberSet pendingSet;
+  private MemberSet invitedSet;
   
   /** The Constant ACTIVE_STATUS. */
   public final static String ACTIVE_STATUS = "active";
@@ -338,6 +344,7 @@ public class Space {
    */
   public void setPendingUsers(String[] pendingUsers) {
     this.pendingUsers = pendingUsers;
+    this.pendingSet = null;
   }
 
   /**
@@ -349,6 +356,31 @@ public class Space {
     return pendingUsers;
   }
 
+  /**
+   * Gets the pending users as a set, for the membership checks.
+   *
+   * @return the set, never null
+   * @since 4.4.0
+   */
+  public MemberSet getPendingSet() {
+    if (pendingSet == null) {
+      pendingSet = MemberSet.of(pendingUsers);
+    }
+    return pendingSet;
+  }
+
+  /**
+   * Shares the set of the pending users built by {@link MemberSet#of(String[])} from the current array of the
+   * space, so that the spaces built from the same cached data do not build it again. A set built
+   * from another array is not kept: the set is then built from the array on the next check.
+   *
+   * @param pendingSet the set
+   * @since 4.4.0
+   */
+  public void setPendingSet(MemberSet pendingSet) {
+    this.pendingSet = pendingSet != null && pendingSet.isOf(pendingUsers) ? pendingSet : null;
+  }
+
   /**
    * Sets the invited users.
    *
@@ -356,6 +388,7 @@ public class Space {
    */
   public void setInvitedUsers(String[] invitedUsers) {
     this.invitedUsers = invitedUsers;
+    this.invitedSet = null;
   }
 
   /**
@@ -367,6 +400,31 @@ public class Space {
     return invitedUsers;
   }
 
+  /**
+   * Gets the invited users as a set, for the membership checks.
+   *
+   * @return the set, never null
+   * @since 4.4.0
+   */
+  public MemberSet getInvitedSet() {
+    if (invitedSet == null) {
+      invitedSet = MemberSet.of(invitedUsers);
+    }
+    return invitedSet;
+  }
+
+  /**
+   * Shares the set of the invited users built by {@link MemberSet#of(String[])} from the current array of the
+   * space, so that the spaces built from the same cached data do not build it again. A set built
+   * from another array is not kept: the set is then built from the array on the next check.
+   *
+   * @param invitedSet the set
+   * @since 4.4.0
+   */
+  public void setInvitedSet(MemberSet invitedSet) {
+    this.invitedSet = invitedSet != null && invitedSet.isOf(invitedUsers) ? invitedSet : null;
+  }
+
   /**
    * Sets the type.
    *
@@ -581,6 +639,31 @@ public class Space {
   public String[] getManagers() {
     return managers;
   }
+
+  /**
+   * Gets the managers as a set, for the membership checks.
+   *
+   * @return the set, never null
+   * @since 4.4.0
+   */
+  public MemberSet getManagerSet() {
+    if (managerSet == null) {
+      managerSet = MemberSet.of(managers);
+    }
+    return managerSet;
+  }
+
+  /**
+   * Shares the set of the managers built by {@link MemberSet#of(String[])} from the current array of the
+   * space, so that the spaces built from the same cached data do not build it again. A set built
+   * from another array is not kept: the set is then built from the array on the next check.
+   *
+   * @param managerSet the set
+   * @since 4.4.0
+   */
+  public void setManagerSet(MemberSet managerSet) {
+    this.managerSet = managerSet != null && managerSet.isOf(managers) ? managerSet : null;
+  }
   
   /**
    * Sets the managers of a space.
@@ -589,6 +672,7 @@ public class Space {
    */
   public void setManagers(String[] managers) {
     this.managers = managers;
+    this.managerSet = null;
   }
 
   /**
@@ -601,6 +685,31 @@ public class Space {
     return members;
   }
 
+  /**
+   * Gets the members as a set, for the membership checks.
+   *
+   * @return the set, never null
+   * @since 4.4.0
+   */
+  public MemberSet getMemberSet() {
+    if (memberSet == null) {
+      memberSet = MemberSet.of(members);
+    }
+    return memberSet;
+  }
+
+  /**
+   * Shares the set of the members built by {@link MemberSet#of(String[])} from the current array of the
+   * space, so that the spaces built from the same cached data do not build it again. A set built
+   * from another array is not kept: the set is then built from the array on the next check.
+   *
+   * @param memberSet the set
+   * @since 4.4.0
+   */
+  public void setMemberSet(MemberSet memberSet) {
+    this.memberSet = memberSet != null && memberSet.isOf(members) ? memberSet : null;
+  }
+
   /**
    * Sets the members of a space.
    * 
@@ -608,6 +717,7 @@ public class Space {
    */
   public void setMembers(String[] members) {
     this.members = members;
+    this.memberSet = null;
   }
   
   /**
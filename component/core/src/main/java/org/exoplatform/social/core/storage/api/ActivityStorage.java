@@ -23,6 +23,8 @@ import java.util.SortedSet;
 
 import org.exoplatform.container.component.BaseComponentPlugin;
 import org.exoplatform.social.core.ActivityProcessor;
+import org.exoplatform.social.core.activity.ActivityStreamCursor;
+import org.exoplatform.social.core.activity.ActivityStreamPage;
 import org.exoplatform.social.core.activity.filter.ActivityFilter;
 import org.exoplatform.social.core.activity.filter.ActivityUpdateFilter;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
@@ -59,7 +61,7 @@ public interface ActivityStorage {
    */
   void addPlugin(BaseComponentPlugin baseComponent);
   /**
-   * //sets value to tell this storage to inject Streams or not
+   * //sets value to tell this storage to inject Streams or not, for the current thread
    * @param mustInject
    */
   void setInjectStreams(boolean mustInject);
@@ -72,6 +74,15 @@ public interface ActivityStorage {
    */
   public ExoSocialActivity getActivity(String activityId) throws ActivityStorageException;
 
+  /**
+   * Loads several activities by their ids.
+   *
+   * @param activityIds the ids of the activities
+   * @return the activities in the order of the ids, null for the activities which are not found
+   * @since 4.0.x
+   */
+  public List<ExoSocialActivity> getActivities(List<String> activityIds) throws ActivityStorageException;
+
   /**
    * Gets all the activities by identity.
    *
@@ -1126,4 +1137,72 @@ public interface ActivityStorage {
    * @return
    */
   public List<ExoSocialActivity> getAllActivities(int index, int limit);
+
+  /**
+   * Gets the page of the activity feed following the given cursor.
+   * The stream is not walked from its top and the activities are not counted,
+   * the page tells if there are more activities.
+   * 
+   * Only the referenced activities are returned, see {@link ActivityStreamPage} about the
+   * streams which are not migrated yet.
+   * 
+   * @param ownerIdentity
+   * @param after the cursor returned with the previous page, null for the first page
+   * @param limit
+   * @return the page
+   * @since 4.1.x
+   */
+  public ActivityStreamPage getActivityFeed(Identity ownerIdentity, ActivityStreamCursor after, int limit);
+
+  /**
+   * Gets the page of the activities of the connections following the given cursor.
+   * The stream is not walked from its top and the activities are not counted,
+   * the page tells if there are more activities.
+   * 
+   * @param ownerIdentity
+   * @param after the cursor returned with the previous page, null for the first page
+   * @param limit
+   * @return the page
+   * @since 4.1.x
+   */
+  public ActivityStreamPage getActivitiesOfConnections(Identity ownerIdentity, ActivityStreamCursor after, int limit);
+
+  /**
+   * Gets the page of the activities of the spaces of an identity following the given cursor.
+   * The stream is not walked from its top and the activities are not counted,
+   * the page tells if there are more activities.
+   * 
+   * @param ownerIdentity
+   * @param after the cursor returned with the previous page, null for the first page
+   * @param limit
+   * @return the page
+   * @since 4.1.x
+   */
+  public ActivityStreamPage getUserSpacesActivities(Identity ownerIdentity, ActivityStreamCursor after, int limit);
+
+  /**
+   * Gets the page of the activities of a space following the given cursor.
+   * The stream is not walked from its top and the activities are not counted,
+   * the page tells if there are more activities.
+   * 
+   * @param ownerIdentity
+   * @param after the cursor returned with the previous page, null for the first page
+   * @param limit
+   * @return the page
+   * @since 4.1.x
+   */
+  public ActivityStreamPage getSpaceActivities(Identity ownerIdentity, ActivityStreamCursor after, int limit);
+
+  /**
+   * Gets the page of the activities of an identity following the given cursor.
+   * The stream is not walked from its top and the activities are not counted,
+   * the page tells if there are more activities.
+   * 
+   * @param ownerIdentity
+   * @param after the cursor returned with the previous page, null for the first page
+   * @param limit
+   * @return the page
+   * @since 4.1.x
+   */
+  public ActivityStreamPage getUserActivities(Identity ownerIdentity, ActivityStreamCursor after, int limit);
 }
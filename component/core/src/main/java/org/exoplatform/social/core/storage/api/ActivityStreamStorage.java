@@ -21,6 +21,8 @@ import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.exoplatform.social.common.service.ProcessContext;
+import org.exoplatform.social.core.activity.ActivityStreamCursor;
+import org.exoplatform.social.core.activity.ActivityStreamPage;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
@@ -89,6 +91,15 @@ public interface ActivityStreamStorage {
    * @since 4.0.2, 4.1.0
    */
   public void save(ProcessContext ctx);
+  
+  /**
+   * Creates the activity references queued for the connections of the posters
+   * on their Feed and Connections streams, by batch until the fan-out queue is empty.
+   * 
+   * @param ctx the process context
+   * @since 4.0.2, 4.1.0
+   */
+  public void fanOut(ProcessContext ctx);
 
   /**
    * Deletes the activity reference what relates the deleted Activity 
@@ -218,7 +229,7 @@ public interface ActivityStreamStorage {
   public List<String> getIdsFeed(Identity owner, int offset, int limit);
   
   /**
-   * Gets the number of owner's feed stream
+   * Gets the number of owner's feed stream, the activities merged on read are not counted
    * @param owner
    * @return
    * 
@@ -235,6 +246,15 @@ public interface ActivityStreamStorage {
    */
   public boolean hasSizeOfFeed(Identity owner);
   
+  /**
+   * Gets the time of the last migration of the Feed stream, without creating the stream
+   * @param owner
+   * @return the time at which activities were last migrated into the stream, 0 if it has never been migrated
+   * 
+   * @since 4.0.2, 4.1.0
+   */
+  public long getFeedLastMigration(Identity owner);
+  
   /**
    * Gets Connections stream by target identity
    * 
@@ -258,7 +278,7 @@ public interface ActivityStreamStorage {
   public List<String> getIdsConnections(Identity owner, int offset, int limit);
   
   /**
-   * The number of the activities on the owner's connection stream
+   * The number of the activities on the owner's connection stream, the activities merged on read are not counted
    * @param owner
    * @return
    * @since 4.0.2, 4.1.0
@@ -294,7 +314,7 @@ public interface ActivityStreamStorage {
   public List<String> getIdsMySpaces(Identity owner, int offset, int limit);
   
   /**
-   * The number of the activity on the owner's my space stream
+   * The number of the activity on the owner's my space stream, the activities merged on read are not counted
    * 
    * @param owner
    * @return
@@ -381,6 +401,66 @@ public interface ActivityStreamStorage {
    */
   public List<ExoSocialActivity> getViewerActivities(Identity owner, int offset, int limit);
   
+  /**
+   * Gets the page of the activity feed following the given cursor.
+   * The stream is not walked from its top and the activities are not counted.
+   * 
+   * @param owner the stream owner
+   * @param after the cursor returned with the previous page, null for the first page
+   * @param limit the page size
+   * @return the page
+   * @since 4.1.x
+   */
+  public ActivityStreamPage getFeed(Identity owner, ActivityStreamCursor after, int limit);
+  
+  /**
+   * Gets the page of the connections stream following the given cursor.
+   * The stream is not walked from its top and the activities are not counted.
+   * 
+   * @param owner the stream owner
+   * @param after the cursor returned with the previous page, null for the first page
+   * @param limit the page size
+   * @return the page
+   * @since 4.1.x
+   */
+  public ActivityStreamPage getConnections(Identity owner, ActivityStreamCursor after, int limit);
+  
+  /**
+   * Gets the page of the my spaces stream following the given cursor.
+   * The stream is not walked from its top and the activities are not counted.
+   * 
+   * @param owner the stream owner
+   * @param after the cursor returned with the previous page, null for the first page
+   * @param limit the page size
+   * @return the page
+   * @since 4.1.x
+   */
+  public ActivityStreamPage getMySpaces(Identity owner, ActivityStreamCursor after, int limit);
+  
+  /**
+   * Gets the page of the space stream following the given cursor.
+   * The stream is not walked from its top and the activities are not counted.
+   * 
+   * @param owner the stream owner
+   * @param after the cursor returned with the previous page, null for the first page
+   * @param limit the page size
+   * @return the page
+   * @since 4.1.x
+   */
+  public ActivityStreamPage getSpaceStream(Identity owner, ActivityStreamCursor after, int limit);
+  
+  /**
+   * Gets the page of the my activities stream following the given cursor.
+   * The stream is not walked from its top and the activities are not counted.
+   * 
+   * @param owner the stream owner
+   * @param after the cursor returned with the previous page, null for the first page
+   * @param limit the page size
+   * @return the page
+   * @since 4.1.x
+   */
+  public ActivityStreamPage getMyActivities(Identity owner, ActivityStreamCursor after, int limit);
+  
   /**
    * 
    * @param owner
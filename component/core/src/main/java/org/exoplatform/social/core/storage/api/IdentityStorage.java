@@ -71,6 +71,16 @@ public interface IdentityStorage {
    */
   public Identity findIdentityById(final String nodeId) throws IdentityStorageException;
 
+  /**
+   * Gets several identities by their ids, with their profiles loaded.
+   *
+   * @param identityIds the ids of the identities
+   * @return the identities in the order of the ids, null for the identities which are not found
+   * @throws IdentityStorageException
+   * @since 4.0.x
+   */
+  public List<Identity> findIdentitiesByIds(final List<String> identityIds) throws IdentityStorageException;
+
   /**
    * Deletes an identity from JCR
    *
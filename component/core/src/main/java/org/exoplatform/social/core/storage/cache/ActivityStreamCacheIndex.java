@@ -0,0 +1,660 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.services.cache.CacheListener;
+import org.exoplatform.services.cache.CacheListenerContext;
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.storage.cache.model.data.IntegerData;
+import org.exoplatform.social.core.storage.cache.model.data.ListActivitiesData;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityCountKey;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityKey;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityType;
+import org.exoplatform.social.core.storage.cache.model.key.ListActivitiesKey;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
+
+/**
+ * Reverse index of the activity list and count caches.
+ *
+ * Each cached list or count is indexed by its stream owner and stream (feed, connections,
+ * my spaces, space, my activities), the lists are also indexed by the activities they contain.
+ * A write only evicts the entries of the streams it touched instead of clearing the whole
+ * activity list caches.
+ *
+ * The stream fan-out marks the touched streams with {@link #touch(String, ActivityRefType)},
+ * they are evicted when the process ends with {@link #flush()}, once the changes are persisted.
+ *
+ * The streams which merge the activities of another stream when they are read are linked
+ * to it with {@link #link(String, ActivityRefType, String, ActivityRefType)}, they are
+ * evicted with it.
+ *
+ * The index only knows the entries put in cache by this node. When the caches are shared by
+ * a cluster, the keys are also stamped with the {@link CacheGenerations} of their stream with
+ * {@link #stamp(ActivityCountKey)} and {@link #stamp(ListActivitiesKey)}: an eviction bumps the
+ * generation of the stream, the other nodes do not look up the entries of the former one any more.
+ * The generation of a stream which merges other streams on read also depends on theirs.
+ *
+ * The entries expired or removed by the caches themselves are unindexed by a cache listener,
+ * the links of a stream are dropped with its last entry, they are set again when it is read.
+ */
+public class ActivityStreamCacheIndex {
+
+  /** Logger */
+  private static final Log LOG = ExoLogger.getLogger(ActivityStreamCacheIndex.class);
+
+  /** When more keys than this are indexed, the keys whose entries are gone from the caches are swept. */
+  public static final int DEFAULT_MAX_INDEXED_KEYS = 100000;
+
+  /**
+   * The indexed streams, the variants of a type (newer, older, for upgrade...) share the same stream.
+   */
+  public enum Stream {
+    FEED, CONNECTION, SPACES, SPACE, USER, COMMENTS, NONE;
+
+    public static Stream of(ActivityType type) {
+      if (type == null) {
+        return NONE;
+      }
+      switch (type) {
+        case FEED: case NEWER_FEED: case OLDER_FEED: case FEED_FOR_UPGRADE:
+          return FEED;
+        case CONNECTION: case NEWER_CONNECTION: case OLDER_CONNECTION: case CONNECTION_FOR_UPGRADE:
+          return CONNECTION;
+        case SPACES: case NEWER_SPACES: case OLDER_SPACES: case SPACES_FOR_UPGRADE:
+          return SPACES;
+        case SPACE: case NEWER_SPACE: case OLDER_SPACE: case SPACE_FOR_UPGRADE:
+          return SPACE;
+        case USER: case NEWER_USER: case OLDER_USER: case USER_FOR_UPGRADE: case VIEWER: case POSTER:
+          return USER;
+        case COMMENTS: case NEWER_COMMENTS: case OLDER_COMMENTS:
+          return COMMENTS;
+        default:
+          return NONE;
+      }
+    }
+
+    public static Stream of(ActivityRefType type) {
+      switch (type) {
+        case FEED:
+          return FEED;
+        case CONNECTION:
+          return CONNECTION;
+        case MY_SPACES:
+          return SPACES;
+        case SPACE_STREAM:
+          return SPACE;
+        case MY_ACTIVITIES:
+          return USER;
+        default:
+          return NONE;
+      }
+    }
+  }
+
+  private final ExoCache<ListActivitiesKey, ListActivitiesData> exoActivitiesCache;
+  private final ExoCache<ActivityCountKey, IntegerData> exoActivitiesCountCache;
+
+  /** owner/stream => cached lists */
+  private final ConcurrentMap<String, Set<ListActivitiesKey>> listsByStream = new ConcurrentHashMap<String, Set<ListActivitiesKey>>();
+
+  /** owner/stream => cached counts */
+  private final ConcurrentMap<String, Set<ActivityCountKey>> countsByStream = new ConcurrentHashMap<String, Set<ActivityCountKey>>();
+
+  /** activity id => cached lists containing it */
+  private final ConcurrentMap<String, Set<ListActivitiesKey>> listsByActivity = new ConcurrentHashMap<String, Set<ListActivitiesKey>>();
+
+  /** source stream => the streams merging it when they are read */
+  private final ConcurrentMap<String, Set<String>> linkedStreams = new ConcurrentHashMap<String, Set<String>>();
+
+  /** indexed list => the activity ids it contains */
+  private final ConcurrentMap<ListActivitiesKey, List<ActivityKey>> indexedLists = new ConcurrentHashMap<ListActivitiesKey, List<ActivityKey>>();
+
+  /** indexed counts */
+  private final Set<ActivityCountKey> indexedCounts = newKeySet();
+
+  /** lists which are not owned by one stream, like the activities of a list of identities */
+  private final Set<ListActivitiesKey> unownedLists = newKeySet();
+
+  /** stream => the source streams it merges when it is read */
+  private final ConcurrentMap<String, Set<String>> sourceStreams = new ConcurrentHashMap<String, Set<String>>();
+
+  /** the streams touched by the current process, by owner */
+  private final ThreadLocal<Map<String, Set<ActivityRefType>>> touched = new ThreadLocal<Map<String, Set<ActivityRefType>>>();
+
+  private final int maxIndexedKeys;
+
+  /** the number of indexed keys above which the index is swept */
+  private final AtomicInteger sweepThreshold;
+
+  /** the generations shared by the cluster nodes, null when the keys are not stamped */
+  private final CacheGenerations generations;
+
+  private final AtomicInteger indexedKeys = new AtomicInteger();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong fullClears = new AtomicLong();
+  private final AtomicLong sweeps = new AtomicLong();
+
+  public ActivityStreamCacheIndex(ExoCache<ListActivitiesKey, ListActivitiesData> exoActivitiesCache,
+                                  ExoCache<ActivityCountKey, IntegerData> exoActivitiesCountCache) {
+    this(exoActivitiesCache, exoActivitiesCountCache, null, DEFAULT_MAX_INDEXED_KEYS);
+  }
+
+  public ActivityStreamCacheIndex(ExoCache<ListActivitiesKey, ListActivitiesData> exoActivitiesCache,
+                                  ExoCache<ActivityCountKey, IntegerData> exoActivitiesCountCache,
+                                  int maxIndexedKeys) {
+    this(exoActivitiesCache, exoActivitiesCountCache, null, maxIndexedKeys);
+  }
+
+  public ActivityStreamCacheIndex(ExoCache<ListActivitiesKey, ListActivitiesData> exoActivitiesCache,
+                                  ExoCache<ActivityCountKey, IntegerData> exoActivitiesCountCache,
+                                  CacheGenerations generations) {
+    this(exoActivitiesCache, exoActivitiesCountCache, generations, DEFAULT_MAX_INDEXED_KEYS);
+  }
+
+  public ActivityStreamCacheIndex(ExoCache<ListActivitiesKey, ListActivitiesData> exoActivitiesCache,
+                                  ExoCache<ActivityCountKey, IntegerData> exoActivitiesCountCache,
+                                  CacheGenerations generations,
+                                  int maxIndexedKeys) {
+    this.exoActivitiesCache = exoActivitiesCache;
+    this.exoActivitiesCountCache = exoActivitiesCountCache;
+    this.generations = generations;
+    this.maxIndexedKeys = maxIndexedKeys;
+    this.sweepThreshold = new AtomicInteger(maxIndexedKeys);
+    exoActivitiesCache.addCacheListener(new ListsListener());
+    exoActivitiesCountCache.addCacheListener(new CountsListener());
+  }
+
+  /**
+   * Stamps a count key with the generation of its stream, must be done before it is looked up or put.
+   *
+   * @param key the count key
+   * @return the stamped key, the key itself when there are no generations
+   */
+  public ActivityCountKey stamp(ActivityCountKey key) {
+    if (generations == null) {
+      return key;
+    }
+    return key.withGeneration(generationOf(streamOf(key)));
+  }
+
+  /**
+   * Stamps a list key with the generation of its stream, must be done before it is looked up or put.
+   *
+   * @param key the list key
+   * @return the stamped key, the key itself when there are no generations
+   */
+  public ListActivitiesKey stamp(ListActivitiesKey key) {
+    if (generations == null) {
+      return key;
+    }
+    ActivityCountKey countKey = key.getKey();
+    if (countKey == null) {
+      return key.withGeneration(generations.current(CacheGenerations.UNOWNED_ACTIVITIES));
+    }
+    return key.withKey(stamp(countKey));
+  }
+
+  /**
+   * Indexes a list put in the activities cache.
+   *
+   * @param key the list key
+   * @param data the cached activity ids
+   */
+  public void register(ListActivitiesKey key, ListActivitiesData data) {
+    List<ActivityKey> ids = data != null && data.getIds() != null ? data.getIds() : Collections.<ActivityKey>emptyList();
+    List<ActivityKey> previous = indexedLists.put(key, ids);
+    if (previous == null) {
+      indexedKeys.incrementAndGet();
+    } else {
+      unindexActivities(key, previous);
+    }
+    ActivityCountKey countKey = key.getKey();
+    if (countKey == null) {
+      unownedLists.add(key);
+    } else {
+      add(listsByStream, streamOf(countKey), key);
+    }
+    for (ActivityKey activityKey : ids) {
+      add(listsByActivity, activityKey.getId(), key);
+    }
+    checkSize();
+  }
+
+  /**
+   * Indexes a count put in the activities count cache.
+   *
+   * @param key the count key
+   */
+  public void register(ActivityCountKey key) {
+    if (indexedCounts.add(key)) {
+      indexedKeys.incrementAndGet();
+    }
+    add(countsByStream, streamOf(key), key);
+    checkSize();
+  }
+
+  /**
+   * Unindexes a list which is no longer in the activities cache.
+   *
+   * @param key the list key
+   */
+  public void unregister(ListActivitiesKey key) {
+    List<ActivityKey> ids = indexedLists.remove(key);
+    if (ids == null) {
+      return;
+    }
+    indexedKeys.decrementAndGet();
+    ActivityCountKey countKey = key.getKey();
+    if (countKey == null) {
+      unownedLists.remove(key);
+    } else {
+      String stream = streamOf(countKey);
+      remove(listsByStream, stream, key);
+      release(stream);
+    }
+    unindexActivities(key, ids);
+  }
+
+  /**
+   * Unindexes a count which is no longer in the activities count cache.
+   *
+   * @param key the count key
+   */
+  public void unregister(ActivityCountKey key) {
+    if (!indexedCounts.remove(key)) {
+      return;
+    }
+    indexedKeys.decrementAndGet();
+    String stream = streamOf(key);
+    remove(countsByStream, stream, key);
+    release(stream);
+  }
+
+  /**
+   * Marks the stream of the given owner as touched by the current process.
+   *
+   * @param ownerId the stream owner identity id
+   * @param type the stream type
+   */
+  public void touch(String ownerId, ActivityRefType type) {
+    Map<String, Set<ActivityRefType>> streams = touched.get();
+    if (streams == null) {
+      streams = new HashMap<String, Set<ActivityRefType>>();
+      touched.set(streams);
+    }
+    Set<ActivityRefType> types = streams.get(ownerId);
+    if (types == null) {
+      types = EnumSet.noneOf(ActivityRefType.class);
+      streams.put(ownerId, types);
+    }
+    types.add(type);
+  }
+
+  /**
+   * Links a stream to the stream whose activities it merges when it is read,
+   * the stream is evicted when the source stream is.
+   *
+   * @param sourceId the source stream owner identity id
+   * @param sourceType the source stream type
+   * @param ownerId the stream owner identity id
+   * @param type the stream type
+   */
+  public void link(String sourceId, ActivityRefType sourceType, String ownerId, ActivityRefType type) {
+    String source = streamOf(sourceId, Stream.of(sourceType));
+    String stream = streamOf(ownerId, Stream.of(type));
+    //the links are not counted, they are dropped with the last entry of the stream
+    add(linkedStreams, source, stream);
+    add(sourceStreams, stream, source);
+  }
+
+  /**
+   * Evicts the streams touched by the current process, must be called once they are persisted.
+   *
+   * @return the touched stream types by owner identity id
+   */
+  public Map<String, Set<ActivityRefType>> flush() {
+    Map<String, Set<ActivityRefType>> streams = touched.get();
+    if (streams == null) {
+      return Collections.emptyMap();
+    }
+    touched.remove();
+    for (Map.Entry<String, Set<ActivityRefType>> entry : streams.entrySet()) {
+      for (ActivityRefType type : entry.getValue()) {
+        invalidate(streamOf(entry.getKey(), Stream.of(type)));
+      }
+    }
+    return streams;
+  }
+
+  /**
+   * Evicts the lists and counts of one stream of the given owner.
+   *
+   * @param ownerId the stream owner identity id
+   * @param stream the stream
+   */
+  public void invalidate(String ownerId, Stream stream) {
+    invalidate(streamOf(ownerId, stream));
+  }
+
+  /**
+   * Evicts the lists and counts of all the streams of the given owner.
+   *
+   * @param ownerId the stream owner identity id
+   */
+  public void invalidateOwner(String ownerId) {
+    for (Stream stream : Stream.values()) {
+      invalidate(streamOf(ownerId, stream));
+    }
+  }
+
+  /**
+   * Evicts the lists containing the given activity and its comment lists and counts.
+   *
+   * @param activityId the activity id
+   */
+  public void invalidateActivity(String activityId) {
+    removeLists(listsByActivity.remove(activityId));
+    invalidate(streamOf(activityId, Stream.COMMENTS));
+  }
+
+  /**
+   * Evicts the lists which are not owned by one stream.
+   */
+  public void invalidateUnowned() {
+    if (generations != null) {
+      generations.bump(CacheGenerations.UNOWNED_ACTIVITIES);
+    }
+    removeLists(new HashSet<ListActivitiesKey>(unownedLists));
+  }
+
+  /**
+   * Clears the activity list caches and the index.
+   */
+  public void clear() {
+    try {
+      exoActivitiesCache.clearCache();
+      exoActivitiesCountCache.clearCache();
+    } catch (Exception e) {
+      LOG.error(e);
+    }
+    indexedLists.clear();
+    indexedCounts.clear();
+    listsByStream.clear();
+    countsByStream.clear();
+    listsByActivity.clear();
+    linkedStreams.clear();
+    sourceStreams.clear();
+    unownedLists.clear();
+    indexedKeys.set(0);
+    fullClears.incrementAndGet();
+  }
+
+  /**
+   * Records a lookup in the activity list caches.
+   *
+   * @param hit true if the entry was found
+   */
+  public void lookup(boolean hit) {
+    if (hit) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public long getFullClears() {
+    return fullClears.get();
+  }
+
+  public long getSweeps() {
+    return sweeps.get();
+  }
+
+  public int getIndexedKeys() {
+    return indexedKeys.get();
+  }
+
+  private void invalidate(String stream) {
+    if (generations != null) {
+      generations.bump(CacheGenerations.stream(stream));
+    }
+    Set<String> linked = linkedStreams.remove(stream);
+    if (linked != null) {
+      for (String linkedStream : linked) {
+        invalidate(linkedStream);
+      }
+    }
+    removeLists(listsByStream.remove(stream));
+    Set<ActivityCountKey> counts = countsByStream.remove(stream);
+    if (counts != null) {
+      for (ActivityCountKey key : counts) {
+        if (exoActivitiesCountCache.remove(key) != null) {
+          evictions.incrementAndGet();
+        }
+        //the listener already unindexed it unless the entry was gone
+        unregister(key);
+      }
+    }
+    release(stream);
+  }
+
+  private void removeLists(Set<ListActivitiesKey> keys) {
+    if (keys == null) {
+      return;
+    }
+    for (ListActivitiesKey key : keys) {
+      if (exoActivitiesCache.remove(key) != null) {
+        evictions.incrementAndGet();
+      }
+      unregister(key);
+    }
+  }
+
+  private void unindexActivities(ListActivitiesKey key, List<ActivityKey> ids) {
+    for (ActivityKey activityKey : ids) {
+      remove(listsByActivity, activityKey.getId(), key);
+    }
+  }
+
+  /**
+   * Drops the links of a stream which has no more entries in cache.
+   */
+  private void release(String stream) {
+    if (listsByStream.containsKey(stream) || countsByStream.containsKey(stream)) {
+      return;
+    }
+    Set<String> sources = sourceStreams.remove(stream);
+    if (sources != null) {
+      for (String source : sources) {
+        remove(linkedStreams, source, stream);
+      }
+    }
+  }
+
+  /**
+   * The generation of a stream, combined with the generations of the streams it merges on read,
+   * which may be written by another node.
+   */
+  private long generationOf(String stream) {
+    long generation = generations.current(CacheGenerations.stream(stream));
+    Set<String> sources = sourceStreams.get(stream);
+    if (sources != null) {
+      for (String source : sources) {
+        generation += generations.current(CacheGenerations.stream(source));
+      }
+    }
+    return generation;
+  }
+
+  private void checkSize() {
+    //the entries evicted by the caches are unindexed by the listeners, the keys missed by them,
+    //like the entries dropped by another cluster node, are swept when the index grows too much
+    int threshold = sweepThreshold.get();
+    if (indexedKeys.get() > threshold && sweepThreshold.compareAndSet(threshold, Integer.MAX_VALUE)) {
+      try {
+        sweep();
+      } finally {
+        //do not sweep again before the index doubles if the cached entries are still there
+        sweepThreshold.set(Math.max(maxIndexedKeys, 2 * indexedKeys.get()));
+      }
+    }
+  }
+
+  private void sweep() {
+    LOG.debug("The activity stream cache index is full, unindexes the entries gone from the activity list caches.");
+    sweeps.incrementAndGet();
+    for (ListActivitiesKey key : indexedLists.keySet()) {
+      if (exoActivitiesCache.get(key) == null) {
+        unregister(key);
+      }
+    }
+    for (ActivityCountKey key : indexedCounts) {
+      if (exoActivitiesCountCache.get(key) == null) {
+        unregister(key);
+      }
+    }
+  }
+
+  private static <K> void add(ConcurrentMap<String, Set<K>> index, String name, K key) {
+    while (true) {
+      Set<K> keys = index.get(name);
+      if (keys == null) {
+        Set<K> created = newKeySet();
+        keys = index.putIfAbsent(name, created);
+        if (keys == null) {
+          keys = created;
+        }
+      }
+      keys.add(key);
+      if (index.get(name) == keys) {
+        return;
+      }
+      //the set was dropped empty meanwhile, add the key again to the new one
+    }
+  }
+
+  private static <K> void remove(ConcurrentMap<String, Set<K>> index, String name, K key) {
+    Set<K> keys = index.get(name);
+    if (keys == null) {
+      return;
+    }
+    keys.remove(key);
+    if (keys.isEmpty() && index.remove(name, keys)) {
+      //a key added meanwhile to the dropped set is added again
+      for (K added : keys) {
+        add(index, name, added);
+      }
+    }
+  }
+
+  private static String streamOf(ActivityCountKey key) {
+    Stream stream = Stream.of(key.getType());
+    if (stream == Stream.COMMENTS) {
+      ActivityKey activityKey = key.getActivityKey();
+      return streamOf(activityKey != null ? activityKey.getId() : key.getBaseId(), stream);
+    }
+    return streamOf(key.getKey() != null ? key.getKey().getId() : key.getBaseId(), stream);
+  }
+
+  private static String streamOf(String ownerId, Stream stream) {
+    return ownerId + "/" + stream.name();
+  }
+
+  private static <K> Set<K> newKeySet() {
+    return Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+  }
+
+  /**
+   * Unindexes the lists expired or removed from the activities cache.
+   */
+  private class ListsListener implements CacheListener<ListActivitiesKey, ListActivitiesData> {
+
+    public void onExpire(CacheListenerContext context, ListActivitiesKey key, ListActivitiesData obj) {
+      unregister(key);
+    }
+
+    public void onRemove(CacheListenerContext context, ListActivitiesKey key, ListActivitiesData obj) {
+      unregister(key);
+    }
+
+    public void onPut(CacheListenerContext context, ListActivitiesKey key, ListActivitiesData obj) {
+    }
+
+    public void onGet(CacheListenerContext context, ListActivitiesKey key, ListActivitiesData obj) {
+    }
+
+    public void onClearCache(CacheListenerContext context) {
+      for (ListActivitiesKey key : indexedLists.keySet()) {
+        unregister(key);
+      }
+    }
+  }
+
+  /**
+   * Unindexes the counts expired or removed from the activities count cache.
+   */
+  private class CountsListener implements CacheListener<ActivityCountKey, IntegerData> {
+
+    public void onExpire(CacheListenerContext context, ActivityCountKey key, IntegerData obj) {
+      unregister(key);
+    }
+
+    public void onRemove(CacheListenerContext context, ActivityCountKey key, IntegerData obj) {
+      unregister(key);
+    }
+
+    public void onPut(CacheListenerContext context, ActivityCountKey key, IntegerData obj) {
+    }
+
+    public void onGet(CacheListenerContext context, ActivityCountKey key, IntegerData obj) {
+    }
+
+    public void onClearCache(CacheListenerContext context) {
+      for (ActivityCountKey key : indexedCounts) {
+        unregister(key);
+      }
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.social.core.storage.cache.model.data.LongData;
+import org.exoplatform.social.core.storage.cache.model.key.GenerationKey;
+
+/**
+ * Generations of the identity, space, relationship and activity list caches.
+ *
+ * The list and count keys are stamped with the generation of what they depend on: the identities
+ * of a provider, the spaces or the relationships of an identity. A write bumps the generation
+ * instead of scanning the caches for the entries to remove, the entries of the former generation
+ * are not looked up any more and leave the caches through their normal eviction.
+ *
+ * The generations are kept in a cache so that they are shared by the cluster nodes. A generation
+ * is a random value: a generation which is evicted and created again does not match the entries
+ * of the former one.
+ *
+ * The relationships, the space lists of the users, the processed activities and the activity
+ * streams are spread over a fixed number of buckets, each one with its own generation, so that the
+ * number of generations does not grow with the number of identities: a write also hides the entries
+ * of the other identities or streams of its bucket.
+ */
+public class CacheGenerations {
+
+  /** The generation of the space lists and counts which are not owned by one user, bumped by any space write. */
+  public static final String SPACES = "spaces";
+
+  /** The generation of the activity lists which are not owned by one stream. */
+  public static final String UNOWNED_ACTIVITIES = "activities";
+
+  /** The generation bumped by any relationship write. */
+  public static final String RELATIONSHIPS = "relationships";
+
+  /** The generation of the disabled identities, bumped when an identity is enabled or disabled. */
+  public static final String DISABLED_IDENTITIES = "disabled-identities";
+
+  /** The number of buckets of the relationship generations. */
+  public static final int RELATIONSHIP_BUCKETS = 1024;
+
+  /** The number of buckets of the user space list generations. */
+  public static final int SPACE_BUCKETS = 1024;
+
+  /** The number of buckets of the processed activity generations. */
+  public static final int PROCESSED_ACTIVITY_BUCKETS = 1024;
+
+  /** The number of buckets of the activity stream generations. */
+  public static final int STREAM_BUCKETS = 4096;
+
+  private static final Random RANDOM = new Random();
+
+  private final ExoCache<GenerationKey, LongData> exoGenerationCache;
+
+  private final AtomicLong bumps = new AtomicLong();
+
+  public CacheGenerations(ExoCache<GenerationKey, LongData> exoGenerationCache) {
+    this.exoGenerationCache = exoGenerationCache;
+  }
+
+  /**
+   * Gets the name of the generation of the identity lists and counts of a provider.
+   *
+   * @param providerId the identity provider id
+   * @return the generation name
+   */
+  public static String identities(String providerId) {
+    return "identities/" + providerId;
+  }
+
+  /**
+   * Gets the name of the generation of the relationship lists, counts and suggestions of an identity.
+   *
+   * @param identityId the identity id
+   * @return the generation name
+   */
+  public static String relationships(String identityId) {
+    return "relationships/" + bucketOf(identityId, RELATIONSHIP_BUCKETS);
+  }
+
+  /**
+   * Gets the name of the generation of the space lists and counts of a user, the spaces he is member,
+   * manager, invited or pending of.
+   *
+   * @param userId the user remote id
+   * @return the generation name
+   */
+  public static String spaces(String userId) {
+    return "spaces/" + bucketOf(userId, SPACE_BUCKETS);
+  }
+
+  /**
+   * Gets the name of the generation of the processed activities posted by or mentioning an identity,
+   * bumped by the writes of the identity and of its profile.
+   *
+   * @param identity the identity id or remote id
+   * @return the generation name
+   */
+  public static String processedActivities(String identity) {
+    return "processed-activities/" + bucketOf(identity, PROCESSED_ACTIVITY_BUCKETS);
+  }
+
+  /**
+   * Gets the name of the generation of the activity lists and counts of a stream.
+   *
+   * @param stream the stream, owner id and stream name
+   * @return the generation name
+   */
+  public static String stream(String stream) {
+    return "stream/" + bucketOf(stream, STREAM_BUCKETS);
+  }
+
+  /**
+   * Gets the current generation, the keys of the cached entries are stamped with it.
+   *
+   * @param name the generation name
+   * @return the generation
+   */
+  public long current(String name) {
+    GenerationKey key = new GenerationKey(name);
+    LongData data = exoGenerationCache.get(key);
+    if (data != null) {
+      return data.build();
+    }
+    return next(key);
+  }
+
+  /**
+   * Starts a new generation, the entries stamped with the former one are not looked up any more.
+   *
+   * @param name the generation name
+   */
+  public void bump(String name) {
+    next(new GenerationKey(name));
+    bumps.incrementAndGet();
+  }
+
+  public long getBumps() {
+    return bumps.get();
+  }
+
+  private static int bucketOf(String name, int buckets) {
+    return (name.hashCode() & Integer.MAX_VALUE) % buckets;
+  }
+
+  private long next(GenerationKey key) {
+    long generation = RANDOM.nextLong();
+    exoGenerationCache.put(key, new LongData(generation));
+    return generation;
+  }
+}
@@ -63,7 +63,10 @@ public enum CacheType {
   SPACES("SpacesCache"),
   
   //
-  SPACE_SIMPLE("SpaceSimpleCache")
+  SPACE_SIMPLE("SpaceSimpleCache"),
+
+  //
+  GENERATIONS("GenerationsCache")
 
   ;
 
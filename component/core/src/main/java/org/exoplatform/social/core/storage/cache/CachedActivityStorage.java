@@ -18,22 +18,29 @@
 package org.exoplatform.social.core.storage.cache;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 
 import org.exoplatform.container.component.BaseComponentPlugin;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.social.core.ActivityProcessor;
+import org.exoplatform.social.core.activity.ActivityStreamCursor;
+import org.exoplatform.social.core.activity.ActivityStreamPage;
 import org.exoplatform.social.core.activity.filter.ActivityFilter;
 import org.exoplatform.social.core.activity.filter.ActivityUpdateFilter;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.storage.ActivityStorageException;
 import org.exoplatform.social.core.storage.api.ActivityStorage;
+import org.exoplatform.social.core.storage.cache.loader.CacheLoader;
 import org.exoplatform.social.core.storage.cache.loader.ServiceContext;
 import org.exoplatform.social.core.storage.cache.model.data.ActivityData;
 import org.exoplatform.social.core.storage.cache.model.data.IntegerData;
@@ -54,6 +61,7 @@ import org.exoplatform.social.core.storage.impl.ActivityStorageImpl;
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
  * @version $Revision$
  */
+@Managed
 public class CachedActivityStorage implements ActivityStorage {
 
   /** Logger */
@@ -67,6 +75,8 @@ public class CachedActivityStorage implements ActivityStorage {
   private final FutureExoCache<ActivityCountKey, IntegerData, ServiceContext<IntegerData>> activitiesCountCache;
   private final FutureExoCache<ListActivitiesKey, ListActivitiesData, ServiceContext<ListActivitiesData>> activitiesCache;
 
+  private final ActivityStreamCacheIndex streamCacheIndex;
+
   private ActivityStorageImpl storage;
   
   /**
@@ -91,6 +101,18 @@ public class CachedActivityStorage implements ActivityStorage {
 
   }
 
+  /**
+   * Clears the activity lists and counts of all the streams of the given owner,
+   * the lists of the other owners stay in cache.
+   * 
+   * @param ownerId the stream owner identity id
+   * @since 4.0.2
+   */
+  public void clearStreamCache(String ownerId) {
+    streamCacheIndex.invalidateOwner(ownerId);
+    streamCacheIndex.invalidateUnowned();
+  }
+
   void clearOwnerCache(String ownerId) {
 
     try {
@@ -130,7 +152,62 @@ public class CachedActivityStorage implements ActivityStorage {
   public void clearActivityCached(String activityId) {
     ActivityKey key = new ActivityKey(activityId);
     exoActivityCache.remove(key);
-    clearCache();
+    streamCacheIndex.invalidateActivity(activityId);
+    streamCacheIndex.invalidateUnowned();
+  }
+
+  @Managed
+  @ManagedName("StreamCacheHits")
+  @ManagedDescription("The number of hits of the activity list caches")
+  public long getStreamCacheHits() {
+    return streamCacheIndex.getHits();
+  }
+
+  @Managed
+  @ManagedName("StreamCacheMisses")
+  @ManagedDescription("The number of misses of the activity list caches")
+  public long getStreamCacheMisses() {
+    return streamCacheIndex.getMisses();
+  }
+
+  @Managed
+  @ManagedName("StreamCacheEvictions")
+  @ManagedDescription("The number of activity lists and counts evicted by a write")
+  public long getStreamCacheEvictions() {
+    return streamCacheIndex.getEvictions();
+  }
+
+  @Managed
+  @ManagedName("StreamCacheFullClears")
+  @ManagedDescription("The number of times the activity list caches were fully cleared")
+  public long getStreamCacheFullClears() {
+    return streamCacheIndex.getFullClears();
+  }
+
+  @Managed
+  @ManagedName("StreamCacheIndexSweeps")
+  @ManagedDescription("The number of times the keys gone from the activity list caches were swept from the index")
+  public long getStreamCacheIndexSweeps() {
+    return streamCacheIndex.getSweeps();
+  }
+
+  @Managed
+  @ManagedName("StreamCacheIndexedKeys")
+  @ManagedDescription("The number of activity lists and counts indexed by stream")
+  public int getStreamCacheIndexedKeys() {
+    return streamCacheIndex.getIndexedKeys();
+  }
+
+  /**
+   * Puts a count in cache out of the future cache.
+   * 
+   * @param key the count key
+   * @param data the count
+   */
+  private void putCount(ActivityCountKey key, IntegerData data) {
+    ActivityCountKey stamped = streamCacheIndex.stamp(key);
+    exoActivitiesCountCache.put(stamped, data);
+    streamCacheIndex.register(stamped);
   }
   
   /**
@@ -141,12 +218,11 @@ public class CachedActivityStorage implements ActivityStorage {
    */
   private List<ExoSocialActivity> buildActivities(ListActivitiesData data) {
 
-    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>();
+    List<String> ids = new ArrayList<String>(data.getIds().size());
     for (ActivityKey k : data.getIds()) {
-      ExoSocialActivity a = getActivity(k.getId());
-      activities.add(a);
+      ids.add(k.getId());
     }
-    return activities;
+    return getActivities(ids);
 
   }
 
@@ -200,8 +276,42 @@ public class CachedActivityStorage implements ActivityStorage {
 
     //
     this.activityCache = CacheType.ACTIVITY.createFutureCache(exoActivityCache);
-    this.activitiesCountCache = CacheType.ACTIVITIES_COUNT.createFutureCache(exoActivitiesCountCache);
-    this.activitiesCache = CacheType.ACTIVITIES.createFutureCache(exoActivitiesCache);
+    this.streamCacheIndex = cacheService.getActivityStreamCacheIndex();
+
+    //the lists and counts are stamped with the generation of their stream
+    //and indexed by stream when they are put in cache
+    this.activitiesCountCache = new FutureExoCache<ActivityCountKey, IntegerData, ServiceContext<IntegerData>>(
+        new CacheLoader<ActivityCountKey, IntegerData>(), exoActivitiesCountCache) {
+      @Override
+      protected IntegerData get(ActivityCountKey key) {
+        IntegerData data = super.get(streamCacheIndex.stamp(key));
+        streamCacheIndex.lookup(data != null);
+        return data;
+      }
+
+      @Override
+      protected void put(ActivityCountKey key, IntegerData entry) {
+        ActivityCountKey stamped = streamCacheIndex.stamp(key);
+        super.put(stamped, entry);
+        streamCacheIndex.register(stamped);
+      }
+    };
+    this.activitiesCache = new FutureExoCache<ListActivitiesKey, ListActivitiesData, ServiceContext<ListActivitiesData>>(
+        new CacheLoader<ListActivitiesKey, ListActivitiesData>(), exoActivitiesCache) {
+      @Override
+      protected ListActivitiesData get(ListActivitiesKey key) {
+        ListActivitiesData data = super.get(streamCacheIndex.stamp(key));
+        streamCacheIndex.lookup(data != null);
+        return data;
+      }
+
+      @Override
+      protected void put(ListActivitiesKey key, ListActivitiesData entry) {
+        ListActivitiesKey stamped = streamCacheIndex.stamp(key);
+        super.put(stamped, entry);
+        streamCacheIndex.register(stamped, entry);
+      }
+    };
 
   }
 
@@ -213,11 +323,25 @@ public class CachedActivityStorage implements ActivityStorage {
     if (activityId == null || activityId.length() == 0) {
       return ActivityData.NULL.build();
     }
+
+    //
+    return activityData(activityId).build();
+
+  }
+
+  /**
+   * Gets the cached data of an activity, a read-only view which is not copied.
+   *
+   * @param activityId the activity id
+   * @return the data, {@link ActivityData#NULL} if the activity is not found
+   */
+  private ActivityData activityData(final String activityId) {
+
     //
     ActivityKey key = new ActivityKey(activityId);
 
     //
-    ActivityData activity = activityCache.get(
+    return activityCache.get(
         new ServiceContext<ActivityData>() {
           public ActivityData execute() {
             try {
@@ -235,11 +359,47 @@ public class CachedActivityStorage implements ActivityStorage {
         },
         key);
 
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  public List<ExoSocialActivity> getActivities(final List<String> activityIds) throws ActivityStorageException {
+
+    //the cached activities are resolved first, the others are loaded together
+    ExoSocialActivity[] activities = new ExoSocialActivity[activityIds.size()];
+    List<String> missed = new ArrayList<String>();
+    List<Integer> missedIndexes = new ArrayList<Integer>();
+    for (int i = 0; i < activities.length; i++) {
+      String activityId = activityIds.get(i);
+      if (activityId == null || activityId.length() == 0) {
+        continue;
+      }
+      ActivityData data = exoActivityCache.get(new ActivityKey(activityId));
+      if (data != null) {
+        activities[i] = data.build();
+      }
+      else {
+        missed.add(activityId);
+        missedIndexes.add(i);
+      }
+    }
+
     //
-    return activity.build();
+    if (missed.size() > 0) {
+      List<ExoSocialActivity> got = storage.getActivities(missed);
+      for (int i = 0; i < got.size(); i++) {
+        ExoSocialActivity a = got.get(i);
+        exoActivityCache.put(new ActivityKey(missed.get(i)), a != null ? new ActivityData(a) : ActivityData.NULL);
+        activities[missedIndexes.get(i)] = a;
+      }
+    }
+
+    //
+    return new ArrayList<ExoSocialActivity>(Arrays.asList(activities));
 
   }
-  
+
   /**
    * {@inheritDoc}
    */
@@ -306,7 +466,9 @@ public class CachedActivityStorage implements ActivityStorage {
     ActivityKey activityKey = new ActivityKey(activity.getId());
     exoActivityCache.remove(activityKey);
     exoActivityCache.put(activityKey, new ActivityData(getActivity(activity.getId())));
-    clearCache();
+    streamCacheIndex.invalidateActivity(activity.getId());
+    streamCacheIndex.invalidateOwner(comment.getUserId());
+    streamCacheIndex.invalidateUnowned();
   }
 
   /**
@@ -320,7 +482,11 @@ public class CachedActivityStorage implements ActivityStorage {
     //
     ActivityKey key = new ActivityKey(a.getId());
     exoActivityCache.put(key, new ActivityData(getActivity(a.getId())));
-    clearCache();
+    streamCacheIndex.invalidateOwner(owner.getId());
+    if (a.getPosterId() != null && !a.getPosterId().equals(owner.getId())) {
+      streamCacheIndex.invalidateOwner(a.getPosterId());
+    }
+    streamCacheIndex.invalidateUnowned();
 
     //
     return a;
@@ -331,7 +497,8 @@ public class CachedActivityStorage implements ActivityStorage {
    * {@inheritDoc}
    */
   public ExoSocialActivity getParentActivity(final ExoSocialActivity comment) throws ActivityStorageException {
-    return getActivity(getActivity(comment.getId()).getParentId());
+    //the parent id is read from the cached comment, which is not built
+    return getActivity(activityData(comment.getId()).getParentId());
   }
 
   /**
@@ -346,7 +513,16 @@ public class CachedActivityStorage implements ActivityStorage {
     //
     ActivityKey key = new ActivityKey(activityId);
     exoActivityCache.remove(key);
-    clearCache();
+    streamCacheIndex.invalidateActivity(activityId);
+    if (a != null) {
+      if (a.getStreamId() != null) {
+        streamCacheIndex.invalidateOwner(a.getStreamId());
+      }
+      if (a.getParentId() != null) {
+        clearActivityCached(a.getParentId());
+      }
+    }
+    streamCacheIndex.invalidateUnowned();
 
   }
 
@@ -1092,8 +1268,12 @@ public class CachedActivityStorage implements ActivityStorage {
     exoActivityCache.remove(key);
     
     //
-    clearCache();
     clearActivityCached(existingActivity.getId());
+
+    //hiding or showing a comment changes the comments of its activity
+    if (existingActivity.isComment() && existingActivity.getParentId() != null) {
+      clearActivityCached(existingActivity.getParentId());
+    }
   }
 
   /**
@@ -1219,7 +1399,7 @@ public class CachedActivityStorage implements ActivityStorage {
     
     ActivityCountKey keySpace =
         new ActivityCountKey(new IdentityKey(spaceIdentity), ActivityType.SPACE);
-    exoActivitiesCountCache.put(keySpace, countData);
+    putCount(keySpace, countData);
     
     return countData.build();
   }
@@ -1812,7 +1992,7 @@ public class CachedActivityStorage implements ActivityStorage {
     //
     ActivityCountKey keyUser =
         new ActivityCountKey(new IdentityKey(owner), ActivityType.USER);
-    exoActivitiesCountCache.put(keyUser, countData);
+    putCount(keyUser, countData);
     
     //
     return countData.build();
@@ -1858,7 +2038,7 @@ public class CachedActivityStorage implements ActivityStorage {
     //
     ActivityCountKey keyFeed =
         new ActivityCountKey(new IdentityKey(ownerIdentity), ActivityType.FEED);
-    exoActivitiesCountCache.put(keyFeed, countData);
+    putCount(keyFeed, countData);
     
     //
     return countData.build();
@@ -1904,7 +2084,7 @@ public class CachedActivityStorage implements ActivityStorage {
     //
     ActivityCountKey keyConnection =
         new ActivityCountKey(new IdentityKey(ownerIdentity), ActivityType.CONNECTION);
-    exoActivitiesCountCache.put(keyConnection, countData);
+    putCount(keyConnection, countData);
     
     //
     return countData.build();
@@ -1949,7 +2129,7 @@ public class CachedActivityStorage implements ActivityStorage {
     
     ActivityCountKey keySpaces =
         new ActivityCountKey(new IdentityKey(ownerIdentity), ActivityType.SPACES);
-    exoActivitiesCountCache.put(keySpaces, countData);
+    putCount(keySpaces, countData);
     
     return countData.build();
   }
@@ -1963,4 +2143,29 @@ public class CachedActivityStorage implements ActivityStorage {
   public List<ExoSocialActivity> getAllActivities(int index, int limit) {
     return storage.getAllActivities(index, limit);
   }
+
+  @Override
+  public ActivityStreamPage getActivityFeed(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    return storage.getActivityFeed(ownerIdentity, after, limit);
+  }
+
+  @Override
+  public ActivityStreamPage getActivitiesOfConnections(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    return storage.getActivitiesOfConnections(ownerIdentity, after, limit);
+  }
+
+  @Override
+  public ActivityStreamPage getUserSpacesActivities(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    return storage.getUserSpacesActivities(ownerIdentity, after, limit);
+  }
+
+  @Override
+  public ActivityStreamPage getSpaceActivities(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    return storage.getSpaceActivities(ownerIdentity, after, limit);
+  }
+
+  @Override
+  public ActivityStreamPage getUserActivities(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    return storage.getUserActivities(ownerIdentity, after, limit);
+  }
 }
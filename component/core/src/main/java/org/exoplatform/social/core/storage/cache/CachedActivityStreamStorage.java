@@ -19,6 +19,8 @@ package org.exoplatform.social.core.storage.cache;
 import java.util.List;
 
 import org.exoplatform.social.common.service.ProcessContext;
+import org.exoplatform.social.core.activity.ActivityStreamCursor;
+import org.exoplatform.social.core.activity.ActivityStreamPage;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.storage.api.ActivityStreamStorage;
@@ -44,6 +46,11 @@ public class CachedActivityStreamStorage implements ActivityStreamStorage {
   public void savePoster(ProcessContext ctx) {
     this.storage.savePoster(ctx);
   }
+  
+  @Override
+  public void fanOut(ProcessContext ctx) {
+    this.storage.fanOut(ctx);
+  }
 
   @Override
   public void delete(String activityId) {
@@ -170,6 +177,31 @@ public class CachedActivityStreamStorage implements ActivityStreamStorage {
     return this.storage.getViewerActivities(owner, offset, limit);
   }
 
+  @Override
+  public ActivityStreamPage getFeed(Identity owner, ActivityStreamCursor after, int limit) {
+    return storage.getFeed(owner, after, limit);
+  }
+  
+  @Override
+  public ActivityStreamPage getConnections(Identity owner, ActivityStreamCursor after, int limit) {
+    return storage.getConnections(owner, after, limit);
+  }
+  
+  @Override
+  public ActivityStreamPage getMySpaces(Identity owner, ActivityStreamCursor after, int limit) {
+    return storage.getMySpaces(owner, after, limit);
+  }
+  
+  @Override
+  public ActivityStreamPage getSpaceStream(Identity owner, ActivityStreamCursor after, int limit) {
+    return storage.getSpaceStream(owner, after, limit);
+  }
+  
+  @Override
+  public ActivityStreamPage getMyActivities(Identity owner, ActivityStreamCursor after, int limit) {
+    return storage.getMyActivities(owner, after, limit);
+  }
+  
   @Override
   public void deleteConnect(Identity sender, Identity receiver) {
     this.storage.deleteConnect(sender, receiver);
@@ -219,6 +251,11 @@ public class CachedActivityStreamStorage implements ActivityStreamStorage {
     return this.storage.hasSizeOfFeed(owner);
   }
   
+  @Override
+  public long getFeedLastMigration(Identity owner) {
+    return this.storage.getFeedLastMigration(owner);
+  }
+  
   @Override
   public boolean hasSizeOfMyActivities(Identity owner) {
     return this.storage.hasSizeOfMyActivities(owner);
@@ -18,16 +18,17 @@
 package org.exoplatform.social.core.storage.cache;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
-import org.exoplatform.commons.utils.CommonsUtils;
 import org.exoplatform.container.PortalContainer;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
-import org.exoplatform.services.user.UserStateModel;
-import org.exoplatform.services.user.UserStateService;
 import org.exoplatform.social.core.identity.SpaceMemberFilterListAccess.Type;
 import org.exoplatform.social.core.identity.model.ActiveIdentityFilter;
 import org.exoplatform.social.core.identity.model.Identity;
@@ -53,7 +54,7 @@ import org.exoplatform.social.core.storage.cache.model.key.IdentityKey;
 import org.exoplatform.social.core.storage.cache.model.key.ListIdentitiesKey;
 import org.exoplatform.social.core.storage.cache.model.key.ListSpaceMembersKey;
 import org.exoplatform.social.core.storage.cache.model.key.SpaceKey;
-import org.exoplatform.social.core.storage.cache.selector.IdentityCacheSelector;
+import org.exoplatform.social.core.storage.cache.selector.ActiveIdentitiesCacheSelector;
 import org.exoplatform.social.core.storage.impl.IdentityStorageImpl;
 
 /**
@@ -67,6 +68,12 @@ public class CachedIdentityStorage implements IdentityStorage {
   /** Logger */
   private static final Log LOG = ExoLogger.getLogger(CachedIdentityStorage.class);
 
+  /** The number of logins merged into the cached active users at once. */
+  private static final int ACTIVE_USERS_BATCH_SIZE = 100;
+
+  /** The max time in ms a login waits before being merged into the cached active users. */
+  private static final long ACTIVE_USERS_FLUSH_PERIOD = 60 * 1000L;
+
   private final ExoCache<IdentityKey, IdentityData> exoIdentityCache;
   private final ExoCache<IdentityCompositeKey, IdentityKey> exoIdentityIndexCache;
   private final ExoCache<IdentityKey, ProfileData> exoProfileCache;
@@ -81,19 +88,30 @@ public class CachedIdentityStorage implements IdentityStorage {
   private final FutureExoCache<ListIdentitiesKey, ListIdentitiesData, ServiceContext<ListIdentitiesData>> identitiesCache;
   private final FutureExoCache<ActiveIdentityKey, ActiveIdentitiesData, ServiceContext<ActiveIdentitiesData>> activeIdentitiesCache;
 
+  private final CacheGenerations generations;
+
+  /** the users who logged in on this node and are not merged into the cached active users yet */
+  private final Set<String> recentActiveUsers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final ReentrantLock activeUsersFlushLock = new ReentrantLock();
+
+  private volatile long lastActiveUsersFlush = System.currentTimeMillis();
+
   private final IdentityStorageImpl storage;
   private CachedRelationshipStorage cachedRelationshipStorage;
 
   void clearCache() {
 
-    try {
-      exoIdentitiesCache.select(new IdentityCacheSelector(OrganizationIdentityProvider.NAME));
-      exoIdentitiesCountCache.select(new IdentityCacheSelector(OrganizationIdentityProvider.NAME));
-    }
-    catch (Exception e) {
-      LOG.error(e);
-    }
+    generations.bump(CacheGenerations.identities(OrganizationIdentityProvider.NAME));
+    generations.bump(CacheGenerations.identities(SpaceIdentityProvider.NAME));
+
+  }
 
+  /**
+   * Builds the key of the identity lists and counts of a provider, stamped with its generation.
+   */
+  private IdentityFilterKey filterKey(final String providerId, final ProfileFilter profileFilter) {
+    return new IdentityFilterKey(providerId, profileFilter, generations.current(CacheGenerations.identities(providerId)));
   }
   
   private CachedRelationshipStorage getCachedRelationshipStorage() {
@@ -154,6 +172,7 @@ public class CachedIdentityStorage implements IdentityStorage {
     this.exoIdentitiesCountCache = cacheService.getCountIdentitiesCache();
     this.exoIdentitiesCache = cacheService.getIdentitiesCache();
     this.exoActiveIdentitiesCache = cacheService.getActiveIdentitiesCache();
+    this.generations = cacheService.getGenerations();
 
     //
     this.identityCache = CacheType.IDENTITY.createFutureCache(exoIdentityCache);
@@ -233,6 +252,55 @@ public class CachedIdentityStorage implements IdentityStorage {
 
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<Identity> findIdentitiesByIds(final List<String> identityIds) throws IdentityStorageException {
+
+    //the cached identities are resolved first, the others are loaded together
+    Identity[] identities = new Identity[identityIds.size()];
+    List<String> missed = new ArrayList<String>();
+    List<Integer> missedIndexes = new ArrayList<Integer>();
+    for (int i = 0; i < identities.length; i++) {
+      String identityId = identityIds.get(i);
+      if (identityId == null || identityId.length() == 0) {
+        continue;
+      }
+      IdentityKey key = new IdentityKey(new Identity(identityId));
+      IdentityData identityData = exoIdentityCache.get(key);
+      ProfileData profileData = exoProfileCache.get(key);
+      if (identityData != null && (identityData.getId() == null || profileData != null)) {
+        Identity identity = identityData.build();
+        if (identity != null) {
+          identity.setProfile(profileData.build());
+        }
+        identities[i] = identity;
+      }
+      else {
+        missed.add(identityId);
+        missedIndexes.add(i);
+      }
+    }
+
+    //
+    if (missed.size() > 0) {
+      List<Identity> got = storage.findIdentitiesByIds(missed);
+      for (int i = 0; i < got.size(); i++) {
+        Identity identity = got.get(i);
+        IdentityKey key = new IdentityKey(new Identity(missed.get(i)));
+        exoIdentityCache.put(key, new IdentityData(identity));
+        if (identity != null) {
+          exoProfileCache.put(key, new ProfileData(identity.getProfile()));
+        }
+        identities[missedIndexes.get(i)] = identity;
+      }
+    }
+
+    //
+    return new ArrayList<Identity>(Arrays.asList(identities));
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -383,7 +451,7 @@ public class CachedIdentityStorage implements IdentityStorage {
       final long offset, final long limit, final boolean forceLoadOrReloadProfile) throws IdentityStorageException {
 
     //
-    IdentityFilterKey key = new IdentityFilterKey(providerId, profileFilter);
+    IdentityFilterKey key = filterKey(providerId, profileFilter);
     ListIdentitiesKey listKey = new ListIdentitiesKey(key, offset, limit);
 
     //
@@ -409,7 +477,7 @@ public class CachedIdentityStorage implements IdentityStorage {
       final long offset, final long limit, final boolean forceLoadOrReloadProfile) throws IdentityStorageException {
 
     //
-    IdentityFilterKey key = new IdentityFilterKey(providerId, profileFilter);
+    IdentityFilterKey key = filterKey(providerId, profileFilter);
     ListIdentitiesKey listKey = new ListIdentitiesKey(key, offset, limit);
 
     //
@@ -436,7 +504,7 @@ public class CachedIdentityStorage implements IdentityStorage {
       throws IdentityStorageException {
 
     //
-    IdentityFilterKey key = new IdentityFilterKey(providerId, profileFilter);
+    IdentityFilterKey key = filterKey(providerId, profileFilter);
 
     //
     return identitiesCountCache.get(
@@ -458,7 +526,7 @@ public class CachedIdentityStorage implements IdentityStorage {
       throws IdentityStorageException {
 
     //
-    IdentityFilterKey key = new IdentityFilterKey(providerId, profileFilter);
+    IdentityFilterKey key = filterKey(providerId, profileFilter);
 
     //
     return identitiesCountCache.get(
@@ -480,7 +548,7 @@ public class CachedIdentityStorage implements IdentityStorage {
       final long offset, final long limit, final boolean forceLoadOrReloadProfile) throws IdentityStorageException {
 
     //
-    IdentityFilterKey key = new IdentityFilterKey(providerId, profileFilter);
+    IdentityFilterKey key = filterKey(providerId, profileFilter);
     ListIdentitiesKey listKey = new ListIdentitiesKey(key, offset, limit);
 
     //
@@ -523,7 +591,7 @@ public class CachedIdentityStorage implements IdentityStorage {
       throws IdentityStorageException {
 
     SpaceKey spaceKey = new SpaceKey(space.getId());
-    IdentityFilterKey identityKey = new IdentityFilterKey(SpaceIdentityProvider.NAME, profileFilter);
+    IdentityFilterKey identityKey = filterKey(SpaceIdentityProvider.NAME, profileFilter);
     ListSpaceMembersKey listKey = new ListSpaceMembersKey(spaceKey, identityKey, offset, limit);
 
     ListIdentitiesData keys = identitiesCache.get(
@@ -559,7 +627,7 @@ public class CachedIdentityStorage implements IdentityStorage {
                                                       final long offset,
                                                       final long limit) throws IdentityStorageException {
     //
-    IdentityFilterKey key = new IdentityFilterKey(providerId, profileFilter);
+    IdentityFilterKey key = filterKey(providerId, profileFilter);
     ListIdentitiesKey listKey = new ListIdentitiesKey(key, offset, limit);
 
     //
@@ -580,8 +648,10 @@ public class CachedIdentityStorage implements IdentityStorage {
   @Override
   public Set<String> getActiveUsers(final ActiveIdentityFilter filter) {
     ActiveIdentityKey key = new ActiveIdentityKey(filter);
+    if (!recentActiveUsers.isEmpty() && System.currentTimeMillis() - lastActiveUsersFlush >= ACTIVE_USERS_FLUSH_PERIOD) {
+      flushActiveUsers();
+    }
 
-    boolean isExistFromCache = activeIdentitiesCache.get(key) != null;
     ActiveIdentitiesData data = activeIdentitiesCache.get(
           new ServiceContext<ActiveIdentitiesData>() {
             public ActiveIdentitiesData execute() {
@@ -591,18 +661,68 @@ public class CachedIdentityStorage implements IdentityStorage {
           },
           key);
 
-    Set<String> users = data.build();
-    if (isExistFromCache) {
-    //Gets online users and push to activate users
-      if (CommonsUtils.getService(UserStateService.class) != null) {
-        List<UserStateModel> onlines = CommonsUtils.getService(UserStateService.class).online();
-        for (UserStateModel user : onlines) {
-          users.add(user.getUserId());
+    //the users logged in on this node since the last merge are seen without copying the data
+    return data.build(recentActiveUsers);
+  }
+
+  /**
+   * Adds a user who just logged in to the active users of the last login days, the cached data
+   * is updated instead of being loaded again.
+   * 
+   * The login is kept by this node and merged into the replicated data with the other logins,
+   * once the batch is full or the flush period elapsed.
+   * 
+   * @param userId the user name
+   * @since 4.0.2
+   */
+  public void addActiveUser(String userId) {
+    recentActiveUsers.add(userId);
+    if (recentActiveUsers.size() >= ACTIVE_USERS_BATCH_SIZE
+        || System.currentTimeMillis() - lastActiveUsersFlush >= ACTIVE_USERS_FLUSH_PERIOD) {
+      flushActiveUsers();
+    }
+  }
+
+  /**
+   * Merges the recent logins into the cached active users, one update per cached filter.
+   * 
+   * @since 4.0.2
+   */
+  public void flushActiveUsers() {
+    //a login does not wait for the merge of another one
+    if (!activeUsersFlushLock.tryLock()) {
+      return;
+    }
+    try {
+      lastActiveUsersFlush = System.currentTimeMillis();
+      List<String> batch = new ArrayList<String>(recentActiveUsers);
+      if (batch.isEmpty()) {
+        return;
+      }
+      ActiveIdentitiesCacheSelector selector = new ActiveIdentitiesCacheSelector();
+      try {
+        exoActiveIdentitiesCache.select(selector);
+      }
+      catch (Exception e) {
+        LOG.error(e);
+        return;
+      }
+      for (ActiveIdentityKey key : selector.getKeys()) {
+        ActiveIdentitiesData data = exoActiveIdentitiesCache.get(key);
+        if (data != null) {
+          ActiveIdentitiesData updated = data.addAll(batch);
+          if (updated != data) {
+            exoActiveIdentitiesCache.put(key, updated);
+          }
         }
       }
+      //the logins added meanwhile are kept for the next merge
+      recentActiveUsers.removeAll(batch);
+    } finally {
+      activeUsersFlushLock.unlock();
     }
-    return users;
   }
+
   /**
    * {@inheritDoc}
    */
@@ -18,6 +18,7 @@
 package org.exoplatform.social.core.storage.cache;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -51,8 +52,6 @@ import org.exoplatform.social.core.storage.cache.model.key.RelationshipIdentityK
 import org.exoplatform.social.core.storage.cache.model.key.RelationshipKey;
 import org.exoplatform.social.core.storage.cache.model.key.RelationshipType;
 import org.exoplatform.social.core.storage.cache.model.key.SuggestionKey;
-import org.exoplatform.social.core.storage.cache.selector.RelationshipCacheSelector;
-import org.exoplatform.social.core.storage.cache.selector.SuggestionCacheSelector;
 import org.exoplatform.social.core.storage.impl.AbstractStorage;
 import org.exoplatform.social.core.storage.impl.RelationshipStorageImpl;
 
@@ -73,6 +72,7 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
   private final ExoCache<RelationshipCountKey, IntegerData> exoRelationshipCountCache;
   private final ExoCache<ListRelationshipsKey, ListIdentitiesData> exoRelationshipsCache;
   private final ExoCache<SuggestionKey, SuggestionsData> exoSuggestionCache;
+  private final CacheGenerations generations;
 
   //
   private final FutureExoCache<RelationshipKey, RelationshipData, ServiceContext<RelationshipData>> relationshipCache;
@@ -102,16 +102,19 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
       identities.add(r.getReceiver().getId());
     }
 
-    try {
-      exoRelationshipsCache.select(new RelationshipCacheSelector(identities.toArray(new String[]{})));
-      exoRelationshipCountCache.select(new RelationshipCacheSelector(identities.toArray(new String[]{})));
-      exoSuggestionCache.select(new SuggestionCacheSelector(identities.toArray(new String[]{})));
-    }
-    catch (Exception e) {
-      LOG.error(e);
+    for (String identityId : identities) {
+      generations.bump(CacheGenerations.relationships(identityId));
     }
+    generations.bump(CacheGenerations.RELATIONSHIPS);
 
   }
+
+  /**
+   * Gets the generation of the relationship lists, counts and suggestions of an identity.
+   */
+  private long generationOf(String identityId) {
+    return generations.current(CacheGenerations.relationships(identityId));
+  }
   
   /**
    * When enable/disable an user, we need to clear all cache associated to suggestion and relationship
@@ -168,12 +171,45 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
    */
   private SuggestionsData buildIdMap(Map<Identity, Integer> map) {
 
+    long checked = generations.current(CacheGenerations.RELATIONSHIPS);
     Map<String, Integer> data = new LinkedHashMap<String, Integer>();
+    Map<String, Long> suggestedGenerations = new HashMap<String, Long>();
     for (Entry<Identity, Integer> item : map.entrySet()) {
       data.put(item.getKey().getId(), item.getValue());
+      String name = CacheGenerations.relationships(item.getKey().getId());
+      if (!suggestedGenerations.containsKey(name)) {
+        suggestedGenerations.put(name, generations.current(name));
+      }
     }
     
-    return new SuggestionsData(data);
+    return new SuggestionsData(data, suggestedGenerations, checked);
+  }
+
+  /**
+   * Checks that the relationships of the suggested identities did not change since the suggestions
+   * were cached. The generations of the suggested identities are only compared when a relationship
+   * was written since the last check.
+   *
+   * @param key the suggestions key
+   * @param data the cached suggestions
+   * @return true if the suggestions are up to date
+   */
+  private boolean isCurrent(SuggestionKey<IdentityKey> key, SuggestionsData data) {
+    if (data.getGenerations() == null) {
+      return true;
+    }
+    long checked = generations.current(CacheGenerations.RELATIONSHIPS);
+    if (checked == data.getChecked()) {
+      return true;
+    }
+    for (Entry<String, Long> item : data.getGenerations().entrySet()) {
+      if (generations.current(item.getKey()) != item.getValue()) {
+        return false;
+      }
+    }
+    //still up to date, the next reads only compare the generation of all the relationships
+    exoSuggestionCache.put(key, new SuggestionsData(data.getMap(), data.getGenerations(), checked));
+    return true;
   }
   
   /**
@@ -206,6 +242,7 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
     this.exoRelationshipCountCache = cacheService.getRelationshipsCount();
     this.exoRelationshipsCache = cacheService.getRelationshipsCache();
     this.exoSuggestionCache = cacheService.getSuggestionCache();
+    this.generations = cacheService.getGenerations();
 
     //
     this.relationshipCache = CacheType.RELATIONSHIP.createFutureCache(exoRelationshipCache);
@@ -417,7 +454,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
     //
     IdentityKey key = new IdentityKey(identity);
     ListRelationshipsKey<IdentityKey> listKey =
-        new ListRelationshipsKey<IdentityKey>(key, RelationshipType.RELATIONSHIP, offset, limit);
+        new ListRelationshipsKey<IdentityKey>(key, RelationshipType.RELATIONSHIP, offset, limit,
+                                              generationOf(key.getId()));
     ListIdentitiesData keys = relationshipsCache.get(
         new ServiceContext<ListIdentitiesData>() {
           public ListIdentitiesData execute() {
@@ -441,7 +479,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
     //
     IdentityKey key = new IdentityKey(receiver);
     ListRelationshipsKey<IdentityKey> listKey =
-        new ListRelationshipsKey<IdentityKey>(key, RelationshipType.INCOMMING, offset, limit);
+        new ListRelationshipsKey<IdentityKey>(key, RelationshipType.INCOMMING, offset, limit,
+                                              generationOf(key.getId()));
     ListIdentitiesData keys = relationshipsCache.get(
         new ServiceContext<ListIdentitiesData>() {
           public ListIdentitiesData execute() {
@@ -463,7 +502,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
 
     //
     IdentityKey iKey = new IdentityKey(receiver);
-    RelationshipCountKey<IdentityKey> key = new RelationshipCountKey<IdentityKey>(iKey, RelationshipType.INCOMMING);
+    RelationshipCountKey<IdentityKey> key = new RelationshipCountKey<IdentityKey>(iKey, RelationshipType.INCOMMING,
+                                                                                  generationOf(iKey.getId()));
 
     //
     return relationshipsCount.get(
@@ -486,7 +526,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
     //
     IdentityKey key = new IdentityKey(sender);
     ListRelationshipsKey<IdentityKey> listKey =
-        new ListRelationshipsKey<IdentityKey>(key, RelationshipType.OUTGOING, offset, limit);
+        new ListRelationshipsKey<IdentityKey>(key, RelationshipType.OUTGOING, offset, limit,
+                                              generationOf(key.getId()));
     ListIdentitiesData keys = relationshipsCache.get(
         new ServiceContext<ListIdentitiesData>() {
           public ListIdentitiesData execute() {
@@ -508,7 +549,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
 
     //
     IdentityKey iKey = new IdentityKey(sender);
-    RelationshipCountKey<IdentityKey> key = new RelationshipCountKey<IdentityKey>(iKey, RelationshipType.OUTGOING);
+    RelationshipCountKey<IdentityKey> key = new RelationshipCountKey<IdentityKey>(iKey, RelationshipType.OUTGOING,
+                                                                                  generationOf(iKey.getId()));
 
     //
     return relationshipsCount.get(
@@ -529,7 +571,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
 
     //
     IdentityKey iKey = new IdentityKey(identity);
-    RelationshipCountKey<IdentityKey> key = new RelationshipCountKey<IdentityKey>(iKey, RelationshipType.RELATIONSHIP);
+    RelationshipCountKey<IdentityKey> key = new RelationshipCountKey<IdentityKey>(iKey, RelationshipType.RELATIONSHIP,
+                                                                                  generationOf(iKey.getId()));
 
     //
     return relationshipsCount.get(
@@ -551,7 +594,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
 
     //
     IdentityKey key = new IdentityKey(identity);
-    ListRelationshipsKey<IdentityKey> listKey = new ListRelationshipsKey<IdentityKey>(key, RelationshipType.CONNECTION, offset, limit);
+    ListRelationshipsKey<IdentityKey> listKey = new ListRelationshipsKey<IdentityKey>(key, RelationshipType.CONNECTION, offset, limit,
+                                                                                      generationOf(key.getId()));
     ListIdentitiesData keys = relationshipsCache.get(
         new ServiceContext<ListIdentitiesData>() {
           public ListIdentitiesData execute() {
@@ -580,7 +624,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
 
     //
     IdentityKey iKey = new IdentityKey(identity);
-    RelationshipCountKey<IdentityKey> key = new RelationshipCountKey<IdentityKey>(iKey, RelationshipType.CONNECTION);
+    RelationshipCountKey<IdentityKey> key = new RelationshipCountKey<IdentityKey>(iKey, RelationshipType.CONNECTION,
+                                                                                  generationOf(iKey.getId()));
 
     //
     return relationshipsCount.get(
@@ -603,7 +648,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
     IdentityFilterKey key = new IdentityFilterKey(existingIdentity.getProviderId(), existingIdentity.getRemoteId(),
                                                   profileFilter);
     ListRelationshipsKey<IdentityFilterKey> listKey =
-        new ListRelationshipsKey<IdentityFilterKey>(key, RelationshipType.CONNECTION_WITH_FILTER, offset, limit);
+        new ListRelationshipsKey<IdentityFilterKey>(key, RelationshipType.CONNECTION_WITH_FILTER, offset, limit,
+                                                    generationOf(existingIdentity.getId()));
 
     //
     ListIdentitiesData keys = relationshipsCache.get(
@@ -628,7 +674,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
     //
     IdentityFilterKey key = new IdentityFilterKey(existingIdentity.getProviderId(), existingIdentity.getRemoteId(), profileFilter);
     ListRelationshipsKey<IdentityFilterKey> listKey =
-        new ListRelationshipsKey<IdentityFilterKey>(key, RelationshipType.INCOMMING_WITH_FILTER, offset, limit);
+        new ListRelationshipsKey<IdentityFilterKey>(key, RelationshipType.INCOMMING_WITH_FILTER, offset, limit,
+                                                    generationOf(existingIdentity.getId()));
 
     //
     ListIdentitiesData keys = relationshipsCache.get(
@@ -653,7 +700,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
     //
     IdentityFilterKey key = new IdentityFilterKey(existingIdentity.getProviderId(), existingIdentity.getRemoteId(), profileFilter);
     ListRelationshipsKey<IdentityFilterKey> listKey =
-        new ListRelationshipsKey<IdentityFilterKey>(key, RelationshipType.OUTGOING_WITH_FILTER, offset, limit);
+        new ListRelationshipsKey<IdentityFilterKey>(key, RelationshipType.OUTGOING_WITH_FILTER, offset, limit,
+                                                    generationOf(existingIdentity.getId()));
 
     //
     ListIdentitiesData keys = relationshipsCache.get(
@@ -677,7 +725,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
     IdentityFilterKey iKey = new IdentityFilterKey(existingIdentity.getProviderId(), existingIdentity.getRemoteId(),
                                                    profileFilter);
     RelationshipCountKey<IdentityFilterKey> key =
-        new RelationshipCountKey<IdentityFilterKey>(iKey, RelationshipType.CONNECTION_WITH_FILTER);
+        new RelationshipCountKey<IdentityFilterKey>(iKey, RelationshipType.CONNECTION_WITH_FILTER,
+                                                    generationOf(existingIdentity.getId()));
 
     //
     return relationshipsCount.get(
@@ -696,7 +745,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
     //
     IdentityFilterKey iKey = new IdentityFilterKey(existingIdentity.getProviderId(), existingIdentity.getRemoteId(), profileFilter);
     RelationshipCountKey<IdentityFilterKey> key =
-        new RelationshipCountKey<IdentityFilterKey>(iKey, RelationshipType.INCOMMING_WITH_FILTER);
+        new RelationshipCountKey<IdentityFilterKey>(iKey, RelationshipType.INCOMMING_WITH_FILTER,
+                                                    generationOf(existingIdentity.getId()));
 
     //
     return relationshipsCount.get(
@@ -715,7 +765,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
     //
     IdentityFilterKey iKey = new IdentityFilterKey(existingIdentity.getProviderId(), existingIdentity.getRemoteId(), profileFilter);
     RelationshipCountKey<IdentityFilterKey> key =
-        new RelationshipCountKey<IdentityFilterKey>(iKey, RelationshipType.OUTGOING_WITH_FILTER);
+        new RelationshipCountKey<IdentityFilterKey>(iKey, RelationshipType.OUTGOING_WITH_FILTER,
+                                                    generationOf(existingIdentity.getId()));
 
     //
     return relationshipsCount.get(
@@ -736,18 +787,24 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
     IdentityKey key = new IdentityKey(identity);
     SuggestionKey<IdentityKey> suggestKey = new SuggestionKey<IdentityKey>(key, maxConnections, 
                                                                            maxConnectionsToLoad, 
-                                                                           maxSuggestions);
+                                                                           maxSuggestions,
+                                                                           generationOf(key.getId()));
+    ServiceContext<SuggestionsData> context = new ServiceContext<SuggestionsData>() {
+      public SuggestionsData execute() {
+        Map<Identity, Integer> got = storage.getSuggestions(identity, maxConnections, 
+                                                            maxConnectionsToLoad, 
+                                                            maxSuggestions);
+        return buildIdMap(got);
+      }
+    };
     
-    SuggestionsData keys = suggestionCache.get(
-        new ServiceContext<SuggestionsData>() {
-          public SuggestionsData execute() {
-            Map<Identity, Integer> got = storage.getSuggestions(identity, maxConnections, 
-                                                                maxConnectionsToLoad, 
-                                                                maxSuggestions);
-            return buildIdMap(got);
-          }
-        },
-        suggestKey);
+    SuggestionsData keys = suggestionCache.get(context, suggestKey);
+
+    //the relationships of a suggested identity changed
+    if (!isCurrent(suggestKey, keys)) {
+      exoSuggestionCache.remove(suggestKey);
+      keys = suggestionCache.get(context, suggestKey);
+    }
 
     //
     return buildSuggestions(keys);
@@ -758,7 +815,8 @@ public class CachedRelationshipStorage extends AbstractStorage implements Relati
     //
     IdentityKey key = new IdentityKey(identity);
     ListRelationshipsKey<IdentityKey> listKey =
-        new ListRelationshipsKey<IdentityKey>(key, RelationshipType.LAST_CONNECTIONS, 0, limit);
+        new ListRelationshipsKey<IdentityKey>(key, RelationshipType.LAST_CONNECTIONS, 0, limit,
+                                              generationOf(key.getId()));
     ListIdentitiesData keys = relationshipsCache.get(
         new ServiceContext<ListIdentitiesData>() {
           public ListIdentitiesData execute() {
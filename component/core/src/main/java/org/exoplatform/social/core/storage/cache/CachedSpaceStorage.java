@@ -31,22 +31,21 @@ import org.exoplatform.social.core.storage.SpaceStorageException;
 import org.exoplatform.social.core.storage.api.SpaceStorage;
 import org.exoplatform.social.core.storage.cache.loader.ServiceContext;
 import org.exoplatform.social.core.storage.cache.model.data.IntegerData;
-import org.exoplatform.social.core.storage.cache.model.data.ListIdentitiesData;
 import org.exoplatform.social.core.storage.cache.model.data.ListSpacesData;
 import org.exoplatform.social.core.storage.cache.model.data.SpaceData;
 import org.exoplatform.social.core.storage.cache.model.data.SpaceSimpleData;
-import org.exoplatform.social.core.storage.cache.model.key.ListIdentitiesKey;
 import org.exoplatform.social.core.storage.cache.model.key.ListSpacesKey;
 import org.exoplatform.social.core.storage.cache.model.key.SpaceFilterKey;
 import org.exoplatform.social.core.storage.cache.model.key.SpaceKey;
 import org.exoplatform.social.core.storage.cache.model.key.SpaceRefKey;
 import org.exoplatform.social.core.storage.cache.model.key.SpaceType;
-import org.exoplatform.social.core.storage.cache.selector.IdentityCacheSelector;
-import org.exoplatform.social.core.storage.cache.selector.ScopeCacheSelector;
 import org.exoplatform.social.core.storage.impl.SpaceStorageImpl;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
@@ -57,12 +56,16 @@ public class CachedSpaceStorage implements SpaceStorage {
   /** Logger */
   private static final Log LOG = ExoLogger.getLogger(CachedSpaceStorage.class);
 
+  /** The lists and counts which also depend on the spaces the user has no role in, they are not owned by the user. */
+  private static final Set<SpaceType> UNOWNED_TYPES = EnumSet.of(SpaceType.PUBLIC, SpaceType.VISIBLE, SpaceType.ALL,
+                                                                 SpaceType.UNIFIED_SEARCH, SpaceType.MEMBER_IDS);
+
   private final ExoCache<SpaceKey, SpaceData> exoSpaceCache;
   private final ExoCache<SpaceKey, SpaceSimpleData> exoSpaceSimpleCache;
   private final ExoCache<SpaceRefKey, SpaceKey> exoRefSpaceCache;
   private final ExoCache<SpaceFilterKey, IntegerData> exoSpacesCountCache;
   private final ExoCache<ListSpacesKey, ListSpacesData> exoSpacesCache;
-  private final ExoCache<ListIdentitiesKey, ListIdentitiesData> exoIdentitiesCache;
+  private final CacheGenerations generations;
 
   private final FutureExoCache<SpaceKey, SpaceData, ServiceContext<SpaceData>> spaceCache;
   private final FutureExoCache<SpaceKey, SpaceSimpleData, ServiceContext<SpaceSimpleData>> spaceSimpleCache;
@@ -202,7 +205,7 @@ public class CachedSpaceStorage implements SpaceStorage {
     this.exoRefSpaceCache = cacheService.getSpaceRefCache();
     this.exoSpacesCountCache = cacheService.getSpacesCountCache();
     this.exoSpacesCache = cacheService.getSpacesCache();
-    this.exoIdentitiesCache = cacheService.getIdentitiesCache();
+    this.generations = cacheService.getGenerations();
 
     this.spaceCache = CacheType.SPACE.createFutureCache(exoSpaceCache);
     this.spaceSimpleCache = CacheType.SPACE_SIMPLE.createFutureCache(exoSpaceSimpleCache);
@@ -219,27 +222,53 @@ public class CachedSpaceStorage implements SpaceStorage {
     exoRefSpaceCache.remove(new SpaceRefKey(null, null, null, removed.getUrl()));
   }
 
+  /**
+   * Invalidates the space identity lists and the space member lists, the user identity lists do not depend on the spaces.
+   */
   void clearIdentityCache() {
 
-    try {
-      exoIdentitiesCache.select(new IdentityCacheSelector(SpaceIdentityProvider.NAME));
+    generations.bump(CacheGenerations.identities(SpaceIdentityProvider.NAME));
+
+  }
+
+  /**
+   * Invalidates the space lists and counts of the users of the given spaces, and the ones which are not owned by a user.
+   */
+  void clearSpaceCache(Space... spaces) {
+
+    Set<String> names = new HashSet<String>();
+    for (Space space : spaces) {
+      if (space != null) {
+        addSpacesOf(names, space.getManagers());
+        addSpacesOf(names, space.getMembers());
+        addSpacesOf(names, space.getInvitedUsers());
+        addSpacesOf(names, space.getPendingUsers());
+      }
     }
-    catch (Exception e) {
-      LOG.error(e);
+    for (String name : names) {
+      generations.bump(name);
     }
+    generations.bump(CacheGenerations.SPACES);
 
   }
 
-  void clearSpaceCache() {
-
-    try {
-      exoSpacesCache.select(new ScopeCacheSelector<ListSpacesKey, ListSpacesData>());
-      exoSpacesCountCache.select(new ScopeCacheSelector<SpaceFilterKey, IntegerData>());
-    }
-    catch (Exception e) {
-      LOG.error(e);
+  private static void addSpacesOf(Set<String> names, String[] userIds) {
+    if (userIds != null) {
+      for (String userId : userIds) {
+        if (userId != null) {
+          names.add(CacheGenerations.spaces(userId));
+        }
+      }
     }
+  }
 
+  /**
+   * Builds the key of the space lists and counts, stamped with the generation of the spaces of the user,
+   * or with the generation of all the spaces when they also depend on the spaces the user has no role in.
+   */
+  private SpaceFilterKey filterKey(String userId, SpaceFilter spaceFilter, SpaceType type) {
+    String name = userId != null && !UNOWNED_TYPES.contains(type) ? CacheGenerations.spaces(userId) : CacheGenerations.SPACES;
+    return new SpaceFilterKey(userId, spaceFilter, type, generations.current(name));
   }
 
   /**
@@ -282,7 +311,8 @@ public class CachedSpaceStorage implements SpaceStorage {
    */
   public void saveSpace(final Space space, final boolean isNew) throws SpaceStorageException {
 
-    //
+    //the users removed from the space are bumped too
+    Space previous = isNew ? null : storage.getSpaceById(space.getId());
     storage.saveSpace(space, isNew);
 
     
@@ -290,7 +320,7 @@ public class CachedSpaceStorage implements SpaceStorage {
     exoSpaceSimpleCache.remove(new SpaceKey(space.getId()));
     SpaceData removed = exoSpaceCache.remove(new SpaceKey(space.getId()));
     
-    clearSpaceCache();
+    clearSpaceCache(previous, space);
     clearIdentityCache();
     if (removed != null) {
       cleanRef(removed);
@@ -334,7 +364,7 @@ public class CachedSpaceStorage implements SpaceStorage {
 
     // remove space cached
     SpaceData removed = exoSpaceCache.remove(new SpaceKey(space.getId()));
-    clearSpaceCache();
+    clearSpaceCache(space);
     clearIdentityCache();
     if (removed != null) {
       exoRefSpaceCache.remove(new SpaceRefKey(oldDisplayName));
@@ -355,7 +385,7 @@ public class CachedSpaceStorage implements SpaceStorage {
 
     //
     SpaceData removed = exoSpaceCache.remove(new SpaceKey(id));
-    clearSpaceCache();
+    clearSpaceCache(space);
     if (removed != null) {
       cleanRef(removed);
     }
@@ -371,7 +401,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public int getMemberSpacesCount(final String userId) throws SpaceStorageException {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, null, null);
+    SpaceFilterKey key = filterKey(userId, null, null);
 
     //
     return spacesCountCache.get(
@@ -391,7 +421,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public int getMemberSpacesByFilterCount(final String userId, final SpaceFilter spaceFilter) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.MEMBER);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.MEMBER);
 
     //
     return spacesCountCache.get(
@@ -419,7 +449,7 @@ public class CachedSpaceStorage implements SpaceStorage {
       throws SpaceStorageException {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, null, SpaceType.MEMBER);
+    SpaceFilterKey key = filterKey(userId, null, SpaceType.MEMBER);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -444,7 +474,7 @@ public class CachedSpaceStorage implements SpaceStorage {
       final String userId, final SpaceFilter spaceFilter, final long offset, final long limit) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.MEMBER);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.MEMBER);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -468,7 +498,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public int getPendingSpacesCount(final String userId) throws SpaceStorageException {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, null, SpaceType.PENDING);
+    SpaceFilterKey key = filterKey(userId, null, SpaceType.PENDING);
 
     //
     return spacesCountCache.get(
@@ -488,7 +518,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public int getPendingSpacesByFilterCount(final String userId, final SpaceFilter spaceFilter) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.PENDING);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.PENDING);
 
     //
     return spacesCountCache.get(
@@ -516,7 +546,7 @@ public class CachedSpaceStorage implements SpaceStorage {
       throws SpaceStorageException {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, null, SpaceType.PENDING);
+    SpaceFilterKey key = filterKey(userId, null, SpaceType.PENDING);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -541,7 +571,7 @@ public class CachedSpaceStorage implements SpaceStorage {
       final String userId, final SpaceFilter spaceFilter, final long offset, final long limit) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.PENDING);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.PENDING);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -565,7 +595,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public int getInvitedSpacesCount(final String userId) throws SpaceStorageException {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, null, SpaceType.INVITED);
+    SpaceFilterKey key = filterKey(userId, null, SpaceType.INVITED);
 
     //
     return spacesCountCache.get(
@@ -585,7 +615,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public int getInvitedSpacesByFilterCount(final String userId, final SpaceFilter spaceFilter) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.INVITED);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.INVITED);
 
     //
     return spacesCountCache.get(
@@ -613,7 +643,7 @@ public class CachedSpaceStorage implements SpaceStorage {
       throws SpaceStorageException {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, null, SpaceType.INVITED);
+    SpaceFilterKey key = filterKey(userId, null, SpaceType.INVITED);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -638,7 +668,7 @@ public class CachedSpaceStorage implements SpaceStorage {
       final String userId, final SpaceFilter spaceFilter, final long offset, final long limit) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.INVITED);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.INVITED);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -662,7 +692,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public int getPublicSpacesCount(final String userId) throws SpaceStorageException {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, null, SpaceType.PUBLIC);
+    SpaceFilterKey key = filterKey(userId, null, SpaceType.PUBLIC);
 
     //
     return spacesCountCache.get(
@@ -682,7 +712,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public int getPublicSpacesByFilterCount(final String userId, final SpaceFilter spaceFilter) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.PUBLIC);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.PUBLIC);
 
     //
     return spacesCountCache.get(
@@ -703,7 +733,7 @@ public class CachedSpaceStorage implements SpaceStorage {
       final String userId, final SpaceFilter spaceFilter, final long offset, final long limit) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.PUBLIC);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.PUBLIC);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -735,7 +765,7 @@ public class CachedSpaceStorage implements SpaceStorage {
       throws SpaceStorageException {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, null, SpaceType.PUBLIC);
+    SpaceFilterKey key = filterKey(userId, null, SpaceType.PUBLIC);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -759,7 +789,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public int getAccessibleSpacesCount(final String userId) throws SpaceStorageException {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, null, SpaceType.ACCESSIBLE);
+    SpaceFilterKey key = filterKey(userId, null, SpaceType.ACCESSIBLE);
 
     //
     return spacesCountCache.get(
@@ -779,7 +809,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public int getAccessibleSpacesByFilterCount(final String userId, final SpaceFilter spaceFilter) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.ACCESSIBLE);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.ACCESSIBLE);
 
     //
     return spacesCountCache.get(
@@ -799,7 +829,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public int getLastAccessedSpaceCount(final SpaceFilter spaceFilter) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(spaceFilter.getRemoteId(), spaceFilter, SpaceType.LATEST_ACCESSED);
+    SpaceFilterKey key = filterKey(spaceFilter.getRemoteId(), spaceFilter, SpaceType.LATEST_ACCESSED);
 
     //
     return spacesCountCache.get(
@@ -818,7 +848,7 @@ public class CachedSpaceStorage implements SpaceStorage {
    */
   public int getVisibleSpacesCount(final String userId, final SpaceFilter spaceFilter) throws SpaceStorageException {
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.VISIBLE);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.VISIBLE);
 
     //
     return spacesCountCache.get(
@@ -835,7 +865,7 @@ public class CachedSpaceStorage implements SpaceStorage {
    */
   public int getUnifiedSearchSpacesCount(final String userId, final SpaceFilter spaceFilter) throws SpaceStorageException {
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.UNIFIED_SEARCH);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.UNIFIED_SEARCH);
 
     //
     return spacesCountCache.get(
@@ -853,7 +883,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public List<Space> getVisibleSpaces(final String userId, final SpaceFilter spaceFilter, final long offset, final long limit)
                                       throws SpaceStorageException {
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.VISIBLE);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.VISIBLE);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -876,7 +906,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public List<Space> getUnifiedSearchSpaces(final String userId, final SpaceFilter spaceFilter, final long offset, final long limit)
                                       throws SpaceStorageException {
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.UNIFIED_SEARCH);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.UNIFIED_SEARCH);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -914,7 +944,7 @@ public class CachedSpaceStorage implements SpaceStorage {
       throws SpaceStorageException {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, null, SpaceType.ACCESSIBLE);
+    SpaceFilterKey key = filterKey(userId, null, SpaceType.ACCESSIBLE);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -939,7 +969,7 @@ public class CachedSpaceStorage implements SpaceStorage {
       final String userId, final SpaceFilter spaceFilter, final long offset, final long limit) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.ACCESSIBLE);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.ACCESSIBLE);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -963,7 +993,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public int getEditableSpacesCount(final String userId) throws SpaceStorageException {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, null, SpaceType.EDITABLE);
+    SpaceFilterKey key = filterKey(userId, null, SpaceType.EDITABLE);
 
     //
     return spacesCountCache.get(
@@ -983,7 +1013,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public int getEditableSpacesByFilterCount(final String userId, final SpaceFilter spaceFilter) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.EDITABLE);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.EDITABLE);
 
     //
     return spacesCountCache.get(
@@ -1011,7 +1041,7 @@ public class CachedSpaceStorage implements SpaceStorage {
       throws SpaceStorageException {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, null, SpaceType.EDITABLE);
+    SpaceFilterKey key = filterKey(userId, null, SpaceType.EDITABLE);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -1036,7 +1066,7 @@ public class CachedSpaceStorage implements SpaceStorage {
       final String userId, final SpaceFilter spaceFilter, final long offset, final long limit) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, spaceFilter, SpaceType.EDITABLE);
+    SpaceFilterKey key = filterKey(userId, spaceFilter, SpaceType.EDITABLE);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -1074,7 +1104,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public int getAllSpacesByFilterCount(final SpaceFilter spaceFilter) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(null, spaceFilter, null);
+    SpaceFilterKey key = filterKey(null, spaceFilter, null);
 
     //
     return spacesCountCache.get(
@@ -1094,7 +1124,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public List<Space> getSpaces(final long offset, final long limit) throws SpaceStorageException {
 
     //
-    ListSpacesKey listKey = new ListSpacesKey(null, offset, limit);
+    ListSpacesKey listKey = new ListSpacesKey(null, offset, limit, generations.current(CacheGenerations.SPACES));
 
     //
     ListSpacesData keys = spacesCache.get(
@@ -1117,7 +1147,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   public List<Space> getSpacesByFilter(final SpaceFilter spaceFilter, final long offset, final long limit) {
 
     //
-    SpaceFilterKey key = new SpaceFilterKey(null, spaceFilter, null);
+    SpaceFilterKey key = filterKey(null, spaceFilter, null);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -1317,13 +1347,14 @@ public class CachedSpaceStorage implements SpaceStorage {
   @Override
   public void updateSpaceAccessed(String remoteId, Space space) throws SpaceStorageException {
     storage.updateSpaceAccessed(remoteId, space);
-    clearSpaceCache();
+    //only the last accessed and visited spaces of the user change
+    generations.bump(CacheGenerations.spaces(remoteId));
   }
 
   @Override
   public List<Space> getLastAccessedSpace(final SpaceFilter filter, final int offset, final int limit) throws SpaceStorageException {
     //
-    SpaceFilterKey key = new SpaceFilterKey(filter.getRemoteId(), filter, SpaceType.MEMBER);
+    SpaceFilterKey key = filterKey(filter.getRemoteId(), filter, SpaceType.MEMBER);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -1344,7 +1375,7 @@ public class CachedSpaceStorage implements SpaceStorage {
      SpaceFilter filter = new SpaceFilter(null, null);
      filter.setSorting(new Sorting(Sorting.SortBy.DATE, Sorting.OrderBy.DESC));
 
-     SpaceFilterKey key = new SpaceFilterKey(null, filter, null);
+     SpaceFilterKey key = filterKey(null, filter, null);
      ListSpacesKey listKey = new ListSpacesKey(key, 0, limit);
 
      //
@@ -1364,7 +1395,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   @Override
   public int getNumberOfMemberPublicSpaces(final String userId) {
     //
-    SpaceFilterKey key = new SpaceFilterKey(userId, null, SpaceType.PUBLIC);
+    SpaceFilterKey key = filterKey(userId, null, SpaceType.PUBLIC);
 
     //
     return spacesCountCache.get(
@@ -1381,7 +1412,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   @Override
   public List<Space> getVisitedSpaces(final SpaceFilter filter, final int offset, final int limit) throws SpaceStorageException {
     //
-    SpaceFilterKey key = new SpaceFilterKey(filter.getRemoteId(), filter, SpaceType.VISITED);
+    SpaceFilterKey key = filterKey(filter.getRemoteId(), filter, SpaceType.VISITED);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -1399,7 +1430,7 @@ public class CachedSpaceStorage implements SpaceStorage {
   @Override
   public List<String> getMemberSpaceIds(final String identityId, final int offset, final int limit) throws SpaceStorageException {
     //
-    SpaceFilterKey key = new SpaceFilterKey(identityId, null, SpaceType.MEMBER_IDS);
+    SpaceFilterKey key = filterKey(identityId, null, SpaceType.MEMBER_IDS);
     ListSpacesKey listKey = new ListSpacesKey(key, offset, limit);
 
     //
@@ -26,6 +26,7 @@ import org.exoplatform.social.core.storage.cache.model.data.ActiveIdentitiesData
 import org.exoplatform.social.core.storage.cache.model.data.ListActivitiesData;
 import org.exoplatform.social.core.storage.cache.model.data.ListIdentitiesData;
 import org.exoplatform.social.core.storage.cache.model.data.ListSpacesData;
+import org.exoplatform.social.core.storage.cache.model.data.LongData;
 import org.exoplatform.social.core.storage.cache.model.data.ProfileData;
 import org.exoplatform.social.core.storage.cache.model.data.RelationshipData;
 import org.exoplatform.social.core.storage.cache.model.data.SpaceData;
@@ -35,6 +36,7 @@ import org.exoplatform.social.core.storage.cache.model.key.ActiveIdentityKey;
 import org.exoplatform.social.core.storage.cache.model.key.ActivityCountKey;
 import org.exoplatform.social.core.storage.cache.model.key.ActivityKey;
 import org.exoplatform.social.core.storage.cache.model.key.IdentityCompositeKey;
+import org.exoplatform.social.core.storage.cache.model.key.GenerationKey;
 import org.exoplatform.social.core.storage.cache.model.key.IdentityFilterKey;
 import org.exoplatform.social.core.storage.cache.model.key.IdentityKey;
 import org.exoplatform.social.core.storage.cache.model.key.ListActivitiesKey;
@@ -76,6 +78,7 @@ public class SocialStorageCacheService {
   private final ExoCache<ActivityKey, ActivityData> activityCache;
   private final ExoCache<ActivityCountKey, IntegerData> activitiesCountCache;
   private final ExoCache<ListActivitiesKey, ListActivitiesData> activitiesCache;
+  private final ActivityStreamCacheIndex activityStreamCacheIndex;
 
   // SpaceStorage
   private final ExoCache<SpaceKey, SpaceData> spaceCache;
@@ -85,6 +88,10 @@ public class SocialStorageCacheService {
   
   private final ExoCache<SpaceKey, SpaceSimpleData> spaceSimpleCache;
 
+  // Generations of the identity, space and relationship lists
+  private final ExoCache<GenerationKey, LongData> generationCache;
+  private final CacheGenerations generations;
+
   public SocialStorageCacheService(CacheService cacheService) {
     
     this.identityCache = CacheType.IDENTITY.getFromService(cacheService);
@@ -112,6 +119,11 @@ public class SocialStorageCacheService {
     
     this.spaceSimpleCache = CacheType.SPACE_SIMPLE.getFromService(cacheService);
 
+    this.generationCache = CacheType.GENERATIONS.getFromService(cacheService);
+    this.generations = new CacheGenerations(generationCache);
+    //the activity lists of a stream are also stamped with its generation, shared by the cluster nodes
+    this.activityStreamCacheIndex = new ActivityStreamCacheIndex(activitiesCache, activitiesCountCache, generations);
+
   }
 
   public ExoCache<IdentityKey, IdentityData> getIdentityCache() {
@@ -171,6 +183,10 @@ public class SocialStorageCacheService {
     return activitiesCache;
   }
 
+  public ActivityStreamCacheIndex getActivityStreamCacheIndex() {
+    return activityStreamCacheIndex;
+  }
+
   public ExoCache<SpaceKey, SpaceData> getSpaceCache() {
     return spaceCache;
   }
@@ -190,4 +206,12 @@ public class SocialStorageCacheService {
   public ExoCache<ListSpacesKey, ListSpacesData> getSpacesCache() {
     return spacesCache;
   }
+
+  public ExoCache<GenerationKey, LongData> getGenerationCache() {
+    return generationCache;
+  }
+
+  public CacheGenerations getGenerations() {
+    return generations;
+  }
 }
@@ -16,6 +16,13 @@
  */
 package org.exoplatform.social.core.storage.cache.model.data;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 
@@ -24,17 +31,172 @@ import java.util.Set;
  * Author : eXoPlatform
  *          exo@exoplatform.com
  * Oct 8, 2014  
+ * 
+ * The active user names are stored as a sorted array, the membership checks
+ * done by the stream fan-out are binary searches and the data is shared
+ * by all the fan-out workers without copy.
  */
 public class ActiveIdentitiesData implements CacheData<Set<String>> {
-  private final Set<String> activeUsers;
+  private static final String[] EMPTY = new String[0];
+
+  private final String[] activeUsers;
   
 
   public ActiveIdentitiesData(final Set<String> activeUsers) {
-    this.activeUsers = activeUsers;
+    this(toSortedArray(activeUsers));
+  }
+
+  private ActiveIdentitiesData(final String[] sortedUsers) {
+    this.activeUsers = sortedUsers;
   }
+
+  /**
+   * Gets the active users, the returned set is read only.
+   */
   @Override
   public Set<String> build() {
-    return this.activeUsers;
+    return new SortedArraySet(this.activeUsers);
+  }
+
+  /**
+   * Gets the active users and the users who logged in since, the returned set is read only.
+   * 
+   * @param recentUsers the users who logged in since the data was cached
+   */
+  public Set<String> build(Set<String> recentUsers) {
+    if (recentUsers.isEmpty()) {
+      return build();
+    }
+    return new WithRecentSet(this.activeUsers, recentUsers);
+  }
+
+  public boolean contains(String userId) {
+    return userId != null && Arrays.binarySearch(activeUsers, userId) >= 0;
+  }
+
+  public int size() {
+    return activeUsers.length;
+  }
+
+  /**
+   * Gets a copy of this data including the given user.
+   * 
+   * @param userId the user name
+   * @return the new data or this one if the user is already active
+   */
+  public ActiveIdentitiesData add(String userId) {
+    int index = Arrays.binarySearch(activeUsers, userId);
+    if (index >= 0) {
+      return this;
+    }
+    index = -index - 1;
+    String[] users = new String[activeUsers.length + 1];
+    System.arraycopy(activeUsers, 0, users, 0, index);
+    users[index] = userId;
+    System.arraycopy(activeUsers, index, users, index + 1, activeUsers.length - index);
+    return new ActiveIdentitiesData(users);
+  }
+
+  /**
+   * Gets a copy of this data including the given users, the array is copied once for all of them.
+   * 
+   * @param userIds the user names
+   * @return the new data or this one if the users are already active
+   */
+  public ActiveIdentitiesData addAll(Collection<String> userIds) {
+    List<String> added = new ArrayList<String>();
+    for (String userId : userIds) {
+      if (!contains(userId)) {
+        added.add(userId);
+      }
+    }
+    if (added.isEmpty()) {
+      return this;
+    }
+    String[] users = Arrays.copyOf(activeUsers, activeUsers.length + added.size());
+    for (int i = 0; i < added.size(); i++) {
+      users[activeUsers.length + i] = added.get(i);
+    }
+    Arrays.sort(users);
+    return new ActiveIdentitiesData(users);
+  }
+
+  private static String[] toSortedArray(Set<String> users) {
+    if (users == null || users.isEmpty()) {
+      return EMPTY;
+    }
+    String[] sorted = users.toArray(new String[users.size()]);
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+  /**
+   * Read only view of a sorted array of user names.
+   */
+  private static class SortedArraySet extends AbstractSet<String> {
+
+    private final String[] users;
+
+    SortedArraySet(String[] users) {
+      this.users = users;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return o instanceof String && Arrays.binarySearch(users, (String) o) >= 0;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      return Collections.unmodifiableList(Arrays.asList(users)).iterator();
+    }
+
+    @Override
+    public int size() {
+      return users.length;
+    }
+  }
+
+  /**
+   * Read only view of a sorted array of user names and of a set of recent ones.
+   */
+  private static class WithRecentSet extends AbstractSet<String> {
+
+    private final String[] users;
+
+    private final Set<String> recentUsers;
+
+    WithRecentSet(String[] users, Set<String> recentUsers) {
+      this.users = users;
+      this.recentUsers = recentUsers;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return o instanceof String && (Arrays.binarySearch(users, (String) o) >= 0 || recentUsers.contains(o));
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      List<String> all = new ArrayList<String>(Arrays.asList(users));
+      for (String userId : recentUsers) {
+        if (Arrays.binarySearch(users, userId) < 0) {
+          all.add(userId);
+        }
+      }
+      return Collections.unmodifiableList(all).iterator();
+    }
+
+    @Override
+    public int size() {
+      int size = users.length;
+      for (String userId : recentUsers) {
+        if (Arrays.binarySearch(users, userId) < 0) {
+          size++;
+        }
+      }
+      return size;
+    }
   }
 
 }
@@ -17,9 +17,16 @@
 
 package org.exoplatform.social.core.storage.cache.model.data;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.exoplatform.social.core.activity.model.ActivityStream;
@@ -29,42 +36,68 @@ import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 /**
  * Immutable activity data.
  *
+ * The data is also a read-only view of the cached activity: its getters read the cached values
+ * without building a new activity. The data is externalized with the {@link CompactEncoding}, the
+ * rarely used fields are kept encoded until they are read or the activity is built, so that an
+ * entry replicated to a node which does not display it is not decoded.
+ *
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
  * @version $Revision$
  */
-public class ActivityData implements CacheData<ExoSocialActivity> {
+public class ActivityData implements CacheData<ExoSocialActivity>, Externalizable {
 
   public final static ActivityData NULL = new ActivityData(new ExoSocialActivityImpl());
-  
-  private final String id;
-  private final String title;
-  private final String body;
-  private final String[] likes;
-  private final boolean isComment;
-  private final boolean isHidden;
-  private final boolean isLocked;
-  private final Long postedTime;
-  private final Long lastUpdated;
-  private final String[] replyIds;
-  private final String userId;
-  private final String appId;
-  private final String titleId;
-  private final String bodyId;
-  private final String type;
-  private final Map templateParams;
-  private final String externalId;
-  private final String url;
-  private final String streamId;
-  private final String streamOwner;
-  private final String streamFaviconUrl;
-  private final String streamSourceUrl;
-  private final String streamTitle;
-  private final String streamUrl;
-  private final String[] mentioners;
-  private final String[] commenters;
-  private final ActivityStream.Type streamType;
-  private final String posterId;
-  private final String parentId;
+
+  /** The version of the externalized form. */
+  private static final byte VERSION = 1;
+
+  private static final int COMMENT = 1;
+  private static final int HIDDEN = 2;
+  private static final int LOCKED = 4;
+
+  private String id;
+  private String title;
+  private String body;
+  private String[] likes;
+  private boolean isComment;
+  private boolean isHidden;
+  private boolean isLocked;
+  private Long postedTime;
+  private Long lastUpdated;
+  private String[] replyIds;
+  private String userId;
+  private String appId;
+  private String titleId;
+  private String bodyId;
+  private String type;
+  private String streamId;
+  private String streamOwner;
+  private ActivityStream.Type streamType;
+  private String posterId;
+  private String parentId;
+
+  //the rarely used fields
+  private Map templateParams;
+  private String externalId;
+  private String url;
+  private String streamFaviconUrl;
+  private String streamSourceUrl;
+  private String streamTitle;
+  private String streamUrl;
+  private String[] mentioners;
+  private String[] commenters;
+
+  /** The rarely used fields as received, null once they are decoded. */
+  private volatile byte[] rare;
+
+  /** True when this is the externalized form of {@link #NULL}. */
+  private boolean isNull;
+
+  /**
+   * Used by the externalization.
+   */
+  public ActivityData() {
+  }
 
   public ActivityData(final ExoSocialActivity activity) {
 
@@ -112,6 +145,7 @@ public class ActivityData implements CacheData<ExoSocialActivity> {
     if (this == NULL) {
       return null;
     }
+    decodeRare();
     
     ExoSocialActivity activity = new ExoSocialActivityImpl();
 
@@ -152,11 +186,190 @@ public class ActivityData implements CacheData<ExoSocialActivity> {
 
   }
 
+  public String getId() {
+    return id;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public String getType() {
+    return type;
+  }
+
   public String getUserId() {
     return userId;
   }
 
+  public String getPosterId() {
+    return posterId;
+  }
+
+  public String getParentId() {
+    return parentId;
+  }
+
+  public String getStreamId() {
+    return streamId;
+  }
+
   public String getStreamOwner() {
     return streamOwner;
   }
+
+  public boolean isComment() {
+    return isComment;
+  }
+
+  public boolean isHidden() {
+    return isHidden;
+  }
+
+  /**
+   * @return the ids of the likers, not to be modified
+   */
+  public List<String> getLikeIdentityIds() {
+    return ids(likes);
+  }
+
+  /**
+   * @return the ids of the comments, not to be modified
+   */
+  public List<String> getReplyToIds() {
+    return ids(replyIds);
+  }
+
+  /**
+   * @return the template parameters, not to be modified
+   */
+  public Map<String, String> getTemplateParams() {
+    decodeRare();
+    return Collections.unmodifiableMap(templateParams);
+  }
+
+  public void writeExternal(final ObjectOutput out) throws IOException {
+    out.writeByte(VERSION);
+    out.writeBoolean(this == NULL);
+    if (this == NULL) {
+      return;
+    }
+
+    //
+    out.writeByte((isComment ? COMMENT : 0) | (isHidden ? HIDDEN : 0) | (isLocked ? LOCKED : 0));
+    CompactEncoding.Writer writer = new CompactEncoding.Writer(out);
+    writer.writeString(id);
+    writer.writeString(userId);
+    writer.writeString(posterId);
+    writer.writeString(streamId);
+    writer.writeString(streamOwner);
+    writer.writeString(parentId);
+    writer.writeString(type);
+    writer.writeString(streamType != null ? streamType.name() : null);
+    writer.writeString(appId);
+    writer.writeString(titleId);
+    writer.writeString(bodyId);
+    writer.writeString(title);
+    writer.writeString(body);
+    writer.writeLong(postedTime);
+    writer.writeLong(lastUpdated);
+    writer.writeIds(likes);
+    writer.writeIds(replyIds);
+
+    //the rarely used fields are forwarded as received when they were not decoded
+    byte[] encoded = rare;
+    if (encoded == null) {
+      ByteArrayOutputStream block = new ByteArrayOutputStream(128);
+      CompactEncoding.Writer rareWriter = CompactEncoding.writer(block);
+      rareWriter.writeString(externalId);
+      rareWriter.writeString(url);
+      rareWriter.writeString(streamFaviconUrl);
+      rareWriter.writeString(streamSourceUrl);
+      rareWriter.writeString(streamTitle);
+      rareWriter.writeString(streamUrl);
+      rareWriter.writeMap(templateParams);
+      rareWriter.writeIds(mentioners);
+      rareWriter.writeIds(commenters);
+      encoded = block.toByteArray();
+    }
+    CompactEncoding.writeBytes(out, encoded);
+  }
+
+  public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+    byte version = in.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported activity data version " + version);
+    }
+    isNull = in.readBoolean();
+    if (isNull) {
+      return;
+    }
+
+    //
+    int flags = in.readByte();
+    isComment = (flags & COMMENT) != 0;
+    isHidden = (flags & HIDDEN) != 0;
+    isLocked = (flags & LOCKED) != 0;
+    CompactEncoding.Reader reader = new CompactEncoding.Reader(in);
+    id = reader.readString();
+    userId = reader.readString();
+    posterId = reader.readString();
+    streamId = reader.readString();
+    streamOwner = reader.readString();
+    parentId = reader.readString();
+    type = reader.readString(true);
+    String streamTypeName = reader.readString(true);
+    streamType = streamTypeName != null ? ActivityStream.Type.valueOf(streamTypeName) : null;
+    appId = reader.readString(true);
+    titleId = reader.readString(true);
+    bodyId = reader.readString(true);
+    title = reader.readString();
+    body = reader.readString();
+    postedTime = reader.readLong();
+    lastUpdated = reader.readLong();
+    likes = reader.readIds();
+    replyIds = reader.readIds();
+    rare = CompactEncoding.readBytes(in);
+  }
+
+  private Object readResolve() {
+    return isNull ? NULL : this;
+  }
+
+  /**
+   * Decodes the rarely used fields the first time they are needed.
+   */
+  private void decodeRare() {
+    if (rare == null) {
+      return;
+    }
+    synchronized (this) {
+      if (rare == null) {
+        return;
+      }
+      try {
+        CompactEncoding.Reader reader = CompactEncoding.reader(rare);
+        externalId = reader.readString();
+        url = reader.readString();
+        streamFaviconUrl = reader.readString();
+        streamSourceUrl = reader.readString();
+        streamTitle = reader.readString();
+        streamUrl = reader.readString();
+        templateParams = reader.readMap();
+        mentioners = reader.readIds();
+        commenters = reader.readIds();
+      }
+      catch (IOException e) {
+        throw new IllegalStateException("Cannot decode the activity " + id, e);
+      }
+      rare = null;
+    }
+  }
+
+  private static List<String> ids(String[] ids) {
+    if (ids == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(Arrays.asList(ids));
+  }
 }
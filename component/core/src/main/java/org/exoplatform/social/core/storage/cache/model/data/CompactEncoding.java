@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache.model.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of the cached data, used by their externalization.
+ *
+ * <ul>
+ *   <li>the sizes and lengths are written as variable length integers;</li>
+ *   <li>a string already written in the same payload is written as a reference to the first one,
+ *   the poster, the owner and the commenters of an activity often are the same identity;</li>
+ *   <li>the low cardinality strings (types, providers, property names) are interned when read;</li>
+ *   <li>the JCR ids (32 lower case hexadecimal digits) are packed as two longs.</li>
+ * </ul>
+ */
+final class CompactEncoding {
+
+  /** The number of strings a payload can refer to. */
+  private static final int MAX_REFERENCES = 32;
+
+  /** The length of the JCR ids. */
+  private static final int HEX_ID_LENGTH = 32;
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private static final int NULL = 0;
+  private static final int REFERENCE = 1;
+  private static final int HEX_ID = 2;
+  private static final int UTF8 = 3;
+
+  private CompactEncoding() {
+  }
+
+  /**
+   * Writes the values of a payload.
+   */
+  static final class Writer {
+
+    private final DataOutput out;
+
+    private final List<String> written = new ArrayList<String>();
+
+    Writer(DataOutput out) {
+      this.out = out;
+    }
+
+    void writeSize(int size) throws IOException {
+      writeVarInt(out, size);
+    }
+
+    /**
+     * Writes a string: {@link #NULL}, {@link #REFERENCE} and the index of the same string already
+     * written, {@link #HEX_ID} and two longs, else its length + {@link #UTF8} and its UTF-8 bytes.
+     */
+    void writeString(String s) throws IOException {
+      if (s == null) {
+        writeVarInt(out, NULL);
+        return;
+      }
+      int index = written.indexOf(s);
+      if (index >= 0) {
+        writeVarInt(out, REFERENCE);
+        writeVarInt(out, index);
+        return;
+      }
+      if (isHexId(s)) {
+        writeVarInt(out, HEX_ID);
+        out.writeLong(parseHex(s, 0));
+        out.writeLong(parseHex(s, HEX_ID_LENGTH / 2));
+      }
+      else {
+        byte[] bytes = utf8(s);
+        writeVarInt(out, bytes.length + UTF8);
+        out.write(bytes);
+      }
+      if (written.size() < MAX_REFERENCES) {
+        written.add(s);
+      }
+    }
+
+    void writeIds(String[] ids) throws IOException {
+      if (ids == null) {
+        writeVarInt(out, 0);
+        return;
+      }
+      writeVarInt(out, ids.length + 1);
+      for (String id : ids) {
+        writeString(id);
+      }
+    }
+
+    void writeMap(Map<String, String> map) throws IOException {
+      if (map == null) {
+        writeVarInt(out, 0);
+        return;
+      }
+      writeVarInt(out, map.size() + 1);
+      for (Map.Entry<String, String> entry : map.entrySet()) {
+        writeString(entry.getKey());
+        writeString(entry.getValue());
+      }
+    }
+
+    void writeLong(Long value) throws IOException {
+      out.writeBoolean(value != null);
+      if (value != null) {
+        out.writeLong(value);
+      }
+    }
+  }
+
+  /**
+   * Reads the values of a payload, in the order they were written.
+   */
+  static final class Reader {
+
+    private final DataInput in;
+
+    private final List<String> read = new ArrayList<String>();
+
+    Reader(DataInput in) {
+      this.in = in;
+    }
+
+    int readSize() throws IOException {
+      return readVarInt(in);
+    }
+
+    String readString() throws IOException {
+      return readString(false);
+    }
+
+    /**
+     * @param intern true for the low cardinality strings, which are shared by all the entries
+     */
+    String readString(boolean intern) throws IOException {
+      int code = readVarInt(in);
+      if (code == NULL) {
+        return null;
+      }
+      if (code == REFERENCE) {
+        return read.get(readVarInt(in));
+      }
+      String s;
+      if (code == HEX_ID) {
+        s = formatHex(in.readLong(), in.readLong());
+      }
+      else {
+        byte[] bytes = new byte[code - UTF8];
+        in.readFully(bytes);
+        s = new String(bytes, "UTF-8");
+        if (intern) {
+          s = s.intern();
+        }
+      }
+      if (read.size() < MAX_REFERENCES) {
+        read.add(s);
+      }
+      return s;
+    }
+
+    String[] readIds() throws IOException {
+      int code = readVarInt(in);
+      if (code == 0) {
+        return null;
+      }
+      String[] ids = new String[code - 1];
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = readString();
+      }
+      return ids;
+    }
+
+    Map<String, String> readMap() throws IOException {
+      int code = readVarInt(in);
+      if (code == 0) {
+        return null;
+      }
+      if (code == 1) {
+        return Collections.emptyMap();
+      }
+      Map<String, String> map = new LinkedHashMap<String, String>(2 * (code - 1));
+      for (int i = 0; i < code - 1; i++) {
+        map.put(readString(true), readString());
+      }
+      return Collections.unmodifiableMap(map);
+    }
+
+    Long readLong() throws IOException {
+      return in.readBoolean() ? in.readLong() : null;
+    }
+  }
+
+  /**
+   * Gets a writer of a block of values which is decoded later, see {@link #reader(byte[])}.
+   *
+   * @param block the bytes of the block
+   * @return the writer
+   */
+  static Writer writer(ByteArrayOutputStream block) {
+    return new Writer(new DataOutputStream(block));
+  }
+
+  /**
+   * Gets a reader of a block of values written by a {@link #writer(ByteArrayOutputStream)}.
+   *
+   * @param block the bytes of the block
+   * @return the reader
+   */
+  static Reader reader(byte[] block) {
+    return new Reader(new DataInputStream(new ByteArrayInputStream(block)));
+  }
+
+  static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+    writeVarInt(out, bytes.length);
+    out.write(bytes);
+  }
+
+  static byte[] readBytes(DataInput in) throws IOException {
+    byte[] bytes = new byte[readVarInt(in)];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  static void writeVarInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = in.readByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length integer");
+  }
+
+  private static byte[] utf8(String s) {
+    try {
+      return s.getBytes("UTF-8");
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static boolean isHexId(String s) {
+    if (s.length() != HEX_ID_LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < HEX_ID_LENGTH; i++) {
+      char c = s.charAt(i);
+      if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long parseHex(String id, int from) {
+    long value = 0;
+    for (int i = from; i < from + HEX_ID_LENGTH / 2; i++) {
+      value = (value << 4) | Character.digit(id.charAt(i), 16);
+    }
+    return value;
+  }
+
+  private static String formatHex(long high, long low) {
+    char[] chars = new char[HEX_ID_LENGTH];
+    for (int i = HEX_ID_LENGTH / 2 - 1; i >= 0; i--) {
+      chars[i] = HEX[(int) (high & 0xF)];
+      chars[i + HEX_ID_LENGTH / 2] = HEX[(int) (low & 0xF)];
+      high >>>= 4;
+      low >>>= 4;
+    }
+    return new String(chars);
+  }
+}
@@ -17,25 +17,42 @@
 
 package org.exoplatform.social.core.storage.cache.model.data;
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
 import org.exoplatform.social.core.identity.model.Identity;
 
 /**
- * Immutable identity data.
+ * Immutable identity data, externalized with the {@link CompactEncoding}.
  *
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
  * @version $Revision$
  */
-public class IdentityData implements CacheData<Identity> {
+public class IdentityData implements CacheData<Identity>, Externalizable {
+
+  /** The version of the externalized form. */
+  private static final byte VERSION = 1;
+
+  private static final int DELETED = 1;
+  private static final int ENABLED = 2;
 
-  private final String id;
+  private String id;
 
-  private final String providerId;
+  private String providerId;
 
-  private final String remoteId;
+  private String remoteId;
 
-  private final boolean isDeleted;
+  private boolean isDeleted;
   
-  private final boolean isEnabled;
+  private boolean isEnabled;
+
+  /**
+   * Used by the externalization.
+   */
+  public IdentityData() {
+  }
 
   public IdentityData(final Identity identity) {
     if (identity != null) {
@@ -80,4 +97,27 @@ public class IdentityData implements CacheData<Identity> {
     return identity;
   }
 
+  public void writeExternal(final ObjectOutput out) throws IOException {
+    out.writeByte(VERSION);
+    out.writeByte((isDeleted ? DELETED : 0) | (isEnabled ? ENABLED : 0));
+    CompactEncoding.Writer writer = new CompactEncoding.Writer(out);
+    writer.writeString(id);
+    writer.writeString(providerId);
+    writer.writeString(remoteId);
+  }
+
+  public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+    byte version = in.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported identity data version " + version);
+    }
+    int flags = in.readByte();
+    isDeleted = (flags & DELETED) != 0;
+    isEnabled = (flags & ENABLED) != 0;
+    CompactEncoding.Reader reader = new CompactEncoding.Reader(in);
+    id = reader.readString();
+    providerId = reader.readString(true);
+    remoteId = reader.readString();
+  }
+
 }
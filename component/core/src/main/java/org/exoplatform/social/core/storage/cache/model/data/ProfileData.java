@@ -20,34 +20,49 @@ package org.exoplatform.social.core.storage.cache.model.data;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.model.Profile;
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
- * Immutable profile data.
+ * Immutable profile data, externalized with the {@link CompactEncoding}. The string properties are
+ * encoded compactly, the other ones (phones, experiences...) are serialized.
  *
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
  * @version $Revision$
  */
-public class ProfileData implements CacheData<Profile> {
+public class ProfileData implements CacheData<Profile>, Externalizable {
 
-  private final String profileId;
+  /** The version of the externalized form. */
+  private static final byte VERSION = 1;
 
-  private final String identityId;
+  private String profileId;
 
-  private final String providerId;
+  private String identityId;
 
-  private final String remoteId;
+  private String providerId;
 
-  private final boolean hasChanged;
+  private String remoteId;
 
-  private final Map<String, Object> data;
+  private boolean hasChanged;
 
-  private final String url;
+  private Map<String, Object> data;
 
-  private final String avatarUrl;
+  private String url;
 
-  private final Long createdTime;
+  private String avatarUrl;
+
+  private Long createdTime;
+
+  /**
+   * Used by the externalization.
+   */
+  public ProfileData() {
+  }
 
   public ProfileData(final Profile profile) {
     this.profileId = profile.getId();
@@ -102,4 +117,52 @@ public class ProfileData implements CacheData<Profile> {
     return profile;
   }
 
+  public void writeExternal(final ObjectOutput out) throws IOException {
+    out.writeByte(VERSION);
+    out.writeBoolean(hasChanged);
+    CompactEncoding.Writer writer = new CompactEncoding.Writer(out);
+    writer.writeString(profileId);
+    writer.writeString(identityId);
+    writer.writeString(providerId);
+    writer.writeString(remoteId);
+    writer.writeString(url);
+    writer.writeString(avatarUrl);
+    writer.writeLong(createdTime);
+    writer.writeSize(data.size());
+    for (Map.Entry<String, Object> entry : data.entrySet()) {
+      writer.writeString(entry.getKey());
+      if (entry.getValue() instanceof String) {
+        out.writeBoolean(true);
+        writer.writeString((String) entry.getValue());
+      }
+      else {
+        out.writeBoolean(false);
+        out.writeObject(entry.getValue());
+      }
+    }
+  }
+
+  public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+    byte version = in.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported profile data version " + version);
+    }
+    hasChanged = in.readBoolean();
+    CompactEncoding.Reader reader = new CompactEncoding.Reader(in);
+    profileId = reader.readString();
+    identityId = reader.readString();
+    providerId = reader.readString(true);
+    remoteId = reader.readString();
+    url = reader.readString();
+    avatarUrl = reader.readString();
+    createdTime = reader.readLong();
+    int size = reader.readSize();
+    Map<String, Object> properties = new LinkedHashMap<String, Object>(2 * size);
+    for (int i = 0; i < size; i++) {
+      String key = reader.readString(true);
+      properties.put(key, in.readBoolean() ? reader.readString() : in.readObject());
+    }
+    data = Collections.unmodifiableMap(properties);
+  }
+
 }
@@ -17,6 +17,7 @@
 
 package org.exoplatform.social.core.storage.cache.model.data;
 
+import org.exoplatform.social.core.space.model.MemberSet;
 import org.exoplatform.social.core.space.model.Space;
 
 /**
@@ -47,6 +48,12 @@ public class SpaceData implements CacheData<Space> {
   private final String[] pendingUser;
   private final String[] invitedUser;
 
+  /** The sets of the membership checks, shared by the spaces built from this data on this node. */
+  private transient volatile MemberSet memberSet;
+  private transient volatile MemberSet managerSet;
+  private transient volatile MemberSet pendingSet;
+  private transient volatile MemberSet invitedSet;
+
   public SpaceData(final Space space) {
 
     id = space.getId();
@@ -92,6 +99,10 @@ public class SpaceData implements CacheData<Space> {
     space.setManagers(managers);
     space.setPendingUsers(pendingUser);
     space.setInvitedUsers(invitedUser);
+    space.setMemberSet(getMemberSet());
+    space.setManagerSet(getManagerSet());
+    space.setPendingSet(getPendingSet());
+    space.setInvitedSet(getInvitedSet());
     space.setCreatedTime(createdTime);
 
     return space;
@@ -161,4 +172,32 @@ public class SpaceData implements CacheData<Space> {
   public String[] getInvitedUser() {
     return invitedUser;
   }
+
+  private MemberSet getMemberSet() {
+    if (memberSet == null) {
+      memberSet = MemberSet.of(members);
+    }
+    return memberSet;
+  }
+
+  private MemberSet getManagerSet() {
+    if (managerSet == null) {
+      managerSet = MemberSet.of(managers);
+    }
+    return managerSet;
+  }
+
+  private MemberSet getPendingSet() {
+    if (pendingSet == null) {
+      pendingSet = MemberSet.of(pendingUser);
+    }
+    return pendingSet;
+  }
+
+  private MemberSet getInvitedSet() {
+    if (invitedSet == null) {
+      invitedSet = MemberSet.of(invitedUser);
+    }
+    return invitedSet;
+  }
 }
@@ -23,12 +23,32 @@ public class SuggestionsData implements Serializable {
   
   private final Map<String, Integer> map;
 
+  /** relationship generation name => its value when the suggestions were computed */
+  private final Map<String, Long> generations;
+
+  /** the generation of all the relationships when the suggestions were last checked */
+  private final long checked;
+
   public SuggestionsData(Map<String, Integer> map) {
+    this(map, null, 0);
+  }
+
+  public SuggestionsData(Map<String, Integer> map, Map<String, Long> generations, long checked) {
     this.map = map;
+    this.generations = generations;
+    this.checked = checked;
   }
   
   public Map<String, Integer> getMap() {
     return this.map;
   }
 
+  public Map<String, Long> getGenerations() {
+    return this.generations;
+  }
+
+  public long getChecked() {
+    return this.checked;
+  }
+
 }
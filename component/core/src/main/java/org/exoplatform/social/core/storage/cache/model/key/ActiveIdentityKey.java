@@ -85,8 +85,8 @@ public class ActiveIdentityKey extends ScopeCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + days;
     result = 31 * result + (userGroup != null ? userGroup.hashCode() : 0);
     return result;
@@ -80,6 +80,27 @@ public class ActivityCountKey extends ScopeCacheKey {
     this.type = type;
   }
 
+  private ActivityCountKey(final ActivityCountKey key, final long generation) {
+    super(generation);
+    this.key = key.key;
+    this.viewerKey = key.viewerKey;
+    this.activityKey = key.activityKey;
+    this.baseId = key.baseId;
+    this.type = key.type;
+    this.time = key.time;
+    this.activityTypes = key.activityTypes;
+  }
+
+  /**
+   * Gets a copy of this key stamped with the given generation.
+   *
+   * @param generation the generation of the stream of the count
+   * @return the stamped key
+   */
+  public ActivityCountKey withGeneration(final long generation) {
+    return new ActivityCountKey(this, generation);
+  }
+
   public IdentityKey getKey() {
     return key;
   }
@@ -88,6 +109,14 @@ public class ActivityCountKey extends ScopeCacheKey {
     return activityKey;
   }
 
+  public String getBaseId() {
+    return baseId;
+  }
+
+  public ActivityType getType() {
+    return type;
+  }
+
   @Override
   public boolean equals(final Object o) {
     if (this == o) {
@@ -127,8 +156,8 @@ public class ActivityCountKey extends ScopeCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (key != null ? key.hashCode() : 0);
     result = 31 * result + (activityKey != null ? activityKey.hashCode() : 0);
     result = 31 * result + (activityTypes != null ? activityTypes.hashCode() : 0);
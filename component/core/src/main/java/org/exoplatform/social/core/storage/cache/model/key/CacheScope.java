@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache.model.key;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.jcr.RepositoryException;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.services.jcr.RepositoryService;
+import org.exoplatform.services.jcr.core.ManageableRepository;
+
+/**
+ * Resolves the scope of the cache keys, the name of the current repository.
+ *
+ * The repository service is looked up once per portal container instead of once per key,
+ * the last resolved repository is remembered with its name and the names are interned, so
+ * that the keys of the same repository share the same scope instance.
+ */
+public final class CacheScope {
+
+  /** . */
+  private static final ConcurrentMap<String, String> SCOPES = new ConcurrentHashMap<String, String>();
+
+  /** . */
+  private static volatile Resolved resolved;
+
+  private CacheScope() {
+  }
+
+  /**
+   * Gets the name of the current repository.
+   *
+   * @return the interned repository name, null if there is no repository service
+   */
+  public static String current() {
+    ExoContainer container = PortalContainer.getInstance();
+    if (container == null) {
+      return null;
+    }
+
+    Resolved last = resolved;
+    if (last == null || last.container != container) {
+      RepositoryService repositoryService = (RepositoryService) container.getComponentInstanceOfType(RepositoryService.class);
+      if (repositoryService == null) {
+        return null;
+      }
+      last = new Resolved(container, repositoryService, null, null);
+      resolved = last;
+    }
+
+    try {
+      ManageableRepository repository = last.repositoryService.getCurrentRepository();
+      if (repository == last.repository) {
+        return last.scope;
+      }
+      String scope = intern(repository.getConfiguration().getName());
+      resolved = new Resolved(last.container, last.repositoryService, repository, scope);
+      return scope;
+    }
+    catch (RepositoryException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Gets the canonical instance of a scope.
+   *
+   * @param scope the scope
+   * @return the canonical instance
+   */
+  public static String intern(String scope) {
+    if (scope == null) {
+      return null;
+    }
+    String interned = SCOPES.putIfAbsent(scope, scope);
+    return interned == null ? scope : interned;
+  }
+
+  /**
+   * The last resolved repository of a container.
+   */
+  private static class Resolved {
+
+    private final ExoContainer container;
+
+    private final RepositoryService repositoryService;
+
+    private final ManageableRepository repository;
+
+    private final String scope;
+
+    Resolved(ExoContainer container, RepositoryService repositoryService, ManageableRepository repository, String scope) {
+      this.container = container;
+      this.repositoryService = repositoryService;
+      this.repository = repository;
+      this.scope = scope;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.exoplatform.social.core.storage.cache.model.key;
+
+/**
+ * Immutable key of a cache generation.
+ */
+public class GenerationKey extends ScopeCacheKey {
+
+  private final String name;
+
+  public GenerationKey(final String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof GenerationKey)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+
+    GenerationKey that = (GenerationKey) o;
+
+    if (name != null ? !name.equals(that.name) : that.name != null) {
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  protected int computeHash() {
+    int result = super.computeHash();
+    result = 31 * result + (name != null ? name.hashCode() : 0);
+    return result;
+  }
+
+}
@@ -68,8 +68,8 @@ public class IdentityCompositeKey extends ScopeCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (providerId != null ? providerId.hashCode() : 0);
     result = 31 * result + (remoteId != null ? remoteId.hashCode() : 0);
     return result;
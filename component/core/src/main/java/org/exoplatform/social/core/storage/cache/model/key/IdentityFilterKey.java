@@ -75,7 +75,12 @@ public class IdentityFilterKey extends ScopeCacheKey {
   }
   
   public IdentityFilterKey(final String providerId, final ProfileFilter filter) {
+    this(providerId, filter, 0);
+  }
+
+  public IdentityFilterKey(final String providerId, final ProfileFilter filter, final long generation) {
 
+    super(generation);
     this.providerId = providerId;
     this.remoteId = null;
     this.name = filter.getName();
@@ -148,8 +153,8 @@ public class IdentityFilterKey extends ScopeCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (providerId != null ? providerId.hashCode() : 0);
     result = 31 * result + (remoteId != null ? remoteId.hashCode() : 0);
     result = 31 * result + (name != null ? name.hashCode() : 0);
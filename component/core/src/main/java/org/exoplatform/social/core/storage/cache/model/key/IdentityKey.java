@@ -59,8 +59,8 @@ public class IdentityKey extends ScopeCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (id != null ? id.hashCode() : 0);
     return result;
   }
@@ -43,6 +43,33 @@ public class ListActivitiesKey extends ListCacheKey {
     this.identities = identities;
   }
 
+  private ListActivitiesKey(final ListActivitiesKey key, final ActivityCountKey countKey, final long generation) {
+    super(key.getOffset(), key.getLimit(), generation);
+    this.key = countKey;
+    this.identities = key.identities;
+  }
+
+  /**
+   * Gets a copy of this key whose count key is the given one, see
+   * {@link ActivityCountKey#withGeneration(long)}.
+   *
+   * @param countKey the stamped count key
+   * @return the stamped key
+   */
+  public ListActivitiesKey withKey(final ActivityCountKey countKey) {
+    return new ListActivitiesKey(this, countKey, getGeneration());
+  }
+
+  /**
+   * Gets a copy of this key stamped with the given generation.
+   *
+   * @param generation the generation of the lists
+   * @return the stamped key
+   */
+  public ListActivitiesKey withGeneration(final long generation) {
+    return new ListActivitiesKey(this, key, generation);
+  }
+
   public ActivityCountKey getKey() {
     return key;
   }
@@ -72,8 +99,8 @@ public class ListActivitiesKey extends ListCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (key != null ? key.hashCode() : 0);
     result = 31 * result + (identities != null ? identities.hashCode() : 0);
     return result;
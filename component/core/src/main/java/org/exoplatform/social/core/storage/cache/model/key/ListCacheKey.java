@@ -29,10 +29,23 @@ public class ListCacheKey extends ScopeCacheKey {
   private final long limit;
 
   public ListCacheKey(final long offset, final long limit) {
+    this(offset, limit, 0);
+  }
+
+  public ListCacheKey(final long offset, final long limit, final long generation) {
+    super(generation);
     this.offset = offset;
     this.limit = limit;
   }
 
+  public long getOffset() {
+    return offset;
+  }
+
+  public long getLimit() {
+    return limit;
+  }
+
   @Override
   public boolean equals(final Object o) {
     if (this == o) {
@@ -58,8 +71,8 @@ public class ListCacheKey extends ScopeCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (int) (offset ^ (offset >>> 32));
     result = 31 * result + (int) (limit ^ (limit >>> 32));
     return result;
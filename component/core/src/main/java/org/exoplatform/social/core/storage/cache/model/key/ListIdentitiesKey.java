@@ -60,8 +60,8 @@ public class ListIdentitiesKey extends ListCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (key != null ? key.hashCode() : 0);
     return result;
   }
@@ -30,7 +30,12 @@ public class ListRelationshipsKey <T> extends ListCacheKey {
   private final RelationshipType type;
 
   public ListRelationshipsKey(final T key, final RelationshipType type, final long offset, final long limit) {
-    super(offset, limit);
+    this(key, type, offset, limit, 0);
+  }
+
+  public ListRelationshipsKey(final T key, final RelationshipType type, final long offset, final long limit,
+                              final long generation) {
+    super(offset, limit, generation);
     this.type = type;
     this.key = key;
   }
@@ -64,8 +69,8 @@ public class ListRelationshipsKey <T> extends ListCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (key != null ? key.hashCode() : 0);
     result = 31 * result + (type != null ? type.hashCode() : 0);
     return result;
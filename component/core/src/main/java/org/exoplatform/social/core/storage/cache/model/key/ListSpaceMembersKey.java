@@ -52,8 +52,8 @@ public class ListSpaceMembersKey extends ListIdentitiesKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (spaceKey != null ? spaceKey.hashCode() : 0);
     return result;
   }
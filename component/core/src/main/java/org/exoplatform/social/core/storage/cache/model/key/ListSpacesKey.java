@@ -29,7 +29,11 @@ public class ListSpacesKey extends ListCacheKey {
   private final SpaceFilterKey key;
 
   public ListSpacesKey(final SpaceFilterKey key, final long offset, final long limit) {
-    super(offset, limit);
+    this(key, offset, limit, 0);
+  }
+
+  public ListSpacesKey(final SpaceFilterKey key, final long offset, final long limit, final long generation) {
+    super(offset, limit, generation);
     this.key = key;
   }
 
@@ -55,8 +59,8 @@ public class ListSpacesKey extends ListCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (key != null ? key.hashCode() : 0);
     return result;
   }
@@ -31,6 +31,11 @@ public class RelationshipCountKey <T> extends ScopeCacheKey {
   private final RelationshipType type;
 
   public RelationshipCountKey(final T key, final RelationshipType type) {
+    this(key, type, 0);
+  }
+
+  public RelationshipCountKey(final T key, final RelationshipType type, final long generation) {
+    super(generation);
     this.key = key;
     this.type = type;
   }
@@ -64,8 +69,8 @@ public class RelationshipCountKey <T> extends ScopeCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (key != null ? key.hashCode() : 0);
     result = 31 * result + (type != null ? type.hashCode() : 0);
     return result;
@@ -68,8 +68,8 @@ public class RelationshipIdentityKey extends ScopeCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (identityId1 != null ? identityId1.hashCode() : 0);
     result = 31 * result + (identityId2 != null ? identityId2.hashCode() : 0);
     return result;
@@ -57,8 +57,8 @@ public class RelationshipKey extends ScopeCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (id != null ? id.hashCode() : 0);
     return result;
   }
@@ -17,11 +17,6 @@
 
 package org.exoplatform.social.core.storage.cache.model.key;
 
-import org.exoplatform.container.PortalContainer;
-import org.exoplatform.services.jcr.RepositoryService;
-
-import javax.jcr.RepositoryException;
-
 /**
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
  * @version $Revision$
@@ -30,14 +25,33 @@ public class ScopeCacheKey implements CacheKey {
 
   private final String scope;
 
+  /** The generation the entry depends on, 0 when it does not depend on one. */
+  private final long generation;
+
+  /** The hash code, computed on first use. Not serialized, the enum hash codes differ between JVMs. */
+  private transient int hash;
+
   public ScopeCacheKey() {
-    scope = getCurrentRepositoryName();
+    this(0);
+  }
+
+  /**
+   * @param generation the generation of what the cached entry depends on, see
+   *        {@link org.exoplatform.social.core.storage.cache.CacheGenerations}
+   */
+  protected ScopeCacheKey(final long generation) {
+    this.scope = getCurrentRepositoryName();
+    this.generation = generation;
   }
 
   public String getScope() {
     return scope;
   }
 
+  public long getGeneration() {
+    return generation;
+  }
+
   @Override
   public boolean equals(final Object o) {
     if (this == o) {
@@ -49,6 +63,12 @@ public class ScopeCacheKey implements CacheKey {
 
     ScopeCacheKey that = (ScopeCacheKey) o;
 
+    if (hash != 0 && that.hash != 0 && hash != that.hash) {
+      return false;
+    }
+    if (generation != that.generation) {
+      return false;
+    }
     if (scope != null ? !scope.equals(that.scope) : that.scope != null) {
       return false;
     }
@@ -57,19 +77,28 @@ public class ScopeCacheKey implements CacheKey {
   }
 
   @Override
-  public int hashCode() {
-    return scope != null ? scope.hashCode() : 0;
+  public final int hashCode() {
+    int h = hash;
+    if (h == 0) {
+      h = computeHash();
+      hash = h;
+    }
+    return h;
+  }
+
+  /**
+   * Computes the hash code of the key, the keys are immutable so that it is computed once.
+   *
+   * @return the hash code
+   */
+  protected int computeHash() {
+    int result = scope != null ? scope.hashCode() : 0;
+    result = 31 * result + (int) (generation ^ (generation >>> 32));
+    return result;
   }
 
   public static String getCurrentRepositoryName() {
-    RepositoryService repositoryService = (RepositoryService)
-                                          PortalContainer.getInstance().getComponentInstanceOfType(RepositoryService.class);
-    try {
-      return repositoryService.getCurrentRepository().getConfiguration().getName();
-    }
-    catch (RepositoryException e) {
-      throw new RuntimeException(e);
-    }
+    return CacheScope.current();
   }
 
 }
@@ -37,6 +37,11 @@ public class SpaceFilterKey extends ScopeCacheKey {
   private Sorting sorting;
 
   public SpaceFilterKey(String userId, SpaceFilter filter, SpaceType type) {
+    this(userId, filter, type, 0);
+  }
+
+  public SpaceFilterKey(String userId, SpaceFilter filter, SpaceType type, long generation) {
+    super(generation);
     this.userId = userId;
     if (filter != null) {
       this.firstCharacterOfSpaceName = filter.getFirstCharacterOfSpaceName();
@@ -70,8 +75,8 @@ public class SpaceFilterKey extends ScopeCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (userId != null ? userId.hashCode() : 0);
     result = 31 * result + (appId != null ? appId.hashCode() : 0);
     result = 31 * result + (int) firstCharacterOfSpaceName;
@@ -54,7 +54,7 @@ public class SpaceKey extends ScopeCacheKey {
   }
 
   @Override
-  public int hashCode() {
+  protected int computeHash() {
     return id != null ? id.hashCode() : 0;
   }
   
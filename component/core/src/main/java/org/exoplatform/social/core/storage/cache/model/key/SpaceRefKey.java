@@ -82,8 +82,8 @@ public class SpaceRefKey extends ScopeCacheKey {
   }
 
   @Override
-  public int hashCode() {
-    int result = super.hashCode();
+  protected int computeHash() {
+    int result = super.computeHash();
     result = 31 * result + (displayName != null ? displayName.hashCode() : 0);
     result = 31 * result + (prettyName != null ? prettyName.hashCode() : 0);
     result = 31 * result + (groupId != null ? groupId.hashCode() : 0);
@@ -30,6 +30,13 @@ public class SuggestionKey <T> extends ScopeCacheKey {
   public SuggestionKey(final T key, int maxConnections, 
                         int maxConnectionsToLoad, 
                         int maxSuggestions) {
+    this(key, maxConnections, maxConnectionsToLoad, maxSuggestions, 0);
+  }
+
+  public SuggestionKey(final T key, int maxConnections,
+                        int maxConnectionsToLoad,
+                        int maxSuggestions, long generation) {
+    super(generation);
     this.key = key;
     this.maxConnections = maxConnections;
     this.maxConnectionsToLoad = maxConnectionsToLoad;
@@ -41,9 +48,9 @@ public class SuggestionKey <T> extends ScopeCacheKey {
   }
 
   @Override
-  public int hashCode() {
+  protected int computeHash() {
     final int prime = 31;
-    int result = super.hashCode();
+    int result = super.computeHash();
     result = prime * result + ((key == null) ? 0 : key.hashCode());
     result = prime * result + maxConnections;
     result = prime * result + maxConnectionsToLoad;
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache.selector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.social.core.storage.cache.model.data.ActiveIdentitiesData;
+import org.exoplatform.social.core.storage.cache.model.key.ActiveIdentityKey;
+
+/**
+ * Selects the active users cached by last login days, they are the
+ * entries to update when a user logs in.
+ */
+public class ActiveIdentitiesCacheSelector extends ScopeCacheSelector<ActiveIdentityKey, ActiveIdentitiesData> {
+
+  private final List<ActiveIdentityKey> keys = new ArrayList<ActiveIdentityKey>();
+
+  @Override
+  public boolean select(final ActiveIdentityKey key, final ObjectCacheInfo<? extends ActiveIdentitiesData> ocinfo) {
+    return super.select(key, ocinfo) && key.getDays() > 0;
+  }
+
+  @Override
+  public void onSelect(final ExoCache<? extends ActiveIdentityKey, ? extends ActiveIdentitiesData> exoCache,
+                       final ActiveIdentityKey key,
+                       final ObjectCacheInfo<? extends ActiveIdentitiesData> ocinfo) throws Exception {
+    keys.add(key);
+  }
+
+  public List<ActiveIdentityKey> getKeys() {
+    return keys;
+  }
+
+}
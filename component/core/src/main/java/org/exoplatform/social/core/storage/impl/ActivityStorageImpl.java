@@ -56,6 +56,8 @@ import org.exoplatform.container.component.BaseComponentPlugin;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.social.core.ActivityProcessor;
+import org.exoplatform.social.core.activity.ActivityStreamCursor;
+import org.exoplatform.social.core.activity.ActivityStreamPage;
 import org.exoplatform.social.core.activity.filter.ActivityCounter;
 import org.exoplatform.social.core.activity.filter.ActivityFilter;
 import org.exoplatform.social.core.activity.filter.ActivityIterator;
@@ -69,6 +71,7 @@ import org.exoplatform.social.core.chromattic.entity.ActivityDayEntity;
 import org.exoplatform.social.core.chromattic.entity.ActivityEntity;
 import org.exoplatform.social.core.chromattic.entity.ActivityListEntity;
 import org.exoplatform.social.core.chromattic.entity.ActivityParameters;
+import org.exoplatform.social.core.chromattic.entity.CommentCounterEntity;
 import org.exoplatform.social.core.chromattic.entity.HidableEntity;
 import org.exoplatform.social.core.chromattic.entity.IdentityEntity;
 import org.exoplatform.social.core.chromattic.entity.LockableEntity;
@@ -78,6 +81,7 @@ import org.exoplatform.social.core.identity.model.ActiveIdentityFilter;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
 import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
+import org.exoplatform.social.core.processor.ActivityProcessingCache;
 import org.exoplatform.social.core.relationship.model.Relationship;
 import org.exoplatform.social.core.relationship.model.Relationship.Type;
 import org.exoplatform.social.core.service.LinkProvider;
@@ -89,6 +93,7 @@ import org.exoplatform.social.core.storage.api.IdentityStorage;
 import org.exoplatform.social.core.storage.api.RelationshipStorage;
 import org.exoplatform.social.core.storage.api.SpaceStorage;
 import org.exoplatform.social.core.storage.exception.NodeNotFoundException;
+import org.exoplatform.social.core.storage.query.JCRProperties;
 import org.exoplatform.social.core.storage.query.WhereExpression;
 import org.exoplatform.social.core.storage.streams.StreamConfig;
 import org.exoplatform.social.core.storage.streams.StreamInvocationHelper;
@@ -103,6 +108,10 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   private static final Log LOG = ExoLogger.getLogger(ActivityStorageImpl.class);
   private static final Pattern MENTION_PATTERN = Pattern.compile("@([^\\s]+)|@([^\\s]+)$");
   public static final Pattern USER_NAME_VALIDATOR_REGEX = Pattern.compile("^[\\p{L}][\\p{L}._\\-\\d]+$");
+  /** The number of activities found by one query. */
+  private static final int ACTIVITIES_BATCH_SIZE = 50;
+  /** The period after which the comment counter of an activity is counted again on the next comment write. */
+  private static final long COMMENT_RECOUNT_PERIOD = 10 * 60 * 1000L;
   private ActivityStorage activityStorage;
 
   private final SortedSet<ActivityProcessor> activityProcessors;
@@ -111,8 +120,8 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   private final IdentityStorage identityStorage;
   private final SpaceStorage spaceStorage;
   private ActivityStreamStorage streamStorage;
-  //sets value to tell this storage to inject Streams or not
-  private boolean mustInjectStreams = true;
+  //the threads which do not inject the streams, see setInjectStreams
+  private final ThreadLocal<Boolean> mustInjectStreams = new ThreadLocal<Boolean>();
 
   public ActivityStorageImpl(
       final RelationshipStorage relationshipStorage,
@@ -148,11 +157,20 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   }
   
   /**
-   * Sets value to tell this storage to inject Streams or not
+   * Sets value to tell this storage to inject Streams or not, for the activities written by the
+   * current thread only: the other threads keep injecting the streams meanwhile.
    * @param mustInject
    */
   public void setInjectStreams(boolean mustInject) {
-    this.mustInjectStreams = mustInject;
+    if (mustInject) {
+      this.mustInjectStreams.remove();
+    } else {
+      this.mustInjectStreams.set(Boolean.FALSE);
+    }
+  }
+
+  private boolean mustInjectStreams() {
+    return mustInjectStreams.get() == null;
   }
 
   /*
@@ -241,7 +259,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
       for (String id : addedLikes) {
         Identity identity = identityStorage.findIdentityById(id);
         //streamStorage.save(identity, activity);
-        if (mustInjectStreams) {
+        if (mustInjectStreams()) {
           StreamInvocationHelper.like(identity, activity);
         }
       }
@@ -250,7 +268,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
     if (removedLikes != null) {
       for (String id : removedLikes) {
         Identity removedLiker = identityStorage.findIdentityById(id);
-        if (mustInjectStreams) {
+        if (mustInjectStreams()) {
           StreamInvocationHelper.unLike(removedLiker, activity);
         }
       }
@@ -551,6 +569,12 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   }
 
   private void processActivity(ExoSocialActivity existingActivity) {
+    //the write-time processors are run once per content of the activity
+    ActivityProcessingCache processingCache = CommonsUtils.getService(ActivityProcessingCache.class);
+    if (processingCache != null) {
+      processingCache.process(existingActivity, activityProcessors);
+      return;
+    }
     Iterator<ActivityProcessor> it = activityProcessors.iterator();
     while (it.hasNext()) {
       try {
@@ -600,6 +624,51 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
       return null;
     }
   }
+  /**
+   * {@inheritDoc}
+   */
+  public List<ExoSocialActivity> getActivities(List<String> activityIds) throws ActivityStorageException {
+
+    //the entities are found by one query per batch of ids instead of one lookup per id
+    Map<String, ActivityEntity> entities = new HashMap<String, ActivityEntity>(2 * activityIds.size());
+    for (int from = 0; from < activityIds.size(); from += ACTIVITIES_BATCH_SIZE) {
+      List<String> batch = activityIds.subList(from, Math.min(from + ACTIVITIES_BATCH_SIZE, activityIds.size()));
+      WhereExpression whereExpression = new WhereExpression();
+      whereExpression.startGroup();
+      for (int i = 0; i < batch.size(); i++) {
+        if (i > 0) {
+          whereExpression.or();
+        }
+        whereExpression.equals(JCRProperties.id, batch.get(i));
+      }
+      whereExpression.endGroup();
+
+      QueryBuilder<ActivityEntity> builder = getSession().createQueryBuilder(ActivityEntity.class);
+      builder.where(whereExpression.toString());
+      QueryResult<ActivityEntity> results = builder.get().objects();
+      while (results.hasNext()) {
+        ActivityEntity activityEntity = results.next();
+        entities.put(activityEntity.getId(), activityEntity);
+      }
+    }
+
+    //
+    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>(activityIds.size());
+    for (String activityId : activityIds) {
+      ActivityEntity activityEntity = entities.get(activityId);
+      ExoSocialActivity activity = null;
+      if (activityEntity != null) {
+        activity = fillActivityFromEntity(activityEntity, new ExoSocialActivityImpl());
+        if (activity != null) {
+          processActivity(activity);
+        }
+      }
+      activities.add(activity);
+    }
+    return activities;
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -700,6 +769,9 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
       
       HidableEntity hidable = _getMixin(commentEntity, HidableEntity.class, true);
       hidable.setHidden(comment.isHidden());
+      if (!comment.isHidden()) {
+        adjustVisibleComments(activityEntity, commentEntity, 1);
+      }
       
       comment.setId(commentEntity.getId());
 
@@ -726,7 +798,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
       //persist and refresh JCR node to prevent NodeNotFoundException
       StorageUtils.persist(true);
       //
-      if (mustInjectStreams) {
+      if (mustInjectStreams()) {
         Identity identity = identityStorage.findIdentityById(comment.getUserId());
         StreamInvocationHelper.updateCommenter(identity, activityEntity, commenters.toArray(new String[0]), oldUpdated);
         //make sure there is no duplicated identity in commenters and mentioners list 
@@ -786,7 +858,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
         
         StorageUtils.persist(true);
         //create refs
-        if (mustInjectStreams) {
+        if (mustInjectStreams()) {
           //run synchronous
           //due to run in the same thread then pass AcitivityEntity to Stream service to create ActivityRef
           //don't need to get JCR to avoid NodeNotFoundException
@@ -868,6 +940,9 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
       // remove mentions information
       if (activityEntity.isComment()) {
         ActivityEntity activityEntityOfComment = activityEntity.getParentActivity();
+        if (!isHidden(activityEntity)) {
+          adjustVisibleComments(activityEntityOfComment, activityEntity, -1);
+        }
         
         //
         List<String> mentioners = new ArrayList<String>();
@@ -877,7 +952,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
         List<String> commenters = new ArrayList<String>();
         activityEntityOfComment.setCommenters(processCommenters(activityEntityOfComment.getCommenters(), activityEntity.getPosterIdentity().getId(), commenters, false));
         //
-        if (mustInjectStreams) {
+        if (mustInjectStreams()) {
           //in the list of mentioners to be removed, ignore the one who has commented on the activity
           processIdentitiesList(mentioners, activityEntityOfComment.getCommenters());
           //in the list of commenter to be removed, ignore the one who has been mentioned on the activity
@@ -890,7 +965,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
         List<String> mentioners = new ArrayList<String>();
         activityEntity.setMentioners(processMentions(activityEntity.getMentioners(), activityEntity.getTitle(), mentioners, false));
         //
-        if (mustInjectStreams) {
+        if (mustInjectStreams()) {
           StreamInvocationHelper.deleteComment(activity, mentioners.toArray(new String[0]), null);
         }
       }
@@ -900,6 +975,12 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
 
       //
       _removeById(ActivityEntity.class, activityId);
+      
+      //
+      ActivityProcessingCache processingCache = CommonsUtils.getService(ActivityProcessingCache.class);
+      if (processingCache != null) {
+        processingCache.invalidate(activityId);
+      }
 
       //
       if (dayEntity != null) { // False when activity is a comment
@@ -1689,20 +1770,22 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
 
     //
     limit = (limit > commentIds.length ? commentIds.length : limit);
-    
-    for (int i = offset; i < commentIds.length; i++) {
-      ExoSocialActivity comment = getStorage().getActivity(commentIds[i]);
-      if (comment == null || comment.isHidden()) {
-        continue;
-      }
-      activities.add(comment);
-      //
-      if (activities.size() == limit) {
-        break;
+    if (limit <= 0) {
+      return activities;
+    }
+
+    //the comments are loaded by pages of the missing size, the hidden ones are skipped
+    int i = offset;
+    while (i < commentIds.length && activities.size() < limit) {
+      int to = Math.min(commentIds.length, i + limit - activities.size());
+      for (ExoSocialActivity comment : getStorage().getActivities(Arrays.asList(commentIds).subList(i, to))) {
+        if (comment != null && !comment.isHidden()) {
+          activities.add(comment);
+        }
       }
+      i = to;
     }
     
-    
     return activities;
   }
   
@@ -1714,21 +1797,61 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   private boolean isHidden(String commentId) {
 
     try {
-      ActivityEntity activityEntity = _findById(ActivityEntity.class, commentId);
-      if (activityEntity != null) {
-        HidableEntity hidable = _getMixin(activityEntity, HidableEntity.class, false);
-        if (hidable != null) {
-          return hidable.getHidden();
-        }
-      } else {
-        return true;
-      }
-      
+      return isHidden(_findById(ActivityEntity.class, commentId));
     } catch (NodeNotFoundException e) {
       return true;
     }
 
-    return false;
+  }
+
+  private boolean isHidden(ActivityEntity activityEntity) {
+    if (activityEntity == null) {
+      return true;
+    }
+    HidableEntity hidable = _getMixin(activityEntity, HidableEntity.class, false);
+    return hidable != null && Boolean.TRUE.equals(hidable.getHidden());
+  }
+
+  /**
+   * Updates the number of visible comments of an activity when one of its comments is shown or hidden.
+   * The change is saved with the comment, by the session of the caller.
+   *
+   * Two sessions, of the same node or of two nodes of a cluster, can update the counter at the same time
+   * and lose one of the updates: the counter is counted again from the comments when it is missing,
+   * negative or older than {@link #COMMENT_RECOUNT_PERIOD}, so that such a drift does not last.
+   *
+   * @param activityEntity the commented activity
+   * @param commentEntity the comment which is saved, shown, hidden or deleted
+   * @param delta 1 when the comment becomes visible, -1 when it is hidden or deleted
+   */
+  private void adjustVisibleComments(ActivityEntity activityEntity, ActivityEntity commentEntity, int delta) {
+    CommentCounterEntity counter = _getMixin(activityEntity, CommentCounterEntity.class, true);
+    Integer visibleComments = counter.getVisibleComments();
+    Long countedAt = counter.getCountedAt();
+    long now = System.currentTimeMillis();
+    if (visibleComments == null || visibleComments + delta < 0
+        || countedAt == null || now - countedAt > COMMENT_RECOUNT_PERIOD) {
+      visibleComments = countVisibleComments(activityEntity, commentEntity) + (delta > 0 ? 1 : 0);
+      counter.setCountedAt(now);
+    } else {
+      visibleComments += delta;
+    }
+    counter.setVisibleComments(Math.max(0, visibleComments));
+  }
+
+  /**
+   * @param activityEntity the activity
+   * @param excluded the comment not to count, whatever its state
+   * @return the number of comments which are not hidden
+   */
+  private int countVisibleComments(ActivityEntity activityEntity, ActivityEntity excluded) {
+    int size = 0;
+    for (ActivityEntity commentEntity : activityEntity.getComments()) {
+      if (!isHidden(commentEntity) && (excluded == null || !excluded.getId().equals(commentEntity.getId()))) {
+        size++;
+      }
+    }
+    return size;
   }
 
   /**
@@ -1738,23 +1861,22 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
     //return getStorage().getActivity(existingActivity.getId()).getReplyToId().length;
     //
     //Need to check if the activity is not deleted by another session
-    ExoSocialActivity got  = getStorage().getActivity(existingActivity.getId());
-    if (got == null) {
+    ActivityEntity activityEntity;
+    try {
+      activityEntity = _findById(ActivityEntity.class, existingActivity.getId());
+    } catch (NodeNotFoundException e) {
       LOG.warn("Probably was deleted activity by another session");
       return 0;
     }
-    List<String> commentIds = Arrays.asList(got.getReplyToId());
-    int size = commentIds.size();
 
     //
-    for(String commentId : commentIds) {
-      if (isHidden(commentId)) {
-        size--;
-      }
+    CommentCounterEntity counter = _getMixin(activityEntity, CommentCounterEntity.class, false);
+    if (counter != null && counter.getVisibleComments() != null) {
+      return counter.getVisibleComments();
     }
 
-    //
-    return size;
+    //the activities not commented since the counter exists, it is stored by the next comment write
+    return countVisibleComments(activityEntity, null);
   }
 
   /**
@@ -1895,6 +2017,9 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
           getStorage().updateActivity(parentActivity);
         }
       }
+      if (changedActivity.isComment() && changedActivity.isHidden() != isHidden) {
+        adjustVisibleComments(activityEntity.getParentActivity(), activityEntity, changedActivity.isHidden() ? -1 : 1);
+      }
       _saveActivity(changedActivity);
 
       //if update comment, no need to update stream
@@ -3156,4 +3281,37 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   public void addPlugin(BaseComponentPlugin baseComponent) {
     //unsupported this method now
   }
+
+  @Override
+  public ActivityStreamPage getActivityFeed(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    if (after == null) {
+      //creates the references of the "inactive" user before reading the first page
+      getActivityOfInactiveUser(ownerIdentity, 0, limit);
+    }
+    return streamStorage.getFeed(ownerIdentity, after, limit);
+  }
+
+  @Override
+  public ActivityStreamPage getActivitiesOfConnections(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    if (after == null) {
+      //creates the references of the "inactive" user before reading the first page
+      getActivityOfInactiveUser(ownerIdentity, 0, limit);
+    }
+    return streamStorage.getConnections(ownerIdentity, after, limit);
+  }
+
+  @Override
+  public ActivityStreamPage getUserSpacesActivities(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    return streamStorage.getMySpaces(ownerIdentity, after, limit);
+  }
+
+  @Override
+  public ActivityStreamPage getSpaceActivities(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    return streamStorage.getSpaceStream(ownerIdentity, after, limit);
+  }
+
+  @Override
+  public ActivityStreamPage getUserActivities(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    return streamStorage.getMyActivities(ownerIdentity, after, limit);
+  }
 }
@@ -17,17 +17,21 @@
 package org.exoplatform.social.core.storage.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
-import javax.jcr.RepositoryException;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.chromattic.api.ChromatticException;
@@ -38,8 +42,11 @@ import org.exoplatform.commons.utils.CommonsUtils;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.social.common.service.ProcessContext;
+import org.exoplatform.social.common.service.impl.SocialServiceContextImpl;
 import org.exoplatform.social.common.service.utils.ObjectHelper;
 import org.exoplatform.social.common.service.utils.TraceElement;
+import org.exoplatform.social.core.activity.ActivityStreamCursor;
+import org.exoplatform.social.core.activity.ActivityStreamPage;
 import org.exoplatform.social.core.activity.filter.ActivityFilter;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.chromattic.entity.ActivityEntity;
@@ -47,6 +54,7 @@ import org.exoplatform.social.core.chromattic.entity.ActivityRef;
 import org.exoplatform.social.core.chromattic.entity.ActivityRefListEntity;
 import org.exoplatform.social.core.chromattic.entity.HidableEntity;
 import org.exoplatform.social.core.chromattic.entity.IdentityEntity;
+import org.exoplatform.social.core.chromattic.entity.MigrationTimeEntity;
 import org.exoplatform.social.core.chromattic.entity.StreamsEntity;
 import org.exoplatform.social.core.chromattic.filter.JCRFilterLiteral;
 import org.exoplatform.social.core.chromattic.utils.ActivityRefIterator;
@@ -63,10 +71,18 @@ import org.exoplatform.social.core.storage.api.ActivityStreamStorage;
 import org.exoplatform.social.core.storage.api.IdentityStorage;
 import org.exoplatform.social.core.storage.api.RelationshipStorage;
 import org.exoplatform.social.core.storage.api.SpaceStorage;
+import org.exoplatform.social.core.storage.cache.ActivityStreamCacheIndex;
+import org.exoplatform.social.core.storage.cache.CacheGenerations;
+import org.exoplatform.social.core.storage.cache.SocialStorageCacheService;
 import org.exoplatform.social.core.storage.exception.NodeNotFoundException;
-import org.exoplatform.social.core.storage.query.ChromatticNameEncode;
-import org.exoplatform.social.core.storage.query.JCRProperties;
+import org.exoplatform.social.core.storage.query.WhereExpression;
 import org.exoplatform.social.core.storage.streams.StreamConfig;
+import org.exoplatform.social.core.storage.streams.StreamFanOutQueue;
+import org.exoplatform.social.core.storage.streams.StreamFanOutQueue.PendingStream;
+import org.exoplatform.social.core.storage.streams.StreamInvocationHelper;
+import org.exoplatform.social.core.storage.streams.StreamLockManager;
+import org.exoplatform.social.core.storage.streams.StreamUpdateSequences;
+import org.exoplatform.social.core.storage.streams.StreamMergeIterator;
 import org.exoplatform.social.core.storage.streams.StreamProcessContext;
 
 public class ActivityStreamStorageImpl extends AbstractStorage implements ActivityStreamStorage {
@@ -92,23 +108,83 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
    */
   private ActivityStorage activityStorage;
   
+  /**
+   * The index of the cached activity lists
+   */
+  private ActivityStreamCacheIndex streamCacheIndex;
+  
+  /**
+   * The queue of the connections fan-out
+   */
+  private StreamFanOutQueue fanOutQueue;
+  
+  /**
+   * The update sequences of the streams
+   */
+  private StreamUpdateSequences updateSequences;
+  
+  /**
+   * The generations of the caches
+   */
+  private CacheGenerations generations;
+  
   /** Logger */
   private static final Log LOG = ExoLogger.getLogger(ActivityStreamStorageImpl.class);
   
-  /** */
-  private Lock activityWriteLock;
-  
-  /** */
-  private Lock activityReadLock;
+  /** The stream locks, striped by stream owner */
+  private final StreamLockManager streamLocks;
 
   /** */
   private static int BATCH = 20;
   
+  /** The delay to reload the identities and spaces marked by the other cluster nodes */
+  private static final long FAN_OUT_ON_READ_RELOAD = 60000;
+  
+  /** The number of streams whose fan-out on read sources are kept */
+  private static final int FAN_OUT_ON_READ_SOURCES_CAPACITY = 10000;
+  
+  /** Orders the activity references from the most recently updated */
+  private static final Comparator<ActivityRef> LAST_UPDATED_DESC = new Comparator<ActivityRef>() {
+    public int compare(ActivityRef o1, ActivityRef o2) {
+      long co1 = getLastUpdated(o1);
+      long co2 = getLastUpdated(o2);
+      if (co1 == co2) {
+        //same order as the stream cursors
+        return ActivityRefIterator.getActivityId(o1).compareTo(ActivityRefIterator.getActivityId(o2));
+      }
+      return co1 < co2 ? 1 : -1;
+    }
+  };
+  
+  /**
+   * The identities and spaces whose activities are merged when the streams are read
+   */
+  private volatile Set<String> fanOutOnReadIds;
+  
+  /** */
+  private volatile long fanOutOnReadLoaded;
+  
+  /**
+   * The posters and spaces whose audience was checked since the marked identities were loaded,
+   * their audience is counted again after the next load
+   */
+  private final Set<String> fanOutOnReadChecked = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  
+  /**
+   * The fan-out on read sources of the streams, by owner id and stream type, the least recently read are dropped
+   */
+  private final Map<String, FanOutOnReadSources> fanOutOnReadSources = new LinkedHashMap<String, FanOutOnReadSources>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+    
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, FanOutOnReadSources> eldest) {
+      return size() > FAN_OUT_ON_READ_SOURCES_CAPACITY;
+    }
+  };
+  
   public ActivityStreamStorageImpl(IdentityStorageImpl identityStorage) {
     this.identityStorage = identityStorage;
-    ReadWriteLock activityLock = new ReentrantReadWriteLock();
-    activityWriteLock = activityLock.writeLock();
-    activityReadLock = activityLock.readLock();
+    this.streamLocks = new StreamLockManager();
   }
   
   private ActivityStorage getStorage() {
@@ -134,14 +210,52 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     
     return this.relationshipStorage;
   }
+  
+  private StreamFanOutQueue getFanOutQueue() {
+    if (fanOutQueue == null) {
+      fanOutQueue = CommonsUtils.getService(StreamFanOutQueue.class);
+    }
+    
+    return this.fanOutQueue;
+  }
+  
+  private ActivityStreamCacheIndex getStreamCacheIndex() {
+    if (streamCacheIndex == null) {
+      SocialStorageCacheService cacheService = CommonsUtils.getService(SocialStorageCacheService.class);
+      if (cacheService != null) {
+        streamCacheIndex = cacheService.getActivityStreamCacheIndex();
+      }
+    }
+    
+    return this.streamCacheIndex;
+  }
+  
+  private StreamUpdateSequences getUpdateSequences() {
+    if (updateSequences == null) {
+      updateSequences = CommonsUtils.getService(StreamUpdateSequences.class);
+    }
+    
+    return this.updateSequences;
+  }
+  
+  private CacheGenerations getGenerations() {
+    if (generations == null) {
+      SocialStorageCacheService cacheService = CommonsUtils.getService(SocialStorageCacheService.class);
+      if (cacheService != null) {
+        generations = cacheService.getGenerations();
+      }
+    }
+    
+    return this.generations;
+  }
 
   @Override
   public void save(ProcessContext ctx) {
     //must call with asynchronous
-    this.activityWriteLock.lock();
+    StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
+    Identity owner = streamCtx.getIdentity();
+    //each page of streams is written under the locks of its owners, see fanOut and addMentioner
     try {
-      StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
-      Identity owner = streamCtx.getIdentity();
       //It has been invoked by Activity Service with the multi-threading.
       //so that, gets Entity from JCR, prevent Session.logout exception.
       ActivityEntity activityEntity = null;
@@ -153,7 +267,10 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       
       if (OrganizationIdentityProvider.NAME.equals(owner.getProviderId())) {
         Identity poster = CommonsUtils.getService(IdentityStorage.class).findIdentityById(streamCtx.getPosterId());
-        user(poster, activityEntity);
+        //the connections of a large audience merge the activity when they read their streams
+        if (!isFanOutOnRead(poster, null)) {
+          user(poster, activityEntity);
+        }
         //mention case
         addMentioner(streamCtx.getMentioners(), activityEntity);
       } else if (SpaceIdentityProvider.NAME.equals(owner.getProviderId())) {
@@ -167,18 +284,20 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       ctx.setException(e);
       LOG.warn("Failed to add Activity references.", e);
       LOG.debug("Failed to add Activity references.", e);
-    } finally {
-      this.activityWriteLock.unlock();
     }
+    //the drain takes the stripes of the batch, never while a stripe is held
+    scheduleFanOut();
   }
   
   @Override
   public void savePoster(ProcessContext ctx) {
     //call synchronous
-    this.activityWriteLock.lock();
+    StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
+    Identity owner = streamCtx.getIdentity();
+    //the streams of the owner and of the poster are written
+    Lock lock = streamLocks.writeLock(owner.getId(), streamCtx.getActivityEntity().getPosterIdentity().getId());
+    lock.lock();
     try {
-      StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
-      Identity owner = streamCtx.getIdentity();
       //It has been invoked by Activity Service with the same thread.
       //so that, retrieves Entity directly from Stream context, don't spend time to get from JCR => impact performance.
       ActivityEntity activityEntity = streamCtx.getActivityEntity();
@@ -199,7 +318,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       LOG.warn("Failed to add Activity references.");
       LOG.debug("Failed to add Activity references.", e);
     } finally {
-      this.activityWriteLock.unlock();
+      lock.unlock();
     }
   }
 
@@ -210,7 +329,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
   * @param activityEntity
   * @throws NodeNotFoundException
   */
- private void user(Identity poster, ActivityEntity activityEntity) throws NodeNotFoundException, RepositoryException {
+ private void user(Identity poster, ActivityEntity activityEntity) throws NodeNotFoundException {
    //
    TraceElement trace = TraceElement.getInstance("creating ref-" + poster.getRemoteId());
    trace.start();
@@ -241,24 +360,15 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
   */
  private int createRefForActiveUsers(Identity owner,
                                ActivityEntity activityEntity,
-                               ActiveIdentityFilter filer, Set<String> activeGroups) throws NodeNotFoundException, RepositoryException {
+                               ActiveIdentityFilter filer, Set<String> activeGroups) throws NodeNotFoundException {
    Set<String> activeUsers = CommonsUtils.getService(IdentityStorage.class).getActiveUsers(filer);
-   //just for testing
-   /**
-   List<Identity> relationships = getRelationshipStorage().getConnections(owner, 0, 500);
-   Set<String> activeUsers = new HashSet<String>();
-   for(Identity identity : relationships) {
-     activeUsers.add(identity.getRemoteId());
-   }*/
    
    if (activeUsers == null) {
-     activeUsers = new HashSet<String>();
+     activeUsers = Collections.emptySet();
    }
-   //eliminate duplicate "active" user between N days list and group list 
-   if (activeGroups.size() > 0) {
-     activeUsers.addAll(activeGroups);
-   }
-   int i = activeUsers.size() > 0 ? createRefWithActiveUser(owner, activityEntity, activeUsers) : createRefWithoutActiveUser(owner, activityEntity);
+   //the cached sets are shared by all the fan-out workers, they are not merged
+   int i = activeUsers.size() > 0 || activeGroups.size() > 0 ?
+       createRefWithActiveUser(owner, activityEntity, activeUsers, activeGroups) : createRefWithoutActiveUser(owner, activityEntity);
    return i;
  }
 
@@ -284,83 +394,223 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
    for (i = 0; i < timesLoop; i++) {
      List<Identity> got = getRelationshipStorage().getConnections(owner, offset, limitLoading);
      if (got.size() > 0) {
-       createConnectionsRefs(got, activityEntity);
+       fanOut(got, activityEntity);
      } else {
        break;
      }
      // increase offset
      offset += limitLoading;
-     StorageUtils.persist();
    }
    return i;
  }
 
   /**
-  * Creates the activity ref for connections in the case.
-  * Don't found any active users around days.
+  * Creates the activity ref for the active connections.
+  * 
+  * The connections of the owner are loaded by batch and checked against the
+  * active users, the cost depends on the number of connections of the owner
+  * and not on the number of active users of the organization.
   * 
   * @param owner
   * @param activityEntity
-  * @return
+  * @param activeUsers the users who logged in during the last days
+  * @param activeGroups the members of the active user groups
+  * @return the number of active connections
   * @throws NodeNotFoundException
   */
- private int createRefWithActiveUser(Identity owner, ActivityEntity activityEntity, Set<String> activeUsers) throws NodeNotFoundException, RepositoryException {
+ private int createRefWithActiveUser(Identity owner, ActivityEntity activityEntity,
+                                     Set<String> activeUsers, Set<String> activeGroups) throws NodeNotFoundException {
    StreamConfig streamConfig = CommonsUtils.getService(StreamConfig.class);
    int connectionsThreshold = streamConfig.getConnectionsThreshold();
    int limitLoading = streamConfig.getLimitThresholdLoading();
 
-   LOG.debug("active users: " + (activeUsers.size() -1));
+   LOG.debug("active users: " + activeUsers.size() + ", active groups: " + activeGroups.size());
    int offset = 0;
-   
-   IdentityEntity ownerEntity = _findById(IdentityEntity.class, owner.getId());
-   String nodePath = ownerEntity.getPath();
-   StringBuilder relationshipPath = new StringBuilder();
-   int batchIndex = 0;
+   int found = 0;
    
    List<Identity> inputIdentities = new ArrayList<Identity>();
    
-   for(String userName : activeUsers) {
-     //userName is the same owner, ignore.
-     if (owner.getRemoteId().equals(userName)) continue;
-     //reset StringBuilder with delete(0, length)
-     relationshipPath.delete(0, relationshipPath.length());
-     //
-     relationshipPath.append(nodePath).append("/").append(JCRProperties.RELATIONSHIP_NODE_TYPE).append("/").append("soc:").append(ChromatticNameEncode.encodeNodeName(userName));
-     
-     Identity identity2 = CommonsUtils.getService(IdentityStorage.class).findIdentity(OrganizationIdentityProvider.NAME, userName);
-     
-     boolean hasRelationship = getRelationshipStorage().hasRelationship(owner, identity2, relationshipPath.toString());
-     
-     if(hasRelationship) {
-       LOG.debug("creates activity ref: " + userName);
-       
-       if (identity2 != null) {
-         inputIdentities.add(identity2);
-         batchIndex++;
-         
-         //handle loading limit
-         if (batchIndex == limitLoading) {
-           createConnectionsRefs(inputIdentities, activityEntity);
-           batchIndex = 0;
-           inputIdentities.clear();
-           LOG.debug("start - persist to storage...");
-           StorageUtils.persist();
-           LOG.debug("end - persist to storage...");
-         }
+   while (found < connectionsThreshold) {
+     List<Identity> got = getRelationshipStorage().getConnections(owner, offset, limitLoading);
+     for (Identity identity : got) {
+       String userName = identity.getRemoteId();
+       if (!activeUsers.contains(userName) && !activeGroups.contains(userName)) {
+         continue;
        }
-       offset++;
+       LOG.debug("creates activity ref: " + userName);
+       inputIdentities.add(identity);
+       found++;
        //handle connections threshold
-       if (offset == connectionsThreshold) {
+       if (found == connectionsThreshold) {
          break;
        }
-     }//end if(relationshipNode != null)
+     }
+     
+     //handle loading limit
+     if (inputIdentities.size() >= limitLoading) {
+       fanOut(inputIdentities, activityEntity);
+       inputIdentities = new ArrayList<Identity>();
+     }
+     
+     if (got.size() < limitLoading) {
+       break;
+     }
+     offset += got.size();
    }
    
-   if (batchIndex > 0 && inputIdentities.size() > 0) {
-     createConnectionsRefs(inputIdentities, activityEntity);
+   if (inputIdentities.size() > 0) {
+     fanOut(inputIdentities, activityEntity);
    }
 
-   return offset;
+   return found;
+ }
+  
+  /**
+  * Queues the activity references of a page of connections, the queue is drained
+  * by another process which persists the references of several activities together,
+  * see {@link #scheduleFanOut()}.
+  * 
+  * When the stream is processed synchronously, the queue is not configured or full,
+  * the references are created and persisted right away.
+  * 
+  * @param identities the connections
+  * @param activityEntity the activity
+  * @throws NodeNotFoundException
+  */
+ private void fanOut(List<Identity> identities, ActivityEntity activityEntity) throws NodeNotFoundException {
+   StreamFanOutQueue queue = getFanOutQueue();
+   if (queue != null && SocialServiceContextImpl.getInstance().isAsync()
+       && queue.offer(activityEntity.getId(), identities)) {
+     return;
+   }
+   Lock lock = writeLock(identities);
+   lock.lock();
+   try {
+     createConnectionsRefs(identities, activityEntity);
+     StorageUtils.persist();
+   } finally {
+     lock.unlock();
+   }
+ }
+ 
+ /**
+  * Schedules the drain of the fan-out queue when references are pending and no drain is running.
+  * 
+  * Must not be called while a stream lock is held: with the caller-runs policy, the executor
+  * drains the queue in the calling thread.
+  */
+ private void scheduleFanOut() {
+   StreamFanOutQueue queue = getFanOutQueue();
+   if (queue == null || queue.getDepth() == 0 || !queue.startDrain()) {
+     return;
+   }
+   boolean scheduled = false;
+   try {
+     scheduled = StreamInvocationHelper.fanOut();
+   } catch (RuntimeException e) {
+     LOG.warn("Failed to schedule the stream fan-out: " + e.getMessage());
+   } finally {
+     if (!scheduled) {
+       //the queued references are drained by the next fan-out
+       queue.cancelDrain();
+     }
+   }
+ }
+ 
+ @Override
+ public void fanOut(ProcessContext ctx) {
+   StreamFanOutQueue queue = getFanOutQueue();
+   if (queue == null) {
+     return;
+   }
+   boolean draining = true;
+   try {
+     while (draining) {
+       for (List<PendingStream> batch = queue.poll(); !batch.isEmpty(); batch = queue.poll()) {
+         boolean persisted = false;
+         try {
+           persisted = fanOut(batch);
+         } catch (Exception e) {
+           ctx.setException(e);
+           LOG.warn("Failed to add the activity references of " + batch.size() + " streams.");
+           LOG.debug("Failed to add the activity references.", e);
+         }
+         if (!persisted) {
+           discardChanges();
+           //the failed batch is drained by the next fan-out
+           queue.retry(batch);
+           return;
+         }
+         queue.done(batch);
+       }
+       draining = queue.endDrain();
+     }
+   } finally {
+     if (draining) {
+       queue.cancelDrain();
+     }
+   }
+ }
+ 
+ /**
+  * Discards the references of a batch which could not be persisted, so that they are not saved
+  * with the next batch before being queued again.
+  */
+ private void discardChanges() {
+   try {
+     getSession().getJCRSession().refresh(false);
+   } catch (Exception e) {
+     LOG.debug("Failed to discard the activity references.", e);
+   }
+ }
+ 
+ /**
+  * Creates the references of a batch of streams and persists them once.
+  * 
+  * @param batch the streams of the connections
+  * @return false if the references could not be persisted
+  * @throws NodeNotFoundException
+  */
+ private boolean fanOut(List<PendingStream> batch) throws NodeNotFoundException {
+   Map<String, ActivityEntity> activities = new HashMap<String, ActivityEntity>();
+   List<Identity> targets = new ArrayList<Identity>(batch.size());
+   boolean found = false;
+   for (PendingStream stream : batch) {
+     targets.add(stream.getTarget());
+     for (String activityId : stream.getActivityIds()) {
+       if (activities.containsKey(activityId)) {
+         continue;
+       }
+       ActivityEntity activityEntity = null;
+       try {
+         activityEntity = _findById(ActivityEntity.class, activityId);
+         found = true;
+       } catch (NodeNotFoundException e) {
+         LOG.debug("The activity " + activityId + " has been deleted before its fan-out.");
+       }
+       activities.put(activityId, activityEntity);
+     }
+   }
+   if (!found) {
+     return true;
+   }
+   
+   //the streams of the connections are written
+   Lock lock = writeLock(targets);
+   lock.lock();
+   try {
+     for (PendingStream stream : batch) {
+       for (String activityId : stream.getActivityIds()) {
+         ActivityEntity activityEntity = activities.get(activityId);
+         if (activityEntity != null) {
+           createConnectionsRefs(stream.getTarget(), activityEntity);
+         }
+       }
+     }
+     return StorageUtils.persist();
+   } finally {
+     lock.unlock();
+   }
  }
   
   /**
@@ -390,9 +640,15 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
   
   private void addMentioner(String[] identityIds, ActivityEntity activityEntity) throws NodeNotFoundException {
     if (identityIds != null && identityIds.length > 0) {
-      for(String identityId : identityIds) {
-        Identity identity = CommonsUtils.getService(IdentityStorage.class).findIdentityById(identityId);
-        createOwnerRefs(identity, activityEntity);
+      Lock lock = streamLocks.writeLock(identityIds);
+      lock.lock();
+      try {
+        for(String identityId : identityIds) {
+          Identity identity = CommonsUtils.getService(IdentityStorage.class).findIdentityById(identityId);
+          createOwnerRefs(identity, activityEntity);
+        }
+      } finally {
+        lock.unlock();
       }
     }
    }
@@ -401,9 +657,17 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     Space space = getSpaceStorage().getSpaceByPrettyName(owner.getRemoteId());
     
     if (space == null) return;
+    //the members of a large space merge the activity when they read their streams
+    if (isFanOutOnRead(owner, space)) return;
     //Don't create ActivityRef on space stream for given SpaceIdentity
     List<Identity> identities = getMemberIdentities(space);
-    createSpaceMembersRefs(identities, activityEntity);
+    Lock lock = writeLock(identities);
+    lock.lock();
+    try {
+      createSpaceMembersRefs(identities, activityEntity);
+    } finally {
+      lock.unlock();
+    }
   }
 
   private List<Identity> getMemberIdentities(Space space) {
@@ -416,42 +680,350 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     return identities;
   }
   
+  /**
+   * Tells if the activities of the given identity or space are merged into the streams
+   * of its audience when they are read instead of being pushed to them.
+   * 
+   * Once the audience is above the fan-out on read threshold, the identity is marked
+   * and its activities are no longer pushed, even if its audience decreases later.
+   * 
+   * @param identity the poster or the space identity
+   * @param space the space, null for a poster
+   * @return true if the activities must not be pushed
+   * @throws NodeNotFoundException
+   */
+  private boolean isFanOutOnRead(Identity identity, Space space) throws NodeNotFoundException {
+    if (getFanOutOnReadIds().contains(identity.getId())) {
+      return true;
+    }
+    
+    int threshold = CommonsUtils.getService(StreamConfig.class).getFanOutOnReadThreshold();
+    if (threshold <= 0) {
+      return false;
+    }
+    
+    //the audience is counted once per reload of the marked identities, not on each post
+    if (!fanOutOnReadChecked.add(identity.getId())) {
+      return false;
+    }
+    int audience = space != null ? space.getMemberSet().size() : getRelationshipStorage().getConnectionsCount(identity);
+    if (audience <= threshold) {
+      return false;
+    }
+    
+    IdentityEntity identityEntity = _findById(IdentityEntity.class, identity.getId());
+    LOG.info("The activities of " + identity.getRemoteId() + " are merged on read, audience = " + audience);
+    identityEntity.setFanOutOnRead(true);
+    getFanOutOnReadIds().add(identityEntity.getId());
+    return true;
+  }
+  
+  /**
+   * Gets the identities and spaces whose activities are merged when the streams are read.
+   * The marked entities are loaded once, then reloaded from time to time to get the ones
+   * marked by the other cluster nodes.
+   * 
+   * @return the identity ids
+   */
+  private Set<String> getFanOutOnReadIds() {
+    if (fanOutOnReadIds == null || System.currentTimeMillis() - fanOutOnReadLoaded > FAN_OUT_ON_READ_RELOAD) {
+      synchronized (this) {
+        if (fanOutOnReadIds == null || System.currentTimeMillis() - fanOutOnReadLoaded > FAN_OUT_ON_READ_RELOAD) {
+          Set<String> ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+          if (fanOutOnReadIds != null) {
+            ids.addAll(fanOutOnReadIds);
+          }
+          try {
+            QueryBuilder<IdentityEntity> builder = getSession().createQueryBuilder(IdentityEntity.class);
+            WhereExpression whereExpression = new WhereExpression();
+            whereExpression.equals(IdentityEntity.fanOutOnRead, Boolean.TRUE.toString());
+            builder.where(whereExpression.toString());
+            whereExpression.destroy();
+            
+            QueryResult<IdentityEntity> results = builder.get().objects();
+            while (results.hasNext()) {
+              ids.add(results.next().getId());
+            }
+          } catch (ChromatticException e) {
+            LOG.warn("Failed to load the identities merged on read: " + e.getMessage());
+          }
+          fanOutOnReadIds = ids;
+          fanOutOnReadLoaded = System.currentTimeMillis();
+          fanOutOnReadChecked.clear();
+        }
+      }
+    }
+    return fanOutOnReadIds;
+  }
+  
+  /**
+   * Gets the identities and spaces whose activities are merged into the given stream
+   * of the owner: the connections for the feed and connections streams, the spaces
+   * the owner is member of for the feed and my spaces streams.
+   * 
+   * @param type the stream type
+   * @param owner the stream owner
+   * @return the identity entities
+   */
+  private List<IdentityEntity> getFanOutOnReadSources(ActivityRefType type, Identity owner) {
+    boolean connections = ActivityRefType.FEED.equals(type) || ActivityRefType.CONNECTION.equals(type);
+    boolean spaces = ActivityRefType.FEED.equals(type) || ActivityRefType.MY_SPACES.equals(type);
+    if (!connections && !spaces) {
+      return Collections.emptyList();
+    }
+    
+    Set<String> ids = getFanOutOnReadIds();
+    if (ids.isEmpty()) {
+      return Collections.emptyList();
+    }
+    
+    //only the nodes of the streams which are merged are loaded
+    List<IdentityEntity> sources = new ArrayList<IdentityEntity>();
+    for (String id : getFanOutOnReadSourceIds(type, owner, ids, connections, spaces)) {
+      try {
+        IdentityEntity source = _findById(IdentityEntity.class, id);
+        if (!Boolean.TRUE.equals(source.isDeleted())) {
+          sources.add(source);
+        }
+      } catch (NodeNotFoundException e) {
+        ids.remove(id);
+      }
+    }
+    return sources;
+  }
+  
+  /**
+   * Gets the ids of the identities and spaces merged into the given stream of the owner.
+   * 
+   * They are resolved once, then kept until the relationships or the spaces of the owner change,
+   * or until other identities or spaces are merged on read.
+   */
+  private List<String> getFanOutOnReadSourceIds(ActivityRefType type, Identity owner, Set<String> ids,
+                                                boolean connections, boolean spaces) {
+    CacheGenerations generations = getGenerations();
+    String key = owner.getId() + "/" + type.name();
+    int marked = ids.size();
+    long generation = 0;
+    if (generations != null) {
+      generation = generations.current(CacheGenerations.relationships(owner.getId()))
+          + generations.current(CacheGenerations.spaces(owner.getRemoteId()));
+      FanOutOnReadSources cached;
+      synchronized (fanOutOnReadSources) {
+        cached = fanOutOnReadSources.get(key);
+      }
+      if (cached != null && cached.isCurrent(ids, marked, generation)) {
+        return cached.sourceIds;
+      }
+    }
+    
+    //the identities, spaces and relationships are read from the caches
+    List<String> sourceIds = new ArrayList<String>();
+    for (String id : ids) {
+      if (id.equals(owner.getId())) {
+        continue;
+      }
+      Identity identity = CommonsUtils.getService(IdentityStorage.class).findIdentityById(id);
+      if (identity == null) {
+        //the identity has been deleted
+        ids.remove(id);
+        continue;
+      }
+      boolean merged;
+      if (SpaceIdentityProvider.NAME.equals(identity.getProviderId())) {
+        Space space = spaces ? getSpaceStorage().getSpaceByPrettyName(identity.getRemoteId()) : null;
+        merged = space != null && space.getMemberSet().contains(owner.getRemoteId());
+      } else if (connections) {
+        Relationship relationship = getRelationshipStorage().getRelationship(owner, identity);
+        merged = relationship != null && Relationship.Type.CONFIRMED.equals(relationship.getStatus());
+      } else {
+        merged = false;
+      }
+      if (merged) {
+        sourceIds.add(id);
+      }
+    }
+    
+    if (generations != null) {
+      synchronized (fanOutOnReadSources) {
+        fanOutOnReadSources.put(key, new FanOutOnReadSources(ids, marked, generation, sourceIds));
+      }
+    }
+    return sourceIds;
+  }
+  
+  /**
+   * The fan-out on read sources of a stream, with the marked identities and the generations they were resolved from.
+   */
+  private static class FanOutOnReadSources {
+    
+    /** the marked identities, replaced when they are reloaded */
+    private final Set<String> ids;
+    
+    /** their number, the set grows when an identity is marked */
+    private final int marked;
+    
+    /** the generations of the relationships of the owner and of the spaces */
+    private final long generation;
+    
+    private final List<String> sourceIds;
+    
+    FanOutOnReadSources(Set<String> ids, int marked, long generation, List<String> sourceIds) {
+      this.ids = ids;
+      this.marked = marked;
+      this.generation = generation;
+      this.sourceIds = Collections.unmodifiableList(sourceIds);
+    }
+    
+    boolean isCurrent(Set<String> ids, int marked, long generation) {
+      return this.ids == ids && this.marked == marked && this.generation == generation;
+    }
+  }
+  
+  /**
+   * Gets the references of the given stream of the owner merged with the references of
+   * the identities and spaces which are merged on read, from the most recently updated.
+   * 
+   * @param type the stream type
+   * @param owner the stream owner
+   * @param refList the owner stream
+   * @param before the last updated time to start from, null to start from the top
+   * @return the references
+   * @throws NodeNotFoundException
+   */
+  private Iterator<ActivityRef> refsOf(ActivityRefType type, Identity owner, ActivityRefListEntity refList, Long before) throws NodeNotFoundException {
+    Iterator<ActivityRef> refs = iterator(refList, before);
+    List<IdentityEntity> sources = getFanOutOnReadSources(type, owner);
+    if (sources.isEmpty()) {
+      return refs;
+    }
+    
+    ActivityStreamCacheIndex index = getStreamCacheIndex();
+    StreamUpdateSequences sequences = getUpdateSequences();
+    List<Iterator<ActivityRef>> streams = new ArrayList<Iterator<ActivityRef>>(sources.size() + 1);
+    streams.add(refs);
+    for (IdentityEntity source : sources) {
+      ActivityRefType sourceType;
+      if (SpaceIdentityProvider.NAME.equals(source.getProviderId())) {
+        sourceType = ActivityRefType.SPACE_STREAM;
+        streams.add(iterator(sourceType.refsOf(source), before));
+      } else {
+        //only the activities posted by the connection on the user streams are pushed
+        sourceType = ActivityRefType.MY_ACTIVITIES;
+        streams.add(new MergedRefIterator(iterator(sourceType.refsOf(source), before), source.getId()));
+      }
+      if (index != null) {
+        index.link(source.getId(), sourceType, owner.getId(), type);
+      }
+      if (sequences != null) {
+        sequences.link(source.getId(), sourceType, owner.getId(), type);
+      }
+    }
+    return new MergedRefIterator(new StreamMergeIterator<ActivityRef>(streams, LAST_UPDATED_DESC), null);
+  }
+  
+  private static Iterator<ActivityRef> iterator(ActivityRefListEntity refList, Long before) {
+    ActivityRefList list = new ActivityRefList(refList);
+    return before != null ? list.iterator(before) : list.iterator();
+  }
+  
+  private static long getLastUpdated(ActivityRef ref) {
+    ActivityEntity entity = ref.getActivityEntity();
+    Long lastUpdated = entity != null ? entity.getLastUpdated() : null;
+    if (lastUpdated == null) {
+      lastUpdated = ref.getLastUpdated();
+    }
+    return lastUpdated != null ? lastUpdated : 0;
+  }
+  
+  /**
+   * Filters the merged references: only keeps the activities posted by the given poster
+   * on the user streams, or removes the activities already returned by another stream.
+   * 
+   * The references whose activity has been removed are returned so that they are cleaned up.
+   */
+  private static class MergedRefIterator implements Iterator<ActivityRef> {
+    
+    private final Iterator<ActivityRef> refs;
+    
+    /** the poster identity id, null to remove the duplicates */
+    private final String posterId;
+    
+    private final Set<String> merged = new HashSet<String>();
+    
+    private ActivityRef next;
+    
+    MergedRefIterator(Iterator<ActivityRef> refs, String posterId) {
+      this.refs = refs;
+      this.posterId = posterId;
+    }
+    
+    public boolean hasNext() {
+      while (next == null && refs.hasNext()) {
+        ActivityRef ref = refs.next();
+        ActivityEntity entity = ref.getActivityEntity();
+        if (entity == null) {
+          next = ref;
+        } else if (posterId == null) {
+          if (merged.add(entity.getId())) {
+            next = ref;
+          }
+        } else if (entity.getPosterIdentity() != null && posterId.equals(entity.getPosterIdentity().getId())
+            && !SpaceIdentityProvider.NAME.equals(entity.getIdentity().getProviderId())) {
+          next = ref;
+        }
+      }
+      return next != null;
+    }
+    
+    public ActivityRef next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      ActivityRef ref = next;
+      next = null;
+      return ref;
+    }
+    
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+  
   @Override
   public void delete(String activityId) {
-    this.activityWriteLock.lock();
+    Lock lock = null;
     try {
       //
       ActivityEntity activityEntity = _findById(ActivityEntity.class, activityId);
+      Map<String, ActivityRefListEntity> refLists = new HashMap<String, ActivityRefListEntity>();
+      lock = lockRefOwners(activityEntity, refLists);
       HidableEntity hidableActivity = _getMixin(activityEntity, HidableEntity.class, true);
       
-      Collection<ActivityRef> references = activityEntity.getActivityRefs();
-      
-      List<ActivityRefListEntity> refList = new ArrayList<ActivityRefListEntity>(); 
-      //
-      for(ActivityRef ref : references) {
-        
-        //
-        refList.add(ref.getDay().getMonth().getYear().getList());
-      }
-      
-      for(ActivityRefListEntity list : refList) {
+      for(ActivityRefListEntity list : refLists.values()) {
         list.remove(activityEntity, hidableActivity.getHidden(), null);
+        touch(ownerOf(list), list);
       }
       
-      
+      //called out of a stream process, the touched streams are flushed here
+      StorageUtils.persist();
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to delete Activities references.", e);
     } finally {
-      this.activityWriteLock.unlock();
+      if (lock != null) {
+        lock.unlock();
+      }
+      flushTouched();
     }
   }
   
   @Override
   public void like(Identity liker, ExoSocialActivity activity) {
-    this.activityWriteLock.lock();
+    Lock lock = null;
     try {
       //
       ActivityEntity entity = _findById(ActivityEntity.class, activity.getId());
+      lock = streamLocks.writeLock(liker.getId());
+      lock.lock();
       
       manageRefList(new UpdateContext(liker, null), entity, ActivityRefType.FEED);
       manageRefList(new UpdateContext(liker, null), entity, ActivityRefType.MY_ACTIVITIES);
@@ -459,17 +1031,21 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to make Activity References for like case.");
     } finally {
-      this.activityWriteLock.unlock();
+      if (lock != null) {
+        lock.unlock();
+      }
     }
     
   }
   
   @Override
   public void unLike(Identity removedLike, ExoSocialActivity activity) {
-    this.activityWriteLock.lock();
+    Lock lock = null;
     try {
       //
       ActivityEntity entity = _findById(ActivityEntity.class, activity.getId());
+      lock = streamLocks.writeLock(removedLike.getId());
+      lock.lock();
       
       //manageRefList(new UpdateContext(null, removedLike), entity, ActivityRefType.FEED);
       boolean notDelete = ArrayUtils.contains(activity.getCommentedIds(), removedLike.getId());
@@ -483,7 +1059,9 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to delete Activity References for unlike case.");
     } finally {
-      this.activityWriteLock.unlock();
+      if (lock != null) {
+        lock.unlock();
+      }
     }
   }
   
@@ -498,13 +1076,15 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
 
   @Override
   public void updateCommenter(ProcessContext ctx) {
-    this.activityWriteLock.lock();
+    StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
+    Identity commenter = streamCtx.getIdentity();
+    //It has been invoked by Activity Service with the same thread.
+    //so that, retrieves Entity directly from Stream context, don't spend time to get from JCR => impact performance.
+    ActivityEntity activityEntity = streamCtx.getActivityEntity();
+    //the streams of the commenter and of the activity owner are written
+    Lock lock = streamLocks.writeLock(commenter.getId(), activityEntity.getIdentity().getId());
+    lock.lock();
     try {
-      StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
-      Identity commenter = streamCtx.getIdentity();
-      //It has been invoked by Activity Service with the same thread.
-      //so that, retrieves Entity directly from Stream context, don't spend time to get from JCR => impact performance.
-      ActivityEntity activityEntity = streamCtx.getActivityEntity();
       //
       long oldUpdated = streamCtx.getOldLastUpdated();  
       //activity's poster != comment's poster
@@ -522,7 +1102,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       LOG.warn("Probably was updated activity reference by another session");
       LOG.debug(ex.getMessage(), ex);
     } finally {
-      this.activityWriteLock.unlock();
+      lock.unlock();
     }
   }
   
@@ -538,6 +1118,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     }
     
     refList.getOrCreated(activityEntity, hidableActivity.getHidden() );
+    touch(identityEntity.getId(), type);
   }
 
   private void createRefForPoster(ActivityEntity activityEntity, long oldUpdated) throws NodeNotFoundException {
@@ -560,12 +1141,14 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
   @Override
   public void update(ProcessContext ctx) {
     
-    this.activityWriteLock.lock();
+    Lock lock = null;
     try {
       StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
       //It has been invoked by Activity Service with the multi-threading.
       //so that, gets Entity from JCR, prevent Session.logout exception when retrieves its references
       ActivityEntity activityEntity = _findById(ActivityEntity.class, streamCtx.getActivity().getId());
+      Map<String, ActivityRefListEntity> refLists = new HashMap<String, ActivityRefListEntity>();
+      lock = lockRefOwners(activityEntity, refLists);
       HidableEntity hidableActivity = _getMixin(activityEntity, HidableEntity.class, true);
       //ActivityEntity activityEntity = streamCtx.getActivity();
       Collection<ActivityRef> references = activityEntity.getActivityRefs();
@@ -573,7 +1156,8 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       ActivityRef newRef = null;
       synchronized (references) {
         for (ActivityRef old : references) {
-          ActivityRefListEntity refList = old.getDay().getMonth().getYear().getList();
+          ActivityRefListEntity refList = refListOf(old, refLists);
+          touch(ownerOf(refList), refList);
           //ActivityRef.getName equals ActivityId or not
           if (old.getName().equalsIgnoreCase(activityEntity.getId())) {
             refList.update(activityEntity, old, oldUpdated, hidableActivity.getHidden());
@@ -593,13 +1177,15 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
         LOG.warn("Probably was updated activity reference by another session");
         LOG.debug(ex.getMessage(), ex);
     } finally {
-      this.activityWriteLock.unlock();
+      if (lock != null) {
+        lock.unlock();
+      }
     }
   }
   
   @Override
   public void deleteComment(ProcessContext ctx) {
-    
+    Lock lock = null;
     try {
       StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
       ExoSocialActivity activity = streamCtx.getActivity();
@@ -607,41 +1193,59 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       //
       ActivityEntity activityEntity = _findById(ActivityEntity.class, activity.getId());
       
+      List<String> owners = new ArrayList<String>();
+      if (streamCtx.getMentioners() != null) {
+        owners.addAll(Arrays.asList(streamCtx.getMentioners()));
+      }
+      if (streamCtx.getCommenters() != null) {
+        owners.addAll(Arrays.asList(streamCtx.getCommenters()));
+      }
+      lock = streamLocks.writeLock(owners.toArray(new String[owners.size()]));
+      lock.lock();
       //mentioners
       removeActivityRefs(streamCtx.getMentioners(), activityEntity);
       //commenter
       removeActivityRefs(streamCtx.getCommenters(), activityEntity);
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to delete Activity references for mentioner and commenter.");
+    } finally {
+      if (lock != null) {
+        lock.unlock();
+      }
     }
   }
   
   @Override
   public void addSpaceMember(ProcessContext ctx) {
-    this.activityWriteLock.lock();
+    StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
+    Lock lock = streamLocks.writeLock(streamCtx.getIdentity().getId(), streamCtx.getSpaceIdentity().getId());
+    lock.lock();
     try {
       
-      StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
-      createSpaceMemberRefs(streamCtx.getIdentity(), streamCtx.getSpaceIdentity());
+      //the activities of a large space are merged when the streams are read
+      if (!getFanOutOnReadIds().contains(streamCtx.getSpaceIdentity().getId())) {
+        createSpaceMemberRefs(streamCtx.getIdentity(), streamCtx.getSpaceIdentity());
+      }
       
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to addSpaceMember Activity references.");
     } finally {
-      this.activityWriteLock.unlock();
+      lock.unlock();
     }
     
   }
   
   @Override
   public void removeSpaceMember(ProcessContext ctx) {
-    this.activityWriteLock.lock();
+    StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
+    Lock lock = streamLocks.writeLock(streamCtx.getIdentity().getId(), streamCtx.getSpaceIdentity().getId());
+    lock.lock();
     try {
-      StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
       removeSpaceMemberRefs(streamCtx.getIdentity(), streamCtx.getSpaceIdentity());
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to removeSpaceMember Activity references.");
     } finally {
-      this.activityWriteLock.unlock();
+      lock.unlock();
     }
     
   }
@@ -723,6 +1327,31 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     return getNumberOfActivities(ActivityRefType.MY_ACTIVITIES, owner);
   }
   
+  @Override
+  public ActivityStreamPage getFeed(Identity owner, ActivityStreamCursor after, int limit) {
+    return getPage(ActivityRefType.FEED, owner, after, limit);
+  }
+  
+  @Override
+  public ActivityStreamPage getConnections(Identity owner, ActivityStreamCursor after, int limit) {
+    return getPage(ActivityRefType.CONNECTION, owner, after, limit);
+  }
+  
+  @Override
+  public ActivityStreamPage getMySpaces(Identity owner, ActivityStreamCursor after, int limit) {
+    return getPage(ActivityRefType.MY_SPACES, owner, after, limit);
+  }
+  
+  @Override
+  public ActivityStreamPage getSpaceStream(Identity owner, ActivityStreamCursor after, int limit) {
+    return getPage(ActivityRefType.SPACE_STREAM, owner, after, limit);
+  }
+  
+  @Override
+  public ActivityStreamPage getMyActivities(Identity owner, ActivityStreamCursor after, int limit) {
+    return getPage(ActivityRefType.MY_ACTIVITIES, owner, after, limit);
+  }
+  
   @Override
   public List<ExoSocialActivity> getViewerActivities(Identity owner, int offset, int limit) {
     return getOwnerActivitiesNotQuery(ActivityRefType.MY_ACTIVITIES, owner, offset, limit);
@@ -730,8 +1359,10 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
 
   @Override
   public void connect(Identity sender, Identity receiver) {
+    //the streams of both sides are updated
+    Lock lock = streamLocks.writeLock(sender.getId(), receiver.getId());
+    lock.lock();
     try {
-      this.activityWriteLock.lock();
       //
       List<ActivityEntity> activities = getActivitiesByPoster(sender);
       IdentityEntity receiverEntity = identityStorage._findIdentityEntity(receiver.getProviderId(), receiver.getRemoteId());
@@ -777,13 +1408,15 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to add Activity references when create relationship.");
     } finally {
-      this.activityWriteLock.unlock();
+      lock.unlock();
     }
   }
   
   @Override
   public void deleteConnect(Identity sender, Identity receiver) {
-    
+    //the streams of both sides are updated
+    Lock lock = streamLocks.writeLock(sender.getId(), receiver.getId());
+    lock.lock();
     try {
       //
       QueryResult<ActivityEntity> activities = getActivitiesOfConnections(sender);
@@ -805,6 +1438,8 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       }
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to delete Activity references when delete relationship.");
+    } finally {
+      lock.unlock();
     }
   }
   
@@ -933,6 +1568,27 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     public abstract ActivityRefListEntity refsOf(IdentityEntity identityEntity);
     
     public abstract ActivityRefListEntity create(IdentityEntity identityEntity);
+    
+    /**
+     * Gets the reference type of a stream node.
+     * 
+     * @param nodeName the stream node name
+     * @return the type or null if unknown
+     */
+    public static ActivityRefType of(String nodeName) {
+      if ("soc:all".equals(nodeName)) {
+        return FEED;
+      } else if ("soc:connections".equals(nodeName)) {
+        return CONNECTION;
+      } else if ("soc:myspaces".equals(nodeName)) {
+        return MY_SPACES;
+      } else if ("soc:space".equals(nodeName)) {
+        return SPACE_STREAM;
+      } else if ("soc:owner".equals(nodeName)) {
+        return MY_ACTIVITIES;
+      }
+      return null;
+    }
   }
   
   private List<String> getIdsNotQuery(ActivityRefType type, Identity owner, int offset, int limit) {
@@ -940,10 +1596,9 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     try {
       IdentityEntity identityEntity = _findById(IdentityEntity.class, owner.getId());
       ActivityRefListEntity refList = type.refsOf(identityEntity);
-      ActivityRefList list = new ActivityRefList(refList);
 
       int nb = 0;
-      ActivityRefIterator it = list.iterator();
+      Iterator<ActivityRef> it = refsOf(type, owner, refList, null);
       _skip(it, offset);
       int size = refList.getNumber() > 0 ? refList.getNumber(): 0;
       boolean sizeIsZero = (size == 0);
@@ -991,15 +1646,15 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
   private List<ExoSocialActivity> getActivitiesNotQuery(ActivityRefType type, Identity owner, int offset, int limit) {
     List<ExoSocialActivity> got = new LinkedList<ExoSocialActivity>();
     //
-    this.activityReadLock.lock();
+    Lock lock = streamLocks.readLock(owner.getId());
+    lock.lock();
     try {
       IdentityEntity identityEntity = identityStorage._findIdentityEntity(owner.getProviderId(), owner.getRemoteId());
       
       ActivityRefListEntity refList = type.refsOf(identityEntity);
-      ActivityRefList list = new ActivityRefList(refList);
 
       int nb = 0;
-      ActivityRefIterator it = list.iterator();
+      Iterator<ActivityRef> it = refsOf(type, owner, refList, null);
       _skip(it, offset);
       int size = refList.getNumber()>0? refList.getNumber(): 0;
       boolean sizeIsZero = (size==0)?true:false;
@@ -1061,11 +1716,92 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to activities!");
     } finally {
-      this.activityReadLock.unlock();
+      lock.unlock();
     }
     return got;
   }
   
+  /**
+   * Loads the page of the stream following the given cursor. The iteration starts from
+   * the day of the cursor, the stream is not walked from its top and the number of
+   * activities of the stream is not counted.
+   * 
+   * @param type the stream type
+   * @param owner the stream owner
+   * @param after the cursor of the last activity of the previous page, null for the first page
+   * @param limit the page size
+   * @return the page
+   */
+  private ActivityStreamPage getPage(ActivityRefType type, Identity owner, ActivityStreamCursor after, int limit) {
+    List<ExoSocialActivity> got = new LinkedList<ExoSocialActivity>();
+    ActivityStreamCursor next = null;
+    boolean hasMore = false;
+    //
+    Lock lock = streamLocks.readLock(owner.getId());
+    lock.lock();
+    try {
+      IdentityEntity identityEntity = identityStorage._findIdentityEntity(owner.getProviderId(), owner.getRemoteId());
+      ActivityRefListEntity refList = type.refsOf(identityEntity);
+      
+      Set<String> ids = new HashSet<String>();
+      Iterator<ActivityRef> it = refsOf(type, owner, refList, after != null ? after.getLastUpdated() : null);
+      while (it.hasNext()) {
+        ActivityRef current = it.next();
+        ActivityEntity entity = current.getActivityEntity();
+        if (entity == null) {
+          continue;
+        }
+        
+        long lastUpdated = getLastUpdated(current);
+        if (after != null && !after.isBefore(lastUpdated, entity.getId())) {
+          continue;
+        }
+        
+        HidableEntity hidable = _getMixin(entity, HidableEntity.class, false);
+        if ((hidable != null && hidable.getHidden()) || ids.contains(entity.getId())) {
+          continue;
+        }
+        
+        try {
+          ExoSocialActivity a = getStorage().getActivity(entity.getId());
+          if (a == null || a.isHidden() || !isVisibleInStream(type, owner, a)) {
+            continue;
+          }
+          if (got.size() == limit) {
+            //one more visible activity is enough to know there is a next page
+            hasMore = true;
+            break;
+          }
+          ids.add(a.getId());
+          got.add(a);
+          next = new ActivityStreamCursor(lastUpdated, a.getId());
+        } catch (Exception e) {
+          LOG.warn("Exception while loading activities for user: " + owner.getRemoteId());
+        }
+      }
+    } catch (NodeNotFoundException e) {
+      LOG.warn("Failed to activities!");
+    } finally {
+      lock.unlock();
+    }
+    return new ActivityStreamPage(got, next, hasMore);
+  }
+  
+  /**
+   * SOC-4525 : excludes the space activities of the feed and connections streams when
+   * the owner is not member of the space.
+   */
+  private boolean isVisibleInStream(ActivityRefType type, Identity owner, ExoSocialActivity a) {
+    if (!ActivityRefType.CONNECTION.equals(type) && !ActivityRefType.FEED.equals(type)) {
+      return true;
+    }
+    if (!SpaceIdentityProvider.NAME.equals(a.getActivityStream().getType().toString())) {
+      return true;
+    }
+    Space space = getSpaceStorage().getSpaceByPrettyName(a.getStreamOwner());
+    return space == null || space.getMemberSet().contains(owner.getRemoteId());
+  }
+  
   private List<ExoSocialActivity> getOwnerActivitiesNotQuery(ActivityRefType type, Identity owner, int offset, int limit) {
     List<ExoSocialActivity> got = new LinkedList<ExoSocialActivity>();
     try {
@@ -1110,8 +1846,16 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
   }
   
   
+  /**
+   * Gets the number of the references of the given stream of the owner.
+   * 
+   * The activities of the identities and spaces merged on read are not counted: they are
+   * not referenced by the stream, and counting them would read all their streams.
+   * See {@link StreamConfig#getFanOutOnReadThreshold()}.
+   */
   private int getNumberOfActivities(ActivityRefType type, Identity owner) {
-    this.activityReadLock.lock();
+    Lock lock = streamLocks.readLock(owner.getId());
+    lock.lock();
     try {
       IdentityEntity identityEntity = identityStorage._findIdentityEntity(owner.getProviderId(), owner.getRemoteId());
       ActivityRefListEntity refList = type.refsOf(identityEntity);
@@ -1122,7 +1866,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to getNumberOfActivities()");
     } finally {
-      this.activityReadLock.unlock();
+      lock.unlock();
     }
     
     return 0;
@@ -1305,6 +2049,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
         
         ActivityRefListEntity listRef = type.refsOf(identityEntity);
         listRef.getOrCreated(activityEntity,  hidableActivity.getHidden());
+        touch(identityEntity.getId(), type);
         if(counter == BATCH){
           StorageUtils.persist();
           counter = 0;
@@ -1322,6 +2067,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
           
         ActivityRefListEntity listRef = type.refsOf(identityEntity);
         listRef.remove(activityEntity, hidableActivity.getHidden(), null);
+        touch(identityEntity.getId(), type);
       }
     }
   }
@@ -1352,6 +2098,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     }
 
     ref.setActivityEntity(activityEntity);
+    touch(identityEntity.getId(), type);
   }
   
   @Override
@@ -1392,6 +2139,8 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     
     if (activities == null || activities.size() == 0) return;
 
+    Lock lock = streamLocks.writeLock(owner.getId());
+    lock.lock();
     try {
       IdentityEntity identityEntity = identityStorage._findIdentityEntity(owner.getProviderId(),
                                                                           owner.getRemoteId());
@@ -1401,6 +2150,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       Long value = entity.getUpdated() != null ? entity.getUpdated().getTime() : entity.getPostedTime();
       Long oldLastMigration = listRef.getLastMigration();
       listRef.setLastMigration(value.longValue());
+      _getMixin(listRef, MigrationTimeEntity.class, true).setMigratedAt(System.currentTimeMillis());
       //don't increase with lazy migration.
       Integer numberOfStream = listRef.getNumber();
       
@@ -1422,25 +2172,33 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       if (oldLastMigration != null && oldLastMigration.longValue() > 0) {
         listRef.setNumber(numberOfStream);
       }
+      touch(identityEntity.getId(), type);
       
       StorageUtils.persist();
       
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to create Activity references.");
+    } finally {
+      lock.unlock();
+      flushTouched();
     }
   }
   
   @Override
   public void migrateStreamSize(Identity owner, int size, ActivityRefType type) {
-    
+    Lock lock = streamLocks.writeLock(owner.getId());
+    lock.lock();
     try {
       IdentityEntity identityEntity = identityStorage._findIdentityEntity(owner.getProviderId(), owner.getRemoteId());
       ActivityRefListEntity listRef = type.create(identityEntity);
       listRef.setNumber(size);
+      touch(identityEntity.getId(), type);
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to migrateStreamSize.");
     } finally {
       StorageUtils.persist();
+      lock.unlock();
+      flushTouched();
     }
   }
 
@@ -1469,6 +2227,23 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     return hasSizeOfActivities(ActivityRefType.CONNECTION, owner);
   }
   
+  @Override
+  public long getFeedLastMigration(Identity owner) {
+    try {
+      IdentityEntity identityEntity = identityStorage._findIdentityEntity(owner.getProviderId(), owner.getRemoteId());
+      StreamsEntity streams = identityEntity.getStreams();
+      if (streams == null || streams.getAll() == null) return 0;
+      //soc:lastMigration is the time of the oldest migrated activity, not of the migration
+      MigrationTimeEntity migrationTime = _getMixin(streams.getAll(), MigrationTimeEntity.class, false);
+      Long migratedAt = migrationTime != null ? migrationTime.getMigratedAt() : null;
+      return migratedAt != null ? migratedAt.longValue() : 0;
+    } catch (NodeNotFoundException e) {
+      LOG.warn("Failed to getFeedLastMigration()");
+    }
+    
+    return 0;
+  }
+  
   private boolean hasSizeOfActivities(ActivityRefType type, Identity owner) {
     try {
       IdentityEntity identityEntity = identityStorage._findIdentityEntity(owner.getProviderId(), owner.getRemoteId());
@@ -1486,24 +2261,30 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
   
   @Override
   public void updateHidable(ProcessContext ctx) {
-    this.activityWriteLock.lock();
+    Lock lock = null;
     try {
       StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
       ExoSocialActivity activity = streamCtx.getActivity();
 
       ActivityEntity activityEntity = _findById(ActivityEntity.class, activity.getId());
-      Collection<ActivityRef> references = activityEntity.getActivityRefs();
       
       //Case of update hidden activity after migration
+      //the streams take their own locks, save() may drain the fan-out queue in this thread
+      Collection<ActivityRef> references = activityEntity.getActivityRefs();
       if (references == null || references.size() == 0) {
         streamCtx.activityEntity(activityEntity);
         savePoster(streamCtx);
         save(streamCtx);
       }
-        
+      
+      Map<String, ActivityRefListEntity> refLists = new HashMap<String, ActivityRefListEntity>();
+      lock = lockRefOwners(activityEntity, refLists);
+      references = activityEntity.getActivityRefs();
       HidableEntity hidableActivity = _getMixin(activityEntity, HidableEntity.class, true);
       hidableActivity.setHidden(activity.isHidden());
       for (ActivityRef ref : references) {
+        ActivityRefListEntity refList = refListOf(ref, refLists);
+        touch(ownerOf(refList), refList);
         if (hidableActivity.getHidden() == false) {
           ref.getDay().inc();
         } else {
@@ -1514,13 +2295,14 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     } catch (Exception e) {
       LOG.warn("Failed to update Activity references when change the visibility of activity.", e);
     } finally {
-      this.activityWriteLock.unlock();
+      if (lock != null) {
+        lock.unlock();
+      }
     }
   }
 
   @Override
   public void addMentioners(ProcessContext ctx) {
-    this.activityWriteLock.lock();
     try {
       StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
       //
@@ -1533,10 +2315,131 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     } catch (NodeNotFoundException ex) {
       LOG.warn("Probably was updated activity reference by another session");
       LOG.debug(ex.getMessage(), ex);
-    } finally {
-      this.activityWriteLock.unlock();
     }
     
   }
   
+  /**
+   * Gets the write lock of the streams of the given identities. A process takes the locks of all
+   * the streams it writes at once, in the stripe order, and never while holding another one.
+   * 
+   * @param identities the stream owners
+   * @return the lock, not acquired yet
+   */
+  private Lock writeLock(List<Identity> identities) {
+    String[] ownerIds = new String[identities.size()];
+    for (int i = 0; i < ownerIds.length; i++) {
+      ownerIds[i] = identities.get(i).getId();
+    }
+    return streamLocks.writeLock(ownerIds);
+  }
+  
+  /**
+   * Acquires the write locks of the owners of all the streams referencing the activity. 
+   * The reference list of each reference is resolved once and kept for the caller. A reference
+   * created meanwhile in the stream of another owner is checked once the locks are held, the locks
+   * are taken again with its owner.
+   * 
+   * An activity referenced by the streams of many owners, as a fan-out to a large audience, locks
+   * all the stripes at once, see {@link StreamLockManager#writeLock(String...)}.
+   * 
+   * @param activityEntity the activity
+   * @param refLists the reference lists by reference id, filled by this method
+   * @return the acquired lock
+   */
+  private Lock lockRefOwners(ActivityEntity activityEntity, Map<String, ActivityRefListEntity> refLists) {
+    Set<String> owners = new HashSet<String>();
+    owners.add(activityEntity.getIdentity().getId());
+    addRefOwners(activityEntity, refLists, owners);
+    while (true) {
+      Lock lock = streamLocks.writeLock(owners.toArray(new String[owners.size()]));
+      lock.lock();
+      if (!addRefOwners(activityEntity, refLists, owners)) {
+        return lock;
+      }
+      lock.unlock();
+    }
+  }
+  
+  /**
+   * Resolves the reference lists of the references which are not in the given ones yet.
+   * 
+   * @return true if a reference is in the stream of a new owner
+   */
+  private boolean addRefOwners(ActivityEntity activityEntity, Map<String, ActivityRefListEntity> refLists, Set<String> owners) {
+    boolean added = false;
+    Collection<ActivityRef> references = activityEntity.getActivityRefs();
+    if (references != null) {
+      for (ActivityRef ref : references) {
+        if (!refLists.containsKey(ref.getId())) {
+          ActivityRefListEntity refList = ref.getDay().getMonth().getYear().getList();
+          refLists.put(ref.getId(), refList);
+          added |= owners.add(ownerOf(refList));
+        }
+      }
+    }
+    return added;
+  }
+  
+  private static ActivityRefListEntity refListOf(ActivityRef ref, Map<String, ActivityRefListEntity> refLists) {
+    ActivityRefListEntity refList = refLists.get(ref.getId());
+    return refList != null ? refList : ref.getDay().getMonth().getYear().getList();
+  }
+  
+  /**
+   * @param refList the stream reference list: {identity}/soc:streams/{stream}
+   * @return the stream owner identity id
+   */
+  private static String ownerOf(ActivityRefListEntity refList) {
+    return refList.getParent().getParent().getId();
+  }
+  
+  /**
+   * Marks the stream as touched, once the stream process persisted it, its cached lists
+   * are evicted and its update sequence is bumped.
+   * 
+   * @param identityId the stream owner identity id
+   * @param type the stream type
+   */
+  private void touch(String identityId, ActivityRefType type) {
+    ActivityStreamCacheIndex index = getStreamCacheIndex();
+    if (index != null) {
+      index.touch(identityId, type);
+    }
+  }
+  
+  /**
+   * Marks the stream as touched, the type is resolved from the name of the reference list:
+   * {identity}/soc:streams/{stream}
+   * 
+   * @param ownerId the stream owner identity id, see {@link #ownerOf(ActivityRefListEntity)}
+   * @param refList the stream reference list
+   */
+  private void touch(String ownerId, ActivityRefListEntity refList) {
+    if (getStreamCacheIndex() == null) {
+      return;
+    }
+    String path = refList.getPath();
+    ActivityRefType type = ActivityRefType.of(path.substring(path.lastIndexOf('/') + 1));
+    if (type != null) {
+      touch(ownerId, type);
+    }
+  }
+  
+  /**
+   * Evicts the cached lists of the streams touched out of a stream process and bumps their
+   * update sequences, must be called once the changes are persisted.
+   */
+  private void flushTouched() {
+    ActivityStreamCacheIndex index = getStreamCacheIndex();
+    if (index == null) {
+      return;
+    }
+    Map<String, Set<ActivityRefType>> touched = index.flush();
+    StreamUpdateSequences sequences = getUpdateSequences();
+    if (sequences != null) {
+      sequences.bump(touched);
+    }
+  }
+  
 }
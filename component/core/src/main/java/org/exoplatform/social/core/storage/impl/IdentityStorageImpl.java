@@ -20,6 +20,7 @@ package org.exoplatform.social.core.storage.impl;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -27,7 +28,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.jcr.NodeIterator;
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
@@ -71,7 +74,9 @@ import org.exoplatform.social.core.identity.model.Profile.AttachedActivityType;
 import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
 import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.model.AvatarAttachment;
+import org.exoplatform.social.core.processor.ActivityProcessingCache;
 import org.exoplatform.social.core.profile.ProfileFilter;
+import org.exoplatform.social.core.relationship.SuggestionIndex;
 import org.exoplatform.social.core.search.Sorting;
 import org.exoplatform.social.core.service.LinkProvider;
 import org.exoplatform.social.core.space.SpaceUtils;
@@ -80,6 +85,8 @@ import org.exoplatform.social.core.storage.IdentityStorageException;
 import org.exoplatform.social.core.storage.api.IdentityStorage;
 import org.exoplatform.social.core.storage.api.RelationshipStorage;
 import org.exoplatform.social.core.storage.api.SpaceStorage;
+import org.exoplatform.social.core.storage.cache.CacheGenerations;
+import org.exoplatform.social.core.storage.cache.SocialStorageCacheService;
 import org.exoplatform.social.core.storage.exception.NodeAlreadyExistsException;
 import org.exoplatform.social.core.storage.exception.NodeNotFoundException;
 import org.exoplatform.social.core.storage.query.JCRProperties;
@@ -97,10 +104,22 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
   /** Logger */
   private static final Log LOG = ExoLogger.getLogger(IdentityStorageImpl.class);
 
+  /**
+   * Above this number of disabled identities, they are skipped while reading the results instead of excluded
+   * by the queries, and they are counted by batches of this size.
+   */
+  private static final int MAX_DISABLED_EXCLUDES = 100;
+
+  /** The number of identities found by one query. */
+  private static final int IDENTITIES_BATCH_SIZE = 50;
+
   private IdentityStorage identityStorage;
   private RelationshipStorage relationshipStorage;
   private SpaceStorage spaceStorage;
   private OrganizationService organizationService;
+
+  /** The disabled identities of each provider, loaded again once an identity is enabled or disabled. */
+  private final Map<String, DisabledIdentities> disabledIdentities = new ConcurrentHashMap<String, DisabledIdentities>();
   
 
   static enum PropNs {
@@ -202,6 +221,21 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     return relationshipStorage;
   }
   
+  private void invalidateSuggestions(Identity identity) {
+    SuggestionIndex index = CommonsUtils.getService(SuggestionIndex.class);
+    if (index != null) {
+      index.invalidate(identity.getId());
+    }
+  }
+  
+  private void invalidateProcessedActivities(Identity identity) {
+    //the mentions of the identity are resolved again
+    ActivityProcessingCache processingCache = CommonsUtils.getService(ActivityProcessingCache.class);
+    if (processingCache != null && identity != null) {
+      processingCache.identityChanged(identity);
+    }
+  }
+
   private OrganizationService getOrganizationService() {
     if (organizationService == null) {
       organizationService = (OrganizationService) PortalContainer.getInstance().getComponentInstanceOfType(OrganizationService.class);
@@ -884,6 +918,7 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     catch (NodeNotFoundException e1) {
       throw new IdentityStorageException(IdentityStorageException.Type.FAIL_TO_SAVE_IDENTITY, e1.getMessage(), e1);
     }
+    invalidateProcessedActivities(identity);
   }
 
   /**
@@ -913,6 +948,8 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     catch (NodeNotFoundException e) {
       throw new IdentityStorageException(IdentityStorageException.Type.FAIL_TO_DELETE_IDENTITY, e.getMessage(), e);
     }
+    invalidateSuggestions(identity);
+    invalidateProcessedActivities(identity);
   }
 
   /**
@@ -937,6 +974,62 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     }
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<Identity> findIdentitiesByIds(final List<String> identityIds) throws IdentityStorageException {
+
+    //the entities are found by one query per batch of ids instead of one lookup per id
+    Map<String, IdentityEntity> entities = new HashMap<String, IdentityEntity>(2 * identityIds.size());
+    for (int from = 0; from < identityIds.size(); from += IDENTITIES_BATCH_SIZE) {
+      List<String> batch = identityIds.subList(from, Math.min(from + IDENTITIES_BATCH_SIZE, identityIds.size()));
+      WhereExpression whereExpression = new WhereExpression();
+      whereExpression.startGroup();
+      for (int i = 0; i < batch.size(); i++) {
+        if (i > 0) {
+          whereExpression.or();
+        }
+        whereExpression.equals(JCRProperties.id, batch.get(i));
+      }
+      whereExpression.endGroup();
+
+      QueryBuilder<IdentityEntity> builder = getSession().createQueryBuilder(IdentityEntity.class);
+      builder.where(whereExpression.toString());
+      QueryResult<IdentityEntity> results = builder.get().objects();
+      while (results.hasNext()) {
+        IdentityEntity identityEntity = results.next();
+        entities.put(identityEntity.getId(), identityEntity);
+      }
+    }
+
+    //
+    List<Identity> identities = new ArrayList<Identity>(identityIds.size());
+    for (String identityId : identityIds) {
+      IdentityEntity identityEntity = entities.get(identityId);
+      Identity identity = null;
+      if (identityEntity != null) {
+        identity = new Identity(identityId);
+        identity.setDeleted(identityEntity.isDeleted());
+        identity.setRemoteId(identityEntity.getRemoteId());
+        identity.setProviderId(identityEntity.getProviderId());
+        identity.setEnable(_getMixin(identityEntity, DisabledEntity.class, false) == null);
+
+        //the profile is read from the entity already loaded, it is created when missing
+        ProfileEntity profileEntity = identityEntity.getProfile();
+        if (profileEntity != null) {
+          Profile profile = identity.getProfile();
+          populateProfile(profile, profileEntity);
+          profile.clearHasChanged();
+        } else {
+          identity.setProfile(loadProfile(identity.getProfile()));
+        }
+      }
+      identities.add(identity);
+    }
+    return identities;
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -947,6 +1040,8 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     catch (NodeNotFoundException e) {
       throw new IdentityStorageException(IdentityStorageException.Type.FAIL_TO_DELETE_IDENTITY, e.getMessage(), e);
     }
+    invalidateSuggestions(identity);
+    invalidateProcessedActivities(identity);
   }
 
   /**
@@ -1001,6 +1096,8 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
       LOG.debug(e.getMessage(), e); // should never be thrown
     }
     profile.clearHasChanged();
+    //the full name of the mentioned identity is in the processed activities
+    invalidateProcessedActivities(profile.getIdentity());
   }
 
   /**
@@ -1052,6 +1149,7 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
         .not().equals(ProfileEntity.deleted, "true");
 
     StorageUtils.applyExcludes(whereExpression, excludedIdentityList);
+    applyDisabledExcludes(whereExpression, providerId);
     StorageUtils.applyFilter(whereExpression, profileFilter);
 
     builder.where(whereExpression.toString());
@@ -1102,6 +1200,9 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     if (profileFilter != null) {
       List<Identity> excludedIdentityList = profileFilter.getExcludedIdentityList();
       StorageUtils.applyExcludes(whereExpression, excludedIdentityList);
+    }
+    boolean disabledExcluded = applyDisabledExcludes(whereExpression, providerId);
+    if (profileFilter != null) {
       StorageUtils.applyFilter(whereExpression, profileFilter);
     }
 
@@ -1110,36 +1211,39 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
 
     QueryImpl<ProfileEntity> queryImpl = (QueryImpl<ProfileEntity>) builder.get();
     ((org.exoplatform.services.jcr.impl.core.query.QueryImpl) queryImpl.getNativeQuery()).setCaseInsensitiveOrder(true);
-    
-    QueryResult<ProfileEntity> results = queryImpl.objects();
 
-    //QueryResult<ProfileEntity> results = builder.get().objects();
-    
-    //
-    IdentityResult identityResult = new IdentityResult(offset, limit, results.size());
-    
+    //when the disabled identities are excluded by the query, only the requested page is read
+    boolean paged = disabledExcluded && limit > 0;
+    QueryResult<ProfileEntity> results = paged ? queryImpl.objects(offset, limit) : queryImpl.objects();
+    long skip = paged ? 0 : offset;
+
     //
+    List<Identity> identities = new ArrayList<Identity>();
     while (results.hasNext()) {
 
       ProfileEntity profileEntity = results.next();
-      Identity identity = createIdentityFromEntity(profileEntity.getIdentity());
-      if (! identity.isEnable()) {
+      IdentityEntity identityEntity = profileEntity.getIdentity();
+      if (_getMixin(identityEntity, DisabledEntity.class, false) != null) {
         continue;
       }
+      if (skip > 0) {
+        --skip;
+        continue;
+      }
+      Identity identity = createIdentityFromEntity(identityEntity);
       Profile profile = getStorage().loadProfile(new Profile(identity));
       identity.setProfile(profile);
-      
-      identityResult.add(identity);
-      
+
+      identities.add(identity);
+
       //
-      if (identityResult.addMore() == false) {
+      if (limit > 0 && identities.size() >= limit) {
         break;
       }
-      
 
     }
 
-    return identityResult.result();
+    return identities;
   }
   
 
@@ -1206,14 +1310,145 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
         .not().equals(ProfileEntity.deleted, "true");
 
     StorageUtils.applyExcludes(whereExpression, excludedIdentityList);
+    List<Identity> disabled = getDisabledIdentities(providerId);
+    boolean disabledExcluded = applyDisabledExcludes(whereExpression, disabled);
     StorageUtils.applyFilter(whereExpression, profileFilter);
 
     builder.where(whereExpression.toString());
 
     QueryResult<ProfileEntity> results = builder.get().objects();
 
-    return getCountFromQueryResult(results);
+    return countEnabled(results, disabledExcluded, providerId, profileFilter, disabled);
+
+  }
+
+  /**
+   * Excludes the disabled identities of a provider from a profile query, so that the results can be
+   * counted and paged by the query instead of checked one by one.
+   *
+   * @param disabled the disabled identities of the provider, null if they are unknown
+   * @return false if there are too many disabled identities, they have not been excluded
+   */
+  private boolean applyDisabledExcludes(final WhereExpression whereExpression, final List<Identity> disabled) {
+    if (disabled == null || disabled.size() > MAX_DISABLED_EXCLUDES) {
+      return false;
+    }
+    StorageUtils.applyExcludes(whereExpression, disabled);
+    return true;
+  }
+
+  private boolean applyDisabledExcludes(final WhereExpression whereExpression, final String providerId) {
+    return applyDisabledExcludes(whereExpression, getDisabledIdentities(providerId));
+  }
+
+  /**
+   * Gets the disabled identities of a provider. They are loaded once, then again when an identity is
+   * enabled or disabled on any node.
+   *
+   * @return the identities, null if the query failed
+   */
+  private List<Identity> getDisabledIdentities(final String providerId) {
+    long generation = getDisabledGeneration();
+    DisabledIdentities cached = disabledIdentities.get(providerId);
+    if (cached != null && cached.generation == generation) {
+      return cached.identities;
+    }
+
+    StringBuilder query = new StringBuilder("SELECT * FROM ")
+        .append(JCRProperties.IS_DISABLED_NODE_TYPE)
+        .append(" WHERE jcr:path LIKE '")
+        .append(getProviderRoot().getProviders().get(providerId).getPath())
+        .append(StorageUtils.SLASH_STR).append(StorageUtils.PERCENT_STR).append("'");
+    NodeIterator it = nodes(query.toString());
+    if (it == null) {
+      return null;
+    }
+    List<Identity> disabled = new ArrayList<Identity>();
+    try {
+      while (it.hasNext()) {
+        disabled.add(new Identity(it.nextNode().getUUID()));
+      }
+    } catch (RepositoryException e) {
+      LOG.debug("Failed to get the disabled identities.", e);
+      return null;
+    }
+    disabled = Collections.unmodifiableList(disabled);
+    disabledIdentities.put(providerId, new DisabledIdentities(generation, disabled));
+    return disabled;
+  }
+
+  /**
+   * @return the generation of the disabled identities, which is shared by the cluster nodes
+   */
+  private long getDisabledGeneration() {
+    SocialStorageCacheService cacheService = CommonsUtils.getService(SocialStorageCacheService.class);
+    return cacheService != null ? cacheService.getGenerations().current(CacheGenerations.DISABLED_IDENTITIES) : 0;
+  }
+
+  private void invalidateDisabledIdentities() {
+    disabledIdentities.clear();
+    SocialStorageCacheService cacheService = CommonsUtils.getService(SocialStorageCacheService.class);
+    if (cacheService != null) {
+      cacheService.getGenerations().bump(CacheGenerations.DISABLED_IDENTITIES);
+    }
+  }
 
+  /**
+   * Counts the enabled identities of the results of a profile query.
+   *
+   * @param disabledExcluded true if the disabled identities are excluded by the query
+   * @param disabled the disabled identities of the provider, null if they are unknown
+   */
+  private int countEnabled(QueryResult<ProfileEntity> results, boolean disabledExcluded, String providerId,
+                           ProfileFilter profileFilter, List<Identity> disabled) {
+    if (disabledExcluded) {
+      return results.size();
+    }
+    if (disabled == null) {
+      return getCountFromQueryResult(results);
+    }
+
+    //the disabled identities which match the filter are counted by batches and subtracted
+    int count = results.size();
+    for (int from = 0; from < disabled.size(); from += MAX_DISABLED_EXCLUDES) {
+      List<Identity> batch = disabled.subList(from, Math.min(from + MAX_DISABLED_EXCLUDES, disabled.size()));
+      WhereExpression whereExpression = new WhereExpression();
+      whereExpression
+          .like(JCRProperties.path, getProviderRoot().getProviders().get(
+                                                      providerId).getPath() + StorageUtils.SLASH_STR + StorageUtils.PERCENT_STR)
+          .and()
+          .not().equals(ProfileEntity.deleted, "true");
+      StorageUtils.applyExcludes(whereExpression, profileFilter.getExcludedIdentityList());
+      whereExpression.and().startGroup();
+      for (int i = 0; i < batch.size(); i++) {
+        if (i > 0) {
+          whereExpression.or();
+        }
+        whereExpression.equals(ProfileEntity.parentId, batch.get(i).getId());
+      }
+      whereExpression.endGroup();
+      StorageUtils.applyFilter(whereExpression, profileFilter);
+
+      QueryBuilder<ProfileEntity> builder = getSession().createQueryBuilder(ProfileEntity.class);
+      builder.where(whereExpression.toString());
+      count -= builder.get().objects().size();
+    }
+    return count;
+  }
+
+  /**
+   * The disabled identities of a provider and the generation they were loaded at.
+   */
+  private static class DisabledIdentities {
+
+    private final long generation;
+
+    private final List<Identity> identities;
+
+    DisabledIdentities(long generation, List<Identity> identities) {
+      this.generation = generation;
+      this.identities = identities;
+    }
   }
 
   private int getCountFromQueryResult(QueryResult<ProfileEntity> results) {
@@ -1248,13 +1483,15 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
         .and().not().equals(ProfileEntity.deleted, "true");
 
     StorageUtils.applyExcludes(whereExpression, excludedIdentityList);
+    List<Identity> disabled = getDisabledIdentities(providerId);
+    boolean disabledExcluded = applyDisabledExcludes(whereExpression, disabled);
     StorageUtils.applyFilter(whereExpression, profileFilter);
 
     builder.where(whereExpression.toString());
     
     QueryResult<ProfileEntity> results = builder.get().objects();
     
-    return getCountFromQueryResult(results);
+    return countEnabled(results, disabledExcluded, providerId, profileFilter, disabled);
   }
 
   /**
@@ -1442,6 +1679,8 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
         _getMixin(identityEntity, DisabledEntity.class, true);
       }
       getSession().save();
+      invalidateDisabledIdentities();
+      invalidateProcessedActivities(identity);
     } catch (Exception e) {
       LOG.warn(String.format("Process enable identity of user %s unsuccessfully.", identity.getRemoteId()));
       LOG.debug(e.getMessage(), e);
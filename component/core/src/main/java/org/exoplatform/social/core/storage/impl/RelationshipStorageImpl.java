@@ -56,6 +56,7 @@ import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvide
 import org.exoplatform.social.core.manager.RelationshipManager;
 import org.exoplatform.social.core.profile.ProfileFilter;
 import org.exoplatform.social.core.profile.ProfileLoader;
+import org.exoplatform.social.core.relationship.SuggestionIndex;
 import org.exoplatform.social.core.relationship.model.Relationship;
 import org.exoplatform.social.core.storage.IdentityStorageException;
 import org.exoplatform.social.core.storage.RelationshipStorageException;
@@ -81,6 +82,7 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
   private RelationshipManager relationshipManager;
   private RelationshipStorage relationshipStorage;
   private ActivityStorage activityStorage;
+  private SuggestionIndex suggestionIndex;
 
   public RelationshipStorageImpl(IdentityStorage identityStorage) {
    this.identityStorage = identityStorage;
@@ -104,9 +106,34 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
     return activityStorage;
   }
   
-  private void clearActivityStorageCache() {
+  private SuggestionIndex getSuggestionIndex() {
+    if (suggestionIndex == null) {
+      suggestionIndex = CommonsUtils.getService(SuggestionIndex.class);
+    }
+    return suggestionIndex;
+  }
+
+  private void updateSuggestionIndex(Relationship relationship, boolean removed) {
+    SuggestionIndex index = getSuggestionIndex();
+    if (index == null) {
+      return;
+    }
+    String senderId = relationship.getSender().getId();
+    String receiverId = relationship.getReceiver().getId();
+    if (removed) {
+      index.disconnected(senderId, receiverId);
+    } else if (relationship.getStatus() == Relationship.Type.CONFIRMED) {
+      index.connected(senderId, receiverId);
+    } else {
+      index.excluded(senderId, receiverId);
+    }
+  }
+
+  private void clearActivityStorageCache(Relationship relationship) {
     if (getCachedActivityStorage() instanceof CachedActivityStorage) {
-      ((CachedActivityStorage) getCachedActivityStorage()).clearCache();
+      CachedActivityStorage cachedActivityStorage = (CachedActivityStorage) getCachedActivityStorage();
+      cachedActivityStorage.clearStreamCache(relationship.getSender().getId());
+      cachedActivityStorage.clearStreamCache(relationship.getReceiver().getId());
     }
   }
 
@@ -721,7 +748,8 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
           new String[] { Relationship.class.getSimpleName() });
     }
     //
-    clearActivityStorageCache();
+    clearActivityStorageCache(relationship);
+    updateSuggestionIndex(relationship, false);
 
     return relationship;
   }
@@ -752,7 +780,8 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
       //getCachedActivityStreamStorage().deleteConnect(relationship.getSender(), relationship.getReceiver());
       StreamInvocationHelper.deleteConnect(relationship.getSender(), relationship.getReceiver());
       
-      clearActivityStorageCache();
+      clearActivityStorageCache(relationship);
+      updateSuggestionIndex(relationship, true);
 
       //
       LOG.debug(String.format(
@@ -1227,6 +1256,10 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
                                                 int maxSuggestions) throws Exception {
     if (maxConnectionsToLoad > 0 && maxConnections > maxConnectionsToLoad)
        maxConnectionsToLoad = maxConnections;
+    SuggestionIndex index = getSuggestionIndex();
+    if (index != null) {
+      return getIndexedSuggestions(index, currentIdentity, maxConnections, maxConnectionsToLoad, maxSuggestions);
+    }
      // Get identities level 1
     Set<Identity> relationIdLevel1 = new HashSet<Identity>();
     RelationshipManager relationshipManager = getRelationshipManager();
@@ -1320,6 +1353,66 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
     return suggestions;
   }
 
+  /**
+   * Gets the suggestions from the common connections index. The connections are walked in the
+   * same order each time instead of a random sample, so that the suggestions are stable.
+   */
+  private Map<Identity, Integer> getIndexedSuggestions(SuggestionIndex index, Identity currentIdentity, int maxConnections,
+                                                       int maxConnectionsToLoad, int maxSuggestions) throws Exception {
+    Map<String, Integer> ids = index.getSuggestions(currentIdentity.getId(), maxConnections, maxConnectionsToLoad,
+                                                    maxSuggestions, new SuggestionLoader());
+    Map<Identity, Integer> suggestions = new LinkedHashMap<Identity, Integer>();
+    for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+      Identity identity = identityStorage.findIdentityById(entry.getKey());
+      if (identity == null || identity.isDeleted()) {
+        continue;
+      }
+      loadProfile(identity);
+      suggestions.put(identity, entry.getValue());
+    }
+    return suggestions;
+  }
+
+  /**
+   * Loads the ids of the connections of an identity and of the identities having a pending
+   * or an ignored relationship with it, without loading their profiles.
+   */
+  private class SuggestionLoader implements SuggestionIndex.Loader {
+
+    @Override
+    public SuggestionIndex.Relations load(String identityId) throws Exception {
+      IdentityEntity entity = _findById(IdentityEntity.class, identityId);
+
+      List<String> connections = new ArrayList<String>();
+      addOtherIds(connections, entity, entity.getRelationship(), true);
+
+      List<String> excluded = new ArrayList<String>();
+      addOtherIds(excluded, entity, entity.getSender(), false);
+      addOtherIds(excluded, entity, entity.getReceiver(), false);
+      addOtherIds(excluded, entity, entity.getIgnore(), false);
+      addOtherIds(excluded, entity, entity.getIgnored(), false);
+
+      return new SuggestionIndex.Relations(connections, excluded);
+    }
+
+    private void addOtherIds(List<String> ids, IdentityEntity entity, RelationshipListEntity list, boolean enabledOnly) {
+      if (list == null) {
+        return;
+      }
+      for (RelationshipEntity relationshipEntity : list.getRelationships().values()) {
+        IdentityEntity other = relationshipEntity.getFrom();
+        if (other.getId().equals(entity.getId())) {
+          other = relationshipEntity.getTo();
+        }
+        if (enabledOnly && (Boolean.TRUE.equals(other.isDeleted())
+            || _getMixin(other, DisabledEntity.class, false) != null)) {
+          continue;
+        }
+        ids.add(other.getId());
+      }
+    }
+  }
+
   public void setStorage(RelationshipStorage storage) {
     this.relationshipStorage = storage;
   }
@@ -17,6 +17,7 @@
 
 package org.exoplatform.social.core.storage.impl;
 
+import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.chromattic.api.ChromatticSession;
 import org.chromattic.api.query.Ordering;
@@ -41,6 +42,7 @@ import org.exoplatform.social.core.search.Sorting;
 import org.exoplatform.social.core.service.LinkProvider;
 import org.exoplatform.social.core.space.SpaceFilter;
 import org.exoplatform.social.core.space.SpaceUtils;
+import org.exoplatform.social.core.space.model.MemberSet;
 import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.storage.SpaceStorageException;
 import org.exoplatform.social.core.storage.api.ActivityStreamStorage;
@@ -55,7 +57,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -125,14 +126,17 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
     String[] members = entity.getMembersId();
     String[] managers = entity.getManagerMembersId();
 
-    //
-    Set<String> membersList = new HashSet<String>();
-    if (members != null) membersList.addAll(Arrays.asList(members));
-    if (managers != null) membersList.addAll(Arrays.asList(managers));
+    //the managers are members too, the missing ones are added after the members
+    String[] missingManagers = MemberSet.of(members).missing(managers);
+    if (members == null) {
+      members = missingManagers;
+    } else if (missingManagers.length > 0) {
+      members = (String[]) ArrayUtils.addAll(members, missingManagers);
+    }
 
     //
-    space.setMembers(membersList.toArray(new String[]{}));
-    space.setManagers(entity.getManagerMembersId());
+    space.setMembers(members);
+    space.setManagers(managers);
 
 
     if (entity.getAvatarLastUpdated() != null) {
@@ -207,10 +211,20 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
     entity.setPriority(space.getPriority());
     entity.setGroupId(space.getGroupId());
     entity.setURL(space.getUrl());
-    entity.setMembersId(space.getMembers());
-    entity.setManagerMembersId(space.getManagers());
-    entity.setPendingMembersId(space.getPendingUsers());
-    entity.setInvitedMembersId(space.getInvitedUsers());
+
+    //the multi-valued properties are only written when they changed, a large space is not rewritten on each save
+    if (!Arrays.equals(space.getMembers(), entity.getMembersId())) {
+      entity.setMembersId(space.getMembers());
+    }
+    if (!Arrays.equals(space.getManagers(), entity.getManagerMembersId())) {
+      entity.setManagerMembersId(space.getManagers());
+    }
+    if (!Arrays.equals(space.getPendingUsers(), entity.getPendingMembersId())) {
+      entity.setPendingMembersId(space.getPendingUsers());
+    }
+    if (!Arrays.equals(space.getInvitedUsers(), entity.getInvitedMembersId())) {
+      entity.setInvitedMembersId(space.getInvitedUsers());
+    }
     entity.setAvatarLastUpdated(space.getAvatarLastUpdated());
     entity.setCreatedTime(space.getCreatedTime() != 0 ? space.getCreatedTime() : System.currentTimeMillis());
   }
@@ -323,32 +337,21 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
     }
   }
 
-  private String[] sub(String[] l1, String[] l2) {
-
-    if (l1 == null) {
-      return new String[]{};
-    }
-
-    if (l2 == null) {
-      return l1;
-    }
-
-    List<String> l = new ArrayList(Arrays.asList(l1));
-    l.removeAll(Arrays.asList(l2));
-    return l.toArray(new String[]{});
+  private String[] sub(String[] l1, MemberSet l2) {
+    return l2.missing(l1);
   }
 
   private void createRefs(SpaceEntity spaceEntity, Space space) throws NodeNotFoundException {
 
-    String[] removedMembers = sub(spaceEntity.getMembersId(), space.getMembers());
-    String[] removedManagers = sub(spaceEntity.getManagerMembersId(), space.getManagers());
-    String[] removedInvited = sub(spaceEntity.getInvitedMembersId(), space.getInvitedUsers());
-    String[] removedPending = sub(spaceEntity.getPendingMembersId(), space.getPendingUsers());
+    String[] removedMembers = sub(spaceEntity.getMembersId(), space.getMemberSet());
+    String[] removedManagers = sub(spaceEntity.getManagerMembersId(), space.getManagerSet());
+    String[] removedInvited = sub(spaceEntity.getInvitedMembersId(), space.getInvitedSet());
+    String[] removedPending = sub(spaceEntity.getPendingMembersId(), space.getPendingSet());
 
-    String[] addedMembers = sub(space.getMembers(), spaceEntity.getMembersId());
-    String[] addedManagers = sub(space.getManagers(), spaceEntity.getManagerMembersId());
-    String[] addedInvited = sub(space.getInvitedUsers(), spaceEntity.getInvitedMembersId());
-    String[] addedPending = sub(space.getPendingUsers(), spaceEntity.getPendingMembersId());
+    String[] addedMembers = sub(space.getMembers(), MemberSet.of(spaceEntity.getMembersId()));
+    String[] addedManagers = sub(space.getManagers(), MemberSet.of(spaceEntity.getManagerMembersId()));
+    String[] addedInvited = sub(space.getInvitedUsers(), MemberSet.of(spaceEntity.getInvitedMembersId()));
+    String[] addedPending = sub(space.getPendingUsers(), MemberSet.of(spaceEntity.getPendingMembersId()));
 
     manageRefList(new UpdateContext(addedMembers, removedMembers), spaceEntity, RefType.MEMBER);
     manageActivityRefList(new UpdateContext(addedMembers, removedMembers), spaceEntity, RefType.MEMBER);
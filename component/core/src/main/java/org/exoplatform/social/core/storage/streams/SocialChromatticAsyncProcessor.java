@@ -16,12 +16,13 @@
  */
 package org.exoplatform.social.core.storage.streams;
 
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.exoplatform.commons.chromattic.ChromatticLifeCycle;
 import org.exoplatform.commons.chromattic.ChromatticManager;
 import org.exoplatform.container.PortalContainer;
-import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.social.common.lifecycle.SocialChromatticLifeCycle;
@@ -30,8 +31,8 @@ import org.exoplatform.social.common.service.AsyncProcessor;
 import org.exoplatform.social.common.service.ProcessContext;
 import org.exoplatform.social.common.service.SocialServiceContext;
 import org.exoplatform.social.core.storage.cache.SocialStorageCacheService;
-import org.exoplatform.social.core.storage.cache.model.data.ListActivitiesData;
-import org.exoplatform.social.core.storage.cache.model.key.ListActivitiesKey;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
+import org.exoplatform.social.core.storage.impl.StorageUtils;
 
 public abstract class SocialChromatticAsyncProcessor implements AsyncProcessor {
   
@@ -86,6 +87,9 @@ public abstract class SocialChromatticAsyncProcessor implements AsyncProcessor {
     //execute
     try {
       processContext = execute(processContext);
+      //the session is the caller's one, the touched streams must be persisted before being flushed
+      StorageUtils.persist();
+      flushTouched();
       
       if (processContext.isFailed() == false) {
         callback.done(processContext);
@@ -94,6 +98,9 @@ public abstract class SocialChromatticAsyncProcessor implements AsyncProcessor {
       LOG.error(e.getMessage(), e);
       processContext.setException(e);
       return processContext;
+    } finally {
+      //does nothing when already flushed
+      flushTouched();
     }
     //end Session
     return processContext;
@@ -108,10 +115,28 @@ public abstract class SocialChromatticAsyncProcessor implements AsyncProcessor {
   
   @Override
   public void end(ProcessContext processContext) {
-    stopSynchronization(startedRequest.get());
-
-    ExoCache<ListActivitiesKey, ListActivitiesData> exoActivitiesCache = storageCacheService.getActivitiesCache();
-    exoActivitiesCache.clearCache();
+    boolean requestClose = startedRequest.get();
+    try {
+      stopSynchronization(requestClose);
+      if (!requestClose) {
+        //the request is closed by the caller, the touched streams must be persisted before being flushed
+        StorageUtils.persist();
+      }
+    } finally {
+      //also clears the touched streams of the thread when the changes failed to be persisted
+      flushTouched();
+    }
+  }
+  
+  /**
+   * Evicts only the cached lists of the streams updated by this process, then tells their clients.
+   */
+  private void flushTouched() {
+    Map<String, Set<ActivityRefType>> touched = storageCacheService.getActivityStreamCacheIndex().flush();
+    StreamUpdateSequences sequences = container.getComponentInstanceOfType(StreamUpdateSequences.class);
+    if (sequences != null) {
+      sequences.bump(touched);
+    }
   }
   
   private boolean startSynchronization() {
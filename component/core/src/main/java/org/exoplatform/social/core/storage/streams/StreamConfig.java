@@ -19,11 +19,13 @@ public class StreamConfig implements Serializable {
 	private final String LAST_LOGIN_AROUND_DAYS_PARAMS = "last-login-around-days";
 	private final String LIMIT_PER_LOADING_PARAMS = "limit-per-loading-param";
 	private final String ACTIVE_USER_GROUPS_PARAMS = "active-user-groups-param";
+	private final String FAN_OUT_ON_READ_THRESHOLD_PARAMS = "fan-out-on-read-threshold";
 
 	private int connectionsThreshold = -1;
 	private int lastLoginAroundDays = -1;
 	private int limitThresholdLoading = 10;
 	private String activeUserGroups = null;
+	private int fanOutOnReadThreshold = -1;
 
 	public StreamConfig(InitParams params) {
 
@@ -32,6 +34,7 @@ public class StreamConfig implements Serializable {
 		ValueParam lastLoginAroundDaysParam = params.getValueParam(LAST_LOGIN_AROUND_DAYS_PARAMS);
 		ValueParam limitPerLoadingParam = params.getValueParam(LIMIT_PER_LOADING_PARAMS);
 		ValueParam activeUserGroupsParam = params.getValueParam(ACTIVE_USER_GROUPS_PARAMS);
+		ValueParam fanOutOnReadThresholdParam = params.getValueParam(FAN_OUT_ON_READ_THRESHOLD_PARAMS);
 
 		//
 		if (connectionsThresholdParam != null) {
@@ -70,6 +73,15 @@ public class StreamConfig implements Serializable {
       }
     }
     
+    if (fanOutOnReadThresholdParam != null) {
+      //
+      try {
+        this.fanOutOnReadThreshold = Integer.valueOf(fanOutOnReadThresholdParam.getValue());
+      } catch (Exception e) {
+        this.fanOutOnReadThreshold = -1;
+      }
+    }
+    
 	}
 
 	/**
@@ -107,5 +119,28 @@ public class StreamConfig implements Serializable {
   public String getActiveUserGroups() {
     return activeUserGroups;
   }
+  
+  /**
+   * Gets the audience size above which the activities of an identity or a space
+   * are not pushed to the streams of its connections or members, they are merged
+   * when the streams are read.
+   * 
+   * The merged activities are not included in the numbers of activities of the
+   * feed, connections and my spaces streams, which only count the pushed ones.
+   * 
+   * @return the threshold, the activities are always pushed if it is not positive
+   */
+  public int getFanOutOnReadThreshold() {
+    return fanOutOnReadThreshold;
+  }
+  
+  /**
+   * Sets the audience size above which the activities are merged when the streams are read.
+   * 
+   * @param fanOutOnReadThreshold the threshold, not positive to always push the activities
+   */
+  public void setFanOutOnReadThreshold(int fanOutOnReadThreshold) {
+    this.fanOutOnReadThreshold = fanOutOnReadThreshold;
+  }
 
 }
@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.picocontainer.Startable;
+
+/**
+ * Queue of the activity references to create on the feed and connections streams
+ * of the poster's connections.
+ *
+ * The references are coalesced by target stream: the activities posted for the same
+ * connection while the queue is drained are written together, and the storage is
+ * persisted once per batch instead of once per page of connections.
+ *
+ * The number of pending references is bounded, when the queue is full {@link #offer(String, List)}
+ * is rejected and the caller creates the references itself, which slows down the posters
+ * instead of growing the queue.
+ *
+ * A batch which fails is queued again, its references are dropped after {@link #MAX_ATTEMPTS}.
+ * A drain which has not polled the queue for the drain timeout (its task was discarded or never
+ * run) is taken over by the next fan-out. The queue is in memory: it is drained when the
+ * container stops, the references still pending when a node crashes are lost.
+ */
+@Managed
+@ManagedDescription("Activity stream fan-out queue")
+public class StreamFanOutQueue implements Startable {
+
+  private static final Log LOG = ExoLogger.getLogger(StreamFanOutQueue.class);
+
+  private static final String CAPACITY_PARAM = "capacity";
+  private static final String BATCH_SIZE_PARAM = "batch-size";
+  private static final String DRAIN_TIMEOUT_PARAM = "drain-timeout";
+
+  /** The default maximum number of pending references. */
+  public static final int DEFAULT_CAPACITY = 50000;
+
+  /** The default number of references persisted together. */
+  public static final int DEFAULT_BATCH_SIZE = 200;
+
+  /** The default time in ms after which a drain which does not poll the queue is taken over. */
+  public static final int DEFAULT_DRAIN_TIMEOUT = 60000;
+
+  /** The number of times the references of a stream are tried before being dropped. */
+  public static final int MAX_ATTEMPTS = 3;
+
+  /** target identity id => pending activities */
+  private final Map<String, PendingStream> pending = new LinkedHashMap<String, PendingStream>();
+
+  private final AtomicBoolean draining = new AtomicBoolean();
+
+  /** The last time the drain polled the queue. */
+  private final AtomicLong drainProgress = new AtomicLong();
+
+  private final int capacity;
+  private final int batchSize;
+  private final long drainTimeout;
+
+  private int depth;
+
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong refs = new AtomicLong();
+  private final AtomicLong lastBatchSize = new AtomicLong();
+  private final AtomicLong totalLatency = new AtomicLong();
+  private final AtomicLong maxLatency = new AtomicLong();
+  private final AtomicLong streams = new AtomicLong();
+  private final AtomicLong retried = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong takenOver = new AtomicLong();
+
+  public StreamFanOutQueue(InitParams params) {
+    this(intParam(params, CAPACITY_PARAM, DEFAULT_CAPACITY), intParam(params, BATCH_SIZE_PARAM, DEFAULT_BATCH_SIZE),
+         intParam(params, DRAIN_TIMEOUT_PARAM, DEFAULT_DRAIN_TIMEOUT));
+  }
+
+  public StreamFanOutQueue(int capacity, int batchSize) {
+    this(capacity, batchSize, DEFAULT_DRAIN_TIMEOUT);
+  }
+
+  public StreamFanOutQueue(int capacity, int batchSize, long drainTimeout) {
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.drainTimeout = drainTimeout;
+  }
+
+  /**
+   * Queues the references of an activity for the given connections.
+   *
+   * @param activityId the activity id
+   * @param targets the connections receiving the activity
+   * @return false if the queue is full, the references have not been queued
+   */
+  public synchronized boolean offer(String activityId, List<Identity> targets) {
+    if (depth + targets.size() > capacity) {
+      rejected.incrementAndGet();
+      return false;
+    }
+    long now = System.currentTimeMillis();
+    for (Identity target : targets) {
+      PendingStream stream = pending.get(target.getId());
+      if (stream == null) {
+        stream = new PendingStream(target, now);
+        pending.put(target.getId(), stream);
+      }
+      if (stream.activityIds.add(activityId)) {
+        depth++;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Removes the next batch of pending streams from the queue.
+   *
+   * @return the streams holding at most about batch size references, empty when the queue is empty
+   */
+  public synchronized List<PendingStream> poll() {
+    drainProgress.set(System.currentTimeMillis());
+    if (pending.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<PendingStream> batch = new ArrayList<PendingStream>();
+    int size = 0;
+    Iterator<PendingStream> it = pending.values().iterator();
+    while (it.hasNext() && size < batchSize) {
+      PendingStream stream = it.next();
+      it.remove();
+      batch.add(stream);
+      size += stream.activityIds.size();
+    }
+    depth -= size;
+    return batch;
+  }
+
+  /**
+   * Records a persisted batch.
+   *
+   * @param batch the batch returned by {@link #poll()}
+   */
+  public void done(List<PendingStream> batch) {
+    long now = System.currentTimeMillis();
+    long size = 0;
+    for (PendingStream stream : batch) {
+      size += stream.activityIds.size();
+      long latency = now - stream.enqueuedAt;
+      totalLatency.addAndGet(latency);
+      long max = maxLatency.get();
+      while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+        max = maxLatency.get();
+      }
+    }
+    batches.incrementAndGet();
+    refs.addAndGet(size);
+    streams.addAndGet(batch.size());
+    lastBatchSize.set(size);
+  }
+
+  /**
+   * Queues again the streams of a batch which has not been persisted. The references of a stream
+   * which failed {@link #MAX_ATTEMPTS} times are dropped.
+   *
+   * @param batch the batch returned by {@link #poll()}
+   */
+  public synchronized void retry(List<PendingStream> batch) {
+    for (PendingStream stream : batch) {
+      if (++stream.attempts >= MAX_ATTEMPTS) {
+        dropped.addAndGet(stream.activityIds.size());
+        LOG.error("Dropped the references of the activities " + stream.activityIds + " for the streams of "
+            + stream.target.getRemoteId() + " after " + stream.attempts + " attempts");
+        continue;
+      }
+      retried.addAndGet(stream.activityIds.size());
+      PendingStream queued = pending.get(stream.target.getId());
+      if (queued == null) {
+        pending.put(stream.target.getId(), stream);
+        depth += stream.activityIds.size();
+        continue;
+      }
+      for (String activityId : stream.activityIds) {
+        if (queued.activityIds.add(activityId)) {
+          depth++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Marks the queue as being drained. A drain which has not polled the queue for the drain timeout
+   * is considered lost and is taken over.
+   *
+   * @return true if the caller must schedule the drain, false if it is already running
+   */
+  public boolean startDrain() {
+    long now = System.currentTimeMillis();
+    if (draining.compareAndSet(false, true)) {
+      drainProgress.set(now);
+      return true;
+    }
+    long progress = drainProgress.get();
+    if (now - progress > drainTimeout && drainProgress.compareAndSet(progress, now)) {
+      takenOver.incrementAndGet();
+      LOG.warn("The stream fan-out drain has not polled the queue for " + drainTimeout + " ms, it is taken over");
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Ends the drain of the queue.
+   *
+   * @return true if references have been queued meanwhile and the caller must keep draining
+   */
+  public boolean endDrain() {
+    draining.set(false);
+    return getDepth() > 0 && startDrain();
+  }
+
+  /**
+   * Releases the drain without draining the references queued meanwhile: the drain could not be
+   * scheduled or stops on a failure, the next fan-out schedules a new one.
+   */
+  public void cancelDrain() {
+    draining.set(false);
+  }
+
+  public void start() {
+  }
+
+  /**
+   * Persists the pending references before the node stops.
+   */
+  public void stop() {
+    int left = getDepth();
+    if (left == 0 || !startDrain()) {
+      return;
+    }
+    LOG.info("Draining " + left + " pending activity references before stopping");
+    try {
+      StreamInvocationHelper.drainFanOut();
+    } catch (Exception e) {
+      cancelDrain();
+      LOG.warn("Failed to drain the stream fan-out queue, " + getDepth() + " activity references are lost", e);
+    }
+  }
+
+  @Managed
+  @ManagedName("Depth")
+  @ManagedDescription("The number of pending activity references")
+  public synchronized int getDepth() {
+    return depth;
+  }
+
+  @Managed
+  @ManagedName("Capacity")
+  @ManagedDescription("The maximum number of pending activity references")
+  public int getCapacity() {
+    return capacity;
+  }
+
+  @Managed
+  @ManagedName("BatchSize")
+  @ManagedDescription("The number of activity references persisted together")
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  @Managed
+  @ManagedName("Rejected")
+  @ManagedDescription("The number of fan-outs done by the poster because the queue was full")
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  @Managed
+  @ManagedName("Batches")
+  @ManagedDescription("The number of persisted batches")
+  public long getBatches() {
+    return batches.get();
+  }
+
+  @Managed
+  @ManagedName("LastBatchSize")
+  @ManagedDescription("The number of activity references of the last batch")
+  public long getLastBatchSize() {
+    return lastBatchSize.get();
+  }
+
+  @Managed
+  @ManagedName("AverageBatchSize")
+  @ManagedDescription("The average number of activity references per batch")
+  public long getAverageBatchSize() {
+    long count = batches.get();
+    return count == 0 ? 0 : refs.get() / count;
+  }
+
+  @Managed
+  @ManagedName("Retried")
+  @ManagedDescription("The number of activity references queued again after a failed batch")
+  public long getRetried() {
+    return retried.get();
+  }
+
+  @Managed
+  @ManagedName("Dropped")
+  @ManagedDescription("The number of activity references dropped after " + MAX_ATTEMPTS + " failed batches")
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  @Managed
+  @ManagedName("TakenOver")
+  @ManagedDescription("The number of lost drains which have been taken over")
+  public long getTakenOver() {
+    return takenOver.get();
+  }
+
+  @Managed
+  @ManagedName("AverageLatency")
+  @ManagedDescription("The average time in ms between the queuing and the persistence of a stream")
+  public long getAverageLatency() {
+    long count = streams.get();
+    return count == 0 ? 0 : totalLatency.get() / count;
+  }
+
+  @Managed
+  @ManagedName("MaxLatency")
+  @ManagedDescription("The maximum time in ms between the queuing and the persistence of a stream")
+  public long getMaxLatency() {
+    return maxLatency.get();
+  }
+
+  private static int intParam(InitParams params, String name, int defaultValue) {
+    ValueParam param = params != null ? params.getValueParam(name) : null;
+    if (param == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.valueOf(param.getValue());
+    } catch (Exception e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * The activities to add to the streams of one connection.
+   */
+  public static class PendingStream {
+
+    private final Identity target;
+
+    private final Set<String> activityIds = new LinkedHashSet<String>();
+
+    private final long enqueuedAt;
+
+    /** The number of failed batches of the stream, guarded by the queue. */
+    private int attempts;
+
+    PendingStream(Identity target, long enqueuedAt) {
+      this.target = target;
+      this.enqueuedAt = enqueuedAt;
+    }
+
+    public Identity getTarget() {
+      return target;
+    }
+
+    public Set<String> getActivityIds() {
+      return activityIds;
+    }
+  }
+}
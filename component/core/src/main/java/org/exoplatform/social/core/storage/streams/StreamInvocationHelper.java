@@ -17,6 +17,7 @@
 package org.exoplatform.social.core.storage.streams;
 
 import java.util.List;
+import java.util.concurrent.Future;
 
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
@@ -66,6 +67,31 @@ public class StreamInvocationHelper {
     return processCtx;
   }
   
+  /**
+   * Invokes the drain of the fan-out queue, without waiting for it.
+   * 
+   * @return false if the executor discarded the drain
+   */
+  public static boolean fanOut() {
+    //
+    SocialServiceContext ctx = SocialServiceContextImpl.getInstance();
+    StreamProcessContext processCtx = StreamProcessContext.getIntance(StreamProcessContext.FAN_OUT_STREAM_PROCESS, ctx);
+    Future<ProcessContext> future = ctx.getServiceExecutor().asyncProcess(StreamProcessorFactory.fanOutStream(), processCtx);
+    return future != null && !future.isCancelled();
+  }
+  
+  /**
+   * Drains the fan-out queue in the calling thread, the drain must have been started.
+   * 
+   * @return
+   */
+  public static ProcessContext drainFanOut() {
+    //
+    SocialServiceContext ctx = SocialServiceContextImpl.getInstance();
+    StreamProcessContext processCtx = StreamProcessContext.getIntance(StreamProcessContext.FAN_OUT_STREAM_PROCESS, ctx);
+    return ctx.getServiceExecutor().execute(StreamProcessorFactory.fanOutStream(), processCtx);
+  }
+  
   /**
    * Invokes to records the activity to Stream
    * 
@@ -435,6 +461,19 @@ public class StreamInvocationHelper {
     return processCtx;
   }
   
+  /**
+   * Invokes to run the feed warm-ups queued by the logins.
+   * 
+   * @return
+   */
+  public static ProcessContext warmUp() {
+    //
+    SocialServiceContext ctx = SocialServiceContextImpl.getInstance();
+    StreamProcessContext processCtx = StreamProcessContext.getIntance(StreamProcessContext.WARM_UP_STREAM_PROCESS, ctx);
+    ctx.getServiceExecutor().asyncProcess(StreamProcessorFactory.warmUpStream(), processCtx);
+    return processCtx;
+  }
+  
   public static ProcessContext loadFeed(Identity owner) {
     //
     SocialServiceContext ctx = SocialServiceContextImpl.getInstance();
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Striped read/write locks keyed by the stream owner identity id.
+ *
+ * The stream fan-out of two activities which don't belong to the same stream owner
+ * don't have to wait each other, so that each owner is mapped to one of a fixed
+ * number of stripes instead of sharing one global lock.
+ *
+ * The locks are reentrant, a process which already holds the lock of an owner can
+ * call another stream mutator of the same owner.
+ *
+ * A process which writes the streams of the owners of more than half of the stripes,
+ * as the fan-out to a large audience, takes the global lock instead: all the stripes,
+ * acquired in one go in the stripe order.
+ */
+public class StreamLockManager {
+
+  /** The default number of stripes. */
+  public static final int DEFAULT_STRIPES = 64;
+
+  /** */
+  private final ReadWriteLock[] stripes;
+
+  /** */
+  private final int mask;
+
+  /** The write locks of all the stripes. */
+  private final Lock global;
+
+  public StreamLockManager() {
+    this(DEFAULT_STRIPES);
+  }
+
+  /**
+   * @param stripes the minimum number of stripes, rounded up to the next power of two
+   */
+  public StreamLockManager(int stripes) {
+    if (stripes <= 0) {
+      throw new IllegalArgumentException("The number of stripes must be positive: " + stripes);
+    }
+    int size = Integer.highestOneBit(stripes);
+    if (size < stripes) {
+      size <<= 1;
+    }
+    this.stripes = new ReadWriteLock[size];
+    for (int i = 0; i < size; i++) {
+      this.stripes[i] = new ReentrantReadWriteLock();
+    }
+    this.mask = size - 1;
+    Lock[] locks = new Lock[size];
+    for (int i = 0; i < size; i++) {
+      locks[i] = this.stripes[i].writeLock();
+    }
+    this.global = size == 1 ? locks[0] : new MultiLock(locks);
+  }
+
+  /**
+   * Gets the write lock guarding the streams of the given owner.
+   *
+   * @param ownerId the stream owner identity id
+   * @return the lock, not acquired yet
+   */
+  public Lock writeLock(String ownerId) {
+    return stripes[indexOf(ownerId)].writeLock();
+  }
+
+  /**
+   * Gets the read lock guarding the streams of the given owner.
+   *
+   * @param ownerId the stream owner identity id
+   * @return the lock, not acquired yet
+   */
+  public Lock readLock(String ownerId) {
+    return stripes[indexOf(ownerId)].readLock();
+  }
+
+  /**
+   * Gets a lock which acquires the write locks of all given owners.
+   *
+   * The stripes are always acquired in the same order so that two processes
+   * locking the same owners never deadlock. When the owners are mapped to more than
+   * half of the stripes, the global lock is returned, see {@link #globalLock()}.
+   *
+   * The lock of several stripes does not support conditions.
+   *
+   * @param ownerIds the stream owner identity ids
+   * @return the lock, not acquired yet
+   */
+  public Lock writeLock(String... ownerIds) {
+    if (ownerIds.length == 1) {
+      return writeLock(ownerIds[0]);
+    }
+
+    int[] indexes = new int[ownerIds.length];
+    for (int i = 0; i < ownerIds.length; i++) {
+      indexes[i] = indexOf(ownerIds[i]);
+    }
+    Arrays.sort(indexes);
+
+    //removes the duplicated stripes
+    int size = 0;
+    for (int i = 0; i < indexes.length; i++) {
+      if (size == 0 || indexes[size - 1] != indexes[i]) {
+        indexes[size++] = indexes[i];
+      }
+    }
+
+    if (size == 1) {
+      return stripes[indexes[0]].writeLock();
+    }
+    if (size > stripes.length / 2) {
+      return global;
+    }
+    Lock[] locks = new Lock[size];
+    for (int i = 0; i < size; i++) {
+      locks[i] = stripes[indexes[i]].writeLock();
+    }
+    return new MultiLock(locks);
+  }
+
+  /**
+   * Gets the lock which acquires the write locks of all the stripes, in the stripe order.
+   *
+   * @return the lock, not acquired yet
+   */
+  public Lock globalLock() {
+    return global;
+  }
+
+  /**
+   * Gets the number of stripes.
+   *
+   * @return the number of stripes
+   */
+  public int getStripes() {
+    return stripes.length;
+  }
+
+  private int indexOf(String ownerId) {
+    int h = ownerId == null ? 0 : ownerId.hashCode();
+    //spreads the higher bits, the identity ids are UUID based
+    h ^= (h >>> 20) ^ (h >>> 12);
+    h ^= (h >>> 7) ^ (h >>> 4);
+    return h & mask;
+  }
+
+  /**
+   * Acquires a set of locks in the given order, releases them in the reverse order.
+   */
+  private static class MultiLock implements Lock {
+
+    private final Lock[] locks;
+
+    MultiLock(Lock[] locks) {
+      this.locks = locks;
+    }
+
+    @Override
+    public void lock() {
+      for (Lock lock : locks) {
+        lock.lock();
+      }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+      int i = 0;
+      try {
+        for (; i < locks.length; i++) {
+          locks[i].lockInterruptibly();
+        }
+      } catch (InterruptedException e) {
+        release(i);
+        throw e;
+      }
+    }
+
+    @Override
+    public boolean tryLock() {
+      for (int i = 0; i < locks.length; i++) {
+        if (!locks[i].tryLock()) {
+          release(i);
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(time);
+      int i = 0;
+      try {
+        for (; i < locks.length; i++) {
+          if (!locks[i].tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            release(i);
+            return false;
+          }
+        }
+      } catch (InterruptedException e) {
+        release(i);
+        throw e;
+      }
+      return true;
+    }
+
+    @Override
+    public void unlock() {
+      release(locks.length);
+    }
+
+    @Override
+    public Condition newCondition() {
+      throw new UnsupportedOperationException("Conditions are not supported on multiple stripes.");
+    }
+
+    private void release(int acquired) {
+      for (int i = acquired - 1; i >= 0; i--) {
+        locks[i].unlock();
+      }
+    }
+  }
+}
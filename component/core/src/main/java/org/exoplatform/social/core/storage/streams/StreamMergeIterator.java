@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges several ordered streams into one, without loading them: only the
+ * head of each stream is read ahead.
+ *
+ * Each given iterator must already be sorted with the given comparator, the
+ * merged iterator is then sorted the same way.
+ */
+public class StreamMergeIterator<T> implements Iterator<T> {
+
+  private final PriorityQueue<Head<T>> heads;
+
+  /**
+   * @param streams the sorted streams
+   * @param comparator the order of the streams
+   */
+  public StreamMergeIterator(List<? extends Iterator<T>> streams, final Comparator<? super T> comparator) {
+    this.heads = new PriorityQueue<Head<T>>(Math.max(1, streams.size()), new Comparator<Head<T>>() {
+      public int compare(Head<T> o1, Head<T> o2) {
+        int c = comparator.compare(o1.value, o2.value);
+        //keeps the order of the streams for the same value
+        return c != 0 ? c : o1.index - o2.index;
+      }
+    });
+    for (int i = 0; i < streams.size(); i++) {
+      Iterator<T> stream = streams.get(i);
+      if (stream.hasNext()) {
+        heads.add(new Head<T>(i, stream.next(), stream));
+      }
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !heads.isEmpty();
+  }
+
+  @Override
+  public T next() {
+    Head<T> head = heads.poll();
+    if (head == null) {
+      throw new NoSuchElementException();
+    }
+    T value = head.value;
+    if (head.stream.hasNext()) {
+      heads.add(new Head<T>(head.index, head.stream.next(), head.stream));
+    }
+    return value;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  private static class Head<T> {
+
+    private final int index;
+
+    private final T value;
+
+    private final Iterator<T> stream;
+
+    Head(int index, T value, Iterator<T> stream) {
+      this.index = index;
+      this.value = value;
+      this.stream = stream;
+    }
+  }
+}
@@ -43,6 +43,8 @@ public class StreamProcessContext extends ProcessorContextImpl {
   public static String UPGRADE_STREAM_PROCESS = "UPGRADE_STREAM_ACTIVITY";
   public static String LAZY_UPGRADE_STREAM_PROCESS = "LAZY_UPGRADE_STREAM_ACTIVITY";
   public static String LOAD_ACTIVITIES_STREAM_PROCESS = "LOAD_ACTIVITIES_STREAM_ACTIVITY";
+  public static String FAN_OUT_STREAM_PROCESS = "FAN_OUT_STREAM_ACTIVITY";
+  public static String WARM_UP_STREAM_PROCESS = "WARM_UP_STREAM_ACTIVITY";
   
   public final static String OWNER = "OWNER";
   public final static String POSTER_ID = "POSTER_ID";
@@ -36,6 +36,10 @@ public class StreamProcessorFactory {
   private static ActivityStorage getActivityStorage() {
     return (ActivityStorage) PortalContainer.getInstance().getComponentInstanceOfType(ActivityStorage.class);
   }
+  
+  private static StreamWarmUpScheduler getWarmUpScheduler() {
+    return (StreamWarmUpScheduler) PortalContainer.getInstance().getComponentInstanceOfType(StreamWarmUpScheduler.class);
+  }
   /**
    * Build Save Stream processor
    * @return
@@ -52,6 +56,24 @@ public class StreamProcessorFactory {
     };
   }
   
+  /**
+   * Build Fan-out processor, drains the queued activity references
+   * of the connections.
+   * 
+   * @return
+   */
+  public static SocialChromatticAsyncProcessor fanOutStream() {
+    return new SocialChromatticAsyncProcessor(SocialServiceContextImpl.getInstance()) {
+
+      @Override
+      protected ProcessContext execute(ProcessContext processContext) throws Exception {
+        getStreamStorage().fanOut(processContext);
+        return processContext;
+      }
+
+    };
+  }
+  
   /**
    * Build Save only these streams what own by poster.
    * 
@@ -337,6 +359,57 @@ public class StreamProcessorFactory {
     };
   }
   
+  /**
+   * Build Warm-up processor, loads the feeds queued by the logins, the most stale first,
+   * at the rate of the warm-up scheduler. A process runs one batch, the next one is
+   * scheduled while warm-ups are pending.
+   * 
+   * @return
+   */
+  public static SocialChromatticAsyncProcessor warmUpStream() {
+    return new SocialChromatticAsyncProcessor(SocialServiceContextImpl.getInstance()) {
+
+      @Override
+      protected ProcessContext execute(ProcessContext processContext) throws Exception {
+        StreamWarmUpScheduler scheduler = getWarmUpScheduler();
+        if (scheduler == null) {
+          return processContext;
+        }
+        try {
+          for (int i = 0; i < scheduler.getBatchSize(); i++) {
+            StreamWarmUpScheduler.WarmUp warmUp = scheduler.poll();
+            if (warmUp == null) {
+              break;
+            }
+            long wait = scheduler.reserve();
+            if (wait > 0) {
+              Thread.sleep(wait);
+            }
+            long start = System.currentTimeMillis();
+            try {
+              getActivityStorage().getActivityFeed(warmUp.getOwner(), 0, 21);
+            } catch (RuntimeException e) {
+              processContext.setException(e);
+            } finally {
+              scheduler.done(warmUp, System.currentTimeMillis() - start);
+            }
+          }
+        } finally {
+          if (scheduler.endDrain()) {
+            try {
+              StreamInvocationHelper.warmUp();
+            } catch (RuntimeException e) {
+              scheduler.cancelDrain();
+              throw e;
+            }
+          }
+        }
+        return processContext;
+      }
+
+    };
+  }
+  
   /**
    * Build Update Stream References in case mention
    * @return
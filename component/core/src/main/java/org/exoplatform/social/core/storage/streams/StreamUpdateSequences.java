@@ -0,0 +1,516 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
+
+/**
+ * Update sequences of the activity streams, used to tell the clients which streams changed
+ * without loading their activities.
+ *
+ * Each stream of an identity has a sequence which increases each time the stream fan-out
+ * touches it. The sequences are taken from a single clock started at the current time, so
+ * that they keep increasing after a restart. The streams which merge the activities of another
+ * stream when they are read are linked to it with
+ * {@link #link(String, ActivityRefType, String, ActivityRefType)}, they are bumped with it.
+ *
+ * The sequences of the identities which are not known yet are the floor of the sequences:
+ * a client asking for the changes since an older sequence is told all its streams changed.
+ * When more than the max number of identities are known, the half of the identities whose
+ * streams changed the least recently are forgotten and the floor is raised to their highest
+ * sequence: only the clients of these identities which did not see their last change are told
+ * all their streams changed.
+ *
+ * A link lasts while the linked stream is read: it is dropped by the bumps of the merged
+ * stream once it was not renewed for {@link #LINK_TIMEOUT} or once the linked stream owner
+ * is forgotten.
+ *
+ * The streams are bumped once their changes are persisted, when the stream process ends,
+ * see {@link #bump(Map)}. A client waiting for a change holds its request thread, the number
+ * of waiting clients is capped: above it the clients are told to come back later.
+ *
+ * The sequences are kept in memory, they only record the changes made on this node and each
+ * node has its own clock: the sequences of two nodes can't be compared. The stream fan-out
+ * runs on the node of the writer, so that even with sticky sessions a client is not told about
+ * the writes made on the other nodes. The sequences are disabled unless the enabled parameter
+ * is true, which fits a single node only: when disabled, the clients fall back to counting the
+ * new activities.
+ */
+@Managed
+@ManagedDescription("Activity stream update sequences")
+public class StreamUpdateSequences {
+
+  private static final String MAX_IDENTITIES_PARAM = "max-identities";
+  private static final String MAX_WAITING_PARAM = "max-waiting";
+  private static final String ENABLED_PARAM = "enabled";
+
+  /** The default max number of identities having sequences. */
+  public static final int DEFAULT_MAX_IDENTITIES = 100000;
+
+  /** The default max number of clients waiting for a change. */
+  public static final int DEFAULT_MAX_WAITING = 200;
+
+  /** The time after which a link which was not renewed by a read of the linked stream is dropped. */
+  public static final long LINK_TIMEOUT = 60 * 60 * 1000L;
+
+  private static final ActivityRefType[] TYPES = ActivityRefType.values();
+
+  private final int maxIdentities;
+
+  private final int maxWaiting;
+
+  private final boolean enabled;
+
+  private final AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+
+  private final AtomicLong floor = new AtomicLong(clock.get());
+
+  private volatile ConcurrentMap<String, Node> nodes = new ConcurrentHashMap<String, Node>();
+
+  private final AtomicLong bumps = new AtomicLong();
+  private final AtomicLong wakeUps = new AtomicLong();
+  private final AtomicLong fullClears = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicInteger waiting = new AtomicInteger();
+  private final AtomicLong rejectedWaits = new AtomicLong();
+
+  public StreamUpdateSequences(InitParams params) {
+    this(intParam(params, MAX_IDENTITIES_PARAM, DEFAULT_MAX_IDENTITIES),
+         intParam(params, MAX_WAITING_PARAM, DEFAULT_MAX_WAITING),
+         "true".equals(stringParam(params, ENABLED_PARAM)));
+  }
+
+  /**
+   * @param maxIdentities the max number of identities having sequences
+   */
+  public StreamUpdateSequences(int maxIdentities) {
+    this(maxIdentities, DEFAULT_MAX_WAITING, true);
+  }
+
+  /**
+   * @param maxIdentities the max number of identities having sequences
+   * @param maxWaiting the max number of clients waiting for a change
+   * @param enabled true to record the changes, on a single node
+   */
+  public StreamUpdateSequences(int maxIdentities, int maxWaiting, boolean enabled) {
+    this.maxIdentities = maxIdentities;
+    this.maxWaiting = maxWaiting;
+    this.enabled = enabled;
+  }
+
+  /**
+   * @return false if the sequences are disabled, the clients must count the new activities
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Records the changes of the streams persisted by a stream process.
+   *
+   * @param streams the stream types by owner identity id
+   */
+  public void bump(Map<String, Set<ActivityRefType>> streams) {
+    for (Map.Entry<String, Set<ActivityRefType>> entry : streams.entrySet()) {
+      for (ActivityRefType type : entry.getValue()) {
+        bump(entry.getKey(), type);
+      }
+    }
+  }
+
+  /**
+   * Records a change of a stream, the linked streams are bumped too.
+   *
+   * @param identityId the stream owner identity id
+   * @param type the stream type
+   * @return the new sequence of the stream
+   */
+  public long bump(String identityId, ActivityRefType type) {
+    if (!enabled) {
+      return floor.get();
+    }
+    long sequence = clock.incrementAndGet();
+    bumps.incrementAndGet();
+
+    Node node = node(identityId);
+    update(identityId, node, type, sequence);
+    ConcurrentMap<Link, Long> links = node.links.get(type.ordinal());
+    if (links != null) {
+      long now = System.currentTimeMillis();
+      for (Map.Entry<Link, Long> entry : links.entrySet()) {
+        Link link = entry.getKey();
+        Node linked = nodes.get(link.ownerId);
+        if (linked == null || now - entry.getValue() > LINK_TIMEOUT) {
+          //the linked stream is not read anymore
+          links.remove(link, entry.getValue());
+        } else {
+          update(link.ownerId, linked, link.type, sequence);
+        }
+      }
+    }
+    return sequence;
+  }
+
+  /**
+   * Updates the sequence of a stream. When the node of the identity was forgotten meanwhile, the
+   * floor is raised so that the change is not lost.
+   */
+  private void update(String identityId, Node node, ActivityRefType type, long sequence) {
+    node.update(type, sequence);
+    if (nodes.get(identityId) != node) {
+      raiseFloor(sequence);
+    }
+  }
+
+  /**
+   * Links a stream to a stream it merges when it is read.
+   *
+   * @param sourceId the merged stream owner identity id
+   * @param sourceType the merged stream type
+   * @param ownerId the stream owner identity id
+   * @param type the stream type
+   */
+  public void link(String sourceId, ActivityRefType sourceType, String ownerId, ActivityRefType type) {
+    if (!enabled) {
+      return;
+    }
+    node(ownerId);
+    Node source = node(sourceId);
+    int index = sourceType.ordinal();
+    ConcurrentMap<Link, Long> links = source.links.get(index);
+    if (links == null) {
+      source.links.compareAndSet(index, null, new ConcurrentHashMap<Link, Long>());
+      links = source.links.get(index);
+    }
+    links.put(new Link(ownerId, type), System.currentTimeMillis());
+  }
+
+  /**
+   * @param identityId the identity id
+   * @return the highest sequence of the streams of the identity
+   */
+  public long getSequence(String identityId) {
+    Node node = nodes.get(identityId);
+    return node != null ? node.max() : floor.get();
+  }
+
+  /**
+   * @param identityId the identity id
+   * @param type the stream type
+   * @return the sequence of the stream
+   */
+  public long getSequence(String identityId, ActivityRefType type) {
+    Node node = nodes.get(identityId);
+    return node != null ? node.sequences.get(type.ordinal()) : floor.get();
+  }
+
+  /**
+   * Gets the streams of an identity which changed since the given sequence.
+   *
+   * @param identityId the identity id
+   * @param since the sequence known by the client
+   * @return the changed stream types, empty if none changed
+   */
+  public List<ActivityRefType> getUpdated(String identityId, long since) {
+    Node node = nodes.get(identityId);
+    List<ActivityRefType> updated = new ArrayList<ActivityRefType>();
+    for (ActivityRefType type : TYPES) {
+      long sequence = node != null ? node.sequences.get(type.ordinal()) : floor.get();
+      if (sequence > since) {
+        updated.add(type);
+      }
+    }
+    return updated;
+  }
+
+  /**
+   * Waits until a stream of the identity changes after the given sequence.
+   *
+   * @param identityId the identity id
+   * @param since the sequence known by the client
+   * @param timeout the max time to wait in milliseconds
+   * @return the changed stream types, empty if none changed before the timeout, null if too many
+   *         clients are waiting: the client did not wait and must come back later
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public List<ActivityRefType> await(String identityId, long since, long timeout) throws InterruptedException {
+    if (waiting.incrementAndGet() > maxWaiting) {
+      waiting.decrementAndGet();
+      rejectedWaits.incrementAndGet();
+      return null;
+    }
+    try {
+      Node node = node(identityId);
+      long deadline = System.currentTimeMillis() + timeout;
+      synchronized (node) {
+        node.waiting++;
+        try {
+          long remaining = timeout;
+          while (node.max() <= since && remaining > 0 && nodes.get(identityId) == node) {
+            node.wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+          }
+        } finally {
+          node.waiting--;
+        }
+      }
+    } finally {
+      waiting.decrementAndGet();
+    }
+    return getUpdated(identityId, since);
+  }
+
+  @Managed
+  @ManagedDescription("Clears the sequences, the clients are told all their streams changed")
+  public void clear() {
+    ConcurrentMap<String, Node> cleared = nodes;
+    raiseFloor(clock.incrementAndGet());
+    nodes = new ConcurrentHashMap<String, Node>();
+    fullClears.incrementAndGet();
+
+    //the waiting clients are released, their streams are seen as changed
+    for (Node node : cleared.values()) {
+      node.wakeUp();
+    }
+  }
+
+  @Managed
+  @ManagedName("Identities")
+  @ManagedDescription("The number of identities having sequences")
+  public int getIdentities() {
+    return nodes.size();
+  }
+
+  @Managed
+  @ManagedName("Bumps")
+  @ManagedDescription("The number of stream changes recorded")
+  public long getBumps() {
+    return bumps.get();
+  }
+
+  @Managed
+  @ManagedName("WakeUps")
+  @ManagedDescription("The number of times waiting clients were released by a change")
+  public long getWakeUps() {
+    return wakeUps.get();
+  }
+
+  @Managed
+  @ManagedName("Waiting")
+  @ManagedDescription("The number of clients waiting for a change")
+  public int getWaiting() {
+    return waiting.get();
+  }
+
+  @Managed
+  @ManagedName("RejectedWaits")
+  @ManagedDescription("The number of clients told to come back later because too many clients were waiting")
+  public long getRejectedWaits() {
+    return rejectedWaits.get();
+  }
+
+  @Managed
+  @ManagedName("FullClears")
+  @ManagedDescription("The number of times the sequences were cleared")
+  public long getFullClears() {
+    return fullClears.get();
+  }
+
+  @Managed
+  @ManagedName("Evictions")
+  @ManagedDescription("The number of identities whose sequences were forgotten because too many were known")
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * Forgets the half of the identities whose streams changed the least recently, the floor is
+   * raised to their highest sequence. The identities having waiting clients are kept.
+   */
+  private synchronized void evict() {
+    ConcurrentMap<String, Node> current = nodes;
+    if (current.size() < maxIdentities) {
+      return;
+    }
+    List<Map.Entry<String, Long>> byAge = new ArrayList<Map.Entry<String, Long>>(current.size());
+    for (Map.Entry<String, Node> entry : current.entrySet()) {
+      byAge.add(new AbstractMap.SimpleEntry<String, Long>(entry.getKey(), entry.getValue().max()));
+    }
+    Collections.sort(byAge, new Comparator<Map.Entry<String, Long>>() {
+      public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+        return o1.getValue().compareTo(o2.getValue());
+      }
+    });
+    for (Map.Entry<String, Long> entry : byAge.subList(0, byAge.size() / 2)) {
+      Node node = current.get(entry.getKey());
+      if (node != null && !node.hasWaiting() && current.remove(entry.getKey(), node)) {
+        //the changes made while it was removed are read through the floor
+        raiseFloor(node.max());
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  private void raiseFloor(long sequence) {
+    long current;
+    do {
+      current = floor.get();
+      if (current >= sequence) {
+        return;
+      }
+    } while (!floor.compareAndSet(current, sequence));
+  }
+
+  private Node node(String identityId) {
+    ConcurrentMap<String, Node> current = nodes;
+    Node node = current.get(identityId);
+    if (node == null) {
+      if (current.size() >= maxIdentities) {
+        evict();
+        current = nodes;
+      }
+      Node created = new Node(floor.get());
+      node = current.putIfAbsent(identityId, created);
+      if (node == null) {
+        node = created;
+      }
+    }
+    return node;
+  }
+
+  private static String stringParam(InitParams params, String name) {
+    ValueParam param = params != null ? params.getValueParam(name) : null;
+    return param != null ? param.getValue() : null;
+  }
+
+  private static int intParam(InitParams params, String name, int defaultValue) {
+    ValueParam param = params != null ? params.getValueParam(name) : null;
+    if (param == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.valueOf(param.getValue());
+    } catch (Exception e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * The sequences of the streams of an identity, its monitor is used by the waiting clients.
+   */
+  private class Node {
+
+    private final AtomicLongArray sequences = new AtomicLongArray(TYPES.length);
+
+    /** the streams linked to each stream, with the time they were last linked */
+    private final AtomicReferenceArray<ConcurrentMap<Link, Long>> links =
+        new AtomicReferenceArray<ConcurrentMap<Link, Long>>(TYPES.length);
+
+    /** guarded by this */
+    private int waiting;
+
+    private Node(long floor) {
+      for (int i = 0; i < TYPES.length; i++) {
+        sequences.set(i, floor);
+      }
+    }
+
+    private void update(ActivityRefType type, long sequence) {
+      int index = type.ordinal();
+      long current;
+      do {
+        current = sequences.get(index);
+        if (current >= sequence) {
+          return;
+        }
+      } while (!sequences.compareAndSet(index, current, sequence));
+      wakeUp();
+    }
+
+    private synchronized boolean hasWaiting() {
+      return waiting > 0;
+    }
+
+    private void wakeUp() {
+      synchronized (this) {
+        if (waiting > 0) {
+          wakeUps.incrementAndGet();
+          notifyAll();
+        }
+      }
+    }
+
+    private long max() {
+      long max = sequences.get(0);
+      for (int i = 1; i < TYPES.length; i++) {
+        max = Math.max(max, sequences.get(i));
+      }
+      return max;
+    }
+  }
+
+  /**
+   * A stream which merges the activities of another stream.
+   */
+  private static class Link {
+
+    private final String ownerId;
+
+    private final ActivityRefType type;
+
+    private Link(String ownerId, ActivityRefType type) {
+      this.ownerId = ownerId;
+      this.type = type;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Link)) {
+        return false;
+      }
+      Link that = (Link) o;
+      return type == that.type && ownerId.equals(that.ownerId);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * ownerId.hashCode() + type.hashCode();
+    }
+  }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.social.core.identity.model.Identity;
+
+/**
+ * Scheduler of the feed warm-ups requested by the logins.
+ *
+ * A user is warmed up at most once per de-duplication period, and not at all when the last
+ * migration of his feed is more recent than the fresh period. The pending warm-ups are run
+ * the most stale feed first, at the configured global rate, so that a login peak is spread
+ * over time instead of loading thousands of feeds at once.
+ */
+@Managed
+@ManagedDescription("Activity stream warm-up scheduler")
+public class StreamWarmUpScheduler {
+
+  private static final String CAPACITY_PARAM = "capacity";
+  private static final String RATE_PARAM = "rate";
+  private static final String BATCH_SIZE_PARAM = "batch-size";
+  private static final String DEDUP_PERIOD_PARAM = "dedup-period";
+  private static final String FRESH_PERIOD_PARAM = "fresh-period";
+
+  /** The default maximum number of pending warm-ups. */
+  public static final int DEFAULT_CAPACITY = 10000;
+
+  /** The default number of warm-ups per second. */
+  public static final int DEFAULT_RATE = 10;
+
+  /** The default number of warm-ups run by a process. */
+  public static final int DEFAULT_BATCH_SIZE = 50;
+
+  /** The default period in seconds during which a user is warmed up once. */
+  public static final int DEFAULT_DEDUP_PERIOD = 900;
+
+  /** The default age in seconds under which a feed is fresh. */
+  public static final int DEFAULT_FRESH_PERIOD = 300;
+
+  private static final Comparator<WarmUp> MOST_STALE_FIRST = new Comparator<WarmUp>() {
+    public int compare(WarmUp o1, WarmUp o2) {
+      if (o1.lastMigration != o2.lastMigration) {
+        return o1.lastMigration < o2.lastMigration ? -1 : 1;
+      }
+      return o1.sequence < o2.sequence ? -1 : (o1.sequence == o2.sequence ? 0 : 1);
+    }
+  };
+
+  /** guarded by this */
+  private final PriorityQueue<WarmUp> queue = new PriorityQueue<WarmUp>(64, MOST_STALE_FIRST);
+
+  /** identity id => time of the last accepted warm-up, oldest first, guarded by this */
+  private final Map<String, Long> recent = new LinkedHashMap<String, Long>();
+
+  private final AtomicBoolean draining = new AtomicBoolean();
+
+  private final int capacity;
+  private final int rate;
+  private final int batchSize;
+  private final long dedupPeriod;
+  private final long freshPeriod;
+
+  /** guarded by this */
+  private long sequence;
+
+  /** the time of the next permit in ms, guarded by this */
+  private double nextPermit;
+
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicLong deduplicated = new AtomicLong();
+  private final AtomicLong skippedFresh = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong warmedUp = new AtomicLong();
+  private final AtomicLong totalLatency = new AtomicLong();
+  private final AtomicLong maxLatency = new AtomicLong();
+  private final AtomicLong totalWarmUpTime = new AtomicLong();
+
+  public StreamWarmUpScheduler(InitParams params) {
+    this(intParam(params, CAPACITY_PARAM, DEFAULT_CAPACITY),
+         intParam(params, RATE_PARAM, DEFAULT_RATE),
+         intParam(params, BATCH_SIZE_PARAM, DEFAULT_BATCH_SIZE),
+         intParam(params, DEDUP_PERIOD_PARAM, DEFAULT_DEDUP_PERIOD) * 1000L,
+         intParam(params, FRESH_PERIOD_PARAM, DEFAULT_FRESH_PERIOD) * 1000L);
+  }
+
+  /**
+   * @param capacity the maximum number of pending warm-ups
+   * @param rate the number of warm-ups per second, 0 for no limit
+   * @param batchSize the number of warm-ups run by a process
+   * @param dedupPeriod the period in ms during which a user is warmed up once
+   * @param freshPeriod the age in ms under which a feed is fresh
+   */
+  public StreamWarmUpScheduler(int capacity, int rate, int batchSize, long dedupPeriod, long freshPeriod) {
+    this.capacity = capacity;
+    this.rate = rate;
+    this.batchSize = batchSize;
+    this.dedupPeriod = dedupPeriod;
+    this.freshPeriod = freshPeriod;
+  }
+
+  /**
+   * Checks whether a warm-up of the identity has been accepted during the de-duplication period,
+   * lets the caller skip the lookup of the feed migration.
+   *
+   * @param identityId the identity id
+   * @return true if the identity has been warmed up or queued recently
+   */
+  public boolean isDuplicate(String identityId) {
+    return isDuplicate(identityId, System.currentTimeMillis());
+  }
+
+  synchronized boolean isDuplicate(String identityId, long now) {
+    purge(now);
+    if (recent.containsKey(identityId)) {
+      deduplicated.incrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Queues the warm-up of a feed.
+   *
+   * @param owner the owner of the feed
+   * @param lastMigration the time of the last migration of the feed, 0 if it has never been migrated
+   * @return true if the warm-up has been queued, false if it is a duplicate, the feed is fresh
+   *         or the queue is full
+   */
+  public boolean offer(Identity owner, long lastMigration) {
+    return offer(owner, lastMigration, System.currentTimeMillis());
+  }
+
+  synchronized boolean offer(Identity owner, long lastMigration, long now) {
+    purge(now);
+    if (recent.containsKey(owner.getId())) {
+      deduplicated.incrementAndGet();
+      return false;
+    }
+    if (lastMigration > 0 && now - lastMigration < freshPeriod) {
+      skippedFresh.incrementAndGet();
+      return false;
+    }
+    if (queue.size() >= capacity) {
+      rejected.incrementAndGet();
+      return false;
+    }
+    recent.put(owner.getId(), now);
+    queue.add(new WarmUp(owner, lastMigration, now, sequence++));
+    accepted.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Removes the most stale pending warm-up.
+   *
+   * @return the warm-up, null if the queue is empty
+   */
+  public synchronized WarmUp poll() {
+    return queue.poll();
+  }
+
+  /**
+   * Reserves the next permit of the global rate.
+   *
+   * @return the time in ms to wait before running the warm-up
+   */
+  public long reserve() {
+    return reserve(System.currentTimeMillis());
+  }
+
+  synchronized long reserve(long now) {
+    if (rate <= 0) {
+      return 0;
+    }
+    double permit = Math.max(nextPermit, now);
+    nextPermit = permit + 1000D / rate;
+    return (long) Math.ceil(permit - now);
+  }
+
+  /**
+   * Records a warm-up which has been run.
+   *
+   * @param warmUp the warm-up returned by {@link #poll()}
+   * @param warmUpTime the time in ms spent loading the feed
+   */
+  public void done(WarmUp warmUp, long warmUpTime) {
+    long latency = System.currentTimeMillis() - warmUp.queuedAt;
+    warmedUp.incrementAndGet();
+    totalLatency.addAndGet(latency);
+    totalWarmUpTime.addAndGet(warmUpTime);
+    long max = maxLatency.get();
+    while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+      max = maxLatency.get();
+    }
+  }
+
+  /**
+   * Marks the queue as being drained.
+   *
+   * @return true if the caller must schedule the drain, false if it is already running
+   */
+  public boolean startDrain() {
+    return draining.compareAndSet(false, true);
+  }
+
+  /**
+   * Ends the drain of the queue.
+   *
+   * @return true if warm-ups are still pending and the caller must schedule the drain again
+   */
+  public boolean endDrain() {
+    draining.set(false);
+    return getQueueLength() > 0 && startDrain();
+  }
+
+  /**
+   * Releases the drain after it failed to be scheduled, without scheduling it again.
+   */
+  public void cancelDrain() {
+    draining.set(false);
+  }
+
+  /**
+   * Forgets the warm-ups accepted before the de-duplication period.
+   */
+  private void purge(long now) {
+    Iterator<Long> it = recent.values().iterator();
+    while (it.hasNext() && now - it.next() >= dedupPeriod) {
+      it.remove();
+    }
+  }
+
+  @Managed
+  @ManagedName("QueueLength")
+  @ManagedDescription("The number of pending warm-ups")
+  public synchronized int getQueueLength() {
+    return queue.size();
+  }
+
+  @Managed
+  @ManagedName("Capacity")
+  @ManagedDescription("The maximum number of pending warm-ups")
+  public int getCapacity() {
+    return capacity;
+  }
+
+  @Managed
+  @ManagedName("Rate")
+  @ManagedDescription("The maximum number of warm-ups per second")
+  public int getRate() {
+    return rate;
+  }
+
+  @Managed
+  @ManagedName("BatchSize")
+  @ManagedDescription("The number of warm-ups run by a process")
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  @Managed
+  @ManagedName("Accepted")
+  @ManagedDescription("The number of queued warm-ups")
+  public long getAccepted() {
+    return accepted.get();
+  }
+
+  @Managed
+  @ManagedName("Deduplicated")
+  @ManagedDescription("The number of warm-ups skipped because the user was warmed up recently")
+  public long getDeduplicated() {
+    return deduplicated.get();
+  }
+
+  @Managed
+  @ManagedName("SkippedFresh")
+  @ManagedDescription("The number of warm-ups skipped because the feed was fresh")
+  public long getSkippedFresh() {
+    return skippedFresh.get();
+  }
+
+  @Managed
+  @ManagedName("Rejected")
+  @ManagedDescription("The number of warm-ups skipped because the queue was full")
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  @Managed
+  @ManagedName("WarmedUp")
+  @ManagedDescription("The number of warm-ups run")
+  public long getWarmedUp() {
+    return warmedUp.get();
+  }
+
+  @Managed
+  @ManagedName("AverageLatency")
+  @ManagedDescription("The average time in ms between the login and the end of the warm-up")
+  public long getAverageLatency() {
+    long count = warmedUp.get();
+    return count == 0 ? 0 : totalLatency.get() / count;
+  }
+
+  @Managed
+  @ManagedName("MaxLatency")
+  @ManagedDescription("The maximum time in ms between the login and the end of the warm-up")
+  public long getMaxLatency() {
+    return maxLatency.get();
+  }
+
+  @Managed
+  @ManagedName("AverageWarmUpTime")
+  @ManagedDescription("The average time in ms spent loading a feed")
+  public long getAverageWarmUpTime() {
+    long count = warmedUp.get();
+    return count == 0 ? 0 : totalWarmUpTime.get() / count;
+  }
+
+  private static int intParam(InitParams params, String name, int defaultValue) {
+    ValueParam param = params != null ? params.getValueParam(name) : null;
+    if (param == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.valueOf(param.getValue());
+    } catch (Exception e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * A pending warm-up.
+   */
+  public static class WarmUp {
+
+    private final Identity owner;
+
+    private final long lastMigration;
+
+    private final long queuedAt;
+
+    private final long sequence;
+
+    WarmUp(Identity owner, long lastMigration, long queuedAt, long sequence) {
+      this.owner = owner;
+      this.lastMigration = lastMigration;
+      this.queuedAt = queuedAt;
+      this.sequence = sequence;
+    }
+
+    public Identity getOwner() {
+      return owner;
+    }
+
+    public long getLastMigration() {
+      return lastMigration;
+    }
+  }
+}
@@ -22,6 +22,8 @@ import java.util.Map;
 import java.util.SortedSet;
 
 import org.exoplatform.social.core.ActivityProcessor;
+import org.exoplatform.social.core.activity.ActivityStreamCursor;
+import org.exoplatform.social.core.activity.ActivityStreamPage;
 import org.exoplatform.social.core.activity.filter.ActivityUpdateFilter;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
@@ -63,6 +65,22 @@ public class SynchronizedActivityStorage extends ActivityStorageImpl {
 
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ExoSocialActivity> getActivities(final List<String> activityIds) throws ActivityStorageException {
+
+    boolean created = startSynchronization();
+    try {
+      return super.getActivities(activityIds);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -1342,4 +1360,59 @@ public class SynchronizedActivityStorage extends ActivityStorageImpl {
       stopSynchronization(created);
     }
   }
+
+  @Override
+  public ActivityStreamPage getActivityFeed(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getActivityFeed(ownerIdentity, after, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+
+  @Override
+  public ActivityStreamPage getActivitiesOfConnections(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getActivitiesOfConnections(ownerIdentity, after, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+
+  @Override
+  public ActivityStreamPage getUserSpacesActivities(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getUserSpacesActivities(ownerIdentity, after, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+
+  @Override
+  public ActivityStreamPage getSpaceActivities(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getSpaceActivities(ownerIdentity, after, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+
+  @Override
+  public ActivityStreamPage getUserActivities(Identity ownerIdentity, ActivityStreamCursor after, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getUserActivities(ownerIdentity, after, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
 }
@@ -20,6 +20,8 @@ import java.util.List;
 
 import org.exoplatform.social.common.service.ProcessContext;
 import org.exoplatform.social.common.service.impl.SocialServiceContextImpl;
+import org.exoplatform.social.core.activity.ActivityStreamCursor;
+import org.exoplatform.social.core.activity.ActivityStreamPage;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl;
@@ -71,6 +73,17 @@ public class SynchronizedActivityStreamStorage extends ActivityStreamStorageImpl
     }
   }
   
+  @Override
+  public long getFeedLastMigration(Identity owner) {
+    boolean created = startSynchronization();
+    try {
+      return super.getFeedLastMigration(owner);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
   @Override
   public void connect(Identity sender, Identity receiver) {
     boolean created = startSynchronization();
@@ -83,6 +96,17 @@ public class SynchronizedActivityStreamStorage extends ActivityStreamStorageImpl
     
   }
   
+  @Override
+  public void fanOut(ProcessContext ctx) {
+    boolean created = startSynchronization();
+    try {
+      super.fanOut(ctx);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
   @Override
   public void deleteConnect(Identity sender, Identity receiver) {
     
@@ -140,6 +164,61 @@ public class SynchronizedActivityStreamStorage extends ActivityStreamStorageImpl
     }
   }
   
+  @Override
+  public ActivityStreamPage getFeed(Identity owner, ActivityStreamCursor after, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getFeed(owner, after, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
+  @Override
+  public ActivityStreamPage getConnections(Identity owner, ActivityStreamCursor after, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getConnections(owner, after, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
+  @Override
+  public ActivityStreamPage getMySpaces(Identity owner, ActivityStreamCursor after, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getMySpaces(owner, after, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
+  @Override
+  public ActivityStreamPage getSpaceStream(Identity owner, ActivityStreamCursor after, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getSpaceStream(owner, after, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
+  @Override
+  public ActivityStreamPage getMyActivities(Identity owner, ActivityStreamCursor after, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getMyActivities(owner, after, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
   @Override
   public void update(ProcessContext ctx) {
     boolean created = startSynchronization();
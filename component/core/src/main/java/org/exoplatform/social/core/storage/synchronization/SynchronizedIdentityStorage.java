@@ -84,6 +84,22 @@ public class SynchronizedIdentityStorage extends IdentityStorageImpl {
 
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Identity> findIdentitiesByIds(final List<String> identityIds) throws IdentityStorageException {
+
+    boolean created = startSynchronization();
+    try {
+      return super.findIdentitiesByIds(identityIds);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.activity;
+
+import junit.framework.TestCase;
+
+public class ActivityStreamCursorTest extends TestCase {
+
+  public void testParse() throws Exception {
+    ActivityStreamCursor cursor = ActivityStreamCursor.parse("1370000000000:1a2b3c");
+    assertEquals(1370000000000L, cursor.getLastUpdated());
+    assertEquals("1a2b3c", cursor.getActivityId());
+    assertEquals("1370000000000:1a2b3c", cursor.toString());
+    assertEquals(cursor, ActivityStreamCursor.parse(cursor.toString()));
+    assertNull(ActivityStreamCursor.parse(null));
+    assertNull(ActivityStreamCursor.parse(" "));
+  }
+
+  public void testParseInvalid() throws Exception {
+    String[] tokens = {"1370000000000", ":1a2b3c", "1370000000000:", "now:1a2b3c"};
+    for (String token : tokens) {
+      try {
+        ActivityStreamCursor.parse(token);
+        fail("The cursor " + token + " must be rejected");
+      } catch (IllegalArgumentException e) {
+        //expected
+      }
+    }
+  }
+
+  public void testIsBefore() throws Exception {
+    ActivityStreamCursor cursor = new ActivityStreamCursor(100L, "b");
+    assertTrue(cursor.isBefore(99L, "a"));
+    assertFalse(cursor.isBefore(101L, "z"));
+    //the activities updated at the same time are ordered by id
+    assertTrue(cursor.isBefore(100L, "c"));
+    assertFalse(cursor.isBefore(100L, "b"));
+    assertFalse(cursor.isBefore(100L, "a"));
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2003-2015 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.image;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.core.model.AvatarAttachment;
+
+/**
+ * Resize benchmark of the avatars, not part of the test suites:
+ * mvn test -Dtest=ImageUtilsBenchmark
+ */
+public class ImageUtilsBenchmark extends TestCase {
+
+  /**
+   * 6 megapixel JPEG, PNG and GIF images resized to the avatar sizes, with the time and the max used heap.
+   */
+  public void testResize() throws Exception {
+    String[][] formats = {{"jpg", "image/jpeg"}, {"png", "image/png"}, {"gif", "image/gif"}};
+    for (String[] format : formats) {
+      byte[] image = bytes(3000, 2000, format[0]);
+      int rounds = 5;
+      Runtime runtime = Runtime.getRuntime();
+      long start = System.nanoTime();
+      long maxUsed = 0;
+      for (int i = 0; i < rounds; i++) {
+        Map<String, AvatarAttachment> avatars = ImageUtils.createResizedAvatarAttachments(new ByteArrayInputStream(image),
+                                                                                          new int[][] {{200, 0}, {100, 0}, {45, 0}},
+                                                                                          null, "avatar." + format[0], format[1], null);
+        assertEquals(3, avatars.size());
+        maxUsed = Math.max(maxUsed, runtime.totalMemory() - runtime.freeMemory());
+      }
+      long elapsed = (System.nanoTime() - start) / 1000000;
+      System.out.println("\nAvatar resize " + format[0] + ": " + rounds + " images of " + (image.length / 1024) + " KB in "
+          + elapsed + " ms, max used heap " + (maxUsed / (1024 * 1024)) + " MB");
+    }
+  }
+
+  private static byte[] bytes(int width, int height, String format) throws Exception {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = image.createGraphics();
+    graphics.setPaint(new GradientPaint(0, 0, Color.BLUE, width, height, Color.ORANGE));
+    graphics.fillRect(0, 0, width, height);
+    graphics.dispose();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, format, out);
+    return out.toByteArray();
+  }
+}
@@ -17,8 +17,20 @@
 package org.exoplatform.social.core.image;
 
 
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
 import junit.framework.TestCase;
 
+import org.exoplatform.social.core.model.AvatarAttachment;
+
 public class ImageUtilsTest extends TestCase {
 
   public void testBuildFileName() {
@@ -36,5 +48,72 @@ public class ImageUtilsTest extends TestCase {
     assertEquals("_100x0", postfix);
   }
 
-  // TODO: Write unit test for function
+  public void testCreateResizedAvatarAttachment() throws Exception {
+    //landscape image: scaled to 200x133 then cropped to its center square
+    AvatarAttachment avatar = ImageUtils.createResizedAvatarAttachment(image(1200, 800, "jpg"), 200, 0, "id",
+                                                                       "avatar.jpg", "image/jpeg", "portal-system");
+    assertNotNull(avatar);
+    assertEquals("avatar.jpg", avatar.getFileName());
+    assertSize(avatar, 133, 133);
+
+    //portrait image: scaled to 200x300 then cropped
+    avatar = ImageUtils.createResizedAvatarAttachment(image(800, 1200, "png"), 200, 0, null, "avatar.png", "image/png", null);
+    assertSize(avatar, 200, 200);
+
+    //single frame gif
+    avatar = ImageUtils.createResizedAvatarAttachment(image(300, 300, "gif"), 0, 100, null, "avatar.gif", "image/gif", null);
+    assertSize(avatar, 100, 100);
+
+    assertNull(ImageUtils.createResizedAvatarAttachment(image(300, 300, "png"), 0, 0, null, "avatar.png", "image/png", null));
+    assertNull(ImageUtils.createResizedAvatarAttachment(new ByteArrayInputStream(new byte[] {1, 2, 3}), 200, 0, null,
+                                                        "avatar.png", "image/png", null));
+  }
+
+  public void testCreateResizedAvatarAttachments() throws Exception {
+    Map<String, AvatarAttachment> avatars = ImageUtils.createResizedAvatarAttachments(image(1000, 1000, "jpg"),
+                                                                                      new int[][] {{200, 0}, {100, 100}, {30, 0}},
+                                                                                      null, "avatar.jpg", "image/jpeg", null);
+    assertEquals(3, avatars.size());
+    assertSize(avatars.get("_200x0"), 200, 200);
+    assertSize(avatars.get("_100x100"), 100, 100);
+    assertSize(avatars.get("_30x0"), 30, 30);
+    assertEquals("RESIZED_avatar_30x0.jpg", avatars.get("_30x0").getFileName());
+  }
+
+  /**
+   * 6 megapixel JPEG, PNG and GIF images resized to the avatar sizes.
+   */
+  public void testResizeLargeImages() throws Exception {
+    String[][] formats = {{"jpg", "image/jpeg"}, {"png", "image/png"}, {"gif", "image/gif"}};
+    for (String[] format : formats) {
+      Map<String, AvatarAttachment> avatars = ImageUtils.createResizedAvatarAttachments(image(3000, 2000, format[0]),
+                                                                                        new int[][] {{200, 0}, {0, 100}},
+                                                                                        null, "avatar." + format[0], format[1], null);
+      assertEquals(2, avatars.size());
+      assertSize(avatars.get("_200x0"), 133, 133);
+      assertSize(avatars.get("_0x100"), 100, 100);
+    }
+  }
+
+  private static void assertSize(AvatarAttachment avatar, int width, int height) throws Exception {
+    assertNotNull(avatar);
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(avatar.getImageBytes()));
+    assertEquals(width, image.getWidth());
+    assertEquals(height, image.getHeight());
+  }
+
+  private static ByteArrayInputStream image(int width, int height, String format) throws Exception {
+    return new ByteArrayInputStream(bytes(width, height, format));
+  }
+
+  private static byte[] bytes(int width, int height, String format) throws Exception {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = image.createGraphics();
+    graphics.setPaint(new GradientPaint(0, 0, Color.BLUE, width, height, Color.ORANGE));
+    graphics.fillRect(0, 0, width, height);
+    graphics.dispose();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, format, out);
+    return out.toByteArray();
+  }
 }
@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.processor;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+import org.exoplatform.social.core.ActivityProcessor;
+import org.exoplatform.social.core.BaseActivityProcessorPlugin;
+import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
+import org.exoplatform.social.core.storage.cache.CacheGenerations;
+import org.exoplatform.social.core.storage.cache.model.data.LongData;
+import org.exoplatform.social.core.storage.cache.model.key.GenerationKey;
+
+public class ActivityProcessingCacheTest extends TestCase {
+
+  private CountingProcessor sanitizer;
+  private CountingProcessor mentions;
+  private CountingProcessor render;
+
+  @Override
+  protected void setUp() throws Exception {
+    sanitizer = new CountingProcessor(1, true, null, "[sanitized]");
+    mentions = new CountingProcessor(2, true, "intranet", "[mentions]");
+    render = new CountingProcessor(3, false, null, "[render]");
+  }
+
+  public void testWriteTimeOnce() throws Exception {
+    ActivityProcessingCache cache = new ActivityProcessingCache(100);
+    for (int i = 0; i < 3; i++) {
+      ExoSocialActivity activity = activity("a1", "title", "body");
+      cache.process(activity, chain(sanitizer, mentions, render));
+      assertEquals("title[sanitized][mentions][render]", activity.getTitle());
+      assertEquals("body[sanitized][mentions][render]", activity.getBody());
+      assertEquals("value[sanitized][mentions][render]", activity.getTemplateParams().get("key"));
+    }
+    assertEquals(1, sanitizer.count);
+    assertEquals(1, mentions.count);
+    assertEquals(3, render.count);
+    assertEquals(1, cache.getMisses());
+    assertEquals(2, cache.getHits());
+  }
+
+  public void testContentChanged() throws Exception {
+    ActivityProcessingCache cache = new ActivityProcessingCache(100);
+    cache.process(activity("a1", "title", "body"), chain(sanitizer));
+    ExoSocialActivity edited = activity("a1", "edited", "body");
+    cache.process(edited, chain(sanitizer));
+    assertEquals("edited[sanitized]", edited.getTitle());
+
+    ExoSocialActivity params = activity("a1", "edited", "body");
+    params.getTemplateParams().put("key", "other");
+    cache.process(params, chain(sanitizer));
+    assertEquals("other[sanitized]", params.getTemplateParams().get("key"));
+    assertEquals(3, sanitizer.count);
+  }
+
+  public void testRenderTimeBreaksThePrefix() throws Exception {
+    //a write-time processor after a render-time one is run on every read to keep the order
+    CountingProcessor late = new CountingProcessor(4, true, null, "[late]");
+    ActivityProcessingCache cache = new ActivityProcessingCache(100);
+    for (int i = 0; i < 2; i++) {
+      ExoSocialActivity activity = activity("a1", "title", "body");
+      cache.process(activity, chain(sanitizer, render, late));
+      assertEquals("title[sanitized][render][late]", activity.getTitle());
+    }
+    assertEquals(1, sanitizer.count);
+    assertEquals(2, late.count);
+  }
+
+  public void testChainChanged() throws Exception {
+    ActivityProcessingCache cache = new ActivityProcessingCache(100);
+    cache.process(activity("a1", "title", "body"), chain(sanitizer));
+    ExoSocialActivity activity = activity("a1", "title", "body");
+    cache.process(activity, chain(sanitizer, mentions));
+    assertEquals("title[sanitized][mentions]", activity.getTitle());
+    assertEquals(2, sanitizer.count);
+  }
+
+  public void testIdentityChanged() throws Exception {
+    ActivityProcessingCache cache = new ActivityProcessingCache(100);
+    cache.process(activity("a1", "hello @john", "body"), chain(sanitizer, mentions));
+    cache.identityChanged(identity("1", "john"));
+    cache.process(activity("a1", "hello @john", "body"), chain(sanitizer, mentions));
+    assertEquals(2, mentions.count);
+    assertEquals(1, cache.getIdentityGeneration());
+  }
+
+  public void testPosterChanged() throws Exception {
+    ActivityProcessingCache cache = new ActivityProcessingCache(100);
+    ExoSocialActivity activity = activity("a1", "title", "body");
+    activity.setPosterId("1");
+    cache.process(activity, chain(mentions));
+    cache.identityChanged(identity("1", "john"));
+    activity = activity("a1", "title", "body");
+    activity.setPosterId("1");
+    cache.process(activity, chain(mentions));
+    assertEquals(2, mentions.count);
+  }
+
+  public void testOtherIdentityChanged() throws Exception {
+    ActivityProcessingCache cache = new ActivityProcessingCache(100);
+    cache.process(activity("a1", "hello @john", "body"), chain(sanitizer, mentions));
+    //mary is neither in the bucket of john nor in the one of his id
+    cache.identityChanged(identity("2", "mary"));
+    cache.process(activity("a1", "hello @john", "body"), chain(sanitizer, mentions));
+    assertEquals(1, mentions.count);
+    assertEquals(1, cache.getHits());
+  }
+
+  public void testIdentityChangedOnOtherNode() throws Exception {
+    CacheGenerations generations = new CacheGenerations(new ConcurrentFIFOExoCache<GenerationKey, LongData>(100));
+    ActivityProcessingCache cache = new ActivityProcessingCache(100, generations);
+    ActivityProcessingCache other = new ActivityProcessingCache(100, generations);
+    cache.process(activity("a1", "hello @john", "body"), chain(sanitizer, mentions));
+    other.identityChanged(identity("1", "john"));
+    cache.process(activity("a1", "hello @john", "body"), chain(sanitizer, mentions));
+    assertEquals(2, mentions.count);
+    assertEquals(0, cache.getIdentityGeneration());
+  }
+
+  public void testContextKey() throws Exception {
+    ActivityProcessingCache cache = new ActivityProcessingCache(100);
+    cache.process(activity("a1", "title", "body"), chain(mentions));
+    mentions.context = "public";
+    cache.process(activity("a1", "title", "body"), chain(mentions));
+    assertEquals(2, mentions.count);
+    assertEquals(2, cache.getSize());
+
+    cache.invalidate("a1");
+    assertEquals(0, cache.getSize());
+  }
+
+  public void testCapacity() throws Exception {
+    ActivityProcessingCache cache = new ActivityProcessingCache(2);
+    cache.process(activity("a1", "title", "body"), chain(sanitizer));
+    cache.process(activity("a2", "title", "body"), chain(sanitizer));
+    cache.process(activity("a3", "title", "body"), chain(sanitizer));
+    assertEquals(2, cache.getSize());
+    cache.process(activity("a1", "title", "body"), chain(sanitizer));
+    assertEquals(4, sanitizer.count);
+
+    //no cache and no id: the processors are run on every read
+    ActivityProcessingCache disabled = new ActivityProcessingCache(0);
+    disabled.process(activity("a1", "title", "body"), chain(sanitizer));
+    new ActivityProcessingCache(100).process(activity(null, "title", "body"), chain(sanitizer));
+    assertEquals(6, sanitizer.count);
+  }
+
+  /**
+   * 500 activities with mentions and markup are processed once, then read from the cache.
+   */
+  public void testProcessingReuse() throws Exception {
+    List<ActivityProcessor> chain = chain(new MarkupProcessor(1), new MentionProcessor(2));
+    ActivityProcessingCache cache = new ActivityProcessingCache(1000);
+    StringBuilder title = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      title.append("<p>Hello @user").append(i).append(" <b>look</b> <script>at</script> this</p>");
+    }
+
+    for (int i = 0; i < 500; i++) {
+      cache.process(activity("a" + i, title.toString(), title.toString()), chain);
+    }
+
+    for (int round = 0; round < 10; round++) {
+      for (int i = 0; i < 500; i++) {
+        ExoSocialActivity activity = activity("a" + i, title.toString(), title.toString());
+        cache.process(activity, chain);
+        assertFalse(activity.getTitle().contains("<script>"));
+      }
+    }
+
+    assertEquals(500, cache.getMisses());
+    assertEquals(5000, cache.getHits());
+  }
+
+  private static List<ActivityProcessor> chain(ActivityProcessor... processors) {
+    return Arrays.asList(processors);
+  }
+
+  private static Identity identity(String id, String remoteId) {
+    Identity identity = new Identity(OrganizationIdentityProvider.NAME, remoteId);
+    identity.setId(id);
+    return identity;
+  }
+
+  private static ExoSocialActivity activity(String id, String title, String body) {
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setId(id);
+    activity.setTitle(title);
+    activity.setBody(body);
+    Map<String, String> templateParams = new LinkedHashMap<String, String>();
+    templateParams.put("key", "value");
+    templateParams.put(BaseActivityProcessorPlugin.TEMPLATE_PARAM_TO_PROCESS, "key");
+    activity.setTemplateParams(templateParams);
+    return activity;
+  }
+
+  /**
+   * Processor appending a suffix and counting its runs.
+   */
+  private static class CountingProcessor extends BaseActivityProcessorPlugin {
+
+    private final boolean writeTime;
+
+    private final String suffix;
+
+    private String context;
+
+    private int count;
+
+    private CountingProcessor(int priority, boolean writeTime, String context, String suffix) {
+      super(null);
+      this.priority = priority;
+      this.writeTime = writeTime;
+      this.context = context;
+      this.suffix = suffix;
+    }
+
+    @Override
+    public boolean isWriteTime() {
+      return writeTime;
+    }
+
+    @Override
+    public String getContextKey() {
+      return context;
+    }
+
+    @Override
+    public void processActivity(ExoSocialActivity activity) {
+      count++;
+      activity.setTitle(activity.getTitle() + suffix);
+      activity.setBody(activity.getBody() + suffix);
+      for (String key : getTemplateParamKeysToFilter(activity)) {
+        activity.getTemplateParams().put(key, activity.getTemplateParams().get(key) + suffix);
+      }
+    }
+  }
+
+  /**
+   * Processor removing the script elements, like the sanitizer.
+   */
+  private static class MarkupProcessor extends BaseActivityProcessorPlugin {
+
+    private static final Pattern SCRIPT = Pattern.compile("<script>.*?</script>", Pattern.DOTALL);
+
+    private MarkupProcessor(int priority) {
+      super(null);
+      this.priority = priority;
+    }
+
+    @Override
+    public boolean isWriteTime() {
+      return true;
+    }
+
+    @Override
+    public void processActivity(ExoSocialActivity activity) {
+      activity.setTitle(SCRIPT.matcher(activity.getTitle()).replaceAll(""));
+      activity.setBody(SCRIPT.matcher(activity.getBody()).replaceAll(""));
+    }
+  }
+
+  /**
+   * Processor replacing the mentions by links, like the mentions processor.
+   */
+  private static class MentionProcessor extends BaseActivityProcessorPlugin {
+
+    private static final Pattern MENTION = Pattern.compile("@([^\\s]+)");
+
+    private MentionProcessor(int priority) {
+      super(null);
+      this.priority = priority;
+    }
+
+    @Override
+    public boolean isWriteTime() {
+      return true;
+    }
+
+    @Override
+    public void processActivity(ExoSocialActivity activity) {
+      activity.setTitle(link(activity.getTitle()));
+      activity.setBody(link(activity.getBody()));
+    }
+
+    private static String link(String message) {
+      Matcher matcher = MENTION.matcher(message);
+      StringBuffer sb = new StringBuffer();
+      while (matcher.find()) {
+        String username = matcher.group(1);
+        matcher.appendReplacement(sb, "<a href=\"/portal/intranet/profile/" + username + "\">" + username + "</a>");
+      }
+      matcher.appendTail(sb);
+      return sb.toString();
+    }
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.relationship;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+import org.exoplatform.social.core.relationship.SuggestionIndex.Relations;
+import org.exoplatform.social.core.storage.cache.CacheGenerations;
+import org.exoplatform.social.core.storage.cache.model.data.LongData;
+import org.exoplatform.social.core.storage.cache.model.key.GenerationKey;
+
+public class SuggestionIndexTest extends TestCase {
+
+  private Graph graph;
+  private SuggestionIndex index;
+
+  @Override
+  protected void setUp() throws Exception {
+    graph = new Graph();
+    index = new SuggestionIndex(1000, 0);
+  }
+
+  public void testCommonConnections() throws Exception {
+    graph.connect("ghost", "mary");
+    graph.connect("ghost", "john");
+    graph.connect("demo", "mary");
+    graph.connect("demo", "john");
+    graph.connect("paul", "mary");
+
+    Map<String, Integer> suggestions = index.getSuggestions("ghost", -1, -1, 10, graph);
+    assertEquals(Arrays.asList("demo", "paul"), new ArrayList<String>(suggestions.keySet()));
+    assertEquals(2, suggestions.get("demo").intValue());
+    assertEquals(1, suggestions.get("paul").intValue());
+
+    //the max number of suggestions
+    suggestions = index.getSuggestions("ghost", -1, -1, 1, graph);
+    assertEquals(Arrays.asList("demo"), new ArrayList<String>(suggestions.keySet()));
+  }
+
+  public void testTiesOrderedById() throws Exception {
+    graph.connect("ghost", "mary");
+    graph.connect("zoe", "mary");
+    graph.connect("anna", "mary");
+    graph.connect("bob", "mary");
+    Map<String, Integer> suggestions = index.getSuggestions("ghost", -1, -1, -1, graph);
+    assertEquals(Arrays.asList("anna", "bob", "zoe"), new ArrayList<String>(suggestions.keySet()));
+  }
+
+  public void testCachedUntilConnectionsChange() throws Exception {
+    graph.connect("ghost", "mary");
+    graph.connect("demo", "mary");
+    index.getSuggestions("ghost", -1, -1, 10, graph);
+    int loads = graph.loads;
+    assertEquals(2, loads);
+
+    index.getSuggestions("ghost", -1, -1, 10, graph);
+    assertEquals(loads, graph.loads);
+    assertEquals(1, index.getHits());
+
+    //a connection of a connection
+    graph.connect("paul", "mary");
+    index.connected("paul", "mary");
+    Map<String, Integer> suggestions = index.getSuggestions("ghost", -1, -1, 10, graph);
+    assertEquals(2, suggestions.size());
+    assertTrue(suggestions.containsKey("paul"));
+    assertEquals(loads, graph.loads);
+
+    //a new connection is not suggested anymore
+    graph.connect("ghost", "paul");
+    index.connected("ghost", "paul");
+    suggestions = index.getSuggestions("ghost", -1, -1, 10, graph);
+    assertFalse(suggestions.containsKey("paul"));
+    assertEquals(1, suggestions.size());
+
+    graph.disconnect("demo", "mary");
+    index.disconnected("demo", "mary");
+    assertTrue(index.getSuggestions("ghost", -1, -1, 10, graph).isEmpty());
+  }
+
+  public void testExcluded() throws Exception {
+    graph.connect("ghost", "mary");
+    graph.connect("demo", "mary");
+    graph.exclude("ghost", "root");
+    graph.connect("root", "mary");
+    Map<String, Integer> suggestions = index.getSuggestions("ghost", -1, -1, 10, graph);
+    assertEquals(Arrays.asList("demo"), new ArrayList<String>(suggestions.keySet()));
+
+    graph.exclude("ghost", "demo");
+    index.excluded("ghost", "demo");
+    assertTrue(index.getSuggestions("ghost", -1, -1, 10, graph).isEmpty());
+
+    //the request has been denied
+    graph.disconnect("ghost", "demo");
+    index.disconnected("ghost", "demo");
+    assertEquals(1, index.getSuggestions("ghost", -1, -1, 10, graph).size());
+  }
+
+  public void testBoundedWalk() throws Exception {
+    graph.connect("ghost", "mary");
+    graph.connect("ghost", "john");
+    graph.connect("demo", "mary");
+    graph.connect("paul", "john");
+    //only one connection of the identity is walked
+    assertEquals(1, index.getSuggestions("ghost", -1, 1, 10, graph).size());
+    assertEquals(2, index.getSuggestions("ghost", -1, -1, 10, graph).size());
+  }
+
+  public void testEvictLeastRecentlyUsed() throws Exception {
+    index = new SuggestionIndex(2, 0);
+    graph.connect("ghost", "mary");
+    graph.connect("demo", "mary");
+    graph.connect("paul", "mary");
+    //only the loaded identities are counted, not their connections
+    assertEquals(2, index.getSuggestions("ghost", -1, -1, 10, graph).size());
+    assertEquals(0, index.getEvictions());
+    assertEquals(2, index.getIdentities());
+
+    //mary is the most recently used
+    assertEquals(2, index.getSuggestions("demo", -1, -1, 10, graph).size());
+    assertEquals(2, index.getEvictions());
+    assertEquals(1, index.getIdentities());
+
+    //the kept relationships are still written
+    graph.connect("root", "mary");
+    index.connected("root", "mary");
+    int loads = graph.loads;
+    Map<String, Integer> suggestions = index.getSuggestions("ghost", -1, -1, 10, graph);
+    assertEquals(3, suggestions.size());
+    assertTrue(suggestions.containsKey("root"));
+    //only ghost is loaded again
+    assertEquals(loads + 1, graph.loads);
+  }
+
+  public void testWritesOfOtherNodes() throws Exception {
+    CacheGenerations generations = new CacheGenerations(new ConcurrentFIFOExoCache<GenerationKey, LongData>(100));
+    index = new SuggestionIndex(1000, 0, generations);
+    graph.connect("ghost", "mary");
+    graph.connect("demo", "mary");
+    assertEquals(1, index.getSuggestions("ghost", -1, -1, 10, graph).size());
+    int loads = graph.loads;
+
+    //another node connects paul and mary
+    graph.connect("paul", "mary");
+    generations.bump(CacheGenerations.relationships("paul"));
+    generations.bump(CacheGenerations.relationships("mary"));
+    generations.bump(CacheGenerations.RELATIONSHIPS);
+    Map<String, Integer> suggestions = index.getSuggestions("ghost", -1, -1, 10, graph);
+    assertTrue(suggestions.containsKey("paul"));
+    assertTrue(graph.loads > loads);
+  }
+
+  public void testUnrelatedWritesOfOtherNodes() throws Exception {
+    CacheGenerations generations = new CacheGenerations(new ConcurrentFIFOExoCache<GenerationKey, LongData>(100));
+    index = new SuggestionIndex(1000, 0, generations);
+    graph.connect("ghost", "mary");
+    graph.connect("demo", "mary");
+    assertEquals(1, index.getSuggestions("ghost", -1, -1, 10, graph).size());
+    int loads = graph.loads;
+
+    //another node connects root and john, which are not walked
+    graph.connect("root", "john");
+    generations.bump(CacheGenerations.relationships("root"));
+    generations.bump(CacheGenerations.relationships("john"));
+    generations.bump(CacheGenerations.RELATIONSHIPS);
+    assertEquals(1, index.getSuggestions("ghost", -1, -1, 10, graph).size());
+    assertEquals(1, index.getHits());
+    assertEquals(loads, graph.loads);
+
+    //another node connects mary, which is walked, and john
+    graph.connect("mary", "john");
+    generations.bump(CacheGenerations.relationships("mary"));
+    generations.bump(CacheGenerations.relationships("john"));
+    generations.bump(CacheGenerations.RELATIONSHIPS);
+    assertTrue(index.getSuggestions("ghost", -1, -1, 10, graph).containsKey("john"));
+    assertEquals(1, index.getHits());
+  }
+
+  public void testIntCounter() throws Exception {
+    SuggestionIndex.IntCounter counter = new SuggestionIndex.IntCounter();
+    for (int i = 0; i < 1000; i++) {
+      counter.increment(i % 300);
+    }
+    assertEquals(300, counter.size());
+    assertEquals(4, counter.get(0));
+    assertEquals(3, counter.get(299));
+    assertEquals(0, counter.get(300));
+  }
+
+  private static class Graph implements SuggestionIndex.Loader {
+
+    private final Map<String, Set<String>> connections = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> excluded = new HashMap<String, Set<String>>();
+    private int loads;
+
+    void connect(String id1, String id2) {
+      get(connections, id1).add(id2);
+      get(connections, id2).add(id1);
+      get(excluded, id1).remove(id2);
+      get(excluded, id2).remove(id1);
+    }
+
+    void disconnect(String id1, String id2) {
+      get(connections, id1).remove(id2);
+      get(connections, id2).remove(id1);
+      get(excluded, id1).remove(id2);
+      get(excluded, id2).remove(id1);
+    }
+
+    void exclude(String id1, String id2) {
+      get(excluded, id1).add(id2);
+      get(excluded, id2).add(id1);
+    }
+
+    private static Set<String> get(Map<String, Set<String>> map, String id) {
+      Set<String> set = map.get(id);
+      if (set == null) {
+        set = new HashSet<String>();
+        map.put(id, set);
+      }
+      return set;
+    }
+
+    @Override
+    public Relations load(String identityId) throws Exception {
+      loads++;
+      Collection<String> connected = new ArrayList<String>(get(connections, identityId));
+      List<String> ignored = new ArrayList<String>(get(excluded, identityId));
+      return new Relations(connected, ignored);
+    }
+  }
+}
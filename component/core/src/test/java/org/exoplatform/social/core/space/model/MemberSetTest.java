@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.space.model;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.lang.ArrayUtils;
+
+public class MemberSetTest extends TestCase {
+
+  public void testOf() throws Exception {
+    assertSame(MemberSet.EMPTY, MemberSet.of(null));
+    assertSame(MemberSet.EMPTY, MemberSet.of(new String[0]));
+    assertSame(MemberSet.EMPTY, MemberSet.of(new String[] {null}));
+
+    MemberSet set = MemberSet.of(new String[] {"mary", "john", null, "demo", "john"});
+    assertEquals(3, set.size());
+    assertTrue(Arrays.equals(new String[] {"demo", "john", "mary"}, set.toArray()));
+    assertTrue(set.contains("john"));
+    assertFalse(set.contains("root"));
+    assertFalse(set.contains(null));
+  }
+
+  public void testAddRemove() throws Exception {
+    MemberSet set = MemberSet.of(new String[] {"john", "mary"});
+    assertSame(set, set.add("john"));
+    assertSame(set, set.remove("root"));
+
+    MemberSet added = set.add("demo");
+    assertTrue(Arrays.equals(new String[] {"demo", "john", "mary"}, added.toArray()));
+    assertEquals(2, set.size());
+
+    MemberSet removed = added.remove("john");
+    assertTrue(Arrays.equals(new String[] {"demo", "mary"}, removed.toArray()));
+    assertSame(MemberSet.EMPTY, MemberSet.of(new String[] {"john"}).remove("john"));
+  }
+
+  public void testMissing() throws Exception {
+    MemberSet set = MemberSet.of(new String[] {"john", "mary"});
+    assertTrue(Arrays.equals(new String[] {"root", "demo"}, set.missing(new String[] {"root", "john", "demo"})));
+    assertEquals(0, set.missing(null).length);
+  }
+
+  public void testSpaceSets() throws Exception {
+    Space space = new Space();
+    assertNull(space.getMembers());
+    assertTrue(space.getMemberSet().isEmpty());
+
+    space.setMembers(new String[] {"mary", "john"});
+    assertTrue(space.getMemberSet().contains("mary"));
+
+    //the array keeps the order the members were added in
+    space.setMembers((String[]) ArrayUtils.add(space.getMembers(), "demo"));
+    assertTrue(Arrays.equals(new String[] {"mary", "john", "demo"}, space.getMembers()));
+    assertTrue(space.getMemberSet().contains("demo"));
+
+    space.setMembers(new String[] {"root"});
+    assertFalse(space.getMemberSet().contains("mary"));
+  }
+
+  public void testSharedSpaceSets() throws Exception {
+    String[] members = {"mary", "john"};
+    MemberSet shared = MemberSet.of(members);
+    Space space = new Space();
+    space.setMembers(members);
+    space.setMemberSet(shared);
+    assertSame(shared, space.getMemberSet());
+
+    //a set which disagrees with the array is not kept
+    space.setMemberSet(MemberSet.of(new String[] {"root"}));
+    assertTrue(space.getMemberSet().contains("mary"));
+    assertFalse(space.getMemberSet().contains("root"));
+    space.setMemberSet(shared.add("root"));
+    assertFalse(space.getMemberSet().contains("root"));
+
+    space.setManagers(new String[] {"root"});
+    space.setManagerSet(MemberSet.EMPTY);
+    assertTrue(space.getManagerSet().contains("root"));
+  }
+
+  /**
+   * The checks, joins and leaves of a large space give the same results as the array scans.
+   */
+  public void testLargeSpace() throws Exception {
+    String[] members = new String[50000];
+    for (int i = 0; i < members.length; i++) {
+      members[i] = "user" + i;
+    }
+    MemberSet set = MemberSet.of(members);
+    assertEquals(members.length, set.size());
+
+    for (int i = 0; i < 2 * members.length; i += 97) {
+      String userId = "user" + i;
+      assertEquals(ArrayUtils.contains(members, userId), set.contains(userId));
+    }
+
+    MemberSet joined = set.add("joiner");
+    assertTrue(joined.contains("joiner"));
+    assertEquals(members.length + 1, joined.size());
+    assertEquals(set, joined.remove("joiner"));
+  }
+}
@@ -21,6 +21,8 @@ import java.util.List;
 
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.activity.ActivityStreamCursor;
+import org.exoplatform.social.core.activity.ActivityStreamPage;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.application.RelationshipPublisher;
@@ -38,6 +40,7 @@ import org.exoplatform.social.core.space.spi.SpaceService;
 import org.exoplatform.social.core.storage.api.ActivityStorage;
 import org.exoplatform.social.core.storage.api.ActivityStreamStorage;
 import org.exoplatform.social.core.storage.api.IdentityStorage;
+import org.exoplatform.social.core.storage.streams.StreamConfig;
 import org.exoplatform.social.core.test.AbstractCoreTest;
 
 
@@ -517,6 +520,36 @@ public void testConnectionsExistActivities() throws ActivityStorageException {
     relationshipManager.unregisterListener(relationshipPublisher);
   }
   
+  public void testFanOutOnReadNotCounted() throws ActivityStorageException {
+    StreamConfig streamConfig = (StreamConfig) getContainer().getComponentInstanceOfType(StreamConfig.class);
+    Identity celebrityIdentity = new Identity(OrganizationIdentityProvider.NAME, "celebrity");
+    identityStorage.saveIdentity(celebrityIdentity);
+    Relationship celebrityMaryConnection = relationshipManager.inviteToConnect(celebrityIdentity, maryIdentity);
+    relationshipManager.confirm(celebrityMaryConnection);
+    Relationship celebrityJohnConnection = relationshipManager.inviteToConnect(celebrityIdentity, johnIdentity);
+    relationshipManager.confirm(celebrityJohnConnection);
+    
+    //the audience of celebrity is above the threshold, its activities are merged on read
+    streamConfig.setFanOutOnReadThreshold(1);
+    try {
+      ExoSocialActivity activity = new ExoSocialActivityImpl();
+      activity.setTitle("activity title");
+      activityStorage.saveActivity(celebrityIdentity, activity);
+      tearDownActivityList.add(activity);
+      
+      assertEquals(1, streamStorage.getFeed(maryIdentity, 0, 10).size());
+      assertEquals(1, streamStorage.getConnections(maryIdentity, 0, 10).size());
+      assertEquals(0, streamStorage.getNumberOfFeed(maryIdentity));
+      assertEquals(0, streamStorage.getNumberOfConnections(maryIdentity));
+      assertEquals(1, streamStorage.getNumberOfFeed(celebrityIdentity));
+    } finally {
+      streamConfig.setFanOutOnReadThreshold(-1);
+      relationshipManager.delete(celebrityMaryConnection);
+      relationshipManager.delete(celebrityJohnConnection);
+      identityStorage.deleteIdentity(celebrityIdentity);
+    }
+  }
+  
  public void testSpaceActivities() throws Exception {
     
    SpaceService spaceService = this.getSpaceService();
@@ -574,6 +607,70 @@ public void testConnectionsExistActivities() throws ActivityStorageException {
    got = activityStorage.getActivitiesByPoster(maryIdentity, 0, 10);
    assertEquals(1, got.size());
  }
+
+  public void testGetFeedByCursor() throws ActivityStorageException {
+    for (int i = 0; i < 5; i++) {
+      ExoSocialActivity activity = new ExoSocialActivityImpl();
+      activity.setTitle("activity title " + i);
+      activityStorage.saveActivity(rootIdentity, activity);
+      tearDownActivityList.add(activity);
+    }
+    List<ExoSocialActivity> feed = streamStorage.getFeed(rootIdentity, 0, 5);
+    assertEquals(5, feed.size());
+
+    //the pages follow each other in the order of the stream
+    List<ExoSocialActivity> got = new ArrayList<ExoSocialActivity>();
+    ActivityStreamPage page = streamStorage.getFeed(rootIdentity, null, 2);
+    assertEquals(2, page.getActivities().size());
+    assertTrue(page.hasMore());
+    got.addAll(page.getActivities());
+    page = streamStorage.getFeed(rootIdentity, page.getNext(), 2);
+    assertEquals(2, page.getActivities().size());
+    assertTrue(page.hasMore());
+    got.addAll(page.getActivities());
+    page = streamStorage.getFeed(rootIdentity, page.getNext(), 2);
+    assertEquals(1, page.getActivities().size());
+    assertFalse(page.hasMore());
+    got.addAll(page.getActivities());
+    assertEquals(feed, got);
+
+    //the cursor of the last activity of the stream has no next page
+    page = streamStorage.getFeed(rootIdentity, page.getNext(), 2);
+    assertEquals(0, page.getActivities().size());
+    assertNull(page.getNext());
+    assertFalse(page.hasMore());
+  }
+
+  public void testGetFeedByCursorHasMore() throws ActivityStorageException {
+    for (int i = 0; i < 3; i++) {
+      ExoSocialActivity activity = new ExoSocialActivityImpl();
+      activity.setTitle("activity title " + i);
+      activityStorage.saveActivity(rootIdentity, activity);
+      tearDownActivityList.add(activity);
+    }
+
+    //the page is full but the remaining activity is hidden
+    ExoSocialActivity oldest = streamStorage.getFeed(rootIdentity, 2, 1).get(0);
+    oldest.isHidden(true);
+    activityStorage.updateActivity(oldest);
+
+    ActivityStreamPage page = streamStorage.getFeed(rootIdentity, null, 2);
+    assertEquals(2, page.getActivities().size());
+    assertFalse(page.hasMore());
+  }
+
+  public void testCursorOfSameUpdatedTime() throws ActivityStorageException {
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("activity title");
+    activityStorage.saveActivity(rootIdentity, activity);
+    tearDownActivityList.add(activity);
+    ExoSocialActivity got = streamStorage.getFeed(rootIdentity, 0, 1).get(0);
+    long updated = got.getUpdated().getTime();
+
+    //the activities updated at the same time are ordered by id
+    assertEquals(1, streamStorage.getFeed(rootIdentity, new ActivityStreamCursor(updated, ""), 2).getActivities().size());
+    assertEquals(0, streamStorage.getFeed(rootIdentity, new ActivityStreamCursor(updated, got.getId()), 2).getActivities().size());
+  }
  
   /**
    * Gets the space service.
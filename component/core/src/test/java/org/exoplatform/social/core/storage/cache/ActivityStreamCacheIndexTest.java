@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.storage.cache.ActivityStreamCacheIndex.Stream;
+import org.exoplatform.social.core.storage.cache.model.data.IntegerData;
+import org.exoplatform.social.core.storage.cache.model.data.ListActivitiesData;
+import org.exoplatform.social.core.storage.cache.model.data.LongData;
+import org.exoplatform.social.core.storage.cache.model.data.ListIdentitiesData;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityCountKey;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityKey;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityType;
+import org.exoplatform.social.core.storage.cache.model.key.GenerationKey;
+import org.exoplatform.social.core.storage.cache.model.key.IdentityKey;
+import org.exoplatform.social.core.storage.cache.model.key.ListActivitiesKey;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
+
+public class ActivityStreamCacheIndexTest extends TestCase {
+
+  private ExoCache<ListActivitiesKey, ListActivitiesData> listCache;
+  private ExoCache<ActivityCountKey, IntegerData> countCache;
+  private ActivityStreamCacheIndex index;
+
+  @Override
+  protected void setUp() throws Exception {
+    listCache = new ConcurrentFIFOExoCache<ListActivitiesKey, ListActivitiesData>(1000);
+    countCache = new ConcurrentFIFOExoCache<ActivityCountKey, IntegerData>(1000);
+    index = new ActivityStreamCacheIndex(listCache, countCache);
+  }
+
+  public void testStreamOf() throws Exception {
+    assertEquals(Stream.FEED, Stream.of(ActivityType.NEWER_FEED));
+    assertEquals(Stream.USER, Stream.of(ActivityType.POSTER));
+    assertEquals(Stream.COMMENTS, Stream.of(ActivityType.OLDER_COMMENTS));
+    assertEquals(Stream.SPACES, Stream.of(ActivityRefType.MY_SPACES));
+    assertEquals(Stream.SPACE, Stream.of(ActivityRefType.SPACE_STREAM));
+    assertEquals(Stream.USER, Stream.of(ActivityRefType.MY_ACTIVITIES));
+  }
+
+  public void testTouchOnlyEvictsTouchedStreams() throws Exception {
+    ListActivitiesKey johnFeed = putList("john", ActivityType.FEED, "a1");
+    ListActivitiesKey maryFeed = putList("mary", ActivityType.FEED, "a2");
+    ListActivitiesKey johnUser = putList("john", ActivityType.USER, "a1");
+    ActivityCountKey johnNewer = putCount("john", ActivityType.NEWER_FEED);
+
+    index.touch("john", ActivityRefType.FEED);
+    assertNotNull(listCache.get(johnFeed));
+    assertEquals(Collections.singletonMap("john", EnumSet.of(ActivityRefType.FEED)), index.flush());
+
+    assertNull(listCache.get(johnFeed));
+    assertNull(countCache.get(johnNewer));
+    assertNotNull(listCache.get(maryFeed));
+    assertNotNull(listCache.get(johnUser));
+    assertEquals(2, index.getEvictions());
+    assertEquals(0, index.getFullClears());
+
+    //touched streams are flushed once
+    putList("john", ActivityType.FEED, "a1");
+    assertTrue(index.flush().isEmpty());
+    assertEquals(2, index.getEvictions());
+  }
+
+  public void testInvalidateActivity() throws Exception {
+    ListActivitiesKey johnFeed = putList("john", ActivityType.FEED, "a1", "a2");
+    ListActivitiesKey maryFeed = putList("mary", ActivityType.FEED, "a3");
+    ActivityCountKey comments = new ActivityCountKey(new ActivityKey("a1"), 0L, ActivityType.NEWER_COMMENTS);
+    countCache.put(comments, new IntegerData(1));
+    index.register(comments);
+
+    index.invalidateActivity("a1");
+
+    assertNull(listCache.get(johnFeed));
+    assertNull(countCache.get(comments));
+    assertNotNull(listCache.get(maryFeed));
+  }
+
+  public void testInvalidateOwnerAndUnowned() throws Exception {
+    ListActivitiesKey johnFeed = putList("john", ActivityType.FEED, "a1");
+    ListActivitiesKey johnSpaces = putList("john", ActivityType.OLDER_SPACES, "a2");
+    ListActivitiesKey maryFeed = putList("mary", ActivityType.FEED, "a3");
+    ListActivitiesKey identities = new ListActivitiesKey(
+        new ListIdentitiesData(Arrays.asList(new IdentityKey(new Identity("mary")))), 0, 10);
+    listCache.put(identities, new ListActivitiesData(Collections.<ActivityKey>emptyList()));
+    index.register(identities, listCache.get(identities));
+
+    index.invalidateOwner("john");
+    assertNull(listCache.get(johnFeed));
+    assertNull(listCache.get(johnSpaces));
+    assertNotNull(listCache.get(maryFeed));
+    assertNotNull(listCache.get(identities));
+
+    index.invalidateUnowned();
+    assertNull(listCache.get(identities));
+    assertNotNull(listCache.get(maryFeed));
+  }
+
+  public void testLinkedStreamsEvictedWithTheirSource() throws Exception {
+    ListActivitiesKey johnFeed = putList("john", ActivityType.FEED, "a1");
+    ListActivitiesKey johnSpaces = putList("john", ActivityType.SPACES, "a2");
+    ListActivitiesKey maryFeed = putList("mary", ActivityType.FEED, "a3");
+    index.link("celebrity", ActivityRefType.MY_ACTIVITIES, "john", ActivityRefType.FEED);
+    index.link("space", ActivityRefType.SPACE_STREAM, "john", ActivityRefType.MY_SPACES);
+
+    index.touch("celebrity", ActivityRefType.MY_ACTIVITIES);
+    index.flush();
+    assertNull(listCache.get(johnFeed));
+    assertNotNull(listCache.get(johnSpaces));
+    assertNotNull(listCache.get(maryFeed));
+
+    index.invalidateOwner("space");
+    assertNull(listCache.get(johnSpaces));
+    assertNotNull(listCache.get(maryFeed));
+  }
+
+  public void testTouchedStreamsClearedByFlush() throws Exception {
+    index.touch("john", ActivityRefType.FEED);
+    index.flush();
+    index.touch("mary", ActivityRefType.FEED);
+    assertEquals(Collections.singletonMap("mary", EnumSet.of(ActivityRefType.FEED)), index.flush());
+  }
+
+  public void testStampedKeysEvictedOnOtherNodes() throws Exception {
+    //two nodes sharing the caches and the generations, each one with its own index
+    CacheGenerations generations = new CacheGenerations(new ConcurrentFIFOExoCache<GenerationKey, LongData>(1000));
+    ActivityStreamCacheIndex node1 = new ActivityStreamCacheIndex(listCache, countCache, generations);
+    ActivityStreamCacheIndex node2 = new ActivityStreamCacheIndex(listCache, countCache, generations);
+
+    ListActivitiesKey johnFeed = listKey("john", ActivityType.FEED);
+    ListActivitiesKey maryFeed = listKey("mary", ActivityType.FEED);
+    ActivityCountKey johnCount = new ActivityCountKey(new IdentityKey(new Identity("john")), ActivityType.FEED);
+    listCache.put(node2.stamp(johnFeed), new ListActivitiesData(Collections.<ActivityKey>emptyList()));
+    listCache.put(node2.stamp(maryFeed), new ListActivitiesData(Collections.<ActivityKey>emptyList()));
+    countCache.put(node2.stamp(johnCount), new IntegerData(1));
+    assertEquals(node1.stamp(johnFeed), node2.stamp(johnFeed));
+
+    node1.touch("john", ActivityRefType.FEED);
+    node1.flush();
+    assertNull(listCache.get(node2.stamp(johnFeed)));
+    assertNull(countCache.get(node2.stamp(johnCount)));
+    assertNotNull(listCache.get(node2.stamp(maryFeed)));
+  }
+
+  public void testStampedLinkedStreamsEvictedOnOtherNodes() throws Exception {
+    CacheGenerations generations = new CacheGenerations(new ConcurrentFIFOExoCache<GenerationKey, LongData>(1000));
+    ActivityStreamCacheIndex node1 = new ActivityStreamCacheIndex(listCache, countCache, generations);
+    ActivityStreamCacheIndex node2 = new ActivityStreamCacheIndex(listCache, countCache, generations);
+
+    //john's feed read by the second node merges the celebrity stream, written by the first one
+    node2.link("celebrity", ActivityRefType.MY_ACTIVITIES, "john", ActivityRefType.FEED);
+    ListActivitiesKey johnFeed = listKey("john", ActivityType.FEED);
+    listCache.put(node2.stamp(johnFeed), new ListActivitiesData(Collections.<ActivityKey>emptyList()));
+
+    node1.touch("celebrity", ActivityRefType.MY_ACTIVITIES);
+    node1.flush();
+    assertNull(listCache.get(node2.stamp(johnFeed)));
+  }
+
+  public void testStampedUnownedLists() throws Exception {
+    CacheGenerations generations = new CacheGenerations(new ConcurrentFIFOExoCache<GenerationKey, LongData>(1000));
+    ActivityStreamCacheIndex node1 = new ActivityStreamCacheIndex(listCache, countCache, generations);
+    ActivityStreamCacheIndex node2 = new ActivityStreamCacheIndex(listCache, countCache, generations);
+
+    ListActivitiesKey identities = new ListActivitiesKey(
+        new ListIdentitiesData(Arrays.asList(new IdentityKey(new Identity("mary")))), 0, 10);
+    ListActivitiesKey stamped = node2.stamp(identities);
+    assertEquals(stamped, node2.stamp(identities));
+    node1.invalidateUnowned();
+    assertFalse(stamped.equals(node2.stamp(identities)));
+  }
+
+  public void testEntriesGoneFromTheCachesUnindexed() throws Exception {
+    listCache = new ConcurrentFIFOExoCache<ListActivitiesKey, ListActivitiesData>(2);
+    index = new ActivityStreamCacheIndex(listCache, countCache);
+    ListActivitiesKey johnFeed = putList("john", ActivityType.FEED, "a1");
+    putList("mary", ActivityType.FEED, "a2");
+    ActivityCountKey johnNewer = putCount("john", ActivityType.NEWER_FEED);
+    assertEquals(3, index.getIndexedKeys());
+
+    //expired by the cache
+    putList("paul", ActivityType.FEED, "a3");
+    assertNull(listCache.get(johnFeed));
+    assertEquals(3, index.getIndexedKeys());
+
+    //removed from the cache
+    countCache.remove(johnNewer);
+    assertEquals(2, index.getIndexedKeys());
+
+    listCache.clearCache();
+    assertEquals(0, index.getIndexedKeys());
+    assertEquals(0, index.getEvictions());
+  }
+
+  public void testSweepWhenIndexIsFull() throws Exception {
+    index = new ActivityStreamCacheIndex(listCache, countCache, 2);
+    ListActivitiesKey johnFeed = putList("john", ActivityType.FEED, "a1");
+    ListActivitiesKey maryFeed = putList("mary", ActivityType.FEED, "a2");
+    //indexed but never put in cache, like an entry dropped by another node
+    index.register(listKey("paul", ActivityType.FEED), new ListActivitiesData(Collections.<ActivityKey>emptyList()));
+
+    assertEquals(1, index.getSweeps());
+    assertEquals(0, index.getFullClears());
+    assertEquals(2, index.getIndexedKeys());
+    assertNotNull(listCache.get(johnFeed));
+    assertNotNull(listCache.get(maryFeed));
+
+    //the cached entries are kept, no sweep before the index doubles
+    putList("paul", ActivityType.FEED, "a3");
+    assertEquals(1, index.getSweeps());
+    assertEquals(3, index.getIndexedKeys());
+    assertNotNull(listCache.get(johnFeed));
+  }
+
+  private ListActivitiesKey listKey(String ownerId, ActivityType type) {
+    return new ListActivitiesKey(new ActivityCountKey(new IdentityKey(new Identity(ownerId)), type), 0, 10);
+  }
+
+  private ListActivitiesKey putList(String ownerId, ActivityType type, String... activityIds) {
+    ListActivitiesKey key = listKey(ownerId, type);
+    ActivityKey[] ids = new ActivityKey[activityIds.length];
+    for (int i = 0; i < activityIds.length; i++) {
+      ids[i] = new ActivityKey(activityIds[i]);
+    }
+    ListActivitiesData data = new ListActivitiesData(Arrays.asList(ids));
+    listCache.put(key, data);
+    index.register(key, data);
+    return key;
+  }
+
+  private ActivityCountKey putCount(String ownerId, ActivityType type) {
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(new Identity(ownerId)), type);
+    countCache.put(key, new IntegerData(1));
+    index.register(key);
+    return key;
+  }
+}
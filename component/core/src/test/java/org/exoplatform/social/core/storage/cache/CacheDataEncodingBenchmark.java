@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.core.activity.model.ActivityStream;
+import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
+import org.exoplatform.social.core.storage.cache.model.data.ActivityData;
+
+/**
+ * Serialization time and hit allocation benchmark of the activity data, not part of the test suites:
+ * mvn test -Dtest=CacheDataEncodingBenchmark
+ */
+public class CacheDataEncodingBenchmark extends TestCase {
+
+  /** the number of round trips of the benchmark */
+  private static final int ROUNDS = 20000;
+
+  private static final String JOHN = "0a1b2c3d4e5f60718293a4b5c6d7e8f9";
+  private static final String MARY = "ffeeddccbbaa99887766554433221100";
+
+  /**
+   * Footprint, serialization time and hit allocation of the activity data, compared with the
+   * default serialization of the same fields, which was the former serialized form.
+   */
+  public void testActivityEncoding() throws Exception {
+    ExoSocialActivity activity = activity();
+    ActivityData data = new ActivityData(activity);
+    Object[] fields = fields(activity);
+
+    int compactSize = serialize(data).length;
+    int defaultSize = serialize(fields).length;
+
+    //
+    long compactTime = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      deserialize(serialize(data));
+    }
+    compactTime = System.nanoTime() - compactTime;
+    long defaultTime = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      deserialize(serialize(fields));
+    }
+    defaultTime = System.nanoTime() - defaultTime;
+
+    //
+    ActivityData cached = (ActivityData) roundTrip(data);
+    long buildBytes = allocatedBytes();
+    for (int i = 0; i < ROUNDS; i++) {
+      cached.build();
+    }
+    buildBytes = allocatedBytes() - buildBytes;
+    long viewBytes = allocatedBytes();
+    for (int i = 0; i < ROUNDS; i++) {
+      cached.getReplyToIds();
+    }
+    viewBytes = allocatedBytes() - viewBytes;
+
+    System.out.println("\nActivity data\tbytes\tround trip (us)\n"
+        + "default\t" + defaultSize + "\t" + defaultTime / 1000 / ROUNDS + "\n"
+        + "compact\t" + compactSize + "\t" + compactTime / 1000 / ROUNDS + "\n"
+        + "hit allocation (bytes)\tbuild " + buildBytes / ROUNDS + "\tview " + viewBytes / ROUNDS + "\n");
+  }
+
+  private ExoSocialActivity activity() {
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setId("5a6b7c8d9e0f1a2b3c4d5e6f7a8b9c0d");
+    activity.setTitle("john posted <b>a link</b>");
+    activity.setBody("a link to the eXo site");
+    activity.setUserId(JOHN);
+    activity.setPosterId(JOHN);
+    activity.setType("LINK_ACTIVITY");
+    activity.setLikeIdentityIds(new String[] {JOHN, MARY});
+    activity.setReplyToId(new String[] {"comment-1", "comment-2"});
+    activity.setMentionedIds(new String[] {MARY + "@1"});
+    activity.setCommentedIds(new String[] {JOHN + "@2"});
+    activity.isHidden(true);
+    activity.setPostedTime(1000L);
+    activity.setUpdated(2000L);
+    Map<String, String> templateParams = new LinkedHashMap<String, String>();
+    templateParams.put("link", "http://exoplatform.com");
+    templateParams.put("comment", "the eXo site");
+    activity.setTemplateParams(templateParams);
+    ActivityStream stream = activity.getActivityStream();
+    stream.setId(JOHN);
+    stream.setPrettyId("john");
+    stream.setType(ActivityStream.Type.USER);
+    return activity;
+  }
+
+  private Object[] fields(ExoSocialActivity activity) {
+    return new Object[] {
+        activity.getId(), activity.getTitle(), activity.getBody(), activity.getLikeIdentityIds(),
+        activity.isComment(), activity.isHidden(), activity.isLocked(), activity.getPostedTime(),
+        activity.getUpdated().getTime(), activity.getReplyToId(), activity.getUserId(), activity.getAppId(),
+        activity.getTitleId(), activity.getBodyId(), activity.getType(),
+        new LinkedHashMap<String, String>(activity.getTemplateParams()), activity.getExternalId(),
+        activity.getUrl(), activity.getStreamId(), activity.getStreamOwner(), activity.getStreamFaviconUrl(),
+        activity.getStreamSourceUrl(), activity.getStreamTitle(), activity.getStreamUrl(),
+        activity.getMentionedIds(), activity.getCommentedIds(), activity.getActivityStream().getType(),
+        activity.getPosterId(), activity.getParentId()
+    };
+  }
+
+  private Object roundTrip(Object o) throws Exception {
+    return deserialize(serialize(o));
+  }
+
+  private byte[] serialize(Object o) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(o);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  private Object deserialize(byte[] bytes) throws Exception {
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+    try {
+      return in.readObject();
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @return the bytes allocated by the current thread, 0 when the JVM does not measure them
+   */
+  private long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+}
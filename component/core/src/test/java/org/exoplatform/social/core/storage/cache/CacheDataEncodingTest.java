@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.core.activity.model.ActivityStream;
+import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.model.Profile;
+import org.exoplatform.social.core.storage.cache.model.data.ActivityData;
+import org.exoplatform.social.core.storage.cache.model.data.IdentityData;
+import org.exoplatform.social.core.storage.cache.model.data.ProfileData;
+
+public class CacheDataEncodingTest extends TestCase {
+
+  private static final String JOHN = "0a1b2c3d4e5f60718293a4b5c6d7e8f9";
+  private static final String MARY = "ffeeddccbbaa99887766554433221100";
+
+  public void testActivity() throws Exception {
+    ActivityData data = (ActivityData) roundTrip(new ActivityData(activity()));
+    ExoSocialActivity activity = data.build();
+
+    assertEquals("5a6b7c8d9e0f1a2b3c4d5e6f7a8b9c0d", activity.getId());
+    assertEquals("john posted <b>a link</b>", activity.getTitle());
+    assertEquals(JOHN, activity.getUserId());
+    assertEquals(JOHN, activity.getPosterId());
+    assertEquals("john", activity.getStreamOwner());
+    assertEquals(ActivityStream.Type.USER, activity.getActivityStream().getType());
+    assertEquals("LINK_ACTIVITY", activity.getType());
+    assertSame("LINK_ACTIVITY", activity.getType());
+    assertEquals(Arrays.asList(JOHN, MARY), Arrays.asList(activity.getLikeIdentityIds()));
+    assertEquals(Arrays.asList("comment-1", "comment-2"), Arrays.asList(activity.getReplyToId()));
+    assertEquals(Arrays.asList(MARY + "@1"), Arrays.asList(activity.getMentionedIds()));
+    assertEquals("http://exoplatform.com", activity.getTemplateParams().get("link"));
+    assertEquals(Long.valueOf(1000), activity.getPostedTime());
+    assertEquals(2000, activity.getUpdated().getTime());
+    assertTrue(activity.isHidden());
+    assertFalse(activity.isComment());
+  }
+
+  public void testActivityView() throws Exception {
+    ActivityData data = (ActivityData) roundTrip(new ActivityData(activity()));
+
+    assertEquals(JOHN, data.getUserId());
+    assertEquals(Arrays.asList("comment-1", "comment-2"), data.getReplyToIds());
+    assertEquals("http://exoplatform.com", data.getTemplateParams().get("link"));
+    try {
+      data.getLikeIdentityIds().add(JOHN);
+      fail();
+    }
+    catch (UnsupportedOperationException e) {
+      // ok
+    }
+    try {
+      data.getTemplateParams().put("link", "http://example.org");
+      fail();
+    }
+    catch (UnsupportedOperationException e) {
+      // ok
+    }
+
+    //the built activities are copies
+    data.build().getTemplateParams().put("link", "http://example.org");
+    assertEquals("http://exoplatform.com", data.build().getTemplateParams().get("link"));
+  }
+
+  public void testRareFieldsForwardedUndecoded() throws Exception {
+    ActivityData data = (ActivityData) roundTrip(roundTrip(new ActivityData(activity())));
+    assertEquals("http://exoplatform.com", data.getTemplateParams().get("link"));
+    assertEquals(Arrays.asList(MARY + "@1"), Arrays.asList(data.build().getMentionedIds()));
+  }
+
+  public void testNullActivity() throws Exception {
+    assertSame(ActivityData.NULL, roundTrip(ActivityData.NULL));
+    assertNull(((ActivityData) roundTrip(ActivityData.NULL)).build());
+  }
+
+  public void testIdentity() throws Exception {
+    Identity got = ((IdentityData) roundTrip(new IdentityData(identity()))).build();
+    assertEquals(JOHN, got.getId());
+    assertEquals("organization", got.getProviderId());
+    assertEquals("john", got.getRemoteId());
+    assertTrue(got.isDeleted());
+    assertFalse(got.isEnable());
+
+    assertNull(((IdentityData) roundTrip(new IdentityData(null))).build());
+  }
+
+  public void testProfile() throws Exception {
+    Profile got = ((ProfileData) roundTrip(new ProfileData(profile()))).build();
+    assertEquals(MARY, got.getId());
+    assertEquals(JOHN, got.getIdentity().getId());
+    assertEquals("john", got.getIdentity().getRemoteId());
+    assertEquals("John", got.getProperty(Profile.FIRST_NAME));
+    assertEquals(phones(), got.getProperty(Profile.CONTACT_PHONES));
+    assertEquals("/profile/john", got.getUrl());
+    assertEquals(3000, got.getCreatedTime());
+    assertFalse(got.hasChanged());
+  }
+
+  /**
+   * Footprint of the activity data, compared with the default serialization of the same fields,
+   * which was the former serialized form.
+   */
+  public void testActivityFootprint() throws Exception {
+    ExoSocialActivity activity = activity();
+    ActivityData data = new ActivityData(activity);
+    Object[] fields = fields(activity);
+
+    int compactSize = serialize(data).length;
+    int defaultSize = serialize(fields).length;
+    assertTrue(compactSize < defaultSize);
+  }
+
+  private ExoSocialActivity activity() {
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setId("5a6b7c8d9e0f1a2b3c4d5e6f7a8b9c0d");
+    activity.setTitle("john posted <b>a link</b>");
+    activity.setBody("a link to the eXo site");
+    activity.setUserId(JOHN);
+    activity.setPosterId(JOHN);
+    activity.setType("LINK_ACTIVITY");
+    activity.setLikeIdentityIds(new String[] {JOHN, MARY});
+    activity.setReplyToId(new String[] {"comment-1", "comment-2"});
+    activity.setMentionedIds(new String[] {MARY + "@1"});
+    activity.setCommentedIds(new String[] {JOHN + "@2"});
+    activity.isHidden(true);
+    activity.setPostedTime(1000L);
+    activity.setUpdated(2000L);
+    Map<String, String> templateParams = new LinkedHashMap<String, String>();
+    templateParams.put("link", "http://exoplatform.com");
+    templateParams.put("comment", "the eXo site");
+    activity.setTemplateParams(templateParams);
+    ActivityStream stream = activity.getActivityStream();
+    stream.setId(JOHN);
+    stream.setPrettyId("john");
+    stream.setType(ActivityStream.Type.USER);
+    return activity;
+  }
+
+  private Identity identity() {
+    Identity identity = new Identity(JOHN);
+    identity.setProviderId("organization");
+    identity.setRemoteId("john");
+    identity.setDeleted(true);
+    identity.setEnable(false);
+    return identity;
+  }
+
+  private Profile profile() {
+    Profile profile = new Profile(identity());
+    profile.setId(MARY);
+    profile.setProperty(Profile.FIRST_NAME, "John");
+    profile.setProperty(Profile.CONTACT_PHONES, phones());
+    profile.setUrl("/profile/john");
+    profile.setCreatedTime(3000L);
+    profile.clearHasChanged();
+    return profile;
+  }
+
+  private List<Map<String, String>> phones() {
+    Map<String, String> phone = new LinkedHashMap<String, String>();
+    phone.put("key", "work");
+    phone.put("value", "+33 1 23 45 67 89");
+    List<Map<String, String>> phones = new ArrayList<Map<String, String>>();
+    phones.add(phone);
+    return phones;
+  }
+
+  private Object[] fields(ExoSocialActivity activity) {
+    return new Object[] {
+        activity.getId(), activity.getTitle(), activity.getBody(), activity.getLikeIdentityIds(),
+        activity.isComment(), activity.isHidden(), activity.isLocked(), activity.getPostedTime(),
+        activity.getUpdated().getTime(), activity.getReplyToId(), activity.getUserId(), activity.getAppId(),
+        activity.getTitleId(), activity.getBodyId(), activity.getType(),
+        new LinkedHashMap<String, String>(activity.getTemplateParams()), activity.getExternalId(),
+        activity.getUrl(), activity.getStreamId(), activity.getStreamOwner(), activity.getStreamFaviconUrl(),
+        activity.getStreamSourceUrl(), activity.getStreamTitle(), activity.getStreamUrl(),
+        activity.getMentionedIds(), activity.getCommentedIds(), activity.getActivityStream().getType(),
+        activity.getPosterId(), activity.getParentId()
+    };
+  }
+
+  private Object roundTrip(Object o) throws Exception {
+    return deserialize(serialize(o));
+  }
+
+  private byte[] serialize(Object o) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(o);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  private Object deserialize(byte[] bytes) throws Exception {
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+    try {
+      return in.readObject();
+    }
+    finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache;
+
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+import org.exoplatform.social.core.storage.cache.model.data.ListSpacesData;
+import org.exoplatform.social.core.storage.cache.model.data.LongData;
+import org.exoplatform.social.core.storage.cache.model.key.GenerationKey;
+import org.exoplatform.social.core.storage.cache.model.key.ListSpacesKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceFilterKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceType;
+
+public class CacheGenerationsTest extends TestCase {
+
+  private ExoCache<GenerationKey, LongData> generationCache;
+  private CacheGenerations generations;
+
+  @Override
+  protected void setUp() throws Exception {
+    generationCache = new ConcurrentFIFOExoCache<GenerationKey, LongData>(1000);
+    generations = new CacheGenerations(generationCache);
+  }
+
+  public void testBump() throws Exception {
+    long spaces = generations.current(CacheGenerations.SPACES);
+    long john = generations.current(CacheGenerations.relationships("john"));
+    assertEquals(spaces, generations.current(CacheGenerations.SPACES));
+
+    generations.bump(CacheGenerations.SPACES);
+    assertTrue(spaces != generations.current(CacheGenerations.SPACES));
+    assertEquals(john, generations.current(CacheGenerations.relationships("john")));
+    assertEquals(1, generations.getBumps());
+  }
+
+  public void testEvictedGenerationDoesNotMatchFormerEntries() throws Exception {
+    long spaces = generations.current(CacheGenerations.SPACES);
+    generationCache.clearCache();
+    assertTrue(spaces != generations.current(CacheGenerations.SPACES));
+  }
+
+  public void testStampedKeys() throws Exception {
+    ExoCache<ListSpacesKey, ListSpacesData> listCache = new ConcurrentFIFOExoCache<ListSpacesKey, ListSpacesData>(1000);
+    ListSpacesKey key = listKey("john", 0);
+    listCache.put(key, new ListSpacesData(Collections.singletonList(new SpaceKey("s1"))));
+
+    assertEquals(key, listKey("john", 0));
+    assertEquals(key.hashCode(), listKey("john", 0).hashCode());
+    assertNotNull(listCache.get(listKey("john", 0)));
+
+    generations.bump(CacheGenerations.SPACES);
+    assertFalse(key.equals(listKey("john", 0)));
+    assertNull(listCache.get(listKey("john", 0)));
+  }
+
+  private ListSpacesKey listKey(String userId, long offset) {
+    SpaceFilterKey filterKey = new SpaceFilterKey(userId, null, SpaceType.MEMBER, generations.current(CacheGenerations.SPACES));
+    return new ListSpacesKey(filterKey, offset, 10);
+  }
+}
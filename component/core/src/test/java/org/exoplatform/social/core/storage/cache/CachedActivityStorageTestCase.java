@@ -29,6 +29,7 @@ import org.exoplatform.social.core.test.MaxQueryNumber;
 import org.exoplatform.social.core.test.QueryNumberTest;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -256,6 +257,51 @@ public class CachedActivityStorageTestCase extends AbstractCoreTest {
 
   }
   
+  @MaxQueryNumber(600)
+  public void testVisibleCommentsAndGetActivities() throws Exception {
+    //
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("hello");
+    activity.setUserId(identity.getId());
+    activityStorage.saveActivity(identity, activity);
+
+    //
+    List<ExoSocialActivity> comments = new ArrayList<ExoSocialActivity>();
+    for (int i = 0; i < 3; i++) {
+      ExoSocialActivity comment = new ExoSocialActivityImpl();
+      comment.setTitle("comment " + i);
+      comment.setUserId(identity.getId());
+      activityStorage.saveComment(activity, comment);
+      comments.add(comment);
+    }
+    assertEquals(3, activityStorage.getNumberOfComments(activity));
+
+    //
+    ExoSocialActivity hidden = activityStorage.getActivity(comments.get(1).getId());
+    hidden.isHidden(true);
+    activityStorage.updateActivity(hidden);
+    assertEquals(2, activityStorage.getNumberOfComments(activity));
+    assertEquals(2, activityStorage.getComments(activity, 0, 10).size());
+
+    //
+    activityStorage.deleteComment(activity.getId(), comments.get(0).getId());
+    assertEquals(1, activityStorage.getNumberOfComments(activity));
+    List<ExoSocialActivity> visible = activityStorage.getComments(activity, 0, 10);
+    assertEquals(1, visible.size());
+    assertEquals(comments.get(2).getId(), visible.get(0).getId());
+
+    //the cached and the missing activities are returned in the order of the ids
+    cacheService.getActivityCache().clearCache();
+    activityStorage.getActivity(comments.get(2).getId());
+    List<ExoSocialActivity> got = activityStorage.getActivities(
+        Arrays.asList(activity.getId(), comments.get(0).getId(), comments.get(2).getId()));
+    assertEquals(3, got.size());
+    assertEquals(activity.getId(), got.get(0).getId());
+    assertNull(got.get(1));
+    assertEquals(comments.get(2).getId(), got.get(2).getId());
+    assertEquals(3, cacheService.getActivityCache().getCacheSize());
+  }
+
   @MaxQueryNumber(926)
   public void testUpdateActivity() throws Exception {
     ExoSocialActivity activity = new ExoSocialActivityImpl();
@@ -129,12 +129,16 @@ public class CachedIdentityStorageTestCase extends AbstractCoreTest {
     assertEquals(0, cacheService.getIdentitiesCache().getCacheSize());
 
     ProfileFilter filter = new ProfileFilter();
-    identityStorage.getIdentitiesByProfileFilter(OrganizationIdentityProvider.NAME, filter, 0, 10, false);
+    int size = identityStorage.getIdentitiesByProfileFilter(OrganizationIdentityProvider.NAME, filter, 0, 10, false).size();
     assertEquals(1, cacheService.getIdentitiesCache().getCacheSize());
 
+    long generation = organizationGeneration();
     identityStorage.deleteIdentity(i);
     assertEquals(0, cacheService.getIdentityCache().getCacheSize());
-    assertEquals(0, cacheService.getIdentitiesCache().getCacheSize());
+
+    //the lists of the former generation are not looked up any more
+    assertTrue(generation != organizationGeneration());
+    assertEquals(size - 1, identityStorage.getIdentitiesByProfileFilter(OrganizationIdentityProvider.NAME, filter, 0, 10, false).size());
 
   }
 
@@ -213,21 +217,22 @@ public class CachedIdentityStorageTestCase extends AbstractCoreTest {
     assertEquals(1, cacheService.getIdentityCache().getCacheSize());
 
     assertEquals(0, cacheService.getCountIdentitiesCache().getCacheSize());
-    identityStorage.getIdentitiesByProfileFilterCount(OrganizationIdentityProvider.NAME, new ProfileFilter());
+    int count = identityStorage.getIdentitiesByProfileFilterCount(OrganizationIdentityProvider.NAME, new ProfileFilter());
     assertEquals(1, cacheService.getCountIdentitiesCache().getCacheSize());
 
     Identity i2 = new Identity(OrganizationIdentityProvider.NAME, "id2");
     identityStorage.saveIdentity(i2);
     tearDownIdentityList.add(i2.getId());
 
-    assertEquals(0, cacheService.getCountIdentitiesCache().getCacheSize());
-    identityStorage.getIdentitiesByProfileFilterCount(OrganizationIdentityProvider.NAME, new ProfileFilter());
-    assertEquals(1, cacheService.getCountIdentitiesCache().getCacheSize());
+    //the count is loaded again with the new identity
+    assertEquals(count + 1, identityStorage.getIdentitiesByProfileFilterCount(OrganizationIdentityProvider.NAME, new ProfileFilter()));
 
+    long generation = organizationGeneration();
     i2.setRemoteId("id3");
     identityStorage.updateIdentity(i2);
 
-    assertEquals(0, cacheService.getCountIdentitiesCache().getCacheSize());
+    assertTrue(generation != organizationGeneration());
+    assertEquals(count + 1, identityStorage.getIdentitiesByProfileFilterCount(OrganizationIdentityProvider.NAME, new ProfileFilter()));
 
   }
 
@@ -241,14 +246,17 @@ public class CachedIdentityStorageTestCase extends AbstractCoreTest {
     assertEquals(1, cacheService.getIdentityCache().getCacheSize());
 
     assertEquals(0, cacheService.getIdentitiesCache().getCacheSize());
-    identityStorage.getIdentitiesByProfileFilter(OrganizationIdentityProvider.NAME, new ProfileFilter(), 0, 10, false);
+    int size = identityStorage.getIdentitiesByProfileFilter(OrganizationIdentityProvider.NAME, new ProfileFilter(), 0, 10, false).size();
     assertEquals(1, cacheService.getIdentitiesCache().getCacheSize());
 
+    long generation = organizationGeneration();
     Identity i2 = new Identity(OrganizationIdentityProvider.NAME, "id2");
     identityStorage.saveIdentity(i2);
     tearDownIdentityList.add(i2.getId());
 
-    assertEquals(0, cacheService.getIdentitiesCache().getCacheSize());
+    //the list of the former generation is not looked up any more
+    assertTrue(generation != organizationGeneration());
+    assertEquals(size + 1, identityStorage.getIdentitiesByProfileFilter(OrganizationIdentityProvider.NAME, new ProfileFilter(), 0, 10, false).size());
 
   }
 
@@ -288,4 +296,40 @@ public class CachedIdentityStorageTestCase extends AbstractCoreTest {
     //expected root and john are active user.
     assertEquals(2, activeUsers.size());
   }
+
+  public void testAddActiveUser() throws Exception {
+    ActiveIdentityFilter filter = new ActiveIdentityFilter(15);
+    Set<String> activeUsers = identityStorage.getActiveUsers(filter);
+    assertFalse(activeUsers.contains("newcomer"));
+    try {
+      activeUsers.add("newcomer");
+      fail("the cached active users must be read only");
+    } catch (UnsupportedOperationException e) {
+      //expected
+    }
+
+    identityStorage.addActiveUser("newcomer");
+    Set<String> updated = identityStorage.getActiveUsers(filter);
+    assertTrue(updated.contains("newcomer"));
+    assertEquals(activeUsers.size() + 1, updated.size());
+  }
+
+  public void testFlushActiveUsers() throws Exception {
+    ActiveIdentityFilter filter = new ActiveIdentityFilter(15);
+    int size = identityStorage.getActiveUsers(filter).size();
+    identityStorage.addActiveUser("newcomer");
+    identityStorage.addActiveUser("latecomer");
+
+    //the logins are merged into the replicated data at once
+    identityStorage.flushActiveUsers();
+    ActiveIdentitiesData data = cacheService.getActiveIdentitiesCache().get(new ActiveIdentityKey(filter));
+    assertNotNull(data);
+    assertTrue(data.contains("newcomer"));
+    assertTrue(data.contains("latecomer"));
+    assertEquals(size + 2, identityStorage.getActiveUsers(filter).size());
+  }
+
+  private long organizationGeneration() {
+    return cacheService.getGenerations().current(CacheGenerations.identities(OrganizationIdentityProvider.NAME));
+  }
 }
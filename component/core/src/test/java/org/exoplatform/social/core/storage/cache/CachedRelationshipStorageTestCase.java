@@ -100,12 +100,20 @@ public class CachedRelationshipStorageTestCase extends AbstractCoreTest {
     assertEquals(0, cacheService.getRelationshipCache().getCacheSize());
     Relationship r = relationshipStorage.saveRelationship(new Relationship(i1, i2));
     assertEquals(1, cacheService.getRelationshipCache().getCacheSize());
-    relationshipStorage.getRelationshipsCount(i1);
-    relationshipStorage.getRelationships(i1, 0, 10);
-    relationshipStorage.getRelationships(i2, 0, 10);
+    assertEquals(1, relationshipStorage.getRelationshipsCount(i1));
+    assertEquals(1, relationshipStorage.getRelationships(i1, 0, 10).size());
+    assertEquals(1, relationshipStorage.getRelationships(i2, 0, 10).size());
+    long generation1 = generationOf(i1);
+    long generation2 = generationOf(i2);
     relationshipStorage.removeRelationship(r);
     assertEquals(0, cacheService.getRelationshipCache().getCacheSize());
-    assertEquals(0, cacheService.getRelationshipsCount().getCacheSize());
+
+    //the lists and counts of the former generation are not looked up any more
+    assertTrue(generation1 != generationOf(i1));
+    assertTrue(generation2 != generationOf(i2));
+    assertEquals(0, relationshipStorage.getRelationshipsCount(i1));
+    assertEquals(0, relationshipStorage.getRelationships(i1, 0, 10).size());
+    assertEquals(0, relationshipStorage.getRelationships(i2, 0, 10).size());
 
   }
 
@@ -348,6 +356,10 @@ public class CachedRelationshipStorageTestCase extends AbstractCoreTest {
   }
   
   
+  private long generationOf(Identity identity) {
+    return cacheService.getGenerations().current(CacheGenerations.relationships(identity.getId()));
+  }
+
   private Identity createIdentity(String remoteId) {
     Identity identity = new Identity("organization", remoteId);
     identityStorage.saveIdentity(identity);
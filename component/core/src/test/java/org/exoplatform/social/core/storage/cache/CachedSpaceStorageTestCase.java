@@ -113,6 +113,39 @@ public class CachedSpaceStorageTestCase extends AbstractCoreTest {
 
   }
   
+  @MaxQueryNumber(300)
+  public void testSpaceWriteBumpsItsUsers() throws Exception {
+    CacheGenerations generations = cacheService.getGenerations();
+
+    //
+    Space space = new Space();
+    space.setDisplayName("generations");
+    space.setPrettyName(space.getDisplayName());
+    space.setManagers(new String[] {"demo"});
+    space.setMembers(new String[] {"demo", "mary"});
+    cachedSpaceStorage.saveSpace(space, true);
+    tearDownSpaceList.add(space);
+    int count = cachedSpaceStorage.getMemberSpacesCount("mary");
+
+    //john is neither in the space nor in the bucket of demo or mary
+    long johnSpaces = generations.current(CacheGenerations.spaces("john"));
+    long users = generations.current(CacheGenerations.identities(OrganizationIdentityProvider.NAME));
+    space.setMembers(new String[] {"demo"});
+    cachedSpaceStorage.saveSpace(space, false);
+    assertEquals(count - 1, cachedSpaceStorage.getMemberSpacesCount("mary"));
+    assertEquals(johnSpaces, generations.current(CacheGenerations.spaces("john")));
+    assertEquals(users, generations.current(CacheGenerations.identities(OrganizationIdentityProvider.NAME)));
+
+    //an access only changes the spaces of the user
+    long demoSpaces = generations.current(CacheGenerations.spaces("demo"));
+    long marySpaces = generations.current(CacheGenerations.spaces("mary"));
+    long allSpaces = generations.current(CacheGenerations.SPACES);
+    cachedSpaceStorage.updateSpaceAccessed("demo", space);
+    assertTrue(demoSpaces != generations.current(CacheGenerations.spaces("demo")));
+    assertEquals(marySpaces, generations.current(CacheGenerations.spaces("mary")));
+    assertEquals(allSpaces, generations.current(CacheGenerations.SPACES));
+  }
+
   /**
    * Test {@link CachedSpaceStorage#renameSpace(Space, String)}
    * 
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache;
+
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.services.jcr.RepositoryService;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityKey;
+import org.exoplatform.social.core.test.AbstractCoreTest;
+
+/**
+ * Construction benchmark of the cache keys, not part of the test suites:
+ * mvn test -Dtest=ScopeCacheKeyBenchmark
+ */
+public class ScopeCacheKeyBenchmark extends AbstractCoreTest {
+
+  /** the number of keys built by each benchmark round */
+  private static final int KEYS = 100000;
+
+  /**
+   * The former scope resolution looked the repository service up in the container for each key,
+   * the keys now reuse the resolved scope.
+   */
+  public void testKeyConstructionThroughput() throws Exception {
+    //warm up
+    lookupKeys();
+    cachedKeys();
+
+    long lookup = lookupKeys();
+    long cached = cachedKeys();
+    System.out.println("\nCache key construction + hashCode/equals (keys/s)\nlookup\tcached\n" + lookup + "\t" + cached + "\n");
+  }
+
+  private long lookupKeys() throws Exception {
+    long start = System.nanoTime();
+    int hashes = 0;
+    for (int i = 0; i < KEYS; i++) {
+      RepositoryService service = (RepositoryService) PortalContainer.getInstance().getComponentInstanceOfType(RepositoryService.class);
+      String scope = service.getCurrentRepository().getConfiguration().getName();
+      hashes += 31 * scope.hashCode() + ("a" + (i & 0xFF)).hashCode();
+    }
+    assertTrue(hashes != 1);
+    return KEYS * 1000000000L / Math.max(System.nanoTime() - start, 1);
+  }
+
+  private long cachedKeys() {
+    long start = System.nanoTime();
+    ActivityKey probe = new ActivityKey("a7");
+    int equals = 0;
+    int expected = 0;
+    for (int i = 0; i < KEYS; i++) {
+      ActivityKey key = new ActivityKey("a" + (i & 0xFF));
+      if (key.hashCode() == probe.hashCode() && key.equals(probe)) {
+        equals++;
+      }
+      if ((i & 0xFF) == 7) {
+        expected++;
+      }
+    }
+    assertEquals(expected, equals);
+    return KEYS * 1000000000L / Math.max(System.nanoTime() - start, 1);
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache;
+
+import org.exoplatform.services.jcr.RepositoryService;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityCountKey;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityKey;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityType;
+import org.exoplatform.social.core.storage.cache.model.key.IdentityKey;
+import org.exoplatform.social.core.storage.cache.model.key.ListActivitiesKey;
+import org.exoplatform.social.core.test.AbstractCoreTest;
+
+public class ScopeCacheKeyTestCase extends AbstractCoreTest {
+
+  private RepositoryService repositoryService;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    repositoryService = getService(RepositoryService.class);
+  }
+
+  public void testScopeIsCurrentRepository() throws Exception {
+    String name = repositoryService.getCurrentRepository().getConfiguration().getName();
+    ActivityKey first = new ActivityKey("a1");
+    ActivityKey second = new ActivityKey("a1");
+    assertEquals(name, first.getScope());
+    assertSame(first.getScope(), second.getScope());
+  }
+
+  public void testHashAndEquals() throws Exception {
+    IdentityKey john = new IdentityKey(new Identity("john"));
+    ListActivitiesKey first = new ListActivitiesKey(new ActivityCountKey(john, ActivityType.FEED), 0, 20);
+    ListActivitiesKey second = new ListActivitiesKey(new ActivityCountKey(john, ActivityType.FEED), 0, 20);
+    ListActivitiesKey other = new ListActivitiesKey(new ActivityCountKey(john, ActivityType.FEED), 20, 20);
+    assertEquals(first, second);
+    assertEquals(first.hashCode(), second.hashCode());
+    assertEquals(first.hashCode(), first.hashCode());
+    assertFalse(first.equals(other));
+    assertFalse(other.equals(first));
+  }
+
+  public void testEqualsOfManyKeys() throws Exception {
+    ActivityKey probe = new ActivityKey("a7");
+    int equals = 0;
+    for (int i = 0; i < 1000; i++) {
+      ActivityKey key = new ActivityKey("a" + (i & 0xFF));
+      assertSame(probe.getScope(), key.getScope());
+      if (key.hashCode() == probe.hashCode() && key.equals(probe)) {
+        equals++;
+      }
+    }
+    //a7 is built for i = 7, 263, 519 and 775
+    assertEquals(4, equals);
+  }
+}
@@ -19,11 +19,18 @@ package org.exoplatform.social.core.storage.impl;
 
 import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.social.core.BaseActivityProcessorPlugin;
+import org.exoplatform.social.core.activity.ActivityPageAssembler;
+import org.exoplatform.social.core.activity.ActivityPageView;
+import org.exoplatform.social.core.activity.ActivityView;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.application.RelationshipPublisher.TitleId;
+import org.exoplatform.social.core.chromattic.entity.ActivityEntity;
+import org.exoplatform.social.core.chromattic.entity.CommentCounterEntity;
 import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.model.Profile;
 import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
+import org.exoplatform.social.core.processor.ActivityProcessingCache;
 import org.exoplatform.social.core.space.impl.DefaultSpaceApplicationHandler;
 import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.storage.ActivityStorageException;
@@ -1048,6 +1055,147 @@ public class ActivityStorageImplTestCase extends AbstractCoreTest {
 
   }
 
+  /**
+   * The write-time processors are run by the first getActivity only.
+   */
+  public void testActivityProcessingCache() throws Exception {
+    ActivityProcessingCache processingCache = (ActivityProcessingCache) getContainer().getComponentInstanceOfType(ActivityProcessingCache.class);
+    assertNotNull(processingCache);
+
+    List<String> activityIds = new ArrayList<String>();
+    for (int i = 0; i < 20; i++) {
+      ExoSocialActivity activity = new ExoSocialActivityImpl();
+      activity.setTitle("hello @mary and @john <b>" + i + "</b><script>alert(" + i + ")</script>");
+      activity.setBody("body @demo");
+      activityStorage.saveActivity(rootIdentity, activity);
+      tearDownActivityList.add(activity);
+      activityIds.add(activity.getId());
+    }
+    processingCache.clear();
+    long misses = processingCache.getMisses();
+    long hits = processingCache.getHits();
+
+    List<String> titles = new ArrayList<String>();
+    for (String activityId : activityIds) {
+      titles.add(activityStorage.getActivity(activityId).getTitle());
+    }
+    assertEquals(misses + 20, processingCache.getMisses());
+    assertFalse(titles.get(0).contains("<script>"));
+
+    for (int round = 0; round < 10; round++) {
+      for (int i = 0; i < activityIds.size(); i++) {
+        assertEquals(titles.get(i), activityStorage.getActivity(activityIds.get(i)).getTitle());
+      }
+    }
+    assertEquals(misses + 20, processingCache.getMisses());
+    assertEquals(hits + 200, processingCache.getHits());
+
+    //the mentions are resolved again once an identity changed
+    identityStorage.updateIdentity(maryIdentity);
+    activityStorage.getActivity(activityIds.get(0));
+    assertEquals(misses + 21, processingCache.getMisses());
+
+    //and once a profile changed, the links contain the full names
+    identityStorage.saveProfile(identityStorage.loadProfile(new Profile(maryIdentity)));
+    activityStorage.getActivity(activityIds.get(0));
+    assertEquals(misses + 22, processingCache.getMisses());
+  }
+
+  /**
+   * The activities of a page, their comments and their identities are loaded with a few storage calls.
+   */
+  public void testActivityPageAssembler() throws Exception {
+    ActivityPageAssembler assembler = (ActivityPageAssembler) getContainer().getComponentInstanceOfType(ActivityPageAssembler.class);
+    assertNotNull(assembler);
+
+    List<String> activityIds = new ArrayList<String>();
+    for (int i = 0; i < 10; i++) {
+      ExoSocialActivity activity = new ExoSocialActivityImpl();
+      activity.setTitle("activity " + i);
+      activity.setLikeIdentityIds(new String[] {maryIdentity.getId(), demoIdentity.getId()});
+      activityStorage.saveActivity(rootIdentity, activity);
+      tearDownActivityList.add(activity);
+      activityIds.add(activity.getId());
+      for (int j = 0; j < 3; j++) {
+        ExoSocialActivity comment = new ExoSocialActivityImpl();
+        comment.setTitle("comment " + j);
+        comment.setUserId(j % 2 == 0 ? johnIdentity.getId() : maryIdentity.getId());
+        activityStorage.saveComment(activity, comment);
+      }
+    }
+    activityIds.add("notFound");
+
+    //the window holds all the comments
+    long calls = assembler.getStorageCalls();
+    ActivityPageView page = assembler.assemble(activityIds, 5, false, 1);
+    assertEquals(10, page.getViews().size());
+    assertEquals(3, page.getStorageCalls());
+    assertEquals(calls + 3, assembler.getStorageCalls());
+    ActivityView view = page.getView(activityIds.get(0));
+    assertEquals("activity 0", view.getActivity().getTitle());
+    assertEquals(rootIdentity.getId(), view.getPoster().getId());
+    assertNotNull(view.getPoster().getProfile());
+    assertEquals(3, view.getNumberOfComments());
+    assertEquals("comment 0", view.getComments().get(0).getTitle());
+    assertEquals(1, view.getLikers().size());
+    assertEquals(demoIdentity.getId(), view.getLikers().get(0).getId());
+    assertEquals(johnIdentity.getId(), page.getIdentity(johnIdentity.getId()).getId());
+    assertNull(page.getView("notFound"));
+
+    //the latest comments, counted by the storage
+    page = assembler.assemble(activityIds, 2, true, 0);
+    view = page.getView(activityIds.get(9));
+    assertEquals(3, view.getNumberOfComments());
+    assertEquals(2, view.getComments().size());
+    assertEquals("comment 1", view.getComments().get(0).getTitle());
+    assertEquals("comment 2", view.getComments().get(1).getTitle());
+    assertTrue(page.getStorageCalls() < 2 * 10);
+  }
+
+  /**
+   * A comment counter which drifted, lost updates of concurrent sessions or a stale count, is counted
+   * again from the comments by the next comment write.
+   */
+  public void testVisibleCommentsRecount() throws Exception {
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("commented");
+    activityStorage.saveActivity(rootIdentity, activity);
+    tearDownActivityList.add(activity);
+    for (int i = 0; i < 2; i++) {
+      ExoSocialActivity comment = new ExoSocialActivityImpl();
+      comment.setTitle("comment " + i);
+      comment.setUserId(johnIdentity.getId());
+      activityStorage.saveComment(activity, comment);
+    }
+    assertEquals(2, activityStorage.getNumberOfComments(activity));
+
+    //a negative counter
+    ActivityEntity activityEntity = activityStorage._findById(ActivityEntity.class, activity.getId());
+    activityStorage._getMixin(activityEntity, CommentCounterEntity.class, true).setVisibleComments(-4);
+    activityStorage.getSession().save();
+    ExoSocialActivity comment = new ExoSocialActivityImpl();
+    comment.setTitle("comment 2");
+    comment.setUserId(johnIdentity.getId());
+    activityStorage.saveComment(activity, comment);
+    assertEquals(3, activityStorage.getNumberOfComments(activity));
+
+    //a counter which lost updates, not counted for a while
+    activityEntity = activityStorage._findById(ActivityEntity.class, activity.getId());
+    CommentCounterEntity counter = activityStorage._getMixin(activityEntity, CommentCounterEntity.class, true);
+    counter.setVisibleComments(1);
+    counter.setCountedAt(0L);
+    activityStorage.getSession().save();
+    comment = new ExoSocialActivityImpl();
+    comment.setTitle("comment 3");
+    comment.setUserId(johnIdentity.getId());
+    activityStorage.saveComment(activity, comment);
+    assertEquals(4, activityStorage.getNumberOfComments(activity));
+
+    //the counted one is updated by the next writes
+    activityStorage.deleteComment(activity.getId(), comment.getId());
+    assertEquals(3, activityStorage.getNumberOfComments(activity));
+  }
+
   class DummyProcessor extends BaseActivityProcessorPlugin {
 
     DummyProcessor(final InitParams params) {
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.storage.streams.StreamFanOutQueue.PendingStream;
+
+public class StreamFanOutQueueTest extends TestCase {
+
+  private final Identity mary = new Identity("mary");
+  private final Identity john = new Identity("john");
+  private final Identity demo = new Identity("demo");
+
+  public void testCoalesceByStream() throws Exception {
+    StreamFanOutQueue queue = new StreamFanOutQueue(100, 100);
+    assertTrue(queue.offer("a1", Arrays.asList(mary, john)));
+    assertTrue(queue.offer("a2", Arrays.asList(mary, demo)));
+    //the same activity is queued once per stream
+    assertTrue(queue.offer("a2", Arrays.asList(mary)));
+    assertEquals(4, queue.getDepth());
+
+    List<PendingStream> batch = queue.poll();
+    assertEquals(3, batch.size());
+    assertEquals(mary, batch.get(0).getTarget());
+    assertEquals(Arrays.asList("a1", "a2"), Arrays.asList(batch.get(0).getActivityIds().toArray()));
+    assertEquals(0, queue.getDepth());
+    assertTrue(queue.poll().isEmpty());
+
+    queue.done(batch);
+    assertEquals(1, queue.getBatches());
+    assertEquals(4, queue.getLastBatchSize());
+  }
+
+  public void testBatchSize() throws Exception {
+    StreamFanOutQueue queue = new StreamFanOutQueue(100, 2);
+    queue.offer("a1", Arrays.asList(mary, john, demo));
+    assertEquals(2, queue.poll().size());
+    assertEquals(1, queue.getDepth());
+    assertEquals(1, queue.poll().size());
+  }
+
+  public void testBackPressure() throws Exception {
+    StreamFanOutQueue queue = new StreamFanOutQueue(2, 10);
+    assertTrue(queue.offer("a1", Arrays.asList(mary, john)));
+    assertFalse(queue.offer("a2", Arrays.asList(demo)));
+    assertEquals(1, queue.getRejected());
+    assertEquals(2, queue.getDepth());
+    queue.poll();
+    assertTrue(queue.offer("a2", Arrays.asList(demo)));
+  }
+
+  public void testDrainScheduledOnce() throws Exception {
+    StreamFanOutQueue queue = new StreamFanOutQueue(100, 10);
+    assertTrue(queue.startDrain());
+    assertFalse(queue.startDrain());
+    //queued during the drain, it must go on
+    queue.offer("a1", Arrays.asList(mary));
+    assertTrue(queue.endDrain());
+    queue.poll();
+    assertFalse(queue.endDrain());
+    assertTrue(queue.startDrain());
+  }
+
+  public void testCancelDrain() throws Exception {
+    StreamFanOutQueue queue = new StreamFanOutQueue(100, 10);
+    assertTrue(queue.startDrain());
+    queue.offer("a1", Arrays.asList(mary));
+    //the drain could not be scheduled, the next fan-out schedules it
+    queue.cancelDrain();
+    assertEquals(1, queue.getDepth());
+    assertTrue(queue.startDrain());
+  }
+
+  public void testTakeOverLostDrain() throws Exception {
+    StreamFanOutQueue queue = new StreamFanOutQueue(100, 10, 0);
+    assertTrue(queue.startDrain());
+    Thread.sleep(5);
+    assertTrue(queue.startDrain());
+    assertEquals(1, queue.getTakenOver());
+
+    queue = new StreamFanOutQueue(100, 10, 60000);
+    assertTrue(queue.startDrain());
+    assertFalse(queue.startDrain());
+    assertEquals(0, queue.getTakenOver());
+  }
+
+  public void testRetry() throws Exception {
+    StreamFanOutQueue queue = new StreamFanOutQueue(100, 10);
+    queue.offer("a1", Arrays.asList(mary, john));
+    List<PendingStream> batch = queue.poll();
+    queue.offer("a2", Arrays.asList(mary));
+
+    queue.retry(batch);
+    assertEquals(3, queue.getDepth());
+    assertEquals(2, queue.getRetried());
+    List<PendingStream> retried = queue.poll();
+    assertEquals(2, retried.size());
+    assertEquals(Arrays.asList("a2", "a1"), Arrays.asList(retried.get(0).getActivityIds().toArray()));
+    assertEquals(0, queue.getBatches());
+
+    //mary's references were merged into a new stream, john's stream is dropped at its third failure
+    queue.retry(retried);
+    queue.retry(queue.poll());
+    assertEquals(1, queue.getDropped());
+    assertEquals(2, queue.getDepth());
+    assertEquals(mary, queue.poll().get(0).getTarget());
+  }
+}
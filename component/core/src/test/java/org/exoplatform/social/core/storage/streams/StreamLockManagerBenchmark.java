@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import junit.framework.TestCase;
+
+/**
+ * Contention benchmark of the stream locks, not part of the test suites:
+ * mvn test -Dtest=StreamLockManagerBenchmark
+ */
+public class StreamLockManagerBenchmark extends TestCase {
+
+  /** the time spent in the critical section by each simulated fan-out */
+  private static final long WORK_MILLIS = 2;
+
+  /** the duration of each benchmark round */
+  private static final long ROUND_MILLIS = 500;
+
+  /**
+   * Each thread simulates the fan-out of the activities posted by its own owner. With a single
+   * stripe (the former global lock) the throughput stays flat, with the striped locks it grows
+   * with the number of threads.
+   */
+  public void testContentionThroughput() throws Exception {
+    int[] threadCounts = {1, 2, 4, 8};
+    long globalMax = 0;
+    long stripedMax = 0;
+    StringBuilder report = new StringBuilder("\nStream lock contention (ops/s)\nthreads\tglobal\tstriped\n");
+    for (int threads : threadCounts) {
+      long global = throughput(new StreamLockManager(1), threads, 1);
+      long striped = throughput(new StreamLockManager(), threads, 1);
+      report.append(threads).append('\t').append(global).append('\t').append(striped).append('\n');
+      globalMax = Math.max(globalMax, global);
+      stripedMax = Math.max(stripedMax, striped);
+    }
+    System.out.println(report);
+    assertTrue("striped locks must scale with the number of threads", stripedMax > globalMax * 2);
+  }
+
+  /**
+   * Each thread writes the streams of several owners at once, as a like, a comment or a small
+   * fan-out page: the writes of different owners still run in parallel up to the global lock
+   * threshold, half of the stripes.
+   */
+  public void testMultipleOwnersThroughput() throws Exception {
+    int[] ownerCounts = {2, 8, 32};
+    StringBuilder report = new StringBuilder("\nStream lock contention, 8 threads (ops/s)\nowners\tglobal\tstriped\n");
+    for (int owners : ownerCounts) {
+      long global = throughput(new StreamLockManager(1), 8, owners);
+      long striped = throughput(new StreamLockManager(), 8, owners);
+      report.append(owners).append('\t').append(global).append('\t').append(striped).append('\n');
+      assertTrue(striped >= global / 2);
+    }
+    System.out.println(report);
+  }
+
+  private long throughput(final StreamLockManager manager, int threads, int owners) throws Exception {
+    final AtomicInteger operations = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    final long deadline = System.currentTimeMillis() + ROUND_MILLIS;
+    Thread[] workers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      final String[] ownerIds = new String[owners];
+      for (int j = 0; j < owners; j++) {
+        ownerIds[j] = "owner" + i + "-" + j;
+      }
+      workers[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            while (System.currentTimeMillis() < deadline) {
+              Lock lock = manager.writeLock(ownerIds);
+              lock.lock();
+              try {
+                Thread.sleep(WORK_MILLIS);
+              } finally {
+                lock.unlock();
+              }
+              operations.incrementAndGet();
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      };
+      workers[i].start();
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    return operations.get() * 1000L / ROUND_MILLIS;
+  }
+}
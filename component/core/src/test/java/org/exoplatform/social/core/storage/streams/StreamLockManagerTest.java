@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import junit.framework.TestCase;
+
+public class StreamLockManagerTest extends TestCase {
+
+  public void testStripesRoundedToPowerOfTwo() throws Exception {
+    assertEquals(64, new StreamLockManager().getStripes());
+    assertEquals(1, new StreamLockManager(1).getStripes());
+    assertEquals(8, new StreamLockManager(5).getStripes());
+    assertEquals(16, new StreamLockManager(16).getStripes());
+  }
+
+  public void testSameOwnerIsExclusive() throws Exception {
+    final StreamLockManager manager = new StreamLockManager();
+    Lock lock = manager.writeLock("owner");
+    lock.lock();
+    try {
+      final AtomicInteger acquired = new AtomicInteger();
+      Thread other = new Thread() {
+        @Override
+        public void run() {
+          if (manager.writeLock("owner").tryLock()) {
+            acquired.incrementAndGet();
+          }
+          if (manager.readLock("owner").tryLock()) {
+            acquired.incrementAndGet();
+          }
+        }
+      };
+      other.start();
+      other.join();
+      assertEquals(0, acquired.get());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void testReentrant() throws Exception {
+    StreamLockManager manager = new StreamLockManager();
+    Lock lock = manager.writeLock("owner");
+    lock.lock();
+    try {
+      Lock inner = manager.writeLock("owner");
+      assertTrue(inner.tryLock());
+      inner.unlock();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void testMultipleOwnersNoDeadlock() throws Exception {
+    final StreamLockManager manager = new StreamLockManager(4);
+    final CountDownLatch done = new CountDownLatch(2);
+    final int loops = 10000;
+    Thread senderFirst = new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < loops; i++) {
+          Lock lock = manager.writeLock("sender" + (i % 7), "receiver" + (i % 5));
+          lock.lock();
+          lock.unlock();
+        }
+        done.countDown();
+      }
+    };
+    Thread receiverFirst = new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < loops; i++) {
+          Lock lock = manager.writeLock("receiver" + (i % 5), "sender" + (i % 7));
+          lock.lock();
+          lock.unlock();
+        }
+        done.countDown();
+      }
+    };
+    senderFirst.start();
+    receiverFirst.start();
+    assertTrue("the multiple owners lock is deadlocked", done.await(30, TimeUnit.SECONDS));
+  }
+
+  public void testMultipleOwnersSameStripe() throws Exception {
+    StreamLockManager manager = new StreamLockManager(1);
+    Lock lock = manager.writeLock("sender", "receiver");
+    assertTrue(lock.tryLock());
+    lock.unlock();
+    assertTrue(manager.writeLock("sender").tryLock());
+  }
+
+  public void testOtherStripesNotBlocked() throws Exception {
+    final StreamLockManager manager = new StreamLockManager();
+    String owner = "owner0";
+    String other = null;
+    for (int i = 1; other == null; i++) {
+      if (manager.writeLock("owner" + i) != manager.writeLock(owner)) {
+        other = "owner" + i;
+      }
+    }
+    final String free = other;
+    Lock lock = manager.writeLock(owner);
+    lock.lock();
+    try {
+      final AtomicInteger acquired = new AtomicInteger();
+      Thread writer = new Thread() {
+        @Override
+        public void run() {
+          Lock lock = manager.writeLock(free);
+          if (lock.tryLock()) {
+            acquired.incrementAndGet();
+            lock.unlock();
+          }
+        }
+      };
+      writer.start();
+      writer.join();
+      assertEquals(1, acquired.get());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void testManyOwnersTakeGlobalLock() throws Exception {
+    final StreamLockManager manager = new StreamLockManager(8);
+    assertSame(manager.globalLock(), manager.writeLock("a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l"));
+    assertNotSame(manager.globalLock(), manager.writeLock("a", "b"));
+
+    //
+    Lock lock = manager.globalLock();
+    lock.lock();
+    try {
+      final AtomicInteger acquired = new AtomicInteger();
+      Thread writer = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 100; i++) {
+            Lock lock = manager.writeLock("owner" + i);
+            if (lock.tryLock()) {
+              acquired.incrementAndGet();
+              lock.unlock();
+            }
+          }
+        }
+      };
+      writer.start();
+      writer.join();
+      assertEquals(0, acquired.get());
+    } finally {
+      lock.unlock();
+    }
+    assertTrue(manager.writeLock("owner0").tryLock());
+  }
+}
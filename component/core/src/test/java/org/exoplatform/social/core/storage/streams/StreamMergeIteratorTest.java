@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+public class StreamMergeIteratorTest extends TestCase {
+
+  private static final Comparator<Integer> DESC = Collections.reverseOrder();
+
+  public void testMergeKeepsOrder() throws Exception {
+    List<Integer> merged = merge(Arrays.asList(9, 5, 1), Arrays.asList(8, 7, 2), Arrays.asList(6, 3));
+    assertEquals(Arrays.asList(9, 8, 7, 6, 5, 3, 2, 1), merged);
+  }
+
+  public void testEmptyStreams() throws Exception {
+    assertTrue(merge().isEmpty());
+    assertEquals(Arrays.asList(3, 1), merge(Collections.<Integer>emptyList(), Arrays.asList(3, 1),
+                                            Collections.<Integer>emptyList()));
+  }
+
+  public void testEqualValuesKeepStreamOrder() throws Exception {
+    //compares the tens only, the units tell the stream
+    Comparator<Integer> tens = new Comparator<Integer>() {
+      public int compare(Integer o1, Integer o2) {
+        return o2 / 10 - o1 / 10;
+      }
+    };
+    List<Iterator<Integer>> streams = new ArrayList<Iterator<Integer>>();
+    streams.add(Arrays.asList(21, 11).iterator());
+    streams.add(Arrays.asList(22, 12).iterator());
+    StreamMergeIterator<Integer> it = new StreamMergeIterator<Integer>(streams, tens);
+    List<Integer> merged = new ArrayList<Integer>();
+    while (it.hasNext()) {
+      merged.add(it.next());
+    }
+    assertEquals(Arrays.asList(21, 22, 11, 12), merged);
+  }
+
+  public void testReadsOnlyTheHeads() throws Exception {
+    final int[] read = new int[1];
+    List<Iterator<Integer>> streams = new ArrayList<Iterator<Integer>>();
+    for (int i = 0; i < 3; i++) {
+      final Iterator<Integer> values = Arrays.asList(30 - i, 20 - i, 10 - i).iterator();
+      streams.add(new Iterator<Integer>() {
+        public boolean hasNext() {
+          return values.hasNext();
+        }
+        public Integer next() {
+          read[0]++;
+          return values.next();
+        }
+        public void remove() {
+        }
+      });
+    }
+    StreamMergeIterator<Integer> it = new StreamMergeIterator<Integer>(streams, DESC);
+    assertEquals(Integer.valueOf(30), it.next());
+    //one head per stream plus the next value of the consumed stream
+    assertEquals(4, read[0]);
+  }
+
+  public void testNextOnEmpty() throws Exception {
+    StreamMergeIterator<Integer> it = new StreamMergeIterator<Integer>(new ArrayList<Iterator<Integer>>(), DESC);
+    try {
+      it.next();
+      fail();
+    } catch (NoSuchElementException e) {
+      //expected
+    }
+  }
+
+  private List<Integer> merge(List<Integer>... values) {
+    List<Iterator<Integer>> streams = new ArrayList<Iterator<Integer>>();
+    for (List<Integer> stream : values) {
+      streams.add(stream.iterator());
+    }
+    List<Integer> merged = new ArrayList<Integer>();
+    StreamMergeIterator<Integer> it = new StreamMergeIterator<Integer>(streams, DESC);
+    while (it.hasNext()) {
+      merged.add(it.next());
+    }
+    return merged;
+  }
+}
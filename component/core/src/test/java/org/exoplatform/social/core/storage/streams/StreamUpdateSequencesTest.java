@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
+
+public class StreamUpdateSequencesTest extends TestCase {
+
+  public void testBump() throws Exception {
+    StreamUpdateSequences sequences = new StreamUpdateSequences(100);
+    long start = sequences.getSequence("mary");
+    //an unknown client is told all the streams changed
+    assertEquals(ActivityRefType.values().length, sequences.getUpdated("mary", 0).size());
+    assertTrue(sequences.getUpdated("mary", start).isEmpty());
+
+    long feed = sequences.bump("mary", ActivityRefType.FEED);
+    long connection = sequences.bump("mary", ActivityRefType.CONNECTION);
+    assertTrue(connection > feed && feed > start);
+    assertEquals(connection, sequences.getSequence("mary"));
+    assertEquals(feed, sequences.getSequence("mary", ActivityRefType.FEED));
+    assertEquals(Arrays.asList(ActivityRefType.FEED, ActivityRefType.CONNECTION), sequences.getUpdated("mary", start));
+    assertEquals(Arrays.asList(ActivityRefType.CONNECTION), sequences.getUpdated("mary", feed));
+    assertTrue(sequences.getUpdated("mary", connection).isEmpty());
+    assertEquals(start, sequences.getSequence("john"));
+  }
+
+  public void testLink() throws Exception {
+    StreamUpdateSequences sequences = new StreamUpdateSequences(100);
+    long start = sequences.getSequence("mary");
+    sequences.link("space", ActivityRefType.SPACE_STREAM, "mary", ActivityRefType.MY_SPACES);
+    sequences.link("space", ActivityRefType.SPACE_STREAM, "mary", ActivityRefType.MY_SPACES);
+
+    long space = sequences.bump("space", ActivityRefType.SPACE_STREAM);
+    assertEquals(space, sequences.getSequence("mary", ActivityRefType.MY_SPACES));
+    assertEquals(Arrays.asList(ActivityRefType.MY_SPACES), sequences.getUpdated("mary", start));
+    assertEquals(1, sequences.getBumps());
+  }
+
+  public void testEvict() throws Exception {
+    StreamUpdateSequences sequences = new StreamUpdateSequences(2);
+    long start = sequences.getSequence("mary");
+    long mary = sequences.bump("mary", ActivityRefType.FEED);
+    long john = sequences.bump("john", ActivityRefType.FEED);
+    assertEquals(2, sequences.getIdentities());
+
+    //a third identity forgets the least recently changed one
+    sequences.bump("demo", ActivityRefType.FEED);
+    assertEquals(2, sequences.getIdentities());
+    assertEquals(1, sequences.getEvictions());
+    assertEquals(0, sequences.getFullClears());
+    assertEquals(mary, sequences.getSequence("mary"));
+    assertTrue(sequences.getUpdated("mary", mary).isEmpty());
+    assertEquals(ActivityRefType.values().length, sequences.getUpdated("mary", start).size());
+    assertTrue(sequences.getUpdated("john", john).isEmpty());
+  }
+
+  public void testClear() throws Exception {
+    StreamUpdateSequences sequences = new StreamUpdateSequences(100);
+    long mary = sequences.bump("mary", ActivityRefType.FEED);
+    sequences.clear();
+    assertEquals(0, sequences.getIdentities());
+    assertEquals(1, sequences.getFullClears());
+    assertEquals(ActivityRefType.values().length, sequences.getUpdated("mary", mary).size());
+  }
+
+  public void testLinkDropped() throws Exception {
+    StreamUpdateSequences sequences = new StreamUpdateSequences(3);
+    long start = sequences.getSequence("mary");
+    sequences.link("space", ActivityRefType.SPACE_STREAM, "mary", ActivityRefType.MY_SPACES);
+    long linked = sequences.bump("space", ActivityRefType.SPACE_STREAM);
+    sequences.bump("space", ActivityRefType.MY_ACTIVITIES);
+    assertEquals(Arrays.asList(ActivityRefType.MY_SPACES), sequences.getUpdated("mary", start));
+
+    //mary is forgotten, the space bumps drop the link instead of knowing mary again
+    sequences.bump("john", ActivityRefType.FEED);
+    sequences.bump("demo", ActivityRefType.FEED);
+    assertEquals(1, sequences.getEvictions());
+    long space = sequences.bump("space", ActivityRefType.SPACE_STREAM);
+    assertEquals(3, sequences.getIdentities());
+    assertEquals(linked, sequences.getSequence("mary"));
+    assertTrue(linked < space);
+  }
+
+  public void testAwait() throws Exception {
+    final StreamUpdateSequences sequences = new StreamUpdateSequences(100);
+    long since = sequences.getSequence("mary");
+    assertEquals(Collections.emptyList(), sequences.await("mary", since, 10));
+
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          while (sequences.getWaiting() == 0) {
+            Thread.sleep(5);
+          }
+        } catch (InterruptedException e) {
+          return;
+        }
+        sequences.bump("mary", ActivityRefType.MY_ACTIVITIES);
+      }
+    };
+    writer.start();
+    List<ActivityRefType> updated = sequences.await("mary", since, 10000);
+    writer.join();
+    assertEquals(Arrays.asList(ActivityRefType.MY_ACTIVITIES), updated);
+    assertEquals(1, sequences.getWakeUps());
+    assertEquals(0, sequences.getWaiting());
+  }
+
+  public void testMaxWaiting() throws Exception {
+    StreamUpdateSequences sequences = new StreamUpdateSequences(100, 0, true);
+    long since = sequences.getSequence("mary");
+    assertNull(sequences.await("mary", since, 10000));
+    assertEquals(1, sequences.getRejectedWaits());
+    assertEquals(0, sequences.getWaiting());
+  }
+
+  public void testDisabled() throws Exception {
+    assertFalse(new StreamUpdateSequences((InitParams) null).isEnabled());
+    StreamUpdateSequences sequences = new StreamUpdateSequences(100, 10, false);
+    long start = sequences.getSequence("mary");
+    sequences.bump("mary", ActivityRefType.FEED);
+    assertFalse(sequences.isEnabled());
+    assertEquals(start, sequences.getSequence("mary"));
+    assertEquals(0, sequences.getBumps());
+  }
+
+  public void testBumpTouched() throws Exception {
+    StreamUpdateSequences sequences = new StreamUpdateSequences(100);
+    long start = sequences.getSequence("mary");
+    Map<String, Set<ActivityRefType>> touched = new HashMap<String, Set<ActivityRefType>>();
+    touched.put("mary", EnumSet.of(ActivityRefType.FEED, ActivityRefType.MY_SPACES));
+    sequences.bump(touched);
+    assertEquals(Arrays.asList(ActivityRefType.FEED, ActivityRefType.MY_SPACES), sequences.getUpdated("mary", start));
+  }
+
+  /**
+   * 10 rounds of polls of 10k clients, one client in ten having a changed stream.
+   */
+  public void testPoll() throws Exception {
+    StreamUpdateSequences sequences = new StreamUpdateSequences(100000);
+    int clients = 10000;
+    long[] known = new long[clients];
+    for (int i = 0; i < clients; i++) {
+      known[i] = sequences.getSequence("user" + i);
+    }
+    for (int i = 0; i < clients; i += 10) {
+      sequences.bump("user" + i, ActivityRefType.FEED);
+    }
+
+    int changed = 0;
+    for (int round = 0; round < 10; round++) {
+      for (int i = 0; i < clients; i++) {
+        if (!sequences.getUpdated("user" + i, known[i]).isEmpty()) {
+          changed++;
+        }
+      }
+    }
+    assertEquals(10 * clients / 10, changed);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.core.identity.model.Identity;
+
+public class StreamWarmUpSchedulerTest extends TestCase {
+
+  private final Identity mary = new Identity("mary");
+  private final Identity john = new Identity("john");
+  private final Identity demo = new Identity("demo");
+
+  public void testDeduplicate() throws Exception {
+    StreamWarmUpScheduler scheduler = new StreamWarmUpScheduler(100, 0, 10, 1000, 0);
+    assertTrue(scheduler.offer(mary, 0, 10000));
+    assertTrue(scheduler.isDuplicate("mary", 10500));
+    assertFalse(scheduler.offer(mary, 0, 10500));
+    assertEquals(1, scheduler.getQueueLength());
+    assertEquals(2, scheduler.getDeduplicated());
+
+    //the user is warmed up again after the de-duplication period
+    assertFalse(scheduler.isDuplicate("mary", 11000));
+    assertTrue(scheduler.offer(mary, 0, 11000));
+    assertEquals(2, scheduler.getAccepted());
+  }
+
+  public void testSkipFresh() throws Exception {
+    StreamWarmUpScheduler scheduler = new StreamWarmUpScheduler(100, 0, 10, 1000, 5000);
+    assertFalse(scheduler.offer(mary, 8000, 10000));
+    assertTrue(scheduler.offer(john, 4000, 10000));
+    assertTrue(scheduler.offer(demo, 0, 10000));
+    assertEquals(1, scheduler.getSkippedFresh());
+    assertEquals(2, scheduler.getQueueLength());
+  }
+
+  public void testMostStaleFirst() throws Exception {
+    StreamWarmUpScheduler scheduler = new StreamWarmUpScheduler(100, 0, 10, 1000, 0);
+    scheduler.offer(mary, 3000, 10000);
+    scheduler.offer(john, 1000, 10000);
+    scheduler.offer(demo, 0, 10000);
+    assertEquals(demo, scheduler.poll().getOwner());
+    assertEquals(john, scheduler.poll().getOwner());
+    assertEquals(mary, scheduler.poll().getOwner());
+    assertNull(scheduler.poll());
+  }
+
+  public void testCapacity() throws Exception {
+    StreamWarmUpScheduler scheduler = new StreamWarmUpScheduler(2, 0, 10, 1000, 0);
+    assertTrue(scheduler.offer(mary, 0, 10000));
+    assertTrue(scheduler.offer(john, 0, 10000));
+    assertFalse(scheduler.offer(demo, 0, 10000));
+    assertEquals(1, scheduler.getRejected());
+
+    //a rejected user is not de-duplicated
+    scheduler.poll();
+    assertTrue(scheduler.offer(demo, 0, 10000));
+  }
+
+  public void testRate() throws Exception {
+    StreamWarmUpScheduler scheduler = new StreamWarmUpScheduler(100, 10, 10, 1000, 0);
+    assertEquals(0, scheduler.reserve(10000));
+    assertEquals(100, scheduler.reserve(10000));
+    assertEquals(200, scheduler.reserve(10000));
+    //the permits are not accumulated while idle
+    assertEquals(0, scheduler.reserve(20000));
+    assertEquals(50, scheduler.reserve(20050));
+
+    assertEquals(0, new StreamWarmUpScheduler(100, 0, 10, 1000, 0).reserve(10000));
+  }
+
+  public void testDrain() throws Exception {
+    StreamWarmUpScheduler scheduler = new StreamWarmUpScheduler(100, 0, 10, 1000, 0);
+    scheduler.offer(mary, 0, 10000);
+    assertTrue(scheduler.startDrain());
+    assertFalse(scheduler.startDrain());
+
+    //a warm-up is pending, the drain is scheduled again
+    assertTrue(scheduler.endDrain());
+    StreamWarmUpScheduler.WarmUp warmUp = scheduler.poll();
+    scheduler.done(warmUp, 5);
+    assertFalse(scheduler.endDrain());
+    assertTrue(scheduler.startDrain());
+
+    assertEquals(1, scheduler.getWarmedUp());
+    assertEquals(5, scheduler.getAverageWarmUpTime());
+  }
+
+  public void testCancelDrain() throws Exception {
+    StreamWarmUpScheduler scheduler = new StreamWarmUpScheduler(100, 0, 10, 1000, 0);
+    scheduler.offer(mary, 0, 10000);
+    assertTrue(scheduler.startDrain());
+
+    //the drain failed to be scheduled, the next login schedules it
+    scheduler.cancelDrain();
+    assertEquals(1, scheduler.getQueueLength());
+    assertTrue(scheduler.startDrain());
+  }
+}
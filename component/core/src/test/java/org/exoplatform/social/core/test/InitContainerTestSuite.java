@@ -48,6 +48,7 @@ import org.exoplatform.social.core.storage.cache.CachedActivityStorageTestCase;
 import org.exoplatform.social.core.storage.cache.CachedIdentityStorageTestCase;
 import org.exoplatform.social.core.storage.cache.CachedRelationshipStorageTestCase;
 import org.exoplatform.social.core.storage.cache.CachedSpaceStorageTestCase;
+import org.exoplatform.social.core.storage.cache.ScopeCacheKeyTestCase;
 import org.exoplatform.social.core.storage.impl.ActivityStorageImplTestCase;
 import org.exoplatform.social.core.storage.impl.IdentityStorageImplTestCase;
 import org.exoplatform.social.core.storage.impl.RelationshipStorageImplTestCase;
@@ -74,6 +75,7 @@ import org.junit.runners.Suite.SuiteClasses;
   CachedIdentityStorageTestCase.class,
   SpaceServiceTest.class,
   CachedSpaceStorageTestCase.class,
+  ScopeCacheKeyTestCase.class,
   SpaceStorageTest.class,
   RelationshipManagerTest.class,
   CachedRelationshipStorageTestCase.class,
@@ -16,21 +16,33 @@
  */
 package org.exoplatform.social.core.test;
 
+import org.exoplatform.social.core.activity.ActivityStreamCursorTest;
 import org.exoplatform.social.core.activity.filter.ActivityIteratorTest;
 import org.exoplatform.social.core.feature.ActiviyBuilderWhereTest;
 import org.exoplatform.social.core.identity.IdentityResultTest;
 import org.exoplatform.social.core.identity.model.GlobalIdTest;
 import org.exoplatform.social.core.identity.model.IdentityTest;
 import org.exoplatform.social.core.image.ImageUtilsTest;
+import org.exoplatform.social.core.processor.ActivityProcessingCacheTest;
 import org.exoplatform.social.core.processor.ActivityResourceBundlePluginTest;
 import org.exoplatform.social.core.processor.I18NActivityProcessorTest;
 import org.exoplatform.social.core.relationship.RelationshipTest;
+import org.exoplatform.social.core.relationship.SuggestionIndexTest;
 import org.exoplatform.social.core.space.SpaceUtilsTest;
+import org.exoplatform.social.core.space.model.MemberSetTest;
 import org.exoplatform.social.core.storage.ChromatticNameEncodeTest;
 import org.exoplatform.social.core.storage.StorageUtilsTest;
+import org.exoplatform.social.core.storage.cache.ActivityStreamCacheIndexTest;
+import org.exoplatform.social.core.storage.cache.CacheDataEncodingTest;
+import org.exoplatform.social.core.storage.cache.CacheGenerationsTest;
 import org.exoplatform.social.core.storage.query.ExpressionConstructorTestCase;
 import org.exoplatform.social.core.storage.query.WhereExpressionTypesafetyTestCase;
 import org.exoplatform.social.core.storage.query.WhereExpressionValuesTestCase;
+import org.exoplatform.social.core.storage.streams.StreamFanOutQueueTest;
+import org.exoplatform.social.core.storage.streams.StreamWarmUpSchedulerTest;
+import org.exoplatform.social.core.storage.streams.StreamLockManagerTest;
+import org.exoplatform.social.core.storage.streams.StreamMergeIteratorTest;
+import org.exoplatform.social.core.storage.streams.StreamUpdateSequencesTest;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
@@ -44,7 +56,9 @@ import org.junit.runners.Suite.SuiteClasses;
   ImageUtilsTest.class,
   ActivityResourceBundlePluginTest.class,
   I18NActivityProcessorTest.class,
+  ActivityProcessingCacheTest.class,
   RelationshipTest.class,
+  SuggestionIndexTest.class,
   StorageUtilsTest.class,
   ExpressionConstructorTestCase.class,
   WhereExpressionTypesafetyTestCase.class,
@@ -52,7 +66,17 @@ import org.junit.runners.Suite.SuiteClasses;
   ActiviyBuilderWhereTest.class,
   ActivityIteratorTest.class,
   IdentityResultTest.class,
-  ChromatticNameEncodeTest.class
+  ChromatticNameEncodeTest.class,
+  StreamLockManagerTest.class,
+  StreamFanOutQueueTest.class,
+  StreamWarmUpSchedulerTest.class,
+  StreamMergeIteratorTest.class,
+  StreamUpdateSequencesTest.class,
+  ActivityStreamCacheIndexTest.class,
+  CacheGenerationsTest.class,
+  CacheDataEncodingTest.class,
+  ActivityStreamCursorTest.class,
+  MemberSetTest.class
   })
 public class NoContainerTestSuite {
   
@@ -0,0 +1,478 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.notification;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.commons.api.notification.model.NotificationInfo;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
+import org.exoplatform.social.core.space.model.Space;
+import org.exoplatform.social.core.storage.api.ActivityStorage;
+import org.exoplatform.social.notification.plugin.SocialNotificationUtils;
+
+/**
+ * Cache of the activities, identities, spaces and rendered fragments used to build the mail
+ * digests.
+ *
+ * The digest job builds the digest of each user in turn, and the digests of the users notified
+ * of the same activity render the same fragments. The entities and the fragments resolved by a
+ * digest are kept for the next ones; the fragments are keyed by the plugin, the language and
+ * the values they are rendered from. The activities of a digest are loaded in one batch before
+ * it is built.
+ *
+ * The digest job has no end event, so the cache lives for the max age: the first digest built
+ * after it is cleared, and it is cleared too when it holds more than the max number of entries.
+ * An entity changed meanwhile may be seen with its previous values until then.
+ *
+ * When the max number of entries is 0, nothing is cached and the entities are loaded on each
+ * use.
+ */
+@Managed
+@ManagedDescription("Mail digest render cache")
+public class DigestRenderCache {
+
+  private static final Log LOG = ExoLogger.getLogger(DigestRenderCache.class);
+
+  private static final String MAX_ENTRIES_PARAM = "max-entries";
+  private static final String MAX_AGE_PARAM = "max-age";
+
+  /** The default max number of cached entries. */
+  public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+  /** The default max age of the cache, in seconds. */
+  public static final int DEFAULT_MAX_AGE = 600;
+
+  private static final String ACTIVITY = "a:";
+  private static final String IDENTITY = "i:";
+  private static final String USER = "u:";
+  private static final String SPACE = "s:";
+  private static final String SPACE_NAME = "n:";
+  private static final String FRAGMENT = "f:";
+
+  /** Marks the entities which are not found. */
+  private static final Object NONE = new Object();
+
+  /**
+   * Loads the entities which are not cached.
+   */
+  public interface Loader {
+
+    ExoSocialActivity getActivity(String activityId);
+
+    /**
+     * @param activityIds the activity ids
+     * @return the activities in the order of the ids, null for the activities which are not found
+     */
+    List<ExoSocialActivity> getActivities(List<String> activityIds);
+
+    Identity getIdentity(String identityId);
+
+    Identity getUserIdentity(String remoteId);
+
+    Space getSpaceById(String spaceId);
+
+    Space getSpaceByPrettyName(String prettyName);
+  }
+
+  private final int maxEntries;
+
+  private final long maxAge;
+
+  private final Loader loader;
+
+  private volatile Generation generation = new Generation();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong clears = new AtomicLong();
+  private final AtomicLong digests = new AtomicLong();
+  private final AtomicLong totalTime = new AtomicLong();
+  private final AtomicLong maxTime = new AtomicLong();
+  private volatile long lastTime;
+
+  public DigestRenderCache(InitParams params) {
+    this(intParam(params, MAX_ENTRIES_PARAM, DEFAULT_MAX_ENTRIES), intParam(params, MAX_AGE_PARAM, DEFAULT_MAX_AGE) * 1000L,
+         new ServiceLoader());
+  }
+
+  /**
+   * @param maxEntries the max number of cached entries, 0 to cache nothing
+   * @param maxAge the max age of the cache in milliseconds
+   * @param loader the loader of the entities
+   */
+  public DigestRenderCache(int maxEntries, long maxAge, Loader loader) {
+    this.maxEntries = maxEntries;
+    this.maxAge = maxAge;
+    this.loader = loader;
+  }
+
+  /**
+   * @return a cache which caches nothing, used when no cache is configured
+   */
+  public static DigestRenderCache direct() {
+    return new DigestRenderCache(0, 0, new ServiceLoader());
+  }
+
+  /**
+   * Starts to build a digest, the cache is cleared if it is older than the max age.
+   *
+   * @return the start time to give to {@link #endDigest(long)}
+   */
+  public long startDigest() {
+    if (maxEntries > 0 && System.currentTimeMillis() - generation.createdAt > maxAge) {
+      clear();
+    }
+    return System.nanoTime();
+  }
+
+  /**
+   * Ends to build a digest.
+   *
+   * @param start the time returned by {@link #startDigest()}
+   */
+  public void endDigest(long start) {
+    long elapsed = (System.nanoTime() - start) / 1000000;
+    digests.incrementAndGet();
+    totalTime.addAndGet(elapsed);
+    lastTime = elapsed;
+    long max;
+    do {
+      max = maxTime.get();
+    } while (elapsed > max && !maxTime.compareAndSet(max, elapsed));
+  }
+
+  /**
+   * Loads in one batch the activities of the notifications and their parent activities.
+   *
+   * @param notifications the notifications of a digest
+   */
+  public void prefetch(List<NotificationInfo> notifications) {
+    if (maxEntries <= 0) {
+      return;
+    }
+    Set<String> activityIds = new LinkedHashSet<String>();
+    for (NotificationInfo notification : notifications) {
+      String activityId = notification.getValueOwnerParameter(SocialNotificationUtils.ACTIVITY_ID.getKey());
+      if (activityId != null) {
+        activityIds.add(activityId);
+      }
+    }
+    List<ExoSocialActivity> activities = prefetch(activityIds);
+
+    Set<String> parentIds = new LinkedHashSet<String>();
+    for (ExoSocialActivity activity : activities) {
+      if (activity != null && activity.isComment() && activity.getParentId() != null) {
+        parentIds.add(activity.getParentId());
+      }
+    }
+    prefetch(parentIds);
+  }
+
+  public ExoSocialActivity getActivity(String activityId) {
+    Object cached = lookup(ACTIVITY + activityId);
+    if (cached == null) {
+      cached = store(ACTIVITY + activityId, loader.getActivity(activityId));
+    }
+    return cached != NONE ? (ExoSocialActivity) cached : null;
+  }
+
+  /**
+   * @param comment the comment
+   * @return the activity the comment belongs to
+   */
+  public ExoSocialActivity getParentActivity(ExoSocialActivity comment) {
+    if (comment.getParentId() != null) {
+      return getActivity(comment.getParentId());
+    }
+    return Utils.getActivityManager().getParentActivity(comment);
+  }
+
+  /**
+   * @param identityId the identity id
+   * @return the identity with its profile
+   */
+  public Identity getIdentity(String identityId) {
+    Object cached = lookup(IDENTITY + identityId);
+    if (cached == null) {
+      cached = store(IDENTITY + identityId, loader.getIdentity(identityId));
+    }
+    return cached != NONE ? (Identity) cached : null;
+  }
+
+  /**
+   * @param remoteId the user name
+   * @return the identity of the user with its profile
+   */
+  public Identity getUserIdentity(String remoteId) {
+    Object cached = lookup(USER + remoteId);
+    if (cached == null) {
+      cached = store(USER + remoteId, loader.getUserIdentity(remoteId));
+    }
+    return cached != NONE ? (Identity) cached : null;
+  }
+
+  public Space getSpaceById(String spaceId) {
+    Object cached = lookup(SPACE + spaceId);
+    if (cached == null) {
+      cached = store(SPACE + spaceId, loader.getSpaceById(spaceId));
+    }
+    return cached != NONE ? (Space) cached : null;
+  }
+
+  public Space getSpaceByPrettyName(String prettyName) {
+    Object cached = lookup(SPACE_NAME + prettyName);
+    if (cached == null) {
+      cached = store(SPACE_NAME + prettyName, loader.getSpaceByPrettyName(prettyName));
+    }
+    return cached != NONE ? (Space) cached : null;
+  }
+
+  /**
+   * @param key the key built by {@link #fragmentKey(String, String, String, String, List)}
+   * @return the rendered fragment, null if it is not cached
+   */
+  public String getFragment(String key) {
+    Object cached = lookup(FRAGMENT + key);
+    return cached instanceof String ? (String) cached : null;
+  }
+
+  /**
+   * @param key the key built by {@link #fragmentKey(String, String, String, String, List)}
+   * @param fragment the rendered fragment
+   */
+  public void putFragment(String key, String fragment) {
+    if (fragment != null) {
+      store(FRAGMENT + key, fragment);
+    }
+  }
+
+  /**
+   * Builds the key of a fragment from the values it is rendered from: the users or spaces
+   * shown in a digest line are the first three ones, the others are counted.
+   *
+   * @param pluginId the notification plugin id
+   * @param language the language
+   * @param type the kind of fragment
+   * @param targetId the id of the activity, space or user the line is about
+   * @param values the ids of the users or spaces of the line
+   * @return the key
+   */
+  public static String fragmentKey(String pluginId, String language, String type, String targetId, List<String> values) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(pluginId).append('/').append(language).append('/').append(type).append('/').append(targetId);
+    sb.append('/').append(values.size());
+    for (int i = 0; i < values.size() && i < 3; i++) {
+      sb.append('/').append(values.get(i));
+    }
+    return sb.toString();
+  }
+
+  @Managed
+  @ManagedDescription("Clears the cache")
+  public void clear() {
+    generation = new Generation();
+    clears.incrementAndGet();
+  }
+
+  @Managed
+  @ManagedName("Entries")
+  @ManagedDescription("The number of cached entries")
+  public int getEntries() {
+    return generation.entries.size();
+  }
+
+  @Managed
+  @ManagedName("Hits")
+  @ManagedDescription("The number of entries found in the cache")
+  public long getHits() {
+    return hits.get();
+  }
+
+  @Managed
+  @ManagedName("Misses")
+  @ManagedDescription("The number of entries loaded or rendered")
+  public long getMisses() {
+    return misses.get();
+  }
+
+  @Managed
+  @ManagedName("Clears")
+  @ManagedDescription("The number of times the cache was cleared")
+  public long getClears() {
+    return clears.get();
+  }
+
+  @Managed
+  @ManagedName("Digests")
+  @ManagedDescription("The number of digests built")
+  public long getDigests() {
+    return digests.get();
+  }
+
+  @Managed
+  @ManagedName("TotalDigestTime")
+  @ManagedDescription("The total time spent building the digests, in milliseconds")
+  public long getTotalDigestTime() {
+    return totalTime.get();
+  }
+
+  @Managed
+  @ManagedName("AverageDigestTime")
+  @ManagedDescription("The average time spent building a digest, in milliseconds")
+  public long getAverageDigestTime() {
+    long count = digests.get();
+    return count > 0 ? totalTime.get() / count : 0;
+  }
+
+  @Managed
+  @ManagedName("MaxDigestTime")
+  @ManagedDescription("The longest time spent building a digest, in milliseconds")
+  public long getMaxDigestTime() {
+    return maxTime.get();
+  }
+
+  @Managed
+  @ManagedName("LastDigestTime")
+  @ManagedDescription("The time spent building the last digest, in milliseconds")
+  public long getLastDigestTime() {
+    return lastTime;
+  }
+
+  private List<ExoSocialActivity> prefetch(Set<String> activityIds) {
+    List<String> missing = new ArrayList<String>();
+    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>();
+    for (String activityId : activityIds) {
+      Object cached = lookup(ACTIVITY + activityId);
+      if (cached == null) {
+        missing.add(activityId);
+      } else if (cached != NONE) {
+        activities.add((ExoSocialActivity) cached);
+      }
+    }
+    if (missing.isEmpty()) {
+      return activities;
+    }
+
+    try {
+      List<ExoSocialActivity> loaded = loader.getActivities(missing);
+      for (int i = 0; i < missing.size(); i++) {
+        ExoSocialActivity activity = loaded.get(i);
+        store(ACTIVITY + missing.get(i), activity);
+        activities.add(activity);
+      }
+    } catch (Exception e) {
+      //the activities are loaded one by one when they are used
+      LOG.debug("Failed to prefetch the digest activities", e);
+    }
+    return activities;
+  }
+
+  private Object lookup(String key) {
+    if (maxEntries <= 0) {
+      misses.incrementAndGet();
+      return null;
+    }
+    Object cached = generation.entries.get(key);
+    if (cached != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    return cached;
+  }
+
+  private Object store(String key, Object value) {
+    Object stored = value != null ? value : NONE;
+    if (maxEntries <= 0) {
+      return stored;
+    }
+    Generation current = generation;
+    if (current.entries.size() >= maxEntries) {
+      clear();
+      current = generation;
+    }
+    current.entries.put(key, stored);
+    return stored;
+  }
+
+  private static int intParam(InitParams params, String name, int defaultValue) {
+    ValueParam param = params != null ? params.getValueParam(name) : null;
+    if (param == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.valueOf(param.getValue());
+    } catch (Exception e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * The entries cached since the last clear.
+   */
+  private static class Generation {
+
+    private final ConcurrentMap<String, Object> entries = new ConcurrentHashMap<String, Object>();
+
+    private final long createdAt = System.currentTimeMillis();
+  }
+
+  /**
+   * Loads the entities from the social services.
+   */
+  private static class ServiceLoader implements Loader {
+
+    public ExoSocialActivity getActivity(String activityId) {
+      return Utils.getActivityManager().getActivity(activityId);
+    }
+
+    public List<ExoSocialActivity> getActivities(List<String> activityIds) {
+      return Utils.getService(ActivityStorage.class).getActivities(activityIds);
+    }
+
+    public Identity getIdentity(String identityId) {
+      return Utils.getIdentityManager().getIdentity(identityId, true);
+    }
+
+    public Identity getUserIdentity(String remoteId) {
+      return Utils.getIdentityManager().getOrCreateIdentity(OrganizationIdentityProvider.NAME, remoteId, true);
+    }
+
+    public Space getSpaceById(String spaceId) {
+      return Utils.getSpaceService().getSpaceById(spaceId);
+    }
+
+    public Space getSpaceByPrettyName(String prettyName) {
+      return Utils.getSpaceService().getSpaceByPrettyName(prettyName);
+    }
+  }
+}
@@ -62,6 +62,8 @@ public class Utils {
       "(?::[\\d]{1,5})?" +                                                                        // port
       "(?:[\\/|\\?|\\#].*)?$");                                                               // path and query
   
+  private static final DigestRenderCache DIRECT_RENDER_CACHE = DigestRenderCache.direct();
+
   private static final String styleCSS = " style=\"color: #2f5e92; text-decoration: none;\"";
   
   @SuppressWarnings("unchecked")
@@ -287,4 +289,12 @@ public class Utils {
   public static RelationshipManager getRelationshipManager() {
     return getService(RelationshipManager.class);
   }
+
+  /**
+   * @return the digest render cache, a cache which caches nothing if none is configured
+   */
+  public static DigestRenderCache getDigestRenderCache() {
+    DigestRenderCache cache = getService(DigestRenderCache.class);
+    return cache != null ? cache : DIRECT_RENDER_CACHE;
+  }
 }
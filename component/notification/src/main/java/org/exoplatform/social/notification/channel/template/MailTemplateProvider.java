@@ -44,10 +44,10 @@ import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.model.Profile;
 import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
 import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
-import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.core.processor.I18NActivityProcessor;
 import org.exoplatform.social.core.relationship.model.Relationship;
 import org.exoplatform.social.core.space.model.Space;
+import org.exoplatform.social.notification.DigestRenderCache;
 import org.exoplatform.social.notification.LinkProviderUtils;
 import org.exoplatform.social.notification.Utils;
 import org.exoplatform.social.notification.plugin.ActivityCommentPlugin;
@@ -120,14 +120,17 @@ public class MailTemplateProvider extends TemplateProvider {
       //Store the activity id as key, and the list all identities who posted to the activity.
       Map<String, List<String>> receiverMap = new LinkedHashMap<String, List<String>>();
       
+      DigestRenderCache cache = Utils.getDigestRenderCache();
+      long start = cache.startDigest();
+      cache.prefetch(notifications);
       try {
         for (NotificationInfo message : notifications) {
           String activityId = message.getValueOwnerParameter(SocialNotificationUtils.ACTIVITY_ID.getKey());
-          ExoSocialActivity activity = Utils.getActivityManager().getActivity(activityId);
+          ExoSocialActivity activity = cache.getActivity(activityId);
           if (activity == null) {
             continue;
           }
-          ExoSocialActivity parentActivity = Utils.getActivityManager().getParentActivity(activity);
+          ExoSocialActivity parentActivity = cache.getParentActivity(activity);
           //
           SocialNotificationUtils.processInforSendTo(receiverMap, parentActivity.getId(), message.getValueOwnerParameter("poster"));
         }
@@ -135,6 +138,8 @@ public class MailTemplateProvider extends TemplateProvider {
       } catch (IOException e) {
         ctx.setException(e);
         return false;
+      } finally {
+        cache.endDigest(start);
       }
       
       return true;
@@ -193,17 +198,20 @@ public class MailTemplateProvider extends TemplateProvider {
       TemplateContext templateContext = new TemplateContext(first.getKey().getId(), language);
       
       Map<String, List<String>> receiverMap = new LinkedHashMap<String, List<String>>();
+      DigestRenderCache cache = Utils.getDigestRenderCache();
+      long start = cache.startDigest();
+      cache.prefetch(notifications);
       try {
         for (NotificationInfo notification : notifications) {
           String activityId = notification.getValueOwnerParameter(SocialNotificationUtils.ACTIVITY_ID.getKey());
-          ExoSocialActivity activity = Utils.getActivityManager().getActivity(activityId);
+          ExoSocialActivity activity = cache.getActivity(activityId);
           if (activity == null) {
             continue;
           }
-          Identity identity = Utils.getIdentityManager().getIdentity(activity.getPosterId(), true);
+          Identity identity = cache.getIdentity(activity.getPosterId());
           
           if (activity.isComment()) {
-            activity = Utils.getActivityManager().getParentActivity(activity);
+            activity = cache.getParentActivity(activity);
           }
 
           //make the list receivers who will send mail to them.
@@ -213,6 +221,8 @@ public class MailTemplateProvider extends TemplateProvider {
       } catch (IOException e) {
         ctx.setException(e);
         return false;
+      } finally {
+        cache.endDigest(start);
       }
       
       return true;
@@ -261,11 +271,14 @@ public class MailTemplateProvider extends TemplateProvider {
       
       Map<String, List<String>> map = new LinkedHashMap<String, List<String>>();
 
+      DigestRenderCache cache = Utils.getDigestRenderCache();
+      long start = cache.startDigest();
+      cache.prefetch(notifications);
       try {
         for (NotificationInfo message : notifications) {
           String activityId = message.getValueOwnerParameter(SocialNotificationUtils.ACTIVITY_ID.getKey());
           
-          ExoSocialActivity activity = Utils.getActivityManager().getActivity(activityId);
+          ExoSocialActivity activity = cache.getActivity(activityId);
 
           //
           if (activity == null) {
@@ -275,7 +288,7 @@ public class MailTemplateProvider extends TemplateProvider {
           //
           String fromUser = message.getValueOwnerParameter("likersId");
 
-          Identity identityFrom = Utils.getService(IdentityManager.class).getOrCreateIdentity(OrganizationIdentityProvider.NAME, fromUser, false);
+          Identity identityFrom = cache.getUserIdentity(fromUser);
           if (identityFrom == null || !Arrays.asList(activity.getLikeIdentityIds()).contains(identityFrom.getId())) {
             continue;
           }
@@ -286,6 +299,8 @@ public class MailTemplateProvider extends TemplateProvider {
       } catch (IOException e) {
         ctx.setException(e);
         return false;
+      } finally {
+        cache.endDigest(start);
       }
       
       
@@ -405,9 +420,12 @@ public class MailTemplateProvider extends TemplateProvider {
       TemplateContext templateContext = new TemplateContext(first.getKey().getId(), language);
       Map<String, List<String>> receiverMap = new LinkedHashMap<String, List<String>>();
       
+      DigestRenderCache cache = Utils.getDigestRenderCache();
+      long start = cache.startDigest();
+      cache.prefetch(notifications);
       try {
         for (NotificationInfo message : notifications) {
-          ExoSocialActivity activity = Utils.getActivityManager().getActivity(message.getValueOwnerParameter(SocialNotificationUtils.ACTIVITY_ID.getKey()));
+          ExoSocialActivity activity = cache.getActivity(message.getValueOwnerParameter(SocialNotificationUtils.ACTIVITY_ID.getKey()));
           
           //Case of activity was deleted, ignore this notification
           if (activity == null) {
@@ -419,6 +437,8 @@ public class MailTemplateProvider extends TemplateProvider {
       } catch (IOException e) {
         ctx.setException(e);
         return false;
+      } finally {
+        cache.endDigest(start);
       }
       return true;
     }
@@ -471,14 +491,17 @@ public class MailTemplateProvider extends TemplateProvider {
       
       Map<String, List<String>> map = new LinkedHashMap<String, List<String>>();
       
+      DigestRenderCache cache = Utils.getDigestRenderCache();
+      long start = cache.startDigest();
+      cache.prefetch(notifications);
       try {
         for (NotificationInfo message : notifications) {
           String activityId = message.getValueOwnerParameter(SocialNotificationUtils.ACTIVITY_ID.getKey());
-          ExoSocialActivity activity = Utils.getActivityManager().getActivity(activityId);
+          ExoSocialActivity activity = cache.getActivity(activityId);
           if (activity == null) {
             continue;
           }
-          Space space = Utils.getSpaceService().getSpaceByPrettyName(activity.getStreamOwner());
+          Space space = cache.getSpaceByPrettyName(activity.getStreamOwner());
           //
           SocialNotificationUtils.processInforSendTo(map, space.getId(), message.getValueOwnerParameter(SocialNotificationUtils.POSTER.getKey()));
         }
@@ -486,6 +509,8 @@ public class MailTemplateProvider extends TemplateProvider {
       } catch (IOException e) {
         ctx.setException(e);
         return false;
+      } finally {
+        cache.endDigest(start);
       }
       return true;
     }
@@ -43,6 +43,7 @@ import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvide
 import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.relationship.model.Relationship;
 import org.exoplatform.social.core.space.model.Space;
+import org.exoplatform.social.notification.DigestRenderCache;
 import org.exoplatform.social.notification.LinkProviderUtils;
 import org.exoplatform.social.notification.Utils;
 import org.exoplatform.social.notification.plugin.child.DefaultActivityChildPlugin;
@@ -103,17 +104,24 @@ public class SocialNotificationUtils {
     StringBuilder sb = new StringBuilder();
     Space space = null;
     String typeSpaceDisplay = (templateContext.getPluginId().equals("PostActivitySpaceStreamPlugin")) ? "space" : "space_members";
+    DigestRenderCache cache = Utils.getDigestRenderCache();
     
     for (Entry<String, List<String>> entry : receiversMap.entrySet()) {
       sb.append("<li style=\"margin: 0 0 13px 14px; font-size: 13px; line-height: 18px; font-family: HelveticaNeue, Helvetica, Arial, sans-serif;\">");
       String id = entry.getKey();
+      List<String> values = entry.getValue();
+      int count = values.size();
+      String fragmentKey = DigestRenderCache.fragmentKey(templateContext.getPluginId(), templateContext.getLanguage(), "space", id, values);
+      String fragment = cache.getFragment(fragmentKey);
+      if (fragment != null) {
+        sb.append(fragment).append("</li>");
+        continue;
+      }
       try {       
-        space = Utils.getSpaceService().getSpaceById(id);      
+        space = cache.getSpaceById(id);      
       } catch (Exception e) {
         continue;
       }
-      List<String> values = entry.getValue();
-      int count = values.size();     
       templateContext.put("SPACE", SocialNotificationUtils.buildRedirecUrl(typeSpaceDisplay, space.getId(), space.getDisplayName()));
       
       String[] keys = {"USER", "USER_LIST", "LAST3_USERS"};
@@ -121,7 +129,7 @@ public class SocialNotificationUtils {
       StringBuilder value = new StringBuilder();
       
       for (int i = 0; i < count && i < 3; i++) {
-        Identity identity = Utils.getIdentityManager().getOrCreateIdentity(OrganizationIdentityProvider.NAME, values.get(i), true);
+        Identity identity = cache.getUserIdentity(values.get(i));
         if (i > 1 && count == 3) {
           key = keys[i - 1];
         } else {
@@ -138,6 +146,9 @@ public class SocialNotificationUtils {
       }
 
       String digester = TemplateUtils.processDigest(templateContext.digestType(count));
+      if (templateContext.getException() == null) {
+        cache.putFragment(fragmentKey, digester);
+      }
       sb.append(digester);
       sb.append("</li>");
     }
@@ -157,21 +168,28 @@ public class SocialNotificationUtils {
     Space space = null;
     String typeActivityDisplay = (templateContext.getPluginId().equals("LikePlugin")) ? "view_likers_activity" : "view_full_activity";
     String typeSpaceDisplay = (templateContext.getPluginId().equals("PostActivitySpaceStreamPlugin")) ? "space" : "space_members";
+    DigestRenderCache cache = Utils.getDigestRenderCache();
     
     for (Entry<String, List<String>> entry : receiversMap.entrySet()) {
       sb.append("<li style=\"margin: 0 0 13px 14px; font-size: 13px; line-height: 18px; font-family: HelveticaNeue, Helvetica, Arial, sans-serif;\">");
       String id = entry.getKey();
+      List<String> values = entry.getValue();
+      int count = values.size();
+      String fragmentKey = DigestRenderCache.fragmentKey(templateContext.getPluginId(), templateContext.getLanguage(), "activity", id, values);
+      String fragment = cache.getFragment(fragmentKey);
+      if (fragment != null) {
+        sb.append(fragment).append("</li>");
+        continue;
+      }
       try {
         if (templateContext.getPluginId().equals("PostActivitySpaceStreamPlugin")) {
-          space = Utils.getSpaceService().getSpaceById(id);
+          space = cache.getSpaceById(id);
         } else {
-          activity = Utils.getActivityManager().getActivity(id);        
+          activity = cache.getActivity(id);        
         }
       } catch (Exception e) {
         continue;
       }
-      List<String> values = entry.getValue();
-      int count = values.size();
       if (activity != null) {
         String title = activity.getTitle();
         // removes a href link from title. Just for digest building case.
@@ -189,7 +207,7 @@ public class SocialNotificationUtils {
       StringBuilder value = new StringBuilder();
       
       for (int i = 0; i < count && i < 3; i++) {
-        Identity identity = Utils.getIdentityManager().getOrCreateIdentity(OrganizationIdentityProvider.NAME, values.get(i), true);
+        Identity identity = cache.getUserIdentity(values.get(i));
         if (i > 1 && count == 3) {
           key = keys[i - 1];
         } else {
@@ -210,6 +228,9 @@ public class SocialNotificationUtils {
       }
 
       String digester = TemplateUtils.processDigest(templateContext.digestType(count));
+      if (templateContext.getException() == null) {
+        cache.putFragment(fragmentKey, digester);
+      }
       sb.append(digester);
       sb.append("</li>");
     }
@@ -225,11 +246,18 @@ public class SocialNotificationUtils {
    */
   public static String getMessageByIds(Map<String, List<String>> receiversMap, TemplateContext templateContext, String type) {
     StringBuilder sb = new StringBuilder();
+    DigestRenderCache cache = Utils.getDigestRenderCache();
     for (Entry<String, List<String>> entry : receiversMap.entrySet()) {
       sb.append("<li style=\"margin: 0 0 13px 14px; font-size: 13px; line-height: 18px; font-family: HelveticaNeue, Helvetica, Arial, sans-serif;\">");
       String targetId = entry.getKey();
       List<String> values = entry.getValue();
       int count = values.size();
+      String fragmentKey = DigestRenderCache.fragmentKey(templateContext.getPluginId(), templateContext.getLanguage(), type, targetId, values);
+      String fragment = cache.getFragment(fragmentKey);
+      if (fragment != null) {
+        sb.append(fragment).append("</li>");
+        continue;
+      }
 
       String[] keys = new String[]{"USER", "USER_LIST", "LAST3_USERS"};
       if ("space".equals(type)) {
@@ -241,10 +269,10 @@ public class SocialNotificationUtils {
       for (int i = 0; i < count && i < 3; i++) {
         String name = "";
         if ("new_user".equals(type) || "user".equals(type) || "connections_request".equals(type)) {
-          Identity identity = Utils.getIdentityManager().getOrCreateIdentity(OrganizationIdentityProvider.NAME, values.get(i), true);
+          Identity identity = cache.getUserIdentity(values.get(i));
           name = identity.getProfile().getFullName();
         } else {
-          Space space = Utils.getSpaceService().getSpaceById(values.get(i));
+          Space space = cache.getSpaceById(values.get(i));
           name = space.getDisplayName();
         }
         //
@@ -277,6 +305,9 @@ public class SocialNotificationUtils {
       }
 
       String digester = TemplateUtils.processDigest(templateContext.digestType(count));
+      if (templateContext.getException() == null) {
+        cache.putFragment(fragmentKey, digester);
+      }
       sb.append(digester);
       sb.append("</li>");
     }
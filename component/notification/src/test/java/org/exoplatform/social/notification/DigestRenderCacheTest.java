@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.notification;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.commons.api.notification.model.NotificationInfo;
+import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.space.model.Space;
+import org.exoplatform.social.notification.plugin.SocialNotificationUtils;
+
+public class DigestRenderCacheTest extends TestCase {
+
+  private CountingLoader loader;
+
+  @Override
+  protected void setUp() throws Exception {
+    loader = new CountingLoader();
+    loader.add("activity", null);
+    loader.add("comment1", "activity");
+    loader.add("comment2", "activity");
+  }
+
+  public void testPrefetch() throws Exception {
+    DigestRenderCache cache = new DigestRenderCache(100, 60000, loader);
+    cache.prefetch(Arrays.asList(notification("comment1"), notification("comment2"), notification("deleted")));
+    //one batch for the comments, one for their parent
+    assertEquals(Arrays.asList(Arrays.asList("comment1", "comment2", "deleted"), Arrays.asList("activity")), loader.batches);
+
+    ExoSocialActivity comment = cache.getActivity("comment1");
+    assertEquals("comment1", comment.getId());
+    assertEquals("activity", cache.getParentActivity(comment).getId());
+    assertNull(cache.getActivity("deleted"));
+    assertEquals(0, loader.loads);
+
+    //the activities are not loaded again by the next digest
+    cache.prefetch(Arrays.asList(notification("comment2")));
+    assertEquals(2, loader.batches.size());
+  }
+
+  public void testEntities() throws Exception {
+    DigestRenderCache cache = new DigestRenderCache(100, 60000, loader);
+    assertEquals("mary", cache.getUserIdentity("mary").getRemoteId());
+    assertEquals("mary", cache.getUserIdentity("mary").getRemoteId());
+    assertNull(cache.getSpaceById("unknown"));
+    assertNull(cache.getSpaceById("unknown"));
+    assertEquals(2, loader.loads);
+    assertEquals(2, cache.getHits());
+    assertEquals(2, cache.getMisses());
+  }
+
+  public void testFragments() throws Exception {
+    DigestRenderCache cache = new DigestRenderCache(100, 60000, loader);
+    String key = DigestRenderCache.fragmentKey("LikePlugin", "en", "activity", "activity", Arrays.asList("mary", "john"));
+    assertNull(cache.getFragment(key));
+    cache.putFragment(key, "Mary, John have liked your activity");
+    assertEquals("Mary, John have liked your activity", cache.getFragment(key));
+
+    //only the first three users are shown, the others are counted
+    assertEquals(DigestRenderCache.fragmentKey("LikePlugin", "en", "activity", "activity", Arrays.asList("a", "b", "c", "d")),
+                 DigestRenderCache.fragmentKey("LikePlugin", "en", "activity", "activity", Arrays.asList("a", "b", "c", "e")));
+    assertFalse(key.equals(DigestRenderCache.fragmentKey("LikePlugin", "fr", "activity", "activity", Arrays.asList("mary", "john"))));
+  }
+
+  public void testMaxEntries() throws Exception {
+    DigestRenderCache cache = new DigestRenderCache(2, 60000, loader);
+    cache.getUserIdentity("mary");
+    cache.getUserIdentity("john");
+    assertEquals(2, cache.getEntries());
+    cache.getUserIdentity("demo");
+    assertEquals(1, cache.getEntries());
+    assertEquals(1, cache.getClears());
+  }
+
+  public void testMaxAge() throws Exception {
+    DigestRenderCache cache = new DigestRenderCache(100, 0, loader);
+    cache.getUserIdentity("mary");
+    Thread.sleep(5);
+    cache.endDigest(cache.startDigest());
+    assertEquals(0, cache.getEntries());
+    assertEquals(1, cache.getDigests());
+  }
+
+  public void testDirect() throws Exception {
+    DigestRenderCache cache = new DigestRenderCache(0, 0, loader);
+    cache.prefetch(Arrays.asList(notification("comment1")));
+    assertTrue(loader.batches.isEmpty());
+    cache.getActivity("comment1");
+    cache.getActivity("comment1");
+    cache.putFragment("key", "fragment");
+    assertEquals(2, loader.loads);
+    assertNull(cache.getFragment("key"));
+    assertEquals(0, cache.getEntries());
+  }
+
+  /**
+   * The digests of 1000 users notified of the same 20 activities load them once.
+   */
+  public void testSharedDigests() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      loader.add("activity" + i, null);
+    }
+    DigestRenderCache cache = new DigestRenderCache(10000, 60000, loader);
+    for (int user = 0; user < 1000; user++) {
+      List<NotificationInfo> notifications = new ArrayList<NotificationInfo>();
+      for (int i = 0; i < 20; i++) {
+        notifications.add(notification("activity" + i));
+      }
+      long start = cache.startDigest();
+      cache.prefetch(notifications);
+      for (NotificationInfo notification : notifications) {
+        assertNotNull(cache.getActivity(notification.getValueOwnerParameter(SocialNotificationUtils.ACTIVITY_ID.getKey())));
+      }
+      cache.endDigest(start);
+    }
+    assertEquals(1, loader.batches.size());
+    assertEquals(1000, cache.getDigests());
+    assertEquals(20, loader.batches.get(0).size());
+    assertEquals(0, loader.loads);
+  }
+
+  private static NotificationInfo notification(String activityId) {
+    return NotificationInfo.instance().with(SocialNotificationUtils.ACTIVITY_ID.getKey(), activityId);
+  }
+
+  /**
+   * Loader of in memory activities counting the loads.
+   */
+  private static class CountingLoader implements DigestRenderCache.Loader {
+
+    private final Map<String, ExoSocialActivity> activities = new HashMap<String, ExoSocialActivity>();
+
+    private final List<List<String>> batches = new ArrayList<List<String>>();
+
+    private int loads;
+
+    private void add(String id, String parentId) {
+      ExoSocialActivityImpl activity = new ExoSocialActivityImpl();
+      activity.setId(id);
+      if (parentId != null) {
+        activity.isComment(true);
+        activity.setParentId(parentId);
+      }
+      activities.put(id, activity);
+    }
+
+    public ExoSocialActivity getActivity(String activityId) {
+      loads++;
+      return activities.get(activityId);
+    }
+
+    public List<ExoSocialActivity> getActivities(List<String> activityIds) {
+      batches.add(new ArrayList<String>(activityIds));
+      List<ExoSocialActivity> found = new ArrayList<ExoSocialActivity>();
+      for (String activityId : activityIds) {
+        found.add(activities.get(activityId));
+      }
+      return found;
+    }
+
+    public Identity getIdentity(String identityId) {
+      loads++;
+      Identity identity = new Identity("organization", identityId);
+      identity.setId(identityId);
+      return identity;
+    }
+
+    public Identity getUserIdentity(String remoteId) {
+      loads++;
+      return new Identity("organization", remoteId);
+    }
+
+    public Space getSpaceById(String spaceId) {
+      loads++;
+      return null;
+    }
+
+    public Space getSpaceByPrettyName(String prettyName) {
+      loads++;
+      return null;
+    }
+  }
+}
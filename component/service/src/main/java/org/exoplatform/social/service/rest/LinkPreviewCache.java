@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the link previews, keyed by normalized link and language.
+ *
+ * The previews expire after the time to live, the least recently used ones are evicted when the
+ * cache is full. The previews which failed to be loaded, for example because the site did not
+ * respond, are kept for a shorter time to live so that they are soon loaded again. The concurrent requests of a preview which is not cached are de-duplicated: the
+ * first one loads it, the others wait for it.
+ */
+public class LinkPreviewCache<V> {
+
+  /** The default max number of cached previews. */
+  public static final int DEFAULT_MAX_SIZE = 1000;
+
+  /** The default time to live of the previews, in milliseconds. */
+  public static final long DEFAULT_TIME_TO_LIVE = 30 * 60 * 1000L;
+
+  /** The default time to live of the failed previews, in milliseconds. */
+  public static final long DEFAULT_FAILURE_TIME_TO_LIVE = 60 * 1000L;
+
+  /**
+   * Loads a preview which is not cached.
+   */
+  public abstract static class Loader<V> {
+
+    /**
+     * @return the preview, null if there is none
+     * @throws Exception if the preview can't be loaded
+     */
+    public abstract V load() throws Exception;
+
+    /**
+     * @param value the loaded preview
+     * @return true if the preview is a fallback built after a failure, false by default
+     */
+    public boolean isFailure(V value) {
+      return false;
+    }
+  }
+
+  private final int maxSize;
+
+  private final long timeToLive;
+
+  private final long failureTimeToLive;
+
+  /** guarded by itself */
+  private final Map<String, Entry<V>> entries;
+
+  private final ConcurrentMap<String, FutureTask<V>> loading = new ConcurrentHashMap<String, FutureTask<V>>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong loads = new AtomicLong();
+  private final AtomicLong joins = new AtomicLong();
+
+  /**
+   * @param maxSize the max number of cached previews
+   * @param timeToLive the time to live of the previews in milliseconds
+   */
+  public LinkPreviewCache(int maxSize, long timeToLive) {
+    this(maxSize, timeToLive, 0);
+  }
+
+  /**
+   * @param maxSize the max number of cached previews
+   * @param timeToLive the time to live of the previews in milliseconds
+   * @param failureTimeToLive the time to live of the failed previews in milliseconds, 0 to not cache them
+   */
+  public LinkPreviewCache(final int maxSize, long timeToLive, long failureTimeToLive) {
+    this.maxSize = maxSize;
+    this.timeToLive = timeToLive;
+    this.failureTimeToLive = failureTimeToLive;
+    this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Gets a preview, loads it if it is not cached or expired.
+   *
+   * @param key the key built by {@link #keyOf(String, String)}
+   * @param loader the loader of the preview
+   * @return the preview, null if there is none
+   * @throws Exception if the preview can't be loaded
+   */
+  public V get(final String key, final Loader<V> loader) throws Exception {
+    V cached = lookup(key);
+    if (cached != null) {
+      hits.incrementAndGet();
+      return cached;
+    }
+
+    FutureTask<V> task = new FutureTask<V>(new Callable<V>() {
+      public V call() throws Exception {
+        V loaded = loader.load();
+        if (loaded != null) {
+          long ttl = loader.isFailure(loaded) ? failureTimeToLive : timeToLive;
+          if (ttl > 0) {
+            put(key, loaded, ttl);
+          }
+        }
+        return loaded;
+      }
+    });
+    FutureTask<V> running = loading.putIfAbsent(key, task);
+    if (running == null) {
+      loads.incrementAndGet();
+      running = task;
+      try {
+        task.run();
+      } finally {
+        loading.remove(key, task);
+      }
+    } else {
+      joins.incrementAndGet();
+    }
+
+    try {
+      return running.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Builds the key of a preview: the scheme and the host of the link are lower cased, the default
+   * port and the fragment are removed.
+   *
+   * @param link the link
+   * @param lang the language
+   * @return the key
+   */
+  public static String keyOf(String link, String lang) {
+    String normalized;
+    try {
+      URL url = new URL(link);
+      StringBuilder sb = new StringBuilder();
+      sb.append(url.getProtocol().toLowerCase()).append("://").append(url.getHost().toLowerCase());
+      if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+        sb.append(':').append(url.getPort());
+      }
+      sb.append(url.getPath().length() == 0 ? "/" : url.getPath());
+      if (url.getQuery() != null) {
+        sb.append('?').append(url.getQuery());
+      }
+      normalized = sb.toString();
+    } catch (MalformedURLException e) {
+      normalized = link;
+    }
+    return normalized + " " + (lang != null ? lang.toLowerCase() : "");
+  }
+
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  public int getSize() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * @return the number of previews returned from the cache
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of previews loaded
+   */
+  public long getLoads() {
+    return loads.get();
+  }
+
+  /**
+   * @return the number of requests which waited for the preview loaded by another request
+   */
+  public long getJoins() {
+    return joins.get();
+  }
+
+  private V lookup(String key) {
+    synchronized (entries) {
+      Entry<V> entry = entries.get(key);
+      if (entry == null) {
+        return null;
+      }
+      if (entry.expiresAt < System.currentTimeMillis()) {
+        entries.remove(key);
+        return null;
+      }
+      return entry.value;
+    }
+  }
+
+  private void put(String key, V value, long ttl) {
+    Entry<V> entry = new Entry<V>(value, System.currentTimeMillis() + ttl);
+    synchronized (entries) {
+      entries.put(key, entry);
+    }
+  }
+
+  private static class Entry<V> {
+
+    private final V value;
+
+    private final long expiresAt;
+
+    private Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.common.service.thread.DefaultThreadPoolFactory;
+import org.exoplatform.social.common.service.thread.SocialThreadFactory;
+import org.exoplatform.social.common.service.thread.ThreadPoolConfig.RejectionPolicy;
+
+/**
+ * Fetches the pages and the images previewed by {@link LinkShare}.
+ *
+ * Each connection has a connect and a read timeout, and at most a given number of bytes is read
+ * from each page and each image. The content of a page is read until the deadline, the sum of the
+ * two timeouts, the content read after it is dropped. The size of an image is read from its header
+ * only, without decoding it. The images of a page are checked in parallel, the images not checked
+ * before the deadline are skipped, as well as the images which do not fit in the queue of the pool:
+ * the checks never run on the requesting thread.
+ */
+public class LinkPreviewFetcher {
+
+  private static final Log LOG = ExoLogger.getLogger(LinkPreviewFetcher.class);
+
+  /** The default connect timeout, in milliseconds. */
+  public static final int DEFAULT_CONNECT_TIMEOUT = 3000;
+
+  /** The default read timeout, in milliseconds. */
+  public static final int DEFAULT_READ_TIMEOUT = 5000;
+
+  /** The default max number of bytes read from a page. */
+  public static final int DEFAULT_MAX_PAGE_BYTES = 512 * 1024;
+
+  /** The default max number of bytes read from an image to get its size. */
+  public static final int DEFAULT_MAX_IMAGE_BYTES = 64 * 1024;
+
+  /** The default number of threads checking the images. */
+  public static final int DEFAULT_THREADS = 4;
+
+  private static final int MAX_QUEUED_IMAGES = 100;
+
+  private static final String HTML_MIME_TYPE = "text/html";
+
+  /**
+   * A fetched page.
+   */
+  public static class Page {
+
+    private final String contentType;
+
+    private final byte[] content;
+
+    private final boolean truncated;
+
+    private Page(String contentType, byte[] content, boolean truncated) {
+      this.contentType = contentType;
+      this.content = content;
+      this.truncated = truncated;
+    }
+
+    /**
+     * @return the content type, empty if unknown
+     */
+    public String getContentType() {
+      return contentType;
+    }
+
+    /**
+     * @return the content of an html page, null for the other content types
+     */
+    public byte[] getContent() {
+      return content;
+    }
+
+    /**
+     * @return true if the content was longer than the max number of bytes or was not read before
+     *         the deadline
+     */
+    public boolean isTruncated() {
+      return truncated;
+    }
+  }
+
+  private final int connectTimeout;
+
+  private final int readTimeout;
+
+  private final int maxPageBytes;
+
+  private final int maxImageBytes;
+
+  private final ExecutorService executor;
+
+  public LinkPreviewFetcher() {
+    this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, DEFAULT_MAX_PAGE_BYTES, DEFAULT_MAX_IMAGE_BYTES, DEFAULT_THREADS);
+  }
+
+  /**
+   * @param connectTimeout the connect timeout in milliseconds
+   * @param readTimeout the read timeout in milliseconds
+   * @param maxPageBytes the max number of bytes read from a page
+   * @param maxImageBytes the max number of bytes read from an image
+   * @param threads the number of threads checking the images
+   */
+  public LinkPreviewFetcher(int connectTimeout, int readTimeout, int maxPageBytes, int maxImageBytes, int threads) {
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+    this.maxPageBytes = maxPageBytes;
+    this.maxImageBytes = maxImageBytes;
+    this.executor = new DefaultThreadPoolFactory().newThreadPool(threads, threads, 60, TimeUnit.SECONDS, MAX_QUEUED_IMAGES,
+                                                                 new SocialThreadFactory(null, "LinkPreviewFetcher", true,
+                                                                                         Thread.NORM_PRIORITY),
+                                                                 RejectionPolicy.DISCARD);
+  }
+
+  /**
+   * Fetches a page, only the content of the html pages is read.
+   *
+   * @param link the page link
+   * @return the page
+   * @throws IOException if the page can't be fetched
+   */
+  public Page fetch(String link) throws IOException {
+    long deadline = System.currentTimeMillis() + connectTimeout + readTimeout;
+    URLConnection connection = open(link);
+    InputStream in = new BufferedInputStream(connection.getInputStream());
+    try {
+      String contentType = connection.getContentType();
+      if (contentType == null) {
+        contentType = URLConnection.guessContentTypeFromName(link);
+      }
+      if (contentType == null) {
+        contentType = URLConnection.guessContentTypeFromStream(in);
+      }
+      if (contentType == null) {
+        contentType = "";
+      }
+      if (!contentType.toLowerCase().startsWith(HTML_MIME_TYPE)) {
+        return new Page(contentType, null, false);
+      }
+
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      boolean late = false;
+      while (content.size() < maxPageBytes
+          && (read = in.read(buffer, 0, Math.min(buffer.length, maxPageBytes - content.size()))) != -1) {
+        content.write(buffer, 0, read);
+        //a server sending the page slowly is cut at the deadline
+        if (System.currentTimeMillis() > deadline) {
+          late = true;
+          break;
+        }
+      }
+      boolean truncated = late || (content.size() >= maxPageBytes && in.read() != -1);
+      return new Page(contentType, content.toByteArray(), truncated);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Gets the size of an image from its header.
+   *
+   * @param src the image link
+   * @return the width and the height of the image, null if the image can't be read
+   */
+  public int[] getImageSize(String src) {
+    InputStream in = null;
+    ImageInputStream imageIn = null;
+    try {
+      in = new LimitedInputStream(open(src).getInputStream(), maxImageBytes);
+      imageIn = new MemoryCacheImageInputStream(in);
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(imageIn);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(imageIn, true, true);
+        return new int[] {reader.getWidth(0), reader.getHeight(0)};
+      } finally {
+        reader.dispose();
+      }
+    } catch (Exception e) {
+      LOG.debug("Failed to read the size of image " + src, e);
+      return null;
+    } finally {
+      close(imageIn);
+      close(in);
+    }
+  }
+
+  /**
+   * Gets the images larger than the given size, the images are checked in parallel.
+   *
+   * @param srcs the image links
+   * @param minWidth the min width, excluded
+   * @param minHeight the min height, excluded
+   * @return the large enough images, in the order of the given links
+   */
+  public List<String> getLargeImages(List<String> srcs, final int minWidth, final int minHeight) {
+    List<Future<Boolean>> checks = new ArrayList<Future<Boolean>>(srcs.size());
+    for (final String src : srcs) {
+      checks.add(executor.submit(new Callable<Boolean>() {
+        public Boolean call() throws Exception {
+          int[] size = getImageSize(src);
+          return size != null && size[0] > minWidth && size[1] > minHeight;
+        }
+      }));
+    }
+
+    List<String> images = new ArrayList<String>();
+    long deadline = System.currentTimeMillis() + connectTimeout + readTimeout;
+    for (int i = 0; i < checks.size(); i++) {
+      Future<Boolean> check = checks.get(i);
+      try {
+        if (check.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS)) {
+          images.add(srcs.get(i));
+        }
+      } catch (TimeoutException e) {
+        check.cancel(true);
+      } catch (CancellationException e) {
+        //discarded, the pool was saturated
+      } catch (ExecutionException e) {
+        LOG.debug("Failed to check image " + srcs.get(i), e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        check.cancel(true);
+      }
+    }
+    return images;
+  }
+
+  /**
+   * Stops the threads checking the images.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private URLConnection open(String link) throws IOException {
+    URLConnection connection = new URL(link).openConnection();
+    connection.setConnectTimeout(connectTimeout);
+    connection.setReadTimeout(readTimeout);
+    return connection;
+  }
+
+  private static void close(Object closeable) {
+    try {
+      if (closeable instanceof InputStream) {
+        ((InputStream) closeable).close();
+      } else if (closeable instanceof ImageInputStream) {
+        ((ImageInputStream) closeable).close();
+      }
+    } catch (IOException e) {
+      LOG.debug("Failed to close stream", e);
+    }
+  }
+
+  /**
+   * Input stream ending after a given number of bytes.
+   */
+  private static class LimitedInputStream extends FilterInputStream {
+
+    private int remaining;
+
+    private LimitedInputStream(InputStream in, int limit) {
+      super(in);
+      this.remaining = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int read = super.read();
+      if (read != -1) {
+        remaining--;
+      }
+      return read;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int read = super.read(b, off, Math.min(len, remaining));
+      if (read > 0) {
+        remaining -= read;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(Math.min(n, remaining));
+      remaining -= skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return Math.min(super.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
@@ -16,18 +16,19 @@
  */
 package org.exoplatform.social.service.rest;
 
-import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.imageio.ImageIO;
 import javax.xml.bind.annotation.XmlRootElement;
 
 import org.apache.xerces.xni.Augmentations;
@@ -44,6 +45,7 @@ import org.exoplatform.commons.embedder.EmbedderFactory;
 import org.exoplatform.commons.embedder.ExoMedia;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
+import org.exoplatform.social.service.rest.LinkPreviewFetcher.Page;
 
 /**
  * LinkShare - gets preview information of a link including: 
@@ -80,6 +82,9 @@ import org.exoplatform.services.log.Log;
  * </pre>
  * In which: medium_type can be "audio", "image", "video", "news", "blog" and "mult".
  * <br>
+ * The previews are cached by {@link LinkPreviewCache}, the pages and the images are fetched
+ * by {@link LinkPreviewFetcher}.
+ * <br>
  * Created by The eXo Platform SEA
  * TODO: hoatle improvement:
  * + scans description with MIN_CHARACTER
@@ -125,14 +130,29 @@ public class LinkShare extends DefaultFilter {
   private static final int MIN_HEIGHT = 55;
   //maxium description length = 250 characters
   private static final int MAX_DESCRIPTION = 500;
+  //max number of images of a page checked for their size
+  private static final int MAX_IMAGE_CANDIDATES = 10;
   //default lang
-  private static String lang = "en";
+  private static final String DEFAULT_LANG = "en";
+  
+  private static final LinkPreviewCache<LinkShare> CACHE = new LinkPreviewCache<LinkShare>(LinkPreviewCache.DEFAULT_MAX_SIZE,
+                                                                                           LinkPreviewCache.DEFAULT_TIME_TO_LIVE,
+                                                                                           LinkPreviewCache.DEFAULT_FAILURE_TIME_TO_LIVE);
+  //created on the first preview, guarded by the class
+  private static LinkPreviewFetcher fetcher;
+  
   private String   link;
   private String   title;
   private String   description;
   private String imageSrc;
   private List<String> images;
+  //images of the page to check, in the page order
+  private List<String> imageCandidates;
+  //images large enough according to their width and height attributes
+  private Set<String> sizedImages;
   private ExoMedia mediaObject;
+  //the page could not be fetched, the preview is a fallback
+  private boolean failed;
   //Collections of description with key as lang
   private HashMap<String, String> descriptions;
   //holds temporary string values from characters() method
@@ -303,9 +323,10 @@ public class LinkShare extends DefaultFilter {
   /**
    * Gets information of the provided link by using remover filter,
    * using call back filter methods to get desired information.
- * @param encoding 
+   * @param page the fetched page
+   * @param encoding 
    */
-  private void get(String encoding) throws Exception {
+  private void get(Page page, String encoding) throws Exception {
     //Creates element remover filter
     ElementRemover remover = new ElementRemover();
     remover.acceptElement("head", null);
@@ -329,8 +350,7 @@ public class LinkShare extends DefaultFilter {
     parser.setProperty("http://cyberneko.org/html/properties/default-encoding", "UTF-8");
     parser.setProperty("http://cyberneko.org/html/properties/filters", filter);
     parser.setDocumentHandler(this);
-    XMLInputSource source = new XMLInputSource(null, Util.getDecodeQueryURL(link), null);
-    source.setEncoding(encoding);
+    XMLInputSource source = new XMLInputSource(null, link, null, new ByteArrayInputStream(page.getContent()), encoding);
     try {
       parser.parse(source);
     } catch (NullPointerException ne) {
@@ -343,6 +363,23 @@ public class LinkShare extends DefaultFilter {
     } catch (Exception e) {
       this.title = this.link;
     }
+    
+    //checks the size of the images without width and height attributes
+    if (imageSrc == null && imageCandidates != null) {
+      List<String> unsized = new ArrayList<String>();
+      for (String src : imageCandidates) {
+        if (sizedImages == null || !sizedImages.contains(src)) {
+          unsized.add(src);
+        }
+      }
+      Set<String> largeImages = new HashSet<String>(getFetcher().getLargeImages(unsized, MIN_WIDTH, MIN_HEIGHT));
+      images = new ArrayList<String>();
+      for (String src : imageCandidates) {
+        if (largeImages.contains(src) || (sizedImages != null && sizedImages.contains(src))) {
+          images.add(src);
+        }
+      }
+    }
   }
   
   /**
@@ -352,11 +389,13 @@ public class LinkShare extends DefaultFilter {
    * @throws Exception 
    */
   public static LinkShare getInstance(String link) throws Exception {
-    return getInstance(link, lang);
+    return getInstance(link, DEFAULT_LANG);
   }
   
   /**
    * Gets LinkShare instance with link and lang specified.
+   * The previews are cached, the concurrent requests of the same link wait for the same preview.
+   * The previews of the pages which could not be fetched are cached for a short time only.
    * @param link
    * @param lang
    * @return LinkShare instance
@@ -372,22 +411,47 @@ public class LinkShare extends DefaultFilter {
         link = HTTP_PROTOCOL + link;
     }
     
+    final String url = link;
+    final String language = lang != null ? lang : DEFAULT_LANG;
+    LinkShare cached = CACHE.get(LinkPreviewCache.keyOf(url, language), new LinkPreviewCache.Loader<LinkShare>() {
+      public LinkShare load() throws Exception {
+        return loadPreview(url, language);
+      }
+
+      @Override
+      public boolean isFailure(LinkShare value) {
+        return value.failed;
+      }
+    });
+    //the cached preview is shared, its setters must not change it
+    LinkShare linkShare = cached.copy();
+    linkShare.link = link;
+    return linkShare;
+  }
+  
+  private static LinkShare loadPreview(String link, String lang) throws Exception {
     LinkShare linkShare = new LinkShare();
     linkShare.link = link;
-    LinkShare.lang = lang;
     
     linkShare.mediaObject = EmbedderFactory.getInstance(link).getExoMedia(); 
     
     // if there is no media object, processes link to get page metadata
     if(linkShare.mediaObject == null) {
-      String mimeType = org.exoplatform.social.service.rest.Util.getMimeTypeOfURL(link);
+      Page page = null;
+      try {
+        page = getFetcher().fetch(Util.getDecodeQueryURL(link));
+      } catch (IOException e) {
+        LOG.debug("Failed to fetch link " + link, e);
+        linkShare.failed = true;
+      }
+      String mimeType = page != null ? page.getContentType() : "";
       if(mimeType.toLowerCase().startsWith(IMAGE_MIME_TYPE)){
         linkShare.images = new ArrayList<String>(0);
         linkShare.images.add(link);
         linkShare.description = "";
       } else if(mimeType.toLowerCase().startsWith(HTML_MIME_TYPE)){
         String encoding = (mimeType.contains("charset=")) ? mimeType.split("charset=")[1] : "UTF-8"; 
-        linkShare.get(encoding);
+        linkShare.get(page, encoding);
       } else {
         linkShare.images = new ArrayList<String>(0);
         linkShare.description = "";
@@ -404,7 +468,7 @@ public class LinkShare extends DefaultFilter {
       //gets desired description by lang when there are many description meta name with different lang
       HashMap<String, String> descriptions = linkShare.descriptions;
       if (descriptions != null) {
-        String description = descriptions.get(LinkShare.lang);
+        String description = descriptions.get(lang);
         if (description == null) {
          Collection<String> values = descriptions.values();
          //get the first value in the collection
@@ -426,6 +490,46 @@ public class LinkShare extends DefaultFilter {
     return linkShare;
   }
   
+  /**
+   * Stops the threads fetching the previews, a later preview starts new ones.
+   */
+  public static synchronized void shutdown() {
+    if (fetcher != null) {
+      fetcher.shutdown();
+      fetcher = null;
+    }
+  }
+  
+  private static synchronized LinkPreviewFetcher getFetcher() {
+    if (fetcher == null) {
+      fetcher = new LinkPreviewFetcher();
+    }
+    return fetcher;
+  }
+  
+  /**
+   * Copies the preview information.
+   * 
+   * @return the copy
+   */
+  private LinkShare copy() {
+    LinkShare copy = new LinkShare();
+    copy.link = link;
+    copy.title = title;
+    copy.description = description;
+    copy.images = images != null ? new ArrayList<String>(images) : null;
+    copy.mediaObject = mediaObject;
+    copy.mediumType = mediumType;
+    copy.mediaSrc = mediaSrc;
+    copy.mediaType = mediaType;
+    copy.mediaTitle = mediaTitle;
+    copy.mediaArtist = mediaArtist;
+    copy.mediaAlbum = mediaAlbum;
+    copy.mediaHeight = mediaHeight;
+    copy.mediaWidth = mediaWidth;
+    return copy;
+  }
+  
   /**
    * filter method is called back when scanning meets start element tag
    */
@@ -556,10 +660,19 @@ public class LinkShare extends DefaultFilter {
       String src = attributes.getValue("src");
       if (src == null) return;
       
-      if (isAcceptableImg(src)) {
-        src = getAbsLink(src);
-        if (images == null) images = new ArrayList<String>();
-        images.add(src);
+      int width = parseSize(attributes.getValue("width"));
+      int height = parseSize(attributes.getValue("height"));
+      if (width != -1 && height != -1 && (width <= MIN_WIDTH || height <= MIN_HEIGHT)) return;
+      if (imageCandidates == null) imageCandidates = new ArrayList<String>();
+      if (imageCandidates.size() >= MAX_IMAGE_CANDIDATES) return;
+      
+      src = getAbsLink(src);
+      if (imageCandidates.contains(src)) return;
+      imageCandidates.add(src);
+      //large enough according to its attributes, no need to fetch it
+      if (width != -1 && height != -1) {
+        if (sizedImages == null) sizedImages = new HashSet<String>();
+        sizedImages.add(src);
       }
     }
   }
@@ -642,17 +755,28 @@ public class LinkShare extends DefaultFilter {
     }
   }
   
-  private boolean isAcceptableImg(String src) {
-    BufferedImage img = null;
+  /**
+   * Parses the size of an image attribute in pixel: "55", "55px" or "55pt".
+   * 
+   * @param value the attribute value
+   * @return the size, -1 if it is missing or relative
+   */
+  private static int parseSize(String value) {
+    if (value == null) {
+      return -1;
+    }
+    value = value.trim();
+    int end = 0;
+    while (end < value.length() && Character.isDigit(value.charAt(end))) {
+      end++;
+    }
+    if (end == 0 || value.indexOf('%') != -1) {
+      return -1;
+    }
     try {
-       img = ImageIO.read(new URL(src));
-       int width = img.getWidth();
-       int height = img.getHeight();
-       return (width > MIN_WIDTH && height > MIN_HEIGHT);
-    } catch (MalformedURLException e) {
-      return false;
-    } catch (IOException e) {
-      return false;
+      return Integer.parseInt(value.substring(0, end));
+    } catch (NumberFormatException e) {
+      return -1;
     }
   }
 }
@@ -27,6 +27,7 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
 import org.exoplatform.services.rest.resource.ResourceContainer;
+import org.picocontainer.Startable;
 
 /**
  * Gets information from a provided link.
@@ -34,7 +35,7 @@ import org.exoplatform.services.rest.resource.ResourceContainer;
  * @anchor LinkShareRestService
  */
 @Path("social/linkshare")
-public class LinkShareRestService implements ResourceContainer {
+public class LinkShareRestService implements ResourceContainer, Startable {
   /**
    * constructor
    */
@@ -42,6 +43,18 @@ public class LinkShareRestService implements ResourceContainer {
 
   }
 
+  @Override
+  public void start() {
+  }
+
+  /**
+   * Stops the threads fetching the link previews.
+   */
+  @Override
+  public void stop() {
+    LinkShare.shutdown();
+  }
+
   /**
    * Gets the content of the link by the parameter passed to request.
    * 
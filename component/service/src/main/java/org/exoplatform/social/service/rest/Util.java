@@ -40,6 +40,7 @@ import org.exoplatform.container.PortalContainer;
 import org.exoplatform.services.rest.impl.EnvironmentContext;
 import org.exoplatform.services.security.ConversationState;
 import org.exoplatform.services.security.IdentityConstants;
+import org.exoplatform.social.core.activity.ActivityPageAssembler;
 import org.exoplatform.social.core.activity.model.ActivityStream;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
@@ -320,6 +321,18 @@ public final class Util {
                              getComponentInstanceOfType(ActivityManager.class);
   }
 
+  /**
+   * Gets {@link ActivityPageAssembler} with specified portal container name.
+   *
+   * @param portalContainerName the specified portal container
+   * @return the activity page assembler
+   * @since  4.0.x
+   */
+  public static final ActivityPageAssembler getActivityPageAssembler(String portalContainerName) {
+    return (ActivityPageAssembler) getPortalContainerByName(portalContainerName).
+                                   getComponentInstanceOfType(ActivityPageAssembler.class);
+  }
+
   /**
    * Gets {@link RelationshipManager} with default portal container.
    *
@@ -21,10 +21,15 @@ import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.rest.resource.ResourceContainer;
 import org.exoplatform.social.common.RealtimeListAccess;
+import org.exoplatform.social.core.activity.ActivitiesRealtimeListAccess;
+import org.exoplatform.social.core.activity.ActivityStreamCursor;
+import org.exoplatform.social.core.activity.ActivityStreamPage;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.manager.ActivityManager;
 import org.exoplatform.social.core.storage.ActivityStorageException;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
+import org.exoplatform.social.core.storage.streams.StreamUpdateSequences;
 import org.exoplatform.social.rest.impl.activity.ActivityRestResourcesV1;
 import org.exoplatform.social.rest.impl.space.SpaceRestResourcesV1;
 import org.exoplatform.social.rest.impl.user.UserRestResourcesV1;
@@ -32,6 +37,7 @@ import org.exoplatform.social.service.rest.RestChecker;
 import org.exoplatform.social.service.rest.SecurityManager;
 import org.exoplatform.social.service.rest.Util;
 import org.exoplatform.social.service.rest.api.models.ActivityRestListOut;
+import org.exoplatform.social.service.rest.api.models.ActivityStreamUpdatesRestOut;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
@@ -58,6 +64,7 @@ public class ActivityStreamResources implements ResourceContainer {
 
   private static final String[] SUPPORTED_FORMATS = new String[] {"json"};
   private static final int MAX_LIMIT = 100;
+  private static final int MAX_WAIT = 30;
 
 
   /**
@@ -1651,4 +1658,263 @@ public class ActivityStreamResources implements ResourceContainer {
 
     return Util.getResponse(activityRestListOut, uriInfo, mediaType, Response.Status.OK);
   }
+
+  /**
+   * Gets the activity feed of the authenticated user page by page. Each page returns the cursor of the next one,
+   * the activities are not counted: *has\_more* tells if there is a next page.
+   *
+   * @param uriInfo             The URI information.
+   * @param portalContainerName The portal container name.
+   * @param format              The format of the returned result, for example, JSON or XML.
+   * @param limit               Specifies the number of activities to retrieve. It must be less than or equal to 100.
+   *                            If it is not specified, the default value will be 100.
+   * @param cursor              The *next\_cursor* returned with the previous page. If it is not specified,
+   *                            the first page is returned.
+   * @param numberOfComments    Specifies the latest number of comments to be displayed along with each activity.
+   * @param numberOfLikes       Specifies the latest number of detailed likes to be returned along with each activity.
+   * @authentication
+   * @request
+   * GET: {@code http://localhost:8080/rest/private/api/social/v1-alpha3/portal/activity_stream/feedByCursor.json?limit=30&cursor=1370000000000:1a2b3c4d5e6f7g8h9j}
+   * @response
+   * {
+   *   "activities":[
+   *     {
+   *       "id":"1a210983123f7g8h9j",
+   *       "title":"Hello World 1!!!",
+   *       ...
+   *     }
+   *   ],
+   *   "next_cursor":"1369999999999:1a210983123f7g8h9j",
+   *   "has_more":true
+   * }
+   * @return the response
+   * @LevelAPI Platform
+   * @anchor ActivityStreamResources.getActivityFeedOfAuthenticatedByCursor
+   */
+  @GET
+  @Path("feedByCursor.{format}")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getActivityFeedOfAuthenticatedByCursor(@Context UriInfo uriInfo,
+                                                 @PathParam("portalContainerName") String portalContainerName,
+                                                 @PathParam("format") String format,
+                                                 @QueryParam("limit") int limit,
+                                                 @QueryParam("cursor") String cursor,
+                                                 @QueryParam("number_of_comments") int numberOfComments,
+                                                 @QueryParam("number_of_likes") int numberOfLikes) {
+    checkAuthenticatedRequest();
+    checkValidPortalContainerName(portalContainerName);
+    MediaType mediaType = checkSupportedFormat(format, SUPPORTED_FORMATS);
+
+    Identity sourceIdentity = Util.getAuthenticatedUserIdentity(portalContainerName);
+    ActivityManager activityManager = Util.getActivityManager(portalContainerName);
+
+    RealtimeListAccess<ExoSocialActivity> listAccess = activityManager.getActivityFeedWithListAccess(sourceIdentity);
+    ActivityRestListOut activityRestListOut = loadPage(listAccess, cursor, limit, numberOfComments,
+                                                       numberOfLikes, portalContainerName);
+    return Util.getResponse(activityRestListOut, uriInfo, mediaType, Response.Status.OK);
+  }
+
+  /**
+   * Gets the activities of the spaces of the authenticated user page by page. Each page returns the cursor of the next one,
+   * the activities are not counted: *has\_more* tells if there is a next page.
+   *
+   * @param uriInfo             The URI information.
+   * @param portalContainerName The portal container name.
+   * @param format              The format of the returned result, for example, JSON or XML.
+   * @param limit               Specifies the number of activities to retrieve. It must be less than or equal to 100.
+   *                            If it is not specified, the default value will be 100.
+   * @param cursor              The *next\_cursor* returned with the previous page. If it is not specified,
+   *                            the first page is returned.
+   * @param numberOfComments    Specifies the latest number of comments to be displayed along with each activity.
+   * @param numberOfLikes       Specifies the latest number of detailed likes to be returned along with each activity.
+   * @authentication
+   * @request
+   * GET: {@code http://localhost:8080/rest/private/api/social/v1-alpha3/portal/activity_stream/spacesByCursor.json?limit=30&cursor=1370000000000:1a2b3c4d5e6f7g8h9j}
+   * @response
+   * {
+   *   "activities":[
+   *     {
+   *       "id":"1a210983123f7g8h9j",
+   *       "title":"Hello World 1!!!",
+   *       ...
+   *     }
+   *   ],
+   *   "next_cursor":"1369999999999:1a210983123f7g8h9j",
+   *   "has_more":true
+   * }
+   * @return the response
+   * @LevelAPI Platform
+   * @anchor ActivityStreamResources.getActivitySpacesOfAuthenticatedByCursor
+   */
+  @GET
+  @Path("spacesByCursor.{format}")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getActivitySpacesOfAuthenticatedByCursor(@Context UriInfo uriInfo,
+                                                 @PathParam("portalContainerName") String portalContainerName,
+                                                 @PathParam("format") String format,
+                                                 @QueryParam("limit") int limit,
+                                                 @QueryParam("cursor") String cursor,
+                                                 @QueryParam("number_of_comments") int numberOfComments,
+                                                 @QueryParam("number_of_likes") int numberOfLikes) {
+    checkAuthenticatedRequest();
+    checkValidPortalContainerName(portalContainerName);
+    MediaType mediaType = checkSupportedFormat(format, SUPPORTED_FORMATS);
+
+    Identity sourceIdentity = Util.getAuthenticatedUserIdentity(portalContainerName);
+    ActivityManager activityManager = Util.getActivityManager(portalContainerName);
+
+    RealtimeListAccess<ExoSocialActivity> listAccess = activityManager.getActivitiesOfUserSpacesWithListAccess(sourceIdentity);
+    ActivityRestListOut activityRestListOut = loadPage(listAccess, cursor, limit, numberOfComments,
+                                                       numberOfLikes, portalContainerName);
+    return Util.getResponse(activityRestListOut, uriInfo, mediaType, Response.Status.OK);
+  }
+
+  /**
+   * Gets the activities of the connections of the authenticated user page by page. Each page returns the cursor of the next one,
+   * the activities are not counted: *has\_more* tells if there is a next page.
+   *
+   * @param uriInfo             The URI information.
+   * @param portalContainerName The portal container name.
+   * @param format              The format of the returned result, for example, JSON or XML.
+   * @param limit               Specifies the number of activities to retrieve. It must be less than or equal to 100.
+   *                            If it is not specified, the default value will be 100.
+   * @param cursor              The *next\_cursor* returned with the previous page. If it is not specified,
+   *                            the first page is returned.
+   * @param numberOfComments    Specifies the latest number of comments to be displayed along with each activity.
+   * @param numberOfLikes       Specifies the latest number of detailed likes to be returned along with each activity.
+   * @authentication
+   * @request
+   * GET: {@code http://localhost:8080/rest/private/api/social/v1-alpha3/portal/activity_stream/connectionsByCursor.json?limit=30&cursor=1370000000000:1a2b3c4d5e6f7g8h9j}
+   * @response
+   * {
+   *   "activities":[
+   *     {
+   *       "id":"1a210983123f7g8h9j",
+   *       "title":"Hello World 1!!!",
+   *       ...
+   *     }
+   *   ],
+   *   "next_cursor":"1369999999999:1a210983123f7g8h9j",
+   *   "has_more":true
+   * }
+   * @return the response
+   * @LevelAPI Platform
+   * @anchor ActivityStreamResources.getActivityConnectionsOfAuthenticatedByCursor
+   */
+  @GET
+  @Path("connectionsByCursor.{format}")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getActivityConnectionsOfAuthenticatedByCursor(@Context UriInfo uriInfo,
+                                                 @PathParam("portalContainerName") String portalContainerName,
+                                                 @PathParam("format") String format,
+                                                 @QueryParam("limit") int limit,
+                                                 @QueryParam("cursor") String cursor,
+                                                 @QueryParam("number_of_comments") int numberOfComments,
+                                                 @QueryParam("number_of_likes") int numberOfLikes) {
+    checkAuthenticatedRequest();
+    checkValidPortalContainerName(portalContainerName);
+    MediaType mediaType = checkSupportedFormat(format, SUPPORTED_FORMATS);
+
+    Identity sourceIdentity = Util.getAuthenticatedUserIdentity(portalContainerName);
+    ActivityManager activityManager = Util.getActivityManager(portalContainerName);
+
+    RealtimeListAccess<ExoSocialActivity> listAccess = activityManager.getActivitiesOfConnectionsWithListAccess(sourceIdentity);
+    ActivityRestListOut activityRestListOut = loadPage(listAccess, cursor, limit, numberOfComments,
+                                                       numberOfLikes, portalContainerName);
+    return Util.getResponse(activityRestListOut, uriInfo, mediaType, Response.Status.OK);
+  }
+
+  /**
+   * Gets the streams of the authenticated user which changed since the given update sequence, without loading
+   * their activities. The returned *sequence* is passed as *since* to the next call, the activities or their
+   * counts are only reloaded when *updated* is not empty.
+   *
+   * @param uriInfo             The URI information.
+   * @param portalContainerName The portal container name.
+   * @param format              The format of the returned result, for example, JSON or XML.
+   * @param since               The *sequence* returned by the previous call. If it is not specified, all the
+   *                            streams are returned as changed.
+   * @param wait                The number of seconds to wait for a change when none happened since the sequence.
+   *                            It must be less than or equal to 30. If it is not specified, the call returns at once.
+   *                            When too many clients are waiting, the call returns the status 503 with a
+   *                            *Retry-After* header.
+   * @authentication
+   * @request
+   * GET: {@code http://localhost:8080/rest/private/api/social/v1-alpha3/portal/activity_stream/updates.json?since=1370000000042&wait=25}
+   * @response
+   * {
+   *   "sequence":1370000000057,
+   *   "updated":["feed","connection"]
+   * }
+   * @return the response
+   * @LevelAPI Platform
+   * @anchor ActivityStreamResources.getActivityStreamUpdatesOfAuthenticated
+   */
+  @GET
+  @Path("updates.{format}")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getActivityStreamUpdatesOfAuthenticated(@Context UriInfo uriInfo,
+                                                          @PathParam("portalContainerName") String portalContainerName,
+                                                          @PathParam("format") String format,
+                                                          @QueryParam("since") long since,
+                                                          @QueryParam("wait") int wait) {
+    checkAuthenticatedRequest();
+    checkValidPortalContainerName(portalContainerName);
+    MediaType mediaType = checkSupportedFormat(format, SUPPORTED_FORMATS);
+
+    Identity sourceIdentity = Util.getAuthenticatedUserIdentity(portalContainerName);
+    StreamUpdateSequences sequences = (StreamUpdateSequences) Util.getPortalContainerByName(portalContainerName).
+                                      getComponentInstanceOfType(StreamUpdateSequences.class);
+    if (sequences == null || !sequences.isEnabled()) {
+      //the clients fall back to counting the new activities
+      throw new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE);
+    }
+
+    int maxWait = Math.min(wait, MAX_WAIT);
+    if (maxWait > 0) {
+      try {
+        if (sequences.await(sourceIdentity.getId(), since, maxWait * 1000L) == null) {
+          //too many clients hold a request thread, this one comes back later
+          throw new WebApplicationException(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                                                    .header("Retry-After", maxWait).build());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    //the sequence is read first so that a change made meanwhile is returned again by the next call
+    long sequence = sequences.getSequence(sourceIdentity.getId());
+    List<ActivityRefType> updated = sequences.getUpdated(sourceIdentity.getId(), since);
+    ActivityStreamUpdatesRestOut updatesRestOut = new ActivityStreamUpdatesRestOut(sequence, updated);
+    return Util.getResponse(updatesRestOut, uriInfo, mediaType, Response.Status.OK);
+  }
+
+  private ActivityRestListOut loadPage(RealtimeListAccess<ExoSocialActivity> listAccess, String cursor, int limit,
+                                       int numberOfComments, int numberOfLikes, String portalContainerName) {
+    int maxLimit = limit <= 0 ? MAX_LIMIT : Math.min(limit, MAX_LIMIT);
+
+    ActivityStreamCursor after = null;
+    try {
+      after = ActivityStreamCursor.parse(cursor);
+    } catch (IllegalArgumentException e) {
+      throw new WebApplicationException(Response.Status.BAD_REQUEST);
+    }
+
+    ActivityStreamPage page = null;
+    try {
+      if (listAccess instanceof ActivitiesRealtimeListAccess) {
+        page = ((ActivitiesRealtimeListAccess) listAccess).loadPage(after, maxLimit);
+      } else {
+        page = ActivityStreamPage.empty();
+      }
+    } catch (Exception e) {
+      LOG.error("Failed to load the page of the activity stream after the cursor " + cursor, e);
+      throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
+    }
+
+    ActivityRestListOut activityRestListOut = new ActivityRestListOut(page.getActivities(), numberOfComments,
+                                                                      numberOfLikes, portalContainerName);
+    activityRestListOut.setPage(page);
+    return activityRestListOut;
+  }
 }
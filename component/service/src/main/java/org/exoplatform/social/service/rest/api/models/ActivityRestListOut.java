@@ -20,7 +20,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
+import org.exoplatform.social.core.activity.ActivityPageView;
+import org.exoplatform.social.core.activity.ActivityStreamPage;
+import org.exoplatform.social.core.activity.ActivityView;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.service.rest.Util;
 
 /**
  * The activity rest list out model for Social Rest APIs.
@@ -38,7 +43,9 @@ public class ActivityRestListOut extends HashMap<String, Object> {
    * The enum fields as json keys
    */
   public static enum Field {
-    ACTIVITIES("activities");
+    ACTIVITIES("activities"),
+    NEXT_CURSOR("next_cursor"),
+    HAS_MORE("has_more");
 
     /**
      * field name
@@ -95,6 +102,19 @@ public class ActivityRestListOut extends HashMap<String, Object> {
   }
 
 
+  /**
+   * Sets the cursor of the next page and tells if the stream has more activities.
+   *
+   * @param page the loaded page
+   * @since 4.1.x
+   */
+  public void setPage(ActivityStreamPage page) {
+    if (page.getNext() != null) {
+      put(Field.NEXT_CURSOR.toString(), page.getNext().toString());
+    }
+    put(Field.HAS_MORE.toString(), page.hasMore());
+  }
+
   /**
    * Initializes default values
    */
@@ -112,13 +132,18 @@ public class ActivityRestListOut extends HashMap<String, Object> {
    */
   private void initialize(List<ExoSocialActivity> activityList, int numberOfComments,
                           int numberOfLikes, String portalContainerName) {
+    //the comments and the identities of the whole page are loaded together
+    ActivityPageView page = Util.getActivityPageAssembler(portalContainerName)
+                                .assemble(activityList, numberOfComments, false, numberOfLikes);
     List<ActivityRestOut> activityItems = new ArrayList<ActivityRestOut>();
-    for (ExoSocialActivity activity : activityList) {
-      ActivityRestOut activityItem = new ActivityRestOut(activity, portalContainerName);
-      activityItem.setPosterIdentity(new IdentityRestOut(activity.getUserId(), portalContainerName));
+    for (ActivityView view : page.getViews()) {
+      ExoSocialActivity activity = view.getActivity();
+      ActivityRestOut activityItem = new ActivityRestOut(activity, view.getNumberOfComments(), portalContainerName);
+      Identity poster = view.getPoster();
+      activityItem.setPosterIdentity(poster != null ? new IdentityRestOut(poster) : null);
       activityItem.setActivityStream(new ActivityStreamRestOut(activity.getActivityStream(), portalContainerName));
-      activityItem.setNumberOfComments(numberOfComments, activity, portalContainerName);
-      activityItem.setNumberOfLikes(numberOfLikes, activity, portalContainerName);
+      activityItem.setNumberOfComments(numberOfComments, view, page);
+      activityItem.setNumberOfLikes(numberOfLikes, view);
       activityItems.add(activityItem);
 
     }
@@ -22,6 +22,8 @@ import java.util.List;
 import java.util.Map;
 
 import org.exoplatform.social.common.RealtimeListAccess;
+import org.exoplatform.social.core.activity.ActivityPageView;
+import org.exoplatform.social.core.activity.ActivityView;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.manager.ActivityManager;
@@ -145,6 +147,19 @@ public class ActivityRestOut extends HashMap<String, Object>{
 
 
   public ActivityRestOut(final ExoSocialActivity activity, String portalContainerName) {
+    this(activity, Util.getActivityManager(portalContainerName).getCommentsWithListAccess(activity).getSize(),
+         portalContainerName);
+  }
+
+  /**
+   * Constructs the model of an activity whose comments are already counted.
+   *
+   * @param activity the activity
+   * @param totalNumberOfComments the number of comments of the activity
+   * @param portalContainerName the portal container name
+   * @since 4.0.x
+   */
+  public ActivityRestOut(final ExoSocialActivity activity, int totalNumberOfComments, String portalContainerName) {
     initialize();
     this.setId(activity.getId());
     this.setTitle(activity.getTitle());
@@ -170,9 +185,7 @@ public class ActivityRestOut extends HashMap<String, Object>{
       this.setLiked(false);
     }
     
-    RealtimeListAccess<ExoSocialActivity> commentRealtimeListAccess = Util.getActivityManager(portalContainerName).
-                                                                           getCommentsWithListAccess(activity);
-    this.setTotalNumberOfComments(commentRealtimeListAccess.getSize());
+    this.setTotalNumberOfComments(totalNumberOfComments);
     
     Identity streamOwnerIdentity = Util.getOwnerIdentityIdFromActivity(portalContainerName, activity);
     if(streamOwnerIdentity != null){
@@ -456,6 +469,48 @@ public class ActivityRestOut extends HashMap<String, Object>{
     }
     setComments(commentRests);
   }
+
+ /**
+  * Sets the likers of an assembled activity, the latest first.
+  *
+  * @param numberOfLikes the number of likes
+  * @param view the assembled activity
+  * @since 4.0.x
+  */
+  public void setNumberOfLikes(int numberOfLikes, ActivityView view) {
+    if (numberOfLikes <= 0) {
+      return;
+    }
+    List<Identity> likers = view.getLikers();
+    numberOfLikes = Math.min(numberOfLikes, likers.size());
+    List<IdentityRestOut> identityRests = new ArrayList<IdentityRestOut>(numberOfLikes);
+    for (int i = 0; i < numberOfLikes; i++) {
+      identityRests.add(new IdentityRestOut(likers.get(likers.size() - i - 1)));
+    }
+    setLikedByIdentities(identityRests);
+  }
+
+ /**
+  * Sets the comments of an assembled activity.
+  *
+  * @param numberOfComments the number of comments
+  * @param view the assembled activity
+  * @param page the page holding the comment posters
+  * @since 4.0.x
+  */
+  public void setNumberOfComments(int numberOfComments, ActivityView view, ActivityPageView page) {
+    if (numberOfComments <= 0) {
+      return;
+    }
+    List<ExoSocialActivity> comments = view.getComments();
+    numberOfComments = Math.min(comments.size(), numberOfComments);
+    List<CommentRestOut> commentRests = new ArrayList<CommentRestOut>(numberOfComments);
+    for (int i = 0; i < numberOfComments; i++) {
+      ExoSocialActivity currentComment = comments.get(i);
+      commentRests.add(new CommentRestOut(currentComment, page.getIdentity(currentComment.getUserId())));
+    }
+    setComments(commentRests);
+  }
   
   private void initialize(){
     this.setId("");
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest.api.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
+
+/**
+ * The activity stream updates model for Social Rest APIs: the current update sequence of the
+ * streams of an identity and the streams changed since the sequence known by the client.
+ *
+ * @since 4.0.x
+ */
+public class ActivityStreamUpdatesRestOut extends HashMap<String, Object> {
+
+  /**
+   * The enum fields as json keys
+   */
+  public static enum Field {
+    SEQUENCE("sequence"),
+    UPDATED("updated");
+
+    /**
+     * field name
+     */
+    private final String fieldName;
+
+    /**
+     * Private constructor.
+     *
+     * @param str the field name
+     */
+    private Field(final String str) {
+      fieldName = str;
+    }
+
+    /**
+     * Gets the string field name.
+     *
+     * @return the field name
+     */
+    @Override
+    public String toString() {
+      return fieldName;
+    }
+  }
+
+  /**
+   * Default constructor for initializing default values.
+   */
+  public ActivityStreamUpdatesRestOut() {
+    setSequence(0);
+    setUpdated(null);
+  }
+
+  /**
+   * Constructor to set the sequence and the changed streams.
+   *
+   * @param sequence the current update sequence
+   * @param updated the changed streams
+   */
+  public ActivityStreamUpdatesRestOut(long sequence, List<ActivityRefType> updated) {
+    setSequence(sequence);
+    setUpdated(updated);
+  }
+
+  /**
+   * Gets the current update sequence.
+   *
+   * @return the sequence
+   */
+  public long getSequence() {
+    return (Long) get(Field.SEQUENCE.toString());
+  }
+
+  /**
+   * Sets the current update sequence.
+   *
+   * @param sequence the sequence
+   */
+  public void setSequence(long sequence) {
+    put(Field.SEQUENCE.toString(), sequence);
+  }
+
+  /**
+   * Gets the names of the changed streams.
+   *
+   * @return the stream names
+   */
+  @SuppressWarnings("unchecked")
+  public List<String> getUpdated() {
+    return (List<String>) get(Field.UPDATED.toString());
+  }
+
+  /**
+   * Sets the changed streams, they are named after their lower case type: feed, connection,
+   * my_spaces, space_stream or my_activities.
+   *
+   * @param updated the changed streams
+   */
+  public void setUpdated(List<ActivityRefType> updated) {
+    List<String> names = new ArrayList<String>();
+    if (updated != null) {
+      for (ActivityRefType type : updated) {
+        names.add(type.name().toLowerCase());
+      }
+    }
+    put(Field.UPDATED.toString(), names);
+  }
+}
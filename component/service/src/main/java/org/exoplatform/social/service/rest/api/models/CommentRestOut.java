@@ -19,6 +19,7 @@ package org.exoplatform.social.service.rest.api.models;
 import java.util.HashMap;
 
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.service.rest.Util;
 
 /**
@@ -88,6 +89,21 @@ public class CommentRestOut extends HashMap<String, Object>{
     this.setPostedTime(commentActivity.getPostedTime());
     this.setCreatedAt(Util.convertTimestampToTimeString(commentActivity.getPostedTime()));  
   }
+
+  /**
+   * Construct Comments model ExoSocialActivity with its poster already loaded.
+   * @param commentActivity
+   * @param posterIdentity the poster identity, null if it is not found
+   * @since 4.0.x
+   */
+  public CommentRestOut(ExoSocialActivity commentActivity, Identity posterIdentity){
+    initialize();
+    this.setId(commentActivity.getId());
+    this.setPosterIdentity(posterIdentity != null ? new IdentityRestOut(posterIdentity) : null);
+    this.setText(commentActivity.getTitle());
+    this.setPostedTime(commentActivity.getPostedTime());
+    this.setCreatedAt(Util.convertTimestampToTimeString(commentActivity.getPostedTime()));
+  }
   
   public String getId() {
     return (String) this.get(Field.ID.toString());
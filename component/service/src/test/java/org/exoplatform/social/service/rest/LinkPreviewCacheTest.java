@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class LinkPreviewCacheTest extends TestCase {
+
+  public void testKeyOf() throws Exception {
+    assertEquals(LinkPreviewCache.keyOf("http://www.example.com/", "en"),
+                 LinkPreviewCache.keyOf("HTTP://WWW.Example.com:80#top", "EN"));
+    assertEquals("https://example.com:8443/a?b=c fr", LinkPreviewCache.keyOf("https://example.com:8443/a?b=c", "fr"));
+    assertFalse(LinkPreviewCache.keyOf("http://example.com/A", "en").equals(LinkPreviewCache.keyOf("http://example.com/a", "en")));
+  }
+
+  public void testGet() throws Exception {
+    LinkPreviewCache<String> cache = new LinkPreviewCache<String>(2, 60000);
+    final AtomicInteger loads = new AtomicInteger();
+    LinkPreviewCache.Loader<String> loader = new LinkPreviewCache.Loader<String>() {
+      public String load() throws Exception {
+        return "preview" + loads.incrementAndGet();
+      }
+    };
+    assertEquals("preview1", cache.get("a", loader));
+    assertEquals("preview1", cache.get("a", loader));
+    assertEquals(1, cache.getHits());
+
+    //the least recently used preview is evicted
+    cache.get("b", loader);
+    cache.get("a", loader);
+    cache.get("c", loader);
+    assertEquals(2, cache.getSize());
+    assertEquals("preview1", cache.get("a", loader));
+    assertEquals("preview4", cache.get("b", loader));
+  }
+
+  public void testExpiration() throws Exception {
+    LinkPreviewCache<String> cache = new LinkPreviewCache<String>(10, 20);
+    final AtomicInteger loads = new AtomicInteger();
+    LinkPreviewCache.Loader<String> loader = new LinkPreviewCache.Loader<String>() {
+      public String load() throws Exception {
+        return "preview" + loads.incrementAndGet();
+      }
+    };
+    assertEquals("preview1", cache.get("a", loader));
+    Thread.sleep(50);
+    assertEquals("preview2", cache.get("a", loader));
+  }
+
+  public void testFailuresAreNotCached() throws Exception {
+    LinkPreviewCache<String> cache = new LinkPreviewCache<String>(10, 60000);
+    try {
+      cache.get("a", new LinkPreviewCache.Loader<String>() {
+        public String load() throws Exception {
+          throw new IllegalStateException("unreachable");
+        }
+      });
+      fail();
+    } catch (IllegalStateException e) {
+      //expected
+    }
+    assertEquals(0, cache.getSize());
+  }
+
+  public void testFailedPreviewsExpireSooner() throws Exception {
+    LinkPreviewCache<String> cache = new LinkPreviewCache<String>(10, 60000, 20);
+    final AtomicInteger loads = new AtomicInteger();
+    LinkPreviewCache.Loader<String> loader = new LinkPreviewCache.Loader<String>() {
+      public String load() throws Exception {
+        return "fallback" + loads.incrementAndGet();
+      }
+
+      @Override
+      public boolean isFailure(String value) {
+        return value.startsWith("fallback");
+      }
+    };
+    assertEquals("fallback1", cache.get("a", loader));
+    assertEquals("fallback1", cache.get("a", loader));
+    Thread.sleep(50);
+    assertEquals("fallback2", cache.get("a", loader));
+
+    //not cached at all without a failure time to live
+    cache = new LinkPreviewCache<String>(10, 60000);
+    cache.get("a", loader);
+    assertEquals(0, cache.getSize());
+  }
+
+  public void testConcurrentRequestsAreDeduplicated() throws Exception {
+    final LinkPreviewCache<String> cache = new LinkPreviewCache<String>(10, 60000);
+    final AtomicInteger loads = new AtomicInteger();
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final LinkPreviewCache.Loader<String> loader = new LinkPreviewCache.Loader<String>() {
+      public String load() throws Exception {
+        loads.incrementAndGet();
+        loading.countDown();
+        release.await();
+        return "preview";
+      }
+    };
+
+    int count = 5;
+    final String[] results = new String[count];
+    Thread[] threads = new Thread[count];
+    for (int i = 0; i < count; i++) {
+      final int index = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            results[index] = cache.get("a", loader);
+          } catch (Exception e) {
+            results[index] = e.toString();
+          }
+        }
+      };
+      threads[i].start();
+      if (i == 0) {
+        loading.await();
+      }
+    }
+    while (cache.getJoins() < count - 1) {
+      Thread.sleep(5);
+    }
+    release.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(1, loads.get());
+    for (String result : results) {
+      assertEquals("preview", result);
+    }
+  }
+}
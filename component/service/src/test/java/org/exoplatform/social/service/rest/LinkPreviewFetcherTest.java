@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class LinkPreviewFetcherTest extends TestCase {
+
+  private HttpServer server;
+
+  private String base;
+
+  private ExecutorService serverExecutor;
+
+  private LinkPreviewFetcher fetcher;
+
+  @Override
+  protected void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    byte[] page = ("<html><head><title>Stub</title></head><body><p>" + repeat('x', 10000) + "</p></body></html>").getBytes("UTF-8");
+    serve("/page.html", "text/html; charset=UTF-8", page, 0);
+    serve("/large.png", "image/png", png(200, 100), 0);
+    serve("/small.png", "image/png", png(20, 20), 0);
+    serve("/slow.png", "image/png", png(200, 100), 2000);
+    serve("/broken.png", "image/png", "not an image".getBytes("UTF-8"), 0);
+    drip("/drip.html", page, 64, 200);
+    serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+    server.start();
+    base = "http://127.0.0.1:" + server.getAddress().getPort();
+    fetcher = new LinkPreviewFetcher(500, 500, 1024, 4096, 4);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    fetcher.shutdown();
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  public void testFetchPage() throws Exception {
+    LinkPreviewFetcher.Page page = fetcher.fetch(base + "/page.html");
+    assertTrue(page.getContentType().startsWith("text/html"));
+    //the page is cut at the byte limit
+    assertEquals(1024, page.getContent().length);
+    assertTrue(page.isTruncated());
+
+    page = fetcher.fetch(base + "/large.png");
+    assertEquals("image/png", page.getContentType());
+    assertNull(page.getContent());
+  }
+
+  public void testSlowPageIsCutAtTheDeadline() throws Exception {
+    //each chunk comes before the read timeout, the page is cut at the deadline
+    LinkPreviewFetcher.Page page = fetcher.fetch(base + "/drip.html");
+    assertTrue(page.isTruncated());
+    assertTrue(page.getContent().length < 1024);
+  }
+
+  public void testImageSizeFromHeader() throws Exception {
+    assertTrue(Arrays.equals(new int[] {200, 100}, fetcher.getImageSize(base + "/large.png")));
+    assertTrue(Arrays.equals(new int[] {20, 20}, fetcher.getImageSize(base + "/small.png")));
+    assertNull(fetcher.getImageSize(base + "/broken.png"));
+    assertNull(fetcher.getImageSize(base + "/missing.png"));
+  }
+
+  public void testLargeImages() throws Exception {
+    //the slow image is skipped at the deadline
+    assertEquals(Arrays.asList(base + "/large.png"),
+                 fetcher.getLargeImages(Arrays.asList(base + "/small.png", base + "/slow.png", base + "/large.png",
+                                                      base + "/broken.png"), 55, 55));
+  }
+
+  private void serve(final String path, final String contentType, final byte[] content, final long delay) {
+    server.createContext(path, new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, content.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+          if (delay > 0) {
+            Thread.sleep(delay);
+          }
+          out.write(content);
+        } catch (Exception e) {
+          //the client went away
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+  }
+
+  private void drip(final String path, final byte[] content, final int chunk, final long interval) {
+    server.createContext(path, new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, content.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+          for (int i = 0; i < content.length; i += chunk) {
+            out.write(content, i, Math.min(chunk, content.length - i));
+            out.flush();
+            Thread.sleep(interval);
+          }
+        } catch (Exception e) {
+          //the client went away
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+  }
+
+  private static byte[] png(int width, int height) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", out);
+    return out.toByteArray();
+  }
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+}
@@ -2764,6 +2764,56 @@ public class ActivityStreamResourcesTest extends AbstractResourceTest {
     }
     endSession();
   }
+
+  /**
+   * General test cases of {@link ActivityStreamResources#getActivityFeedOfAuthenticatedByCursor(UriInfo, String, String, int, String, int, int)}
+   *
+   * @throws Exception
+   */
+  public void testGetActivityFeedOfAuthenticatedByCursorGeneralCase() throws Exception {
+    testAccessResourceAsAnonymous("GET", RESOURCE_URL + "feedByCursor.json", null, null);
+    testStatusCodeOfResource("demo", "GET", RESOURCE_URL + "feedByCursor.xml", null, null,
+                             Response.Status.UNSUPPORTED_MEDIA_TYPE.getStatusCode());
+    testStatusCodeOfResource("demo", "GET", RESOURCE_URL + "feedByCursor.json?cursor=wrong", null, null,
+                             Response.Status.BAD_REQUEST.getStatusCode());
+  }
+
+  /**
+   * Test {@link ActivityStreamResources#getActivityFeedOfAuthenticatedByCursor(UriInfo, String, String, int, String, int, int)}
+   *
+   * @throws Exception
+   */
+  public void testGetActivityFeedOfAuthenticatedByCursorWithJsonFormat() throws Exception {
+    String resourceUrl = RESOURCE_URL + "feedByCursor.json?limit=3";
+    startSessionAs("demo");
+
+    ContainerResponse containerResponse1 = service("GET", resourceUrl, "", null, null);
+    assertEquals(200, containerResponse1.getStatus());
+    ActivityRestListOut page1 = (ActivityRestListOut) containerResponse1.getEntity();
+    compareActivities(new ArrayList<ExoSocialActivity>(), page1);
+    assertEquals(Boolean.FALSE, page1.get(ActivityRestListOut.Field.HAS_MORE.toString()));
+    assertNull(page1.get(ActivityRestListOut.Field.NEXT_CURSOR.toString()));
+
+    createActivities(demoIdentity, demoIdentity, 5);
+    List<ExoSocialActivity> demoActivitiesFeed = activityManager.getActivityFeedWithListAccess(demoIdentity).loadAsList(0, 5);
+
+    //the first page tells there is a next one
+    ContainerResponse containerResponse2 = service("GET", resourceUrl, "", null, null);
+    assertEquals(200, containerResponse2.getStatus());
+    ActivityRestListOut page2 = (ActivityRestListOut) containerResponse2.getEntity();
+    compareActivities(demoActivitiesFeed.subList(0, 3), page2);
+    assertEquals(Boolean.TRUE, page2.get(ActivityRestListOut.Field.HAS_MORE.toString()));
+    String cursor = (String) page2.get(ActivityRestListOut.Field.NEXT_CURSOR.toString());
+    assertNotNull(cursor);
+
+    //the last page
+    ContainerResponse containerResponse3 = service("GET", resourceUrl + "&cursor=" + cursor, "", null, null);
+    assertEquals(200, containerResponse3.getStatus());
+    ActivityRestListOut page3 = (ActivityRestListOut) containerResponse3.getEntity();
+    compareActivities(demoActivitiesFeed.subList(3, 5), page3);
+    assertEquals(Boolean.FALSE, page3.get(ActivityRestListOut.Field.HAS_MORE.toString()));
+    endSession();
+  }
   
   /**
    * An identity posts an activity to an identity's activity stream with a number of activities.
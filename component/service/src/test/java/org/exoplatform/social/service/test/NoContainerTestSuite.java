@@ -16,6 +16,8 @@
  */
 package org.exoplatform.social.service.test;
 
+import org.exoplatform.social.service.rest.LinkPreviewCacheTest;
+import org.exoplatform.social.service.rest.LinkPreviewFetcherTest;
 import org.exoplatform.social.service.rest.api.models.ActivityRestInTest;
 import org.exoplatform.social.service.rest.api.models.ActivityStreamRestOutTest;
 import org.exoplatform.social.service.rest.api.models.CommentRestInTest;
@@ -30,7 +32,9 @@ import org.junit.runners.Suite.SuiteClasses;
   UtilTest.class,
   ActivityRestInTest.class,
   ActivityStreamRestOutTest.class,
-  CommentRestInTest.class
+  CommentRestInTest.class,
+  LinkPreviewCacheTest.class,
+  LinkPreviewFetcherTest.class
   })
 public class NoContainerTestSuite {
   
@@ -154,9 +154,15 @@ public class UIAvatarUploader extends UIForm {
               mimeType = uiAvatarUploader.getStandardMimeType(mimeType);
             }
 
-            AvatarAttachment avatarAttachment = ImageUtils.createResizedAvatarAttachment(uploadedStream, WIDTH, 0, null,
-                                                                                         fileName, mimeType, null);
+            // the profile and the space avatars are resized once from the image header
+            Map<String, AvatarAttachment> avatars = ImageUtils.createResizedAvatarAttachments(uploadedStream,
+                                                                                              new int[][] {{WIDTH, 0}},
+                                                                                              null, fileName, mimeType, null);
+            AvatarAttachment avatarAttachment = avatars.get(ImageUtils.buildImagePostfix(WIDTH, 0));
             if (avatarAttachment == null) {
+              // the uploaded stream was read by the resize, it is opened again
+              uploadedStream.close();
+              uploadedStream = new FileInputStream(new File(uploadResource.getStoreLocation()));
               avatarAttachment = new AvatarAttachment(null, fileName, mimeType, uploadedStream, null, System.currentTimeMillis());
             }
             //
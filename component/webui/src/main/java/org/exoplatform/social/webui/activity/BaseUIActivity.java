@@ -25,6 +25,9 @@ import org.exoplatform.commons.utils.HTMLSanitizer;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.social.common.RealtimeListAccess;
+import org.exoplatform.social.core.activity.ActivityPageAssembler;
+import org.exoplatform.social.core.activity.ActivityPageView;
+import org.exoplatform.social.core.activity.ActivityView;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.application.SpaceActivityPublisher;
@@ -63,6 +66,8 @@ import org.exoplatform.webui.form.UIFormTextAreaInput;
  * @since Jul 23, 2010
  */
 public class BaseUIActivity extends UIForm {
+  /** The request attribute holding the page assembled by {@link #assemblePage(List)}. */
+  public static final String ACTIVITY_PAGE_VIEW_KEY = "activityPageView";
   protected static final int LIKES_NUM_DEFAULT           = 0;
   private static final Log   LOG                         = ExoLogger.getLogger(BaseUIActivity.class);
   private static final int   DEFAULT_LIMIT               = 10;
@@ -132,7 +137,9 @@ public class BaseUIActivity extends UIForm {
     WebuiRequestContext requestContext = WebuiRequestContext.getCurrentInstance();
     ResourceBundle resourceBundle = requestContext.getApplicationResourceBundle();
     this.activity = activity;
-    Identity identity = Utils.getIdentityManager().getIdentity(activity.getUserId(), true);
+    ActivityView view = getView();
+    Identity identity = (view != null && view.getPoster() != null) ? view.getPoster()
+                        : Utils.getIdentityManager().getIdentity(activity.getUserId(), true);
     setOwnerIdentity(identity);
 
     UIFormTextAreaInput commentTextArea = new UIFormTextAreaInput("CommentTextarea" + activity.getId(), "CommentTextarea", null);
@@ -236,7 +243,12 @@ public class BaseUIActivity extends UIForm {
     } else if (commentListStatus == CommentStatus.NONE) {
       return comments != null ? comments : new ArrayList<ExoSocialActivity>();
     } else {
-      if (commentSize > LATEST_COMMENTS_SIZE) {
+      ActivityView view = getView();
+      if (view != null && view.getNumberOfComments() == commentSize
+          && view.getComments().size() == Math.min(commentSize, LATEST_COMMENTS_SIZE)) {
+        //loaded with the page
+        comments = new ArrayList<ExoSocialActivity>(view.getComments());
+      } else if (commentSize > LATEST_COMMENTS_SIZE) {
         comments = activityCommentsListAccess.loadAsList(commentSize - LATEST_COMMENTS_SIZE, LATEST_COMMENTS_SIZE);
       } else {
         comments = activityCommentsListAccess.loadAsList(0, commentSize >= DEFAULT_LIMIT ? DEFAULT_LIMIT : commentSize);
@@ -269,6 +281,58 @@ public class BaseUIActivity extends UIForm {
     return identityLikes;
   }
 
+  /**
+   * Gets an identity this activity refers to: its poster, a commenter or a liker. The identities
+   * loaded with the page of the activity during this request are used first.
+   *
+   * @param identityId the identity id
+   * @return the identity with its profile
+   */
+  public Identity getIdentity(String identityId) {
+    ActivityPageView page = getPageView();
+    Identity identity = (page != null) ? page.getIdentity(identityId) : null;
+    return (identity != null) ? identity : Utils.getIdentityManager().getIdentity(identityId);
+  }
+
+  /**
+   * Assembles the activities of a page with their latest comments and the identities they refer to,
+   * the activities of the page use them during this request instead of loading their own.
+   *
+   * @param activityIds the ids of the activities rendered in full
+   * @return the page, null if there is nothing to assemble
+   */
+  static ActivityPageView assemblePage(List<String> activityIds) {
+    ActivityPageAssembler assembler = CommonsUtils.getService(ActivityPageAssembler.class);
+    if (assembler == null || activityIds.isEmpty()) {
+      return null;
+    }
+    ActivityPageView page = assembler.assemble(activityIds, LATEST_COMMENTS_SIZE, true, Integer.MAX_VALUE);
+    setPageView(page);
+    return page;
+  }
+
+  /**
+   * Lets the activities of an already assembled page use it during this request.
+   *
+   * @param page the page
+   */
+  static void setPageView(ActivityPageView page) {
+    WebuiRequestContext.getCurrentInstance().setAttribute(ACTIVITY_PAGE_VIEW_KEY, page);
+  }
+
+  private static ActivityPageView getPageView() {
+    WebuiRequestContext context = WebuiRequestContext.getCurrentInstance();
+    return (context != null) ? (ActivityPageView) context.getAttribute(ACTIVITY_PAGE_VIEW_KEY) : null;
+  }
+
+  /**
+   * Gets the view of this activity when it was assembled with its page during this request.
+   */
+  private ActivityView getView() {
+    ActivityPageView page = getPageView();
+    return (page != null && activity != null) ? page.getView(activity.getId()) : null;
+  }
+
   /**
    * Removes currently viewing userId if he liked this activity.
    *
@@ -463,7 +527,8 @@ public class BaseUIActivity extends UIForm {
       return;
     }
     activityCommentsListAccess = Utils.getActivityManager().getCommentsWithListAccess(activity);
-    commentSize = activityCommentsListAccess.getSize();
+    ActivityView view = getView();
+    commentSize = (view != null) ? view.getNumberOfComments() : activityCommentsListAccess.getSize();
     identityLikes = activity.getLikeIdentityIds();
 
     // init single activity : focus to comment's box or expand all comments
@@ -18,6 +18,7 @@ package org.exoplatform.social.webui.activity;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -25,6 +26,8 @@ import org.apache.commons.lang.StringUtils;
 import org.exoplatform.commons.utils.CommonsUtils;
 import org.exoplatform.commons.utils.PrivilegedSystemHelper;
 import org.exoplatform.portal.application.PortalRequestContext;
+import org.exoplatform.social.core.activity.ActivityPageView;
+import org.exoplatform.social.core.activity.ActivityView;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.manager.ActivityManager;
@@ -204,16 +207,27 @@ public class UIActivitiesContainer extends UIContainer {
     uiActivityIdFirstList = new LinkedList<String>();
     uiActivityIdNextList = new LinkedList<String>();
     
+    //the activities rendered in full are loaded together with their comments and identities
+    List<String> fullRenderIds;
+    if (isRenderFull()) {
+      fullRenderIds = activityIdList;
+    } else if (activityFullRender > 0 && isFirstLoader) {
+      fullRenderIds = activityIdList.subList(0, Math.min(activityFullRender, activityIdList.size()));
+    } else {
+      fullRenderIds = new ArrayList<String>(0);
+    }
+    ActivityPageView page = BaseUIActivity.assemblePage(new ArrayList<String>(fullRenderIds));
+
     ActivityManager activityManager = getApplicationComponent(ActivityManager.class);
     for (String activityId : activityIdList) {
       UIActivityLoader uiActivityLoader = addChild(UIActivityLoader.class, null, UIActivityLoader.buildComponentId(activityId));
       if (isRenderFull()) {
         UIActivityFactory factory = CommonsUtils.getService(UIActivityFactory.class);
-        factory.addChild(activityManager.getActivity(activityId), uiActivityLoader);
+        factory.addChild(getActivity(page, activityId, activityManager), uiActivityLoader);
       } else if (activityFullRender > 0 && isFirstLoader) {
         if (index < activityFullRender) {
           UIActivityFactory factory = CommonsUtils.getService(UIActivityFactory.class);
-          factory.addChild(activityManager.getActivity(activityId), uiActivityLoader);
+          factory.addChild(getActivity(page, activityId, activityManager), uiActivityLoader);
           uiActivityIdFirstList.add(uiActivityLoader.getId());
         } else {
           uiActivityIdNextList.add(uiActivityLoader.getId());
@@ -225,6 +239,11 @@ public class UIActivitiesContainer extends UIContainer {
     }
   }
 
+  private static ExoSocialActivity getActivity(ActivityPageView page, String activityId, ActivityManager activityManager) {
+    ActivityView view = (page != null) ? page.getView(activityId) : null;
+    return (view != null) ? view.getActivity() : activityManager.getActivity(activityId);
+  }
+
   public void addActivity(ExoSocialActivity activity) throws Exception {
     if (activityList == null) {
       activityList = new LinkedList<ExoSocialActivity>();
@@ -274,7 +293,10 @@ public class UIActivitiesContainer extends UIContainer {
       }
       //
       String activityId = uiActivityId.replace(UIActivityLoader.COMPONENT_ID, StringUtils.EMPTY);
-      ExoSocialActivity activity = CommonsUtils.getService(ActivityManager.class).getActivity(activityId);
+      //each activity loaded after the first render is assembled with its comments and identities
+      //by its own request, the page is not kept by the component
+      ActivityPageView page = BaseUIActivity.assemblePage(new ArrayList<String>(Collections.singletonList(activityId)));
+      ExoSocialActivity activity = getActivity(page, activityId, CommonsUtils.getService(ActivityManager.class));
       //
       UIActivityLoader uiActivityLoader = uiActivitiesContainer.getChildById(uiActivityId);
       if (uiActivityLoader != null) {
@@ -16,15 +16,13 @@
  */
 package org.exoplatform.social.extras.feedmash;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.net.URL;
-import java.net.URLConnection;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 import org.exoplatform.container.ExoContainer;
 import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.component.RequestLifeCycle;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
@@ -39,10 +37,6 @@ import org.quartz.JobExecutionException;
 
 import com.google.common.collect.Lists;
 import com.sun.syndication.feed.synd.SyndEntryImpl;
-import com.sun.syndication.feed.synd.SyndFeed;
-import com.sun.syndication.io.SyndFeedInput;
-import com.sun.syndication.io.XmlReader;
-import com.sun.syndication.io.impl.Base64;
 
 public abstract class AbstractFeedmashJob implements Job {
 
@@ -50,6 +44,10 @@ public abstract class AbstractFeedmashJob implements Job {
 
   protected static final String LAST_CHECKED = "lastChecked";
 
+  protected static final String ETAG          = "etag";
+
+  protected static final String LAST_MODIFIED = "lastModified";
+
   protected String              targetActivityStream;
 
   protected String              portalContainer;
@@ -66,60 +64,85 @@ public abstract class AbstractFeedmashJob implements Job {
     
   protected String              password;
 
+  private final List<PendingActivity> pendingActivities = new ArrayList<PendingActivity>();
+
   /**
    * Feedmash job. Provides support for fetching the job. Lets subclasses filter
    * and process the matching entries.
    */
-  @SuppressWarnings("unchecked")
   public void execute(JobExecutionContext context) throws JobExecutionException {
     try {
-      JobDataMap dataMap = context.getJobDetail().getJobDataMap();
+      process(context.getJobDetail().getJobDataMap());
+    } catch (Exception e) {
+      throw new JobExecutionException(e);
+    }
 
-      // read job settings
-      init(dataMap);
+  }
 
-      // make sure server has finished starting
-      if (severIsStarting(dataMap)) {
-        return;
-      }
+  /**
+   * Reads the feed and processes its new entries.
+   *
+   * The feed is read with a conditional GET, nothing is done when it did not change. The entries
+   * which are not newer than the last one processed are skipped, the activities published for the
+   * others are saved together once the whole feed is processed.
+   *
+   * @param dataMap the job settings
+   * @throws Exception if the feed can't be read or the activities can't be saved
+   */
+  @SuppressWarnings("unchecked")
+  protected void process(JobDataMap dataMap) throws Exception {
+    // read job settings
+    init(dataMap);
 
-      // let subclass do something before proceeding
-      beforeJobExecute(dataMap);
-
-      // Read the feed
-      SyndFeedInput input = new SyndFeedInput();
-      
-      URLConnection urlConnection = null;
-      URL url = new URL(feedUrl);
-      if(url.getUserInfo() != null){
-        byte[] authEncBytes = Base64.encode(url.getUserInfo().getBytes());
-        String authStringEnc = new String(authEncBytes);
-        urlConnection = url.openConnection();
-        urlConnection.setRequestProperty("Authorization", "Basic " + authStringEnc);
-      } else if(username != null && password != null) {
-        byte[] authEncBytes = Base64.encode((username + ":" + password).getBytes());
-        String authStringEnc = new String(authEncBytes);
-        urlConnection = url.openConnection();
-        urlConnection.setRequestProperty("Authorization", "Basic " + authStringEnc);       
-      } else {
-        urlConnection = url.openConnection();
+    // make sure server has finished starting
+    if (severIsStarting(dataMap)) {
+      return;
+    }
+
+    // let subclass do something before proceeding
+    beforeJobExecute(dataMap);
+
+    // Read the feed, the validators are only sent when its entries were processed
+    Date highWaterMark = (feedLastCheck != null) ? (Date) getState(feedLastCheck) : null;
+    String etag = (highWaterMark != null) ? (String) getState(ETAG + "." + feedUrl) : null;
+    Long lastModified = (highWaterMark != null) ? (Long) getState(LAST_MODIFIED + "." + feedUrl) : null;
+    FeedFetcher.Response response = getFeedFetcher().fetch(feedUrl, username, password, etag,
+                                                           (lastModified != null) ? lastModified : 0);
+    if (response.isNotModified()) {
+      LOG.debug("feed not modified: " + feedUrl);
+      return;
+    }
+
+    List<SyndEntryImpl> entries = response.getFeed().getEntries();
+
+    // process what we are interested in
+    int skipped = 0;
+    for (SyndEntryImpl entry : Lists.reverse(entries)) {
+      Date date = getEntryDate(entry);
+      if (highWaterMark != null && date != null && !highWaterMark.before(date)) {
+        skipped++;
+        continue;
       }
-      
-      InputStream is = urlConnection.getInputStream();
-      SyndFeed feed = input.build(new XmlReader(is));
-      
-      List<SyndEntryImpl> entries = feed.getEntries();
-
-      // process what we are interested in
-      for (SyndEntryImpl entry : Lists.reverse(entries)) {
-        if (accept(entry)) {
-          handle(entry);
-        }
+      if (accept(entry)) {
+        handle(entry);
       }
+    }
+
+    try {
+      flushActivities(pendingActivities);
     } catch (Exception e) {
-      throw new JobExecutionException(e);
+      // the entries will be processed again
+      if (feedLastCheck != null) {
+        saveState(feedLastCheck, highWaterMark);
+      }
+      throw e;
+    } finally {
+      pendingActivities.clear();
     }
+    LOG.debug(entries.size() + " entries read from " + feedUrl + ", " + skipped + " already processed");
 
+    saveState(ETAG + "." + feedUrl, response.getEtag());
+    saveState(LAST_MODIFIED + "." + feedUrl, (response.getLastModified() > 0) ? response.getLastModified() : null);
   }
 
   protected abstract void handle(SyndEntryImpl entry);
@@ -144,6 +167,18 @@ public abstract class AbstractFeedmashJob implements Job {
     return pluginName + "." + key;
   }
 
+  /**
+   * @param entry the feed entry
+   * @return the date the entry was last updated, its publication date if it has none
+   */
+  protected Date getEntryDate(SyndEntryImpl entry) {
+    return (entry.getUpdatedDate() != null) ? entry.getUpdatedDate() : entry.getPublishedDate();
+  }
+
+  protected FeedFetcher getFeedFetcher() {
+    return new FeedFetcher();
+  }
+
   protected boolean alreadyChecked(Date date) {
     Date lastChecked = (Date) getState(feedLastCheck);
     if (lastChecked == null) {
@@ -161,7 +196,8 @@ public abstract class AbstractFeedmashJob implements Job {
   }
 
   /**
-   * Publish an activity
+   * Publish an activity, the activity is saved with the other activities of the feed once the
+   * whole feed is processed.
    *
    * @param message body of the activity
    * @param from owner of the activity
@@ -175,11 +211,33 @@ public abstract class AbstractFeedmashJob implements Job {
     activity.setAppId("feedmash:" + getClass());
     activity.setUserId(from.getId());
 
-    ActivityManager activityManager = getExoComponent(ActivityManager.class);
-    activityManager.saveActivityNoReturn(to, activity);
+    pendingActivities.add(new PendingActivity(to, activity));
 
   }
 
+  /**
+   * Saves the activities published while processing the feed, in a single request life cycle.
+   *
+   * @param activities the published activities
+   * @throws Exception
+   */
+  protected void flushActivities(List<PendingActivity> activities) throws Exception {
+    if (activities.isEmpty()) {
+      return;
+    }
+
+    ActivityManager activityManager = getExoComponent(ActivityManager.class);
+    RequestLifeCycle.begin(ExoContainerContext.getCurrentContainer());
+    try {
+      for (PendingActivity pending : activities) {
+        activityManager.saveActivityNoReturn(pending.getStreamOwner(), pending.getActivity());
+      }
+    } finally {
+      RequestLifeCycle.end();
+    }
+    LOG.debug(activities.size() + " activities published from " + feedUrl);
+  }
+
   protected Identity getIdentity(String targetUser) {
     Identity identity = null;
     String[] identityInfo = null;
@@ -223,6 +281,29 @@ public abstract class AbstractFeedmashJob implements Job {
     password = dataMap.getString("password");        
   }
 
+  /**
+   * An activity waiting to be saved.
+   */
+  protected static class PendingActivity {
+
+    private final Identity streamOwner;
+
+    private final ExoSocialActivity activity;
+
+    private PendingActivity(Identity streamOwner, ExoSocialActivity activity) {
+      this.streamOwner = streamOwner;
+      this.activity = activity;
+    }
+
+    public Identity getStreamOwner() {
+      return streamOwner;
+    }
+
+    public ExoSocialActivity getActivity() {
+      return activity;
+    }
+  }
+
   private boolean severIsStarting(JobDataMap dataMap) {
     // hack to before actually starting working otherwise picketlink fails
     if (rampup > 1) {
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.extras.feedmash;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+import com.sun.syndication.feed.synd.SyndFeed;
+import com.sun.syndication.io.SyndFeedInput;
+import com.sun.syndication.io.XmlReader;
+import com.sun.syndication.io.impl.Base64;
+
+/**
+ * Fetches the feeds with conditional GETs: the ETag and the Last-Modified date of the previous
+ * response are sent back, the feed is neither downloaded nor parsed when the server answers it
+ * did not change.
+ */
+public class FeedFetcher {
+
+  /** The default connect timeout, in milliseconds. */
+  public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+  /** The default read timeout, in milliseconds. */
+  public static final int DEFAULT_READ_TIMEOUT = 30000;
+
+  /**
+   * A feed response.
+   */
+  public static class Response {
+
+    private final SyndFeed feed;
+
+    private final String etag;
+
+    private final long lastModified;
+
+    private Response(SyndFeed feed, String etag, long lastModified) {
+      this.feed = feed;
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+
+    /**
+     * @return true if the feed did not change since the previous response
+     */
+    public boolean isNotModified() {
+      return feed == null;
+    }
+
+    /**
+     * @return the feed, null if it did not change
+     */
+    public SyndFeed getFeed() {
+      return feed;
+    }
+
+    /**
+     * @return the ETag of the feed, null if the server sent none
+     */
+    public String getEtag() {
+      return etag;
+    }
+
+    /**
+     * @return the Last-Modified date of the feed, 0 if the server sent none
+     */
+    public long getLastModified() {
+      return lastModified;
+    }
+  }
+
+  private final int connectTimeout;
+
+  private final int readTimeout;
+
+  public FeedFetcher() {
+    this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+  }
+
+  /**
+   * @param connectTimeout the connect timeout in milliseconds
+   * @param readTimeout the read timeout in milliseconds
+   */
+  public FeedFetcher(int connectTimeout, int readTimeout) {
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+  }
+
+  /**
+   * Fetches a feed.
+   *
+   * @param feedUrl the feed url, it may contain the user info
+   * @param username the user name, null if there is none
+   * @param password the password, null if there is none
+   * @param etag the ETag of the previous response, null to fetch the feed unconditionally
+   * @param lastModified the Last-Modified date of the previous response, 0 if there is none
+   * @return the response
+   * @throws Exception if the feed can't be fetched or parsed
+   */
+  public Response fetch(String feedUrl, String username, String password, String etag, long lastModified) throws Exception {
+    URL url = new URL(feedUrl);
+    URLConnection urlConnection = url.openConnection();
+    urlConnection.setConnectTimeout(connectTimeout);
+    urlConnection.setReadTimeout(readTimeout);
+    if (url.getUserInfo() != null) {
+      urlConnection.setRequestProperty("Authorization", "Basic " + new String(Base64.encode(url.getUserInfo().getBytes())));
+    } else if (username != null && password != null) {
+      urlConnection.setRequestProperty("Authorization", "Basic " + new String(Base64.encode((username + ":" + password).getBytes())));
+    }
+
+    if (urlConnection instanceof HttpURLConnection) {
+      HttpURLConnection httpConnection = (HttpURLConnection) urlConnection;
+      if (etag != null) {
+        httpConnection.setRequestProperty("If-None-Match", etag);
+      }
+      if (lastModified > 0) {
+        httpConnection.setIfModifiedSince(lastModified);
+      }
+      if (httpConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+        httpConnection.disconnect();
+        return new Response(null, etag, lastModified);
+      }
+    }
+
+    InputStream is = urlConnection.getInputStream();
+    try {
+      SyndFeed feed = new SyndFeedInput().build(new XmlReader(is));
+      return new Response(feed, urlConnection.getHeaderField("ETag"), urlConnection.getLastModified());
+    } finally {
+      is.close();
+    }
+  }
+}
@@ -61,7 +61,7 @@ public class HudsonFeedConsumer extends AbstractFeedmashJob {
         saveState(feedLastCheck, null);
         return;
       } else {
-        saveState(feedLastCheck, entry.getPublishedDate());
+        saveState(feedLastCheck, getEntryDate(entry));
       }
 
       String currentStatus = currentStatus(entry);
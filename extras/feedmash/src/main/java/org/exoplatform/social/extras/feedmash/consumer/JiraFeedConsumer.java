@@ -69,7 +69,7 @@ public class JiraFeedConsumer extends AbstractFeedmashJob {
         saveState(feedLastCheck, null);
         return;
       } else {
-        saveState(feedLastCheck, entry.getPublishedDate());
+        saveState(feedLastCheck, getEntryDate(entry));
       }
 
       String message = entry.getTitle();
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.extras.feedmash.consumer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.extras.feedmash.AbstractFeedmashJob;
+import org.exoplatform.social.extras.feedmash.Application;
+import org.exoplatform.social.extras.feedmash.MashupStateHolder;
+import org.quartz.JobDataMap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the Jira and Hudson consumers against a local server serving the sample feeds.
+ */
+public class FeedConsumerTest extends TestCase {
+
+  private static final String SAMPLES = "src/main/java/org/exoplatform/social/extras/feedmash/consumer/";
+
+  private HttpServer server;
+
+  private FeedHandler jiraFeed;
+
+  private FeedHandler hudsonFeed;
+
+  private MashupStateHolder state;
+
+  @Override
+  protected void setUp() throws Exception {
+    jiraFeed = new FeedHandler(SAMPLES + "jira.samplefeed.xml");
+    hudsonFeed = new FeedHandler(SAMPLES + "hudson.samplefeed.xml");
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/jira", jiraFeed);
+    server.createContext("/hudson", hudsonFeed);
+    server.start();
+    state = new MashupStateHolder();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.stop(0);
+  }
+
+  public void testJiraFeed() throws Exception {
+    List<String> published = new ArrayList<String>();
+    new TestJiraConsumer(published).process(dataMap("/jira"));
+    int entries = published.size();
+    assertTrue(entries > 0);
+    assertEquals(1, jiraFeed.served);
+
+    //not modified: the feed is neither downloaded nor parsed
+    new TestJiraConsumer(published).process(dataMap("/jira"));
+    assertEquals(entries, published.size());
+    assertEquals(2, jiraFeed.requests);
+    assertEquals(1, jiraFeed.served);
+
+    //modified without new entries: the entries are skipped by the high-water mark
+    jiraFeed.etag = "\"v2\"";
+    new TestJiraConsumer(published).process(dataMap("/jira"));
+    assertEquals(entries, published.size());
+    assertEquals(2, jiraFeed.served);
+  }
+
+  public void testHudsonFeed() throws Exception {
+    List<String> published = new ArrayList<String>();
+    new TestHudsonConsumer(published).process(dataMap("/hudson"));
+    int entries = published.size();
+    assertTrue(entries > 0);
+    assertTrue(published.get(entries - 1).contains("social-trunk-ci #1213"));
+
+    new TestHudsonConsumer(published).process(dataMap("/hudson"));
+    assertEquals(entries, published.size());
+    assertEquals(1, hudsonFeed.served);
+  }
+
+  public void testMissingTarget() throws Exception {
+    List<String> published = new ArrayList<String>();
+    TestJiraConsumer consumer = new TestJiraConsumer(published);
+    consumer.target = null;
+    consumer.process(dataMap("/jira"));
+    assertTrue(published.isEmpty());
+
+    //the entries were not processed, the feed is read again
+    new TestJiraConsumer(published).process(dataMap("/jira"));
+    assertEquals(2, jiraFeed.served);
+    assertTrue(published.size() > 0);
+  }
+
+  private JobDataMap dataMap(String path) {
+    JobDataMap dataMap = new JobDataMap();
+    dataMap.put("pluginName", "test");
+    dataMap.put("targetActivityStream", "space:exosocial");
+    dataMap.put("feedURL", "http://localhost:" + server.getAddress().getPort() + path);
+    dataMap.put("baseURL", "http://localhost");
+    dataMap.put("project", "SOC");
+    return dataMap;
+  }
+
+  private static Identity identity(String providerId, String remoteId) {
+    Identity identity = new Identity(providerId, remoteId);
+    identity.setId(remoteId);
+    return identity;
+  }
+
+  /**
+   * Serves a feed with an ETag, answers 304 when the client has it.
+   */
+  private static class FeedHandler implements HttpHandler {
+
+    private final String path;
+
+    private volatile String etag = "\"v1\"";
+
+    private volatile int requests;
+
+    private volatile int served;
+
+    private FeedHandler(String path) {
+      this.path = path;
+    }
+
+    public void handle(HttpExchange exchange) throws IOException {
+      requests++;
+      if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+        return;
+      }
+      served++;
+      File feed = new File(path);
+      exchange.getResponseHeaders().add("Content-Type", "application/atom+xml");
+      exchange.getResponseHeaders().add("ETag", etag);
+      exchange.sendResponseHeaders(200, feed.length());
+      InputStream in = new FileInputStream(feed);
+      OutputStream out = exchange.getResponseBody();
+      try {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+      } finally {
+        in.close();
+        out.close();
+      }
+    }
+  }
+
+  private class TestJiraConsumer extends JiraFeedConsumer {
+
+    private final List<String> published;
+
+    private Identity target = identity("space", "exosocial");
+
+    private TestJiraConsumer(List<String> published) {
+      this.published = published;
+    }
+
+    @Override
+    protected void process(JobDataMap dataMap) throws Exception {
+      super.process(dataMap);
+    }
+
+    @Override
+    protected Object getState(String key) {
+      return state.getState(getStateKey(key));
+    }
+
+    @Override
+    protected void saveState(String key, Object value) {
+      state.saveState(getStateKey(key), value);
+    }
+
+    @Override
+    protected Identity getIdentity(String targetUser) {
+      return target;
+    }
+
+    @Override
+    protected Identity getAppIdentity(Application app) {
+      return identity("apps", app.getId());
+    }
+
+    @Override
+    protected void flushActivities(List<AbstractFeedmashJob.PendingActivity> activities) {
+      for (AbstractFeedmashJob.PendingActivity activity : activities) {
+        published.add(activity.getActivity().getTitle());
+      }
+    }
+  }
+
+  private class TestHudsonConsumer extends HudsonFeedConsumer {
+
+    private final List<String> published;
+
+    private TestHudsonConsumer(List<String> published) {
+      this.published = published;
+    }
+
+    @Override
+    protected void process(JobDataMap dataMap) throws Exception {
+      super.process(dataMap);
+    }
+
+    @Override
+    protected Object getState(String key) {
+      return state.getState(getStateKey(key));
+    }
+
+    @Override
+    protected void saveState(String key, Object value) {
+      state.saveState(getStateKey(key), value);
+    }
+
+    @Override
+    protected Identity getIdentity(String targetUser) {
+      return identity("space", "exosocial");
+    }
+
+    @Override
+    protected Identity getAppIdentity(Application app) {
+      return identity("apps", app.getId());
+    }
+
+    @Override
+    protected void flushActivities(List<AbstractFeedmashJob.PendingActivity> activities) {
+      for (AbstractFeedmashJob.PendingActivity activity : activities) {
+        published.add(activity.getActivity().getTitle());
+      }
+    }
+  }
+}
@@ -2,11 +2,15 @@ package org.exoplatform.social.extras.injection;
 
 import java.lang.reflect.UndeclaredThrowableException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Random;
 
 import org.chromattic.api.query.QueryBuilder;
 import org.exoplatform.commons.chromattic.ChromatticManager;
+import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.container.PortalContainer;
+import org.exoplatform.container.component.RequestLifeCycle;
 import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.container.xml.ValueParam;
 import org.exoplatform.services.bench.DataInjector;
@@ -17,13 +21,19 @@ import org.exoplatform.services.organization.UserHandler;
 import org.exoplatform.social.common.lifecycle.SocialChromatticLifeCycle;
 import org.exoplatform.social.core.chromattic.entity.IdentityEntity;
 import org.exoplatform.social.core.chromattic.entity.SpaceEntity;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.manager.ActivityManager;
 import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.core.manager.RelationshipManager;
 import org.exoplatform.social.core.space.spi.SpaceService;
+import org.exoplatform.social.core.storage.api.ActivityStorage;
 import org.exoplatform.social.core.storage.api.IdentityStorage;
+import org.exoplatform.social.core.storage.api.RelationshipStorage;
 import org.exoplatform.social.core.storage.impl.AbstractStorage;
+import org.exoplatform.social.core.storage.impl.StorageUtils;
 import org.exoplatform.social.core.storage.query.WhereExpression;
+import org.exoplatform.social.core.updater.StreamUpgradeProcessor;
 import org.exoplatform.social.extras.injection.utils.LoremIpsum4J;
 import org.exoplatform.social.extras.injection.utils.NameGenerator;
 
@@ -42,6 +52,21 @@ public abstract class AbstractSocialInjector extends DataInjector {
   /** . */
   private final static String DEFAULT_SPACE_BASE = "bench.space";
 
+  /** . */
+  protected static final String BULK = "bulk";
+
+  /** . */
+  protected static final String BATCH_SIZE = "batchSize";
+
+  /** . */
+  protected static final String STREAM_LIMIT = "streamLimit";
+
+  /** . */
+  private static final int DEFAULT_BATCH_SIZE = 500;
+
+  /** . */
+  private static final int DEFAULT_STREAM_LIMIT = 100;
+
   /** . */
   protected final String password;
 
@@ -84,9 +109,15 @@ public abstract class AbstractSocialInjector extends DataInjector {
   /** . */
   protected final RelationshipManager relationshipManager;
 
+  /** . */
+  protected final RelationshipStorage relationshipStorage;
+
   /** . */
   protected final ActivityManager activityManager;
 
+  /** . */
+  protected final ActivityStorage activityStorage;
+
   /** . */
   protected final OrganizationService organizationService;
 
@@ -106,6 +137,30 @@ public abstract class AbstractSocialInjector extends DataInjector {
   protected LoremIpsum4J lorem;
 
   protected PortalContainer container;
+
+  /** . */
+  protected boolean bulk;
+
+  /** . */
+  protected int batchSize;
+
+  /** . */
+  private int streamLimit;
+
+  /** . */
+  private int injected;
+
+  /** . */
+  private int batched;
+
+  /** . */
+  private int flushes;
+
+  /** . */
+  private long bulkStart;
+
+  /** The identities whose streams are rebuilt at the end of a bulk injection, by id. */
+  private final Map<String, Identity> streamOwners = new LinkedHashMap<String, Identity>();
   
   public AbstractSocialInjector(PatternInjectorConfig config) {
 
@@ -113,7 +168,9 @@ public abstract class AbstractSocialInjector extends DataInjector {
     this.identityManager = (IdentityManager) container.getComponentInstanceOfType(IdentityManager.class);
     this.identityStorage = (IdentityStorage) container.getComponentInstanceOfType(IdentityStorage.class);
     this.relationshipManager = (RelationshipManager) container.getComponentInstanceOfType(RelationshipManager.class);
+    this.relationshipStorage = (RelationshipStorage) container.getComponentInstanceOfType(RelationshipStorage.class);
     this.activityManager = (ActivityManager) container.getComponentInstanceOfType(ActivityManager.class);
+    this.activityStorage = (ActivityStorage) container.getComponentInstanceOfType(ActivityStorage.class);
     this.spaceService = (SpaceService) container.getComponentInstanceOfType(SpaceService.class);
     this.organizationService = (OrganizationService) container.getComponentInstanceOfType(OrganizationService.class);
 
@@ -259,6 +316,120 @@ public abstract class AbstractSocialInjector extends DataInjector {
     
   }
   
+  /**
+   * Starts an injection, in bulk mode if the "bulk" parameter is true.
+   *
+   * In bulk mode the entities are written through the storages, without the lifecycle listeners
+   * of the managers, and the activities are not fanned out to the streams: the session is flushed
+   * every "batchSize" entities (500 by default) and the streams of the identities registered by
+   * {@link #bulkStreamOwner(Identity)} are rebuilt once at the end, up to "streamLimit" activities
+   * each (100 by default).
+   *
+   * @param params the injection parameters
+   */
+  protected void startBulk(HashMap<String, String> params) {
+    bulk = Boolean.valueOf(params.get(BULK));
+    batchSize = param(params, BATCH_SIZE);
+    if (batchSize <= 0) {
+      batchSize = DEFAULT_BATCH_SIZE;
+    }
+    streamLimit = param(params, STREAM_LIMIT);
+    if (streamLimit <= 0) {
+      streamLimit = DEFAULT_STREAM_LIMIT;
+    }
+
+    //
+    injected = 0;
+    batched = 0;
+    flushes = 0;
+    streamOwners.clear();
+    bulkStart = System.currentTimeMillis();
+    if (bulk) {
+      //only the activities written by this thread skip the streams, they are rebuilt by endBulk
+      activityStorage.setInjectStreams(false);
+    }
+  }
+
+  /**
+   * Counts an injected entity, flushes the session when the batch is full.
+   */
+  protected void bulkInjected() {
+    ++injected;
+    if (++batched == batchSize) {
+      flushBulk();
+    }
+  }
+
+  /**
+   * Registers an identity whose streams must be rebuilt at the end of the bulk injection.
+   *
+   * @param identity the identity
+   */
+  protected void bulkStreamOwner(Identity identity) {
+    if (identity != null && identity.getId() != null) {
+      streamOwners.put(identity.getId(), identity);
+    }
+  }
+
+  /**
+   * Ends a bulk injection: flushes the last batch, rebuilds the streams and their counters,
+   * then reports the throughput.
+   *
+   * @param kind the kind of the injected entities, used by the report
+   */
+  protected void endBulk(String kind) {
+    try {
+      if (batched > 0) {
+        flushBulk();
+      }
+    } finally {
+      activityStorage.setInjectStreams(true);
+    }
+    long elapsed = System.currentTimeMillis() - bulkStart;
+    getLog().info(String.format("%d %s injected in %d ms (%.1f/s), %d flushes of %d",
+                                injected, kind, elapsed, rate(injected, elapsed), flushes, batchSize));
+
+    //
+    if (!streamOwners.isEmpty()) {
+      long start = System.currentTimeMillis();
+      int rebuilt = 0;
+      for (Identity owner : streamOwners.values()) {
+        rebuildStreams(owner);
+        if (++rebuilt % batchSize == 0) {
+          flushBulk();
+        }
+      }
+      flushBulk();
+      elapsed = System.currentTimeMillis() - start;
+      getLog().info(String.format("Streams of %d identities rebuilt in %d ms (%.1f/s)",
+                                  rebuilt, elapsed, rate(rebuilt, elapsed)));
+      streamOwners.clear();
+    }
+  }
+
+  private void rebuildStreams(Identity owner) {
+    if (SpaceIdentityProvider.NAME.equals(owner.getProviderId())) {
+      StreamUpgradeProcessor.space(owner).upgrade(0, streamLimit);
+    } else {
+      StreamUpgradeProcessor.feed(owner).upgrade(0, streamLimit);
+      StreamUpgradeProcessor.connection(owner).upgrade(0, streamLimit);
+      StreamUpgradeProcessor.myspaces(owner).upgrade(0, streamLimit);
+      StreamUpgradeProcessor.user(owner).upgrade(0, streamLimit);
+    }
+  }
+
+  private void flushBulk() {
+    StorageUtils.persist();
+    RequestLifeCycle.end();
+    RequestLifeCycle.begin(ExoContainerContext.getCurrentContainer());
+    batched = 0;
+    ++flushes;
+  }
+
+  private static double rate(int number, long elapsed) {
+    return elapsed > 0 ? number * 1000D / elapsed : number;
+  }
+
   protected int param(HashMap<String, String> params, String name) {
 
     //
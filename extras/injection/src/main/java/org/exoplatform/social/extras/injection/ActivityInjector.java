@@ -9,6 +9,7 @@ import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
 import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
+import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.storage.impl.StorageUtils;
 import org.exoplatform.social.extras.injection.utils.LoremIpsum4J;
 
@@ -68,6 +69,12 @@ public class ActivityInjector extends AbstractSocialInjector {
       provider = OrganizationIdentityProvider.NAME;
     }
 
+    startBulk(params);
+    if (bulk) {
+      injectBulk(provider, from, to, number);
+      return;
+    }
+
     String fromUser;
     int counter = 0;
     try {
@@ -112,4 +119,61 @@ public class ActivityInjector extends AbstractSocialInjector {
     
 
   }
+
+  /**
+   * Saves the activities through the storage, without the activity processors and listeners,
+   * the streams of the posters, of their connections and of the space members are rebuilt once
+   * all the activities are saved.
+   */
+  private void injectBulk(String provider, int from, int to, int number) {
+    try {
+      for(int i = from; i <= to; ++i) {
+        //
+        String fromUser;
+        if (provider.equalsIgnoreCase(OrganizationIdentityProvider.NAME)) {
+          fromUser = this.userNameSuffixPattern(i);
+        } else {
+          fromUser = this.spaceNameSuffixPattern(i);
+          fromUser = fromUser.replace(".", "");
+        }
+
+        Identity identity = identityManager.getOrCreateIdentity(provider, fromUser, false);
+        if (identity == null) {
+          getLog().info("Identity " + fromUser + " not found, skipped");
+          continue;
+        }
+        registerStreamOwners(identity);
+
+        for (int j = 0; j < number; ++j) {
+          //
+          ExoSocialActivity activity = new ExoSocialActivityImpl();
+          lorem = new LoremIpsum4J();
+          activity.setType("DEFAULT_ACTIVITY");
+          activity.setBody(lorem.getWords(10));
+          activity.setTitle(lorem.getParagraphs());
+          activity.setUserId(identity.getId());
+          activityStorage.saveActivity(identity, activity);
+          bulkInjected();
+        }
+      }
+    } finally {
+      endBulk("activities");
+    }
+  }
+
+  private void registerStreamOwners(Identity identity) {
+    bulkStreamOwner(identity);
+    if (SpaceIdentityProvider.NAME.equals(identity.getProviderId())) {
+      Space space = spaceService.getSpaceByPrettyName(identity.getRemoteId());
+      if (space != null && space.getMembers() != null) {
+        for (String member : space.getMembers()) {
+          bulkStreamOwner(identityStorage.findIdentity(OrganizationIdentityProvider.NAME, member));
+        }
+      }
+    } else {
+      for (Identity connection : relationshipStorage.getConnections(identity)) {
+        bulkStreamOwner(connection);
+      }
+    }
+  }
 }
@@ -3,6 +3,8 @@ package org.exoplatform.social.extras.injection;
 import java.util.HashMap;
 
 import org.exoplatform.services.organization.User;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.model.Profile;
 import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
 
 /**
@@ -25,6 +27,11 @@ public class IdentityInjector extends AbstractSocialInjector {
     int number = param(params, NUMBER);
     String prefix = params.get(PREFIX);
     init(prefix, null, userSuffixValue, spaceSuffixValue);
+    startBulk(params);
+    if (bulk) {
+      injectBulk(number);
+      return;
+    }
 
     //
     for(int i = 0; i < number; ++i) {
@@ -57,4 +64,50 @@ public class IdentityInjector extends AbstractSocialInjector {
 
   }
 
+  /**
+   * Creates the users without broadcasting the organization events, their identity and profile
+   * are saved through the storage without the profile lifecycle listeners.
+   */
+  private void injectBulk(int number) {
+    try {
+      for(int i = 0; i < number; ++i) {
+
+        //
+        String username = this.userName();
+        User user = userHandler.createUserInstance(username);
+        user.setEmail(username + "@" + DOMAIN);
+        user.setFirstName(nameGenerator.compose(3));
+        user.setLastName(nameGenerator.compose(4));
+        user.setPassword(this.password);
+
+        try {
+
+          //
+          userHandler.createUser(user, false);
+          Identity identity = new Identity(OrganizationIdentityProvider.NAME, username);
+          Profile profile = new Profile(identity);
+          profile.setProperty(Profile.FIRST_NAME, user.getFirstName());
+          profile.setProperty(Profile.LAST_NAME, user.getLastName());
+          profile.setProperty(Profile.FULL_NAME, user.getFirstName() + " " + user.getLastName());
+          profile.setProperty(Profile.USERNAME, username);
+          profile.setProperty(Profile.EMAIL, user.getEmail());
+          identity.setProfile(profile);
+          identityStorage.saveIdentity(identity);
+          identityStorage.saveProfile(profile);
+
+          //
+          ++userNumber;
+          bulkInjected();
+
+        } catch (Exception e) {
+          getLog().error(e);
+        }
+
+      }
+    } finally {
+      endBulk("users");
+    }
+
+  }
+
 }
@@ -55,10 +55,17 @@ public class RelationshipInjector extends AbstractSocialInjector {
 
     }
 
+    startBulk(params);
     int floor = from;
-    for (Map.Entry<Integer, Integer> e : computed.entrySet()) {
-      generate(e, floor);
-      floor += e.getKey();
+    try {
+      for (Map.Entry<Integer, Integer> e : computed.entrySet()) {
+        generate(e, floor);
+        floor += e.getKey();
+      }
+    } finally {
+      if (bulk) {
+        endBulk("relationships");
+      }
     }
 
   }
@@ -87,7 +94,14 @@ public class RelationshipInjector extends AbstractSocialInjector {
 
           //
           Relationship r = new Relationship(identity1, identity2, Relationship.Type.CONFIRMED);
-          relationshipManager.saveRelationship(r);
+          if (bulk) {
+            relationshipStorage.saveRelationship(r);
+            bulkStreamOwner(identity1);
+            bulkStreamOwner(identity2);
+            bulkInjected();
+          } else {
+            relationshipManager.saveRelationship(r);
+          }
           
           //
           getLog().info("Relationship between " + fromUser + " and " + toUser + " generated");
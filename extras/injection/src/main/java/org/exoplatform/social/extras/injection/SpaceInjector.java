@@ -45,6 +45,7 @@ public class SpaceInjector extends AbstractSocialInjector {
     String userPrefix = params.get(USER_PREFIX);
     String spacePrefix = params.get(SPACE_PREFIX);
     init(userPrefix, spacePrefix, userSuffixValue, spaceSuffixValue);
+    startBulk(params);
     
     int spaceCounter = 0;
     try {
@@ -71,7 +72,9 @@ public class SpaceInjector extends AbstractSocialInjector {
           //
           spaceService.createSpace(space, owner);
           ++spaceNumber;
-          if (++spaceCounter == FLUSH_LIMIT) {
+          if (bulk) {
+            bulkInjected();
+          } else if (++spaceCounter == FLUSH_LIMIT) {
             spaceCounter = 0;
             //
             RequestLifeCycle.end();
@@ -84,8 +87,12 @@ public class SpaceInjector extends AbstractSocialInjector {
         }
       }
     } finally {
+      if (bulk) {
+        endBulk("spaces");
+      } else {
         RequestLifeCycle.end();
         RequestLifeCycle.begin(ExoContainerContext.getCurrentContainer());
+      }
     }
     
     
@@ -27,14 +27,17 @@ import org.exoplatform.component.test.ConfiguredBy;
 import org.exoplatform.component.test.ContainerScope;
 import org.exoplatform.services.organization.OrganizationService;
 import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.model.Profile;
 import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
 import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.manager.ActivityManager;
 import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.core.manager.RelationshipManager;
+import org.exoplatform.social.core.profile.ProfileFilter;
 import org.exoplatform.social.core.space.SpaceUtils;
 import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.space.spi.SpaceService;
+import org.exoplatform.social.core.storage.api.ActivityStreamStorage;
 import org.exoplatform.social.core.storage.api.IdentityStorage;
 
 /**
@@ -64,6 +67,7 @@ public class InjectorTestCase extends AbstractKernelTest {
   private SpaceService spaceService;
   private ActivityManager activityManager;
   private RelationshipManager relationshipManager;
+  private ActivityStreamStorage streamStorage;
 
   private HashMap<String, String> params;
   private List<String> users;
@@ -88,6 +92,7 @@ public class InjectorTestCase extends AbstractKernelTest {
     spaceService = (SpaceService) getContainer().getComponentInstanceOfType(SpaceService.class);
     activityManager = (ActivityManager) getContainer().getComponentInstanceOfType(ActivityManager.class);
     relationshipManager = (RelationshipManager) getContainer().getComponentInstanceOfType(RelationshipManager.class);
+    streamStorage = (ActivityStreamStorage) getContainer().getComponentInstanceOfType(ActivityStreamStorage.class);
 
     params = new HashMap<String, String>();
     users = new ArrayList<String>();
@@ -162,6 +167,100 @@ public class InjectorTestCase extends AbstractKernelTest {
     performRelationshipTest("foo");
   }
 
+  /**
+   * Compares the count and the first page of the mention lookup, which exclude the disabled
+   * identities in the query, with the full listing of the identities.
+   */
+  public void testProfileFilterCountExcludesDisabled() throws Exception {
+
+    //
+    int number = 50;
+    int disabled = 5;
+    assertClean("bench.user", null);
+    ProfileFilter filter = new ProfileFilter();
+    int before = identityStorage.getIdentitiesByProfileFilterCount(OrganizationIdentityProvider.NAME, filter);
+
+    //
+    params.put("number", String.valueOf(number));
+    identityInjector.inject(params);
+    cleanIdentity("bench.user", number);
+    for (int i = 0; i < disabled; ++i) {
+      Identity identity = identityStorage.findIdentity(OrganizationIdentityProvider.NAME, identityInjector.userNameSuffixPattern(i));
+      identityStorage.processEnabledIdentity(identity, false);
+    }
+
+    //
+    int count = identityStorage.getIdentitiesByProfileFilterCount(OrganizationIdentityProvider.NAME, filter);
+    List<Identity> mentions = identityStorage.getIdentitiesForMentions(OrganizationIdentityProvider.NAME, filter, 0, 10, false);
+    List<Identity> all = identityStorage.getIdentitiesByProfileFilter(OrganizationIdentityProvider.NAME, filter, 0, Integer.MAX_VALUE, false);
+
+    //
+    assertEquals(before + number - disabled, count);
+    assertEquals(count, all.size());
+    assertEquals(Math.min(10, count), mentions.size());
+    for (Identity identity : mentions) {
+      assertTrue(identity.isEnable());
+    }
+
+    //the disabled identities are loaded again once one of them is enabled
+    Identity enabled = identityStorage.findIdentity(OrganizationIdentityProvider.NAME, identityInjector.userNameSuffixPattern(0));
+    identityStorage.processEnabledIdentity(enabled, true);
+    assertEquals(count + 1, identityStorage.getIdentitiesByProfileFilterCount(OrganizationIdentityProvider.NAME, filter));
+
+  }
+
+  /**
+   * Injects users, relationships and activities in bulk mode, the streams are rebuilt at the end.
+   */
+  public void testBulkInjection() throws Exception {
+
+    //
+    int number = 5;
+    assertClean("bench.user", null);
+
+    //
+    params.put("bulk", "true");
+    params.put("batchSize", "3");
+    params.put("number", "5");
+    identityInjector.inject(params);
+    cleanIdentity("bench.user", 5);
+
+    //
+    Identity user0 = identityManager.getOrCreateIdentity("organization", identityInjector.userNameSuffixPattern(0), false);
+    Identity user1 = identityManager.getOrCreateIdentity("organization", identityInjector.userNameSuffixPattern(1), false);
+    Identity user2 = identityManager.getOrCreateIdentity("organization", identityInjector.userNameSuffixPattern(2), false);
+    Identity user4 = identityManager.getOrCreateIdentity("organization", identityInjector.userNameSuffixPattern(4), false);
+    assertNotNull(user0);
+    assertNotNull(user4);
+    Profile profile = identityStorage.loadProfile(new Profile(user0));
+    assertEquals(identityInjector.userNameSuffixPattern(0) + "@exoplatform.int", profile.getProperty(Profile.EMAIL));
+
+    //
+    params.put("number", "1");
+    params.put("fromUser", "0");
+    params.put("toUser", "3");
+    relationshipInjector.inject(params);
+    assertEquals(1, relationshipManager.getConnections(user0).getSize());
+    assertEquals(1, relationshipManager.getConnections(user1).getSize());
+
+    //
+    params.put("number", String.valueOf(number));
+    params.put("fromUser", "0");
+    params.put("toUser", "1");
+    params.put("type", "user");
+    activityInjector.inject(params);
+
+    //
+    assertEquals(number, activityManager.getActivitiesWithListAccess(user0).getSize());
+    assertEquals(number, activityManager.getActivitiesWithListAccess(user1).getSize());
+    assertEquals(0, activityManager.getActivitiesWithListAccess(user2).getSize());
+    assertEquals(2 * number, streamStorage.getNumberOfFeed(user0));
+    assertEquals(2 * number, streamStorage.getNumberOfFeed(user1));
+    assertEquals(number, streamStorage.getNumberOfConnections(user0));
+    assertEquals(0, streamStorage.getNumberOfFeed(user2));
+
+  }
+
   private void performIdentityTest(String prefix) throws Exception {
 
     //
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.extras.injection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.exoplatform.component.test.AbstractKernelTest;
+import org.exoplatform.component.test.ConfigurationUnit;
+import org.exoplatform.component.test.ConfiguredBy;
+import org.exoplatform.component.test.ContainerScope;
+import org.exoplatform.services.organization.OrganizationService;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
+import org.exoplatform.social.core.profile.ProfileFilter;
+import org.exoplatform.social.core.storage.api.IdentityStorage;
+
+/**
+ * Profile filter benchmark on injected users, not run by the default build:
+ * mvn test -Dtest=ProfileFilterCountBenchmark -Dinjection.bench.users=5000
+ */
+@ConfiguredBy({
+  @ConfigurationUnit(scope = ContainerScope.PORTAL, path = "conf/exo.portal.component.test.jcr-configuration.xml"),
+  @ConfigurationUnit(scope = ContainerScope.PORTAL, path = "conf/exo.portal.component.identity-configuration.xml"),
+  @ConfigurationUnit(scope = ContainerScope.PORTAL, path = "conf/exo.portal.component.portal-configuration.xml"),
+  @ConfigurationUnit(scope = ContainerScope.PORTAL, path = "conf/standalone/exo.social.test.portal-configuration.xml"),
+  @ConfigurationUnit(scope = ContainerScope.PORTAL, path = "conf/standalone/exo.social.test.jcr-configuration.xml"),
+  @ConfigurationUnit(scope = ContainerScope.PORTAL, path = "conf/standalone/exo.social.component.core.test.configuration.xml"),
+  @ConfigurationUnit(scope = ContainerScope.PORTAL, path = "conf/standalone/exo.social.component.common.test.configuration.xml")
+})
+public class ProfileFilterCountBenchmark extends AbstractKernelTest {
+
+  private IdentityInjector identityInjector;
+
+  private OrganizationService organizationService;
+  private IdentityStorage identityStorage;
+
+  private HashMap<String, String> params;
+  private List<String> users;
+
+  @Override
+  public void setUp() throws Exception {
+
+    //
+    begin();
+
+    //
+    identityInjector = (IdentityInjector) getContainer().getComponentInstanceOfType(IdentityInjector.class);
+    organizationService = (OrganizationService) getContainer().getComponentInstanceOfType(OrganizationService.class);
+    identityStorage = (IdentityStorage) getContainer().getComponentInstanceOfType(IdentityStorage.class);
+
+    params = new HashMap<String, String>();
+    users = new ArrayList<String>();
+
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+
+    //
+    for(String user : users) {
+      organizationService.getUserHandler().removeUser(user, false);
+      Identity i = identityStorage.findIdentity(OrganizationIdentityProvider.NAME, user);
+      identityStorage.deleteIdentity(i);
+    }
+
+    //
+    end();
+
+  }
+
+  /**
+   * Times the count and the first page of the mention lookup, which exclude the disabled
+   * identities in the query, and the full listing of the identities. The number of injected
+   * users is set by the "injection.bench.users" system property.
+   */
+  public void testProfileFilterCount() throws Exception {
+
+    //
+    int number = Integer.getInteger("injection.bench.users", 50);
+    int disabled = 5;
+    assertEquals(null, identityStorage.findIdentity(OrganizationIdentityProvider.NAME, identityInjector.userNameSuffixPattern(0)));
+    ProfileFilter filter = new ProfileFilter();
+    int before = identityStorage.getIdentitiesByProfileFilterCount(OrganizationIdentityProvider.NAME, filter);
+
+    //
+    params.put("number", String.valueOf(number));
+    identityInjector.inject(params);
+    for (int i = 0; i < number; ++i) {
+      users.add(identityInjector.userNameSuffixPattern(i));
+    }
+    for (int i = 0; i < disabled; ++i) {
+      Identity identity = identityStorage.findIdentity(OrganizationIdentityProvider.NAME, identityInjector.userNameSuffixPattern(i));
+      identityStorage.processEnabledIdentity(identity, false);
+    }
+
+    //
+    long start = System.nanoTime();
+    int count = identityStorage.getIdentitiesByProfileFilterCount(OrganizationIdentityProvider.NAME, filter);
+    long countTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    List<Identity> mentions = identityStorage.getIdentitiesForMentions(OrganizationIdentityProvider.NAME, filter, 0, 10, false);
+    long mentionsTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    List<Identity> all = identityStorage.getIdentitiesByProfileFilter(OrganizationIdentityProvider.NAME, filter, 0, Integer.MAX_VALUE, false);
+    long listTime = System.nanoTime() - start;
+
+    System.out.println("\nProfile filter on " + number + " users (ms)\ncount\t" + countTime / 1000000
+        + "\nmentions\t" + mentionsTime / 1000000 + "\nfull list\t" + listTime / 1000000);
+
+    //
+    assertEquals(before + number - disabled, count);
+    assertEquals(count, all.size());
+    assertEquals(Math.min(10, count), mentions.size());
+
+  }
+
+}